@@ -36,6 +36,16 @@ val djlVersion = "0.28.0"
 // Move to v0.3.1 once that release is tagged.
 val ragunitVersion = "c325adc"
 
+// The IntelliJ Platform jars OfflineIndexBuilder links against (Project, Disposable, VFS and PSI
+// interfaces) with the libraries they bundle (Kotlin stdlib, SLF4J). The builder never starts
+// the IDE, so the rest of the platform, the bundled plugins and the test framework stay out.
+val offlineIndexPlatformJars = setOf(
+    "app.jar", "app-client.jar", "lib.jar", "lib-client.jar", "util.jar", "util-8.jar", "util_rt.jar"
+)
+val offlineIndexPlatform: Configuration by configurations.creating {
+    isCanBeConsumed = false
+}
+
 dependencies {
     intellijPlatform {
         intellijIdeaCommunity("2024.3", useInstaller = true)
@@ -118,6 +128,10 @@ dependencies {
     // Testcontainers — used by platform tests to spin up a real Ollama instance
     testImplementation("org.testcontainers:testcontainers:$testcontainersVersion")
     testImplementation("org.testcontainers:ollama:$testcontainersVersion")
+
+    offlineIndexPlatform(files(configurations.named("intellijPlatformClasspath").map { classpath ->
+        classpath.filter { it.name in offlineIndexPlatformJars }
+    }))
 }
 
 
@@ -188,6 +202,27 @@ tasks {
         dependsOn("buildPlugin")
     }
 
+    // Builds the knowledge index of a repository without an IDE, to import into the plugin.
+    // Usage: ./gradlew buildOfflineIndex -Pindex.source=/path/to/repo [-Pindex.output=dir] [-Pindex.threads=8]
+    //        [-Pindex.chunkByCharacters] for projects with token-aware chunking turned off
+    register<JavaExec>("buildOfflineIndex") {
+        group = "ollamassist"
+        description = "Builds a portable knowledge index of a directory with the local embedding model."
+        classpath = sourceSets["main"].runtimeClasspath + offlineIndexPlatform
+        mainClass.set("fr.baretto.ollamassist.chat.rag.OfflineIndexBuilder")
+        maxHeapSize = "2g"
+        val indexArgs = mutableListOf(
+            "--source", project.properties.getOrDefault("index.source", project.projectDir.path).toString()
+        )
+        project.properties["index.output"]?.let { indexArgs += listOf("--output", it.toString()) }
+        project.properties["index.threads"]?.let { indexArgs += listOf("--threads", it.toString()) }
+        project.properties["index.batchSize"]?.let { indexArgs += listOf("--batch-size", it.toString()) }
+        if (project.hasProperty("index.chunkByCharacters")) {
+            indexArgs += "--chunk-by-characters"
+        }
+        args(indexArgs)
+    }
+
     sonar {
         properties {
             property("sonar.projectKey", "baretto-labs_OllamAssist")
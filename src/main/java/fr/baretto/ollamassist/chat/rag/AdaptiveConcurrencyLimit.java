@@ -0,0 +1,262 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the embedding calls in flight to what the embedding server can take, learnt from how it
+ * answers (additive increase, multiplicative decrease).
+ *
+ * <ul>
+ *   <li>A call answered in stable time, while the cap was in use, raises the cap by
+ *   {@code 1 / cap}: about one more call in flight per round of calls.</li>
+ *   <li>A call answered more than {@value #LATENCY_TOLERANCE} times slower per text than the fastest
+ *   seen lowers it by a factor {@value #LATENCY_BACKOFF_RATIO}: requests queue up on the server.</li>
+ *   <li>A call that timed out or was refused as overloaded (HTTP 5xx or 429) halves it.</li>
+ * </ul>
+ *
+ * <p>Calls started before the last decrease do not lower the cap again: they ran against the
+ * congestion that was already answered. The fastest time seen drifts up slowly, so that a server
+ * that got durably slower does not keep the cap at its minimum.
+ */
+@Slf4j
+final class AdaptiveConcurrencyLimit {
+
+    static final double BACKOFF_RATIO = 0.5;
+    static final double LATENCY_BACKOFF_RATIO = 0.9;
+    static final double LATENCY_TOLERANCE = 2.0;
+    /**
+     * The fastest time per text moves this fraction of the way to each slower sample.
+     */
+    private static final int BASELINE_DRIFT = 100;
+    /**
+     * Texts per call when a call is split to run concurrently. Fixed, so that the time per text of
+     * a call does not depend on the cap.
+     */
+    static final int SUB_BATCH_SIZE = 8;
+    private static final Set<String> OVERLOAD_EXCEPTIONS = Set.of("TimeoutException", "SocketTimeoutException",
+            "HttpTimeoutException", "InternalServerException", "RateLimitException");
+
+    private final int min;
+    private final int max;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long baselineNanosPerText = Long.MAX_VALUE;
+    private long lastDecreaseNanos = Long.MIN_VALUE;
+
+    AdaptiveConcurrencyLimit(int min, int initial, int max) {
+        this.min = min;
+        this.max = max;
+        this.limit = initial;
+    }
+
+    /**
+     * A cap that never moves.
+     */
+    static AdaptiveConcurrencyLimit fixed(int limit) {
+        return new AdaptiveConcurrencyLimit(limit, limit, limit);
+    }
+
+    /**
+     * Wraps a model so that its calls count against this cap and adjust it.
+     */
+    EmbeddingModel wrap(EmbeddingModel model) {
+        return new LimitedEmbeddingModel(model, this, null);
+    }
+
+    /**
+     * Wraps a model so that each call is split into calls of {@value #SUB_BATCH_SIZE} texts sent
+     * at once on {@code executor}: a single caller, such as the ingestor of one project embedding
+     * the chunks of a file, then has as many calls in flight as the cap allows.
+     */
+    EmbeddingModel wrapConcurrent(EmbeddingModel model, ExecutorService executor) {
+        return new LimitedEmbeddingModel(model, this, executor);
+    }
+
+    /**
+     * Waits until a call may start.
+     *
+     * @return the start time of the call, to pass back on completion
+     */
+    long acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onSuccess(long startNanos, int texts) {
+        onSuccess(startNanos, System.nanoTime(), texts);
+    }
+
+    void onSuccess(long startNanos, long endNanos, int texts) {
+        long nanosPerText = (endNanos - startNanos) / Math.max(1, texts);
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            if (nanosPerText < baselineNanosPerText) {
+                baselineNanosPerText = nanosPerText;
+            } else {
+                baselineNanosPerText += (nanosPerText - baselineNanosPerText) / BASELINE_DRIFT;
+            }
+            if (nanosPerText > baselineNanosPerText * LATENCY_TOLERANCE) {
+                decrease(startNanos, endNanos, LATENCY_BACKOFF_RATIO);
+            } else if (saturated && limit < max) {
+                limit = Math.min(max, limit + 1 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param failure what the call threw: the cap is lowered when it tells of an overloaded server
+     */
+    void onFailure(long startNanos, Throwable failure) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (isOverload(failure)) {
+                decrease(startNanos, System.nanoTime(), BACKOFF_RATIO);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long startNanos, long nowNanos, double ratio) {
+        if (startNanos < lastDecreaseNanos) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(min, limit * ratio);
+        lastDecreaseNanos = nowNanos;
+        if ((int) limit != (int) previous) {
+            log.debug("Embedding calls in flight capped at {} (was {})", (int) limit, (int) previous);
+        }
+    }
+
+    /**
+     * Timeouts, and server errors or rate limiting, anywhere in the cause chain. Other failures
+     * (connection refused, bad request) say nothing of the server's capacity.
+     */
+    static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof HttpException http && (http.statusCode() >= 500 || http.statusCode() == 429)) {
+                return true;
+            }
+            if (OVERLOAD_EXCEPTIONS.contains(cause.getClass().getSimpleName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of calls allowed in flight
+     */
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class LimitedEmbeddingModel implements EmbeddingModel {
+        private final EmbeddingModel delegate;
+        private final AdaptiveConcurrencyLimit calls;
+        private final ExecutorService executor;
+
+        LimitedEmbeddingModel(EmbeddingModel delegate, AdaptiveConcurrencyLimit calls, ExecutorService executor) {
+            this.delegate = delegate;
+            this.calls = calls;
+            this.executor = executor;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            if (executor == null || textSegments.size() <= SUB_BATCH_SIZE) {
+                return call(textSegments);
+            }
+            List<Future<Response<List<Embedding>>>> futures = new ArrayList<>();
+            for (int from = 0; from < textSegments.size(); from += SUB_BATCH_SIZE) {
+                List<TextSegment> subBatch = textSegments.subList(from, Math.min(textSegments.size(), from + SUB_BATCH_SIZE));
+                futures.add(executor.submit(() -> call(subBatch)));
+            }
+            List<Embedding> embeddings = new ArrayList<>(textSegments.size());
+            TokenUsage tokenUsage = null;
+            try {
+                for (Future<Response<List<Embedding>>> future : futures) {
+                    Response<List<Embedding>> response = future.get();
+                    embeddings.addAll(response.content());
+                    tokenUsage = TokenUsage.sum(tokenUsage, response.tokenUsage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to embed", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+            return Response.from(embeddings, tokenUsage);
+        }
+
+        private Response<List<Embedding>> call(List<TextSegment> textSegments) {
+            long start;
+            try {
+                start = calls.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to embed", e);
+            }
+            Response<List<Embedding>> response;
+            try {
+                response = delegate.embedAll(textSegments);
+            } catch (RuntimeException | Error e) {
+                calls.onFailure(start, e);
+                throw e;
+            }
+            calls.onSuccess(start, textSegments.size());
+            return response;
+        }
+
+        @Override
+        public int dimension() {
+            return delegate.dimension();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds BM25 queries from analyzed tokens instead of the classic query parser, so that a pasted
+ * stack trace or a large selection stays a small query.
+ *
+ * <p>Repeated terms become one clause, boosted sub-linearly by their count. Terms absent from the
+ * index are dropped, and only the {@code maxClauses} terms with the highest IDF are kept: common
+ * words cost the most to score and discriminate the least.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Bm25QueryBuilder {
+
+    /**
+     * Tokens read from the query text; anything after is ignored.
+     */
+    static final int MAX_ANALYZED_TOKENS = 20_000;
+
+    private record WeightedTerm(String text, int count, double idf) {
+    }
+
+    public static Query build(String text, Analyzer analyzer, IndexReader reader, String field, int maxClauses)
+            throws IOException {
+        Map<String, Integer> counts = analyze(text, analyzer, field);
+        int docCount = Math.max(1, reader.numDocs());
+        List<WeightedTerm> terms = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            int docFreq = reader.docFreq(new Term(field, entry.getKey()));
+            if (docFreq > 0) {
+                terms.add(new WeightedTerm(entry.getKey(), entry.getValue(), idf(docFreq, docCount)));
+            }
+        }
+        if (terms.isEmpty()) {
+            return new MatchNoDocsQuery("No query term in the index");
+        }
+        terms.sort(Comparator.comparingDouble(WeightedTerm::idf).reversed()
+                .thenComparing(Comparator.comparingInt(WeightedTerm::count).reversed()));
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (WeightedTerm term : terms.subList(0, Math.min(maxClauses, terms.size()))) {
+            Query clause = new TermQuery(new Term(field, term.text()));
+            if (term.count() > 1) {
+                clause = new BoostQuery(clause, (float) (1 + Math.log(term.count())));
+            }
+            builder.add(clause, BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return distinct terms in order of first appearance, with their number of occurrences
+     */
+    static Map<String, Integer> analyze(String text, Analyzer analyzer, String field) throws IOException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (text == null || text.isBlank()) {
+            return counts;
+        }
+        try (TokenStream stream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            int read = 0;
+            while (read++ < MAX_ANALYZED_TOKENS && stream.incrementToken()) {
+                counts.merge(term.toString(), 1, Integer::sum);
+            }
+            stream.end();
+        }
+        return counts;
+    }
+
+    /**
+     * Same formula as {@link org.apache.lucene.search.similarities.BM25Similarity}.
+     */
+    private static double idf(long docFreq, long docCount) {
+        return Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+    }
+}
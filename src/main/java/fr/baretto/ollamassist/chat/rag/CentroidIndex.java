@@ -0,0 +1,232 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coarse level of the experimental coarse-to-fine retrieval: one centroid per file, the mean of the
+ * normalised vectors of its chunks.
+ *
+ * <p>Centroids are computed in memory from the chunk vectors, once per segment, and summed across
+ * segments when the reader changes. Segments are immutable, so only new segments are read after an
+ * incremental update. Chunks deleted from an existing segment keep counting until a merge rewrites
+ * it; a coarse filter tolerates that drift.
+ *
+ * <p>This only shortens queries: the chunk HNSW graph is still built, and the first computation
+ * reads every vector of the index ({@link #prime(IndexReader)} does it off the query path). Chunks
+ * written before they carried a file cannot be grouped; while any is left, no file is returned and
+ * the caller falls back to a flat search.
+ */
+public final class CentroidIndex {
+
+    private final String vectorField;
+    private final String fileField;
+    private final Map<Object, SegmentCentroids> segments = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(Set.of(), new String[0], new float[0][], true);
+
+    /**
+     * @param complete false when some chunk vectors of the segment have no file
+     */
+    private record SegmentCentroids(String[] files, float[][] sums, int[] counts, boolean complete) {
+    }
+
+    /**
+     * Normalised centroids of every file of the reader they were computed for.
+     */
+    private record Snapshot(Set<Object> segmentKeys, String[] files, float[][] centroids, boolean complete) {
+    }
+
+    private record ScoredFile(String file, double score) {
+    }
+
+    /**
+     * @param vectorField chunk vectors, compared by cosine similarity
+     * @param fileField   sorted doc values holding the file of each chunk, also indexed as a string
+     */
+    public CentroidIndex(String vectorField, String fileField) {
+        this.vectorField = vectorField;
+        this.fileField = fileField;
+    }
+
+    /**
+     * @return up to {@code maxFiles} files, closest centroid first; none while some chunks have no file
+     */
+    public List<String> nearestFiles(IndexReader reader, float[] query, int maxFiles) throws IOException {
+        Snapshot current = refresh(reader);
+        double queryNorm = Math.sqrt(dot(query, query));
+        if (queryNorm == 0 || !current.complete()) {
+            return List.of();
+        }
+        PriorityQueue<ScoredFile> best = new PriorityQueue<>((a, b) -> Double.compare(a.score(), b.score()));
+        for (int i = 0; i < current.files().length; i++) {
+            double score = dot(query, current.centroids()[i]) / queryNorm;
+            if (best.size() < maxFiles) {
+                best.add(new ScoredFile(current.files()[i], score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new ScoredFile(current.files()[i], score));
+            }
+        }
+        List<ScoredFile> sorted = new ArrayList<>(best);
+        sorted.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return sorted.stream().map(ScoredFile::file).toList();
+    }
+
+    /**
+     * Filter restricting a chunk search to the given files.
+     */
+    public Query restrictTo(Collection<String> files) {
+        List<BytesRef> terms = files.stream().map(BytesRef::new).toList();
+        return new TermInSetQuery(fileField, terms);
+    }
+
+    public int fileCount() {
+        return snapshot.files().length;
+    }
+
+    /**
+     * Computes the centroids of the segments of the reader not seen yet.
+     */
+    public void prime(IndexReader reader) throws IOException {
+        refresh(reader);
+    }
+
+    private Snapshot refresh(IndexReader reader) throws IOException {
+        Map<Object, SegmentCentroids> live = new HashMap<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            Object key = segmentKey(context.reader());
+            SegmentCentroids segment = segments.get(key);
+            if (segment == null) {
+                segment = computeSegment(context.reader());
+                segments.put(key, segment);
+            }
+            live.put(key, segment);
+        }
+        Snapshot current = snapshot;
+        if (current.segmentKeys().equals(live.keySet())) {
+            return current;
+        }
+        segments.keySet().retainAll(live.keySet());
+        current = merge(live);
+        snapshot = current;
+        return current;
+    }
+
+    private static Snapshot merge(Map<Object, SegmentCentroids> live) {
+        Map<String, float[]> sums = new HashMap<>();
+        boolean complete = true;
+        for (SegmentCentroids segment : live.values()) {
+            complete &= segment.complete();
+            for (int i = 0; i < segment.files().length; i++) {
+                if (segment.counts()[i] == 0) {
+                    continue;
+                }
+                float[] sum = sums.get(segment.files()[i]);
+                if (sum == null) {
+                    sums.put(segment.files()[i], segment.sums()[i].clone());
+                } else {
+                    add(sum, segment.sums()[i]);
+                }
+            }
+        }
+        String[] files = sums.keySet().toArray(new String[0]);
+        float[][] centroids = new float[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            centroids[i] = normalise(sums.get(files[i]));
+        }
+        return new Snapshot(Set.copyOf(live.keySet()), files, centroids, complete);
+    }
+
+    private SegmentCentroids computeSegment(LeafReader leaf) throws IOException {
+        FloatVectorValues vectors = leaf.getFloatVectorValues(vectorField);
+        SortedDocValues files = DocValues.getSorted(leaf, fileField);
+        int fileCount = files.getValueCount();
+        String[] names = new String[fileCount];
+        float[][] sums = new float[fileCount][];
+        int[] counts = new int[fileCount];
+        for (int ord = 0; ord < fileCount; ord++) {
+            names[ord] = files.lookupOrd(ord).utf8ToString();
+        }
+        if (vectors == null) {
+            return new SegmentCentroids(names, sums, counts, true);
+        }
+        boolean complete = true;
+        for (int doc = vectors.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = vectors.nextDoc()) {
+            if (!files.advanceExact(doc)) {
+                complete = false;
+                continue;
+            }
+            int ord = files.ordValue();
+            float[] vector = vectors.vectorValue();
+            if (sums[ord] == null) {
+                sums[ord] = new float[vector.length];
+            }
+            double norm = Math.sqrt(dot(vector, vector));
+            if (norm > 0) {
+                for (int i = 0; i < vector.length; i++) {
+                    sums[ord][i] += (float) (vector[i] / norm);
+                }
+                counts[ord]++;
+            }
+        }
+        return new SegmentCentroids(names, sums, counts, complete);
+    }
+
+    /**
+     * Segment name and id identify a segment across readers; other leaves are keyed by instance.
+     */
+    private static Object segmentKey(LeafReader leaf) {
+        LeafReader unwrapped = FilterLeafReader.unwrap(leaf);
+        if (unwrapped instanceof SegmentReader segmentReader) {
+            var info = segmentReader.getSegmentInfo().info;
+            return info.name + "_" + StringHelper.idToString(info.getId());
+        }
+        return leaf.getCoreCacheHelper() != null ? leaf.getCoreCacheHelper().getKey() : leaf;
+    }
+
+    private static float[] normalise(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalised = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalised[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalised;
+    }
+
+    private static void add(float[] target, float[] values) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += values[i];
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
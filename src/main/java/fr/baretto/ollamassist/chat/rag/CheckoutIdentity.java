@@ -0,0 +1,189 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Where an index comes from: the repository it was built for and the checkout directory it was
+ * built in. Worktrees and clones of the same repository share a {@code repositoryId}, so a new
+ * checkout can start from the index of another one. Stored in the Lucene commit user data, next
+ * to the {@link IndexSignature}.
+ *
+ * @param repositoryId hash of the {@code origin} remote (or of the shared git directory when there
+ *                     is none) and of the project path inside the repository; null outside git
+ * @param rootPath     project base path, with {@code /} separators
+ */
+@Slf4j
+public record CheckoutIdentity(String repositoryId, String rootPath) {
+
+    static final String REPOSITORY_ID_KEY = "ollamassist.repository_id";
+    static final String ROOT_PATH_KEY = "ollamassist.root_path";
+
+    private static final String GIT_DIR = ".git";
+    private static final String GITDIR_PREFIX = "gitdir:";
+    private static final String COMMONDIR_FILE = "commondir";
+    private static final String ORIGIN_SECTION = "[remote \"origin\"]";
+    private static final String URL_KEY = "url";
+    private static final int REPOSITORY_ID_LENGTH = 16;
+
+    public static final CheckoutIdentity NONE = new CheckoutIdentity(null, null);
+
+    /**
+     * Identifies the checkout a project lives in. Reads a few small git files, no git process.
+     */
+    public static CheckoutIdentity of(String basePath) {
+        if (basePath == null) {
+            return NONE;
+        }
+        Path root = Paths.get(basePath).toAbsolutePath().normalize();
+        String rootPath = root.toString().replace('\\', '/');
+        for (Path dir = root; dir != null; dir = dir.getParent()) {
+            Path dotGit = dir.resolve(GIT_DIR);
+            if (Files.exists(dotGit)) {
+                try {
+                    String repository = repositoryOf(dir, dotGit);
+                    String pathInRepository = dir.relativize(root).toString().replace('\\', '/');
+                    String repositoryId = ContentHash.sha256(repository + "#" + pathInRepository)
+                            .substring(0, REPOSITORY_ID_LENGTH);
+                    return new CheckoutIdentity(repositoryId, rootPath);
+                } catch (IOException e) {
+                    log.debug("Could not read git metadata of {}: {}", dir, e.getMessage());
+                    return new CheckoutIdentity(null, rootPath);
+                }
+            }
+        }
+        return new CheckoutIdentity(null, rootPath);
+    }
+
+    /**
+     * @return null when the commit predates checkout tracking
+     */
+    public static CheckoutIdentity fromUserData(Map<String, String> userData) {
+        if (userData == null || !userData.containsKey(ROOT_PATH_KEY)) {
+            return null;
+        }
+        return new CheckoutIdentity(userData.get(REPOSITORY_ID_KEY), userData.get(ROOT_PATH_KEY));
+    }
+
+    public Map<String, String> toUserData() {
+        Map<String, String> userData = new HashMap<>();
+        if (rootPath != null) {
+            userData.put(ROOT_PATH_KEY, rootPath);
+        }
+        if (repositoryId != null) {
+            userData.put(REPOSITORY_ID_KEY, repositoryId);
+        }
+        return userData;
+    }
+
+    /**
+     * Another checkout of the same repository.
+     */
+    public boolean isSiblingOf(CheckoutIdentity other) {
+        return other != null && repositoryId != null && repositoryId.equals(other.repositoryId)
+                && rootPath != null && !rootPath.equals(other.rootPath);
+    }
+
+    /**
+     * The same repository, checked out here or anywhere else, such as an index built by
+     * {@link OfflineIndexBuilder} on a CI machine or in this very directory.
+     */
+    public boolean isSameRepositoryAs(CheckoutIdentity other) {
+        return other != null && repositoryId != null && repositoryId.equals(other.repositoryId)
+                && rootPath != null && other.rootPath != null;
+    }
+
+    /**
+     * Maps a path of the other checkout to the same file in this one.
+     *
+     * @return null when the path is outside the other checkout
+     */
+    public String translate(String path, CheckoutIdentity from) {
+        if (path == null || rootPath == null || from.rootPath == null) {
+            return null;
+        }
+        if (path.equals(from.rootPath)) {
+            return rootPath;
+        }
+        if (!path.startsWith(from.rootPath + "/")) {
+            return null;
+        }
+        return rootPath + path.substring(from.rootPath.length());
+    }
+
+    /**
+     * The origin remote identifies a repository across clones; worktrees without one still share
+     * their common git directory.
+     */
+    private static String repositoryOf(Path workTree, Path dotGit) throws IOException {
+        Path gitDir = dotGit;
+        if (Files.isRegularFile(dotGit)) {
+            String content = Files.readString(dotGit, StandardCharsets.UTF_8).trim();
+            if (!content.startsWith(GITDIR_PREFIX)) {
+                throw new IOException("Unexpected .git file content");
+            }
+            gitDir = workTree.resolve(content.substring(GITDIR_PREFIX.length()).trim()).normalize();
+        }
+        Path commonDir = gitDir;
+        Path commonDirFile = gitDir.resolve(COMMONDIR_FILE);
+        if (Files.isRegularFile(commonDirFile)) {
+            commonDir = gitDir.resolve(Files.readString(commonDirFile, StandardCharsets.UTF_8).trim()).normalize();
+        }
+        String origin = originUrl(commonDir.resolve("config"));
+        return origin != null ? normalizeRemote(origin) : commonDir.toRealPath().toString().replace('\\', '/');
+    }
+
+    private static String originUrl(Path config) throws IOException {
+        if (!Files.isRegularFile(config)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(config, StandardCharsets.UTF_8);
+        boolean inOrigin = false;
+        for (String rawLine : lines) {
+            String line = rawLine.trim();
+            if (line.startsWith("[")) {
+                inOrigin = line.equals(ORIGIN_SECTION);
+            } else if (inOrigin && line.startsWith(URL_KEY)) {
+                int equals = line.indexOf('=');
+                if (equals > 0 && line.substring(0, equals).trim().equals(URL_KEY)) {
+                    return line.substring(equals + 1).trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@code git@host:org/repo.git}, {@code ssh://git@host/org/repo} and {@code https://host/org/repo/}
+     * all become {@code host/org/repo}.
+     */
+    static String normalizeRemote(String url) {
+        String normalized = url.trim();
+        int scheme = normalized.indexOf("://");
+        if (scheme >= 0) {
+            normalized = normalized.substring(scheme + 3);
+        } else if (normalized.matches("^[^/]+:.*")) {
+            normalized = normalized.replaceFirst(":", "/");
+        }
+        int at = normalized.indexOf('@');
+        if (at >= 0 && at < normalized.indexOf('/')) {
+            normalized = normalized.substring(at + 1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (normalized.endsWith(".git")) {
+            normalized = normalized.substring(0, normalized.length() - 4);
+        }
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,30 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+/**
+ * BM25 analyzer for source code, used for both indexing and queries.
+ *
+ * <p>{@link org.apache.lucene.analysis.standard.StandardAnalyzer} keeps {@code getUserAccountById}
+ * or {@code fr.baretto.ollamassist} as single tokens, so a query phrased in words ("get user
+ * account") never matches them. Here each identifier is indexed as is and as its parts, see
+ * {@link IdentifierSplitFilter}.
+ */
+public final class CodeAnalyzer extends Analyzer {
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        StandardTokenizer tokenizer = new StandardTokenizer();
+        TokenStream stream = new IdentifierSplitFilter(tokenizer);
+        stream = new LowerCaseFilter(stream);
+        return new TokenStreamComponents(tokenizer, stream);
+    }
+
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new LowerCaseFilter(in);
+    }
+}
@@ -2,6 +2,7 @@ package fr.baretto.ollamassist.chat.rag;
 
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
@@ -12,7 +13,6 @@ import dev.langchain4j.data.segment.TextSegment;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 @Slf4j
@@ -28,11 +28,22 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
     static final String META_FQN = "fqn";
     static final String META_CHUNK_TYPE = "chunk_type";
     static final String META_SOURCE_FILE = "source_file";
+    static final String META_LINE_START = "line_start";
 
     private final Project project;
+    private final EmbeddingTokenizer tokenizer;
 
     public CodeAwareDocumentSplitter(Project project) {
+        this(project, null);
+    }
+
+    /**
+     * @param tokenizer when set, chunks are filled up to the token window of the embedding model
+     *                  instead of {@value #MAX_CHUNK_CHARS} characters
+     */
+    public CodeAwareDocumentSplitter(Project project, EmbeddingTokenizer tokenizer) {
         this.project = project;
+        this.tokenizer = tokenizer;
     }
 
     @Override
@@ -46,17 +57,157 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
 
         String filePath = absoluteDir + "/" + fileName;
 
-        if (fileName.endsWith(".java")) {
+        if (fileName.endsWith(".java") && project != null) {
             return splitJavaFile(filePath, document.text(), document.metadata());
         }
+        if (SourceOutline.supports(fileName)) {
+            return splitSourceFile(filePath, fileName, document.text(), document.metadata());
+        }
 
         return fallbackSplit(document.text(), document.metadata());
     }
 
+    /**
+     * Other languages are cut into declarations from their PSI when the IDE has the language plugin,
+     * else from a {@link SourceOutline}; files without any declaration fall back to line windows.
+     */
+    private List<TextSegment> splitSourceFile(String filePath, String fileName, String rawText, Metadata docMetadata) {
+        if (rawText == null || rawText.isBlank()) {
+            return List.of();
+        }
+        List<TextSegment> chunks = project == null ? List.of() : psiSourceChunks(filePath, fileName, docMetadata);
+        if (!chunks.isEmpty()) {
+            return chunks;
+        }
+        LineIndex lines = LineIndex.of(rawText);
+        List<CodeBlock> blocks = SourceOutline.parse(fileName, lines);
+        if (blocks.isEmpty()) {
+            return fallbackSplit(rawText, docMetadata);
+        }
+        return structuralChunks(lines, blocks, fileName, filePath, docMetadata);
+    }
+
+    /**
+     * Library sources are read from their archive: {@code /path/lib-sources.jar!/org/lib/Foo.java}.
+     */
+    private static VirtualFile findFile(String filePath) {
+        return filePath.contains(JarFileSystem.JAR_SEPARATOR)
+                ? JarFileSystem.getInstance().findFileByPath(filePath)
+                : LocalFileSystem.getInstance().findFileByPath(filePath);
+    }
+
+    private List<TextSegment> psiSourceChunks(String filePath, String fileName, Metadata docMetadata) {
+        try {
+            return ReadAction.compute(() -> {
+                VirtualFile vf = findFile(filePath);
+                PsiFile psiFile = vf == null ? null : PsiManager.getInstance(project).findFile(vf);
+                if (psiFile == null) {
+                    return List.<TextSegment>of();
+                }
+                LineIndex lines = LineIndex.of(psiFile.getViewProvider().getContents());
+                List<CodeBlock> blocks = psiBlocks(psiFile, lines);
+                return blocks.isEmpty()
+                        ? List.<TextSegment>of()
+                        : structuralChunks(lines, blocks, fileName, filePath, docMetadata);
+            });
+        } catch (Throwable e) {
+            log.debug("PSI chunking failed for {}, using the source outline: {}", filePath, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Named PSI elements spanning at least {@value SourceOutline#MIN_BLOCK_LINES} lines: classes,
+     * functions, objects... whatever the language plugin exposes as a {@link PsiNameIdentifierOwner}.
+     * Without the plugin, the file is plain text and has none.
+     */
+    private static List<CodeBlock> psiBlocks(PsiElement element, LineIndex lines) {
+        List<CodeBlock> blocks = new ArrayList<>();
+        for (PsiElement child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            List<CodeBlock> nested = psiBlocks(child, lines);
+            if (child instanceof PsiNameIdentifierOwner owner && owner.getName() != null) {
+                int start = lines.lineOf(child.getTextRange().getStartOffset());
+                int end = lines.lineOf(Math.max(child.getTextRange().getStartOffset(), child.getTextRange().getEndOffset() - 1)) + 1;
+                if (end - start >= SourceOutline.MIN_BLOCK_LINES) {
+                    PsiElement identifier = owner.getNameIdentifier();
+                    int declaration = identifier != null ? lines.lineOf(identifier.getTextRange().getStartOffset()) : start;
+                    blocks.add(new CodeBlock(owner.getName(), !nested.isEmpty(), start, declaration, end, nested));
+                    continue;
+                }
+            }
+            blocks.addAll(nested);
+        }
+        return blocks;
+    }
+
+    /**
+     * One chunk per function, and for each container a summary of its own lines with only the
+     * declaration line of its members, as for Java classes. Lines outside any declaration (imports,
+     * top-level statements) are cut into line windows, as is a function longer than
+     * {@value #MAX_CHUNK_CHARS} characters.
+     */
+    private List<TextSegment> structuralChunks(LineIndex lines, List<CodeBlock> blocks, String fileName,
+                                               String filePath, Metadata docMetadata) {
+        List<TextSegment> chunks = new ArrayList<>();
+        Budget budget = new Budget(lines);
+        String packageName = SourceOutline.packageName(lines);
+        String comment = SourceOutline.commentPrefix(fileName);
+        Metadata otherMetadata = copyMetadata(docMetadata);
+        otherMetadata.put(META_CHUNK_TYPE, CHUNK_TYPE_OTHER);
+
+        int covered = 0;
+        for (CodeBlock block : blocks) {
+            addWindows(chunks, budget, covered, block.startLine(), otherMetadata, null);
+            addBlock(chunks, budget, block, packageName.isEmpty() ? block.name() : packageName + "." + block.name(),
+                    comment, filePath, docMetadata);
+            covered = Math.max(covered, block.endLine());
+        }
+        addWindows(chunks, budget, covered, lines.lineCount(), otherMetadata, null);
+        return chunks;
+    }
+
+    private void addBlock(List<TextSegment> chunks, Budget budget, CodeBlock block, String fqn, String comment,
+                          String filePath, Metadata docMetadata) {
+        LineIndex lines = budget.lines;
+        Metadata metadata = copyMetadata(docMetadata);
+        metadata.put(META_FQN, fqn);
+        metadata.put(META_CHUNK_TYPE, block.container() ? CHUNK_TYPE_CLASS : CHUNK_TYPE_METHOD);
+        metadata.put(META_SOURCE_FILE, filePath);
+        String header = comment + " " + fqn + "\n";
+
+        if (block.children().isEmpty()) {
+            if (budget.size(block.startLine(), block.endLine()) + budget.size(header) <= budget.limit()) {
+                StringBuilder sb = new StringBuilder(header);
+                lines.appendTo(sb, block.startLine(), block.endLine());
+                metadata.put(META_LINE_START, String.valueOf(block.startLine() + 1));
+                chunks.add(TextSegment.from(sb.toString().stripTrailing(), metadata));
+            } else {
+                addWindows(chunks, budget, block.startLine(), block.endLine(), metadata, header);
+            }
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder(header);
+        int line = block.startLine();
+        for (CodeBlock child : block.children()) {
+            lines.appendTo(sb, line, child.startLine());
+            lines.appendTo(sb, child.declarationLine(), child.declarationLine() + 1);
+            line = Math.max(line, child.endLine());
+        }
+        lines.appendTo(sb, line, block.endLine());
+        metadata.put(META_LINE_START, String.valueOf(block.startLine() + 1));
+        chunks.add(TextSegment.from(truncate(sb.toString().stripTrailing()), metadata));
+
+        for (CodeBlock child : block.children()) {
+            String separator = child.container() ? "." : "#";
+            addBlock(chunks, budget, child, fqn + separator + child.name(), comment, filePath, docMetadata);
+        }
+    }
+
     private List<TextSegment> splitJavaFile(String filePath, String rawText, Metadata docMetadata) {
         try {
             return ReadAction.compute(() -> {
-                VirtualFile vf = LocalFileSystem.getInstance().findFileByPath(filePath);
+                VirtualFile vf = findFile(filePath);
                 if (vf == null) {
                     log.debug("VirtualFile not found for {}, using fallback", filePath);
                     return fallbackSplit(rawText, docMetadata);
@@ -76,22 +227,24 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
 
     private List<TextSegment> extractJavaChunks(PsiJavaFile javaFile, String filePath, Metadata docMetadata) {
         List<TextSegment> chunks = new ArrayList<>();
+        LineIndex lines = LineIndex.of(javaFile.getViewProvider().getContents());
 
         for (PsiClass psiClass : javaFile.getClasses()) {
             String fqn = psiClass.getQualifiedName();
             if (fqn == null) continue;
 
-            chunks.add(buildClassChunk(psiClass, fqn, filePath, docMetadata));
+            chunks.add(buildClassChunk(psiClass, fqn, filePath, docMetadata, lines));
 
             for (PsiMethod method : psiClass.getMethods()) {
-                chunks.add(buildMethodChunk(method, fqn, filePath, docMetadata));
+                chunks.add(buildMethodChunk(method, fqn, filePath, docMetadata, lines));
             }
         }
 
         return chunks;
     }
 
-    private TextSegment buildClassChunk(PsiClass psiClass, String fqn, String filePath, Metadata docMetadata) {
+    private TextSegment buildClassChunk(PsiClass psiClass, String fqn, String filePath, Metadata docMetadata,
+                                        LineIndex lines) {
         StringBuilder sb = new StringBuilder();
         sb.append("// ").append(fqn).append("\n");
 
@@ -116,11 +269,13 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
         metadata.put(META_FQN, fqn);
         metadata.put(META_CHUNK_TYPE, CHUNK_TYPE_CLASS);
         metadata.put(META_SOURCE_FILE, filePath);
+        metadata.put(META_LINE_START, String.valueOf(lines.lineOf(psiClass.getTextRange().getStartOffset()) + 1));
 
         return TextSegment.from(truncate(sb.toString()), metadata);
     }
 
-    private TextSegment buildMethodChunk(PsiMethod method, String classFqn, String filePath, Metadata docMetadata) {
+    private TextSegment buildMethodChunk(PsiMethod method, String classFqn, String filePath, Metadata docMetadata,
+                                         LineIndex lines) {
         String fqn = classFqn + "#" + method.getName();
 
         StringBuilder sb = new StringBuilder();
@@ -131,6 +286,7 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
         metadata.put(META_FQN, fqn);
         metadata.put(META_CHUNK_TYPE, CHUNK_TYPE_METHOD);
         metadata.put(META_SOURCE_FILE, filePath);
+        metadata.put(META_LINE_START, String.valueOf(lines.lineOf(method.getTextRange().getStartOffset()) + 1));
 
         return TextSegment.from(truncate(sb.toString()), metadata);
     }
@@ -148,28 +304,46 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
         return text;
     }
 
+    /**
+     * Windows of {@value #FALLBACK_CHUNK_LINES} lines overlapping by {@value #FALLBACK_OVERLAP_LINES},
+     * each taken as a single substring of the text. A window longer than {@value #MAX_CHUNK_CHARS}
+     * characters ends at an earlier line instead of being cut; only a single longer line is truncated.
+     * With a tokenizer, windows hold as many lines as fit in the token window of the embedding model.
+     */
     List<TextSegment> fallbackSplit(String text, Metadata docMetadata) {
         if (text == null || text.isBlank()) {
             return List.of();
         }
 
-        String[] lines = text.split("\n", -1);
+        Metadata metadata = copyMetadata(docMetadata);
+        metadata.put(META_CHUNK_TYPE, CHUNK_TYPE_OTHER);
         List<TextSegment> chunks = new ArrayList<>();
-        int i = 0;
+        addWindows(chunks, new Budget(LineIndex.of(text)), 0, Integer.MAX_VALUE, metadata, null);
+        return chunks;
+    }
 
-        while (i < lines.length) {
-            int end = Math.min(i + FALLBACK_CHUNK_LINES, lines.length);
-            String chunk = String.join("\n", Arrays.copyOfRange(lines, i, end));
+    /**
+     * Adds the windows of lines {@code [from, to)}, skipping blank ones, each prefixed by the header if any.
+     */
+    private void addWindows(List<TextSegment> chunks, Budget budget, int from, int to, Metadata base, String header) {
+        LineIndex lines = budget.lines;
+        int last = Math.min(to, lines.lineCount());
+        int start = from;
+        int reserved = header == null ? 0 : budget.size(header);
+
+        while (start < last) {
+            int end = budget.windowEnd(start, last, reserved);
+            String chunk = lines.text(start, end);
             if (!chunk.isBlank()) {
-                Metadata metadata = copyMetadata(docMetadata);
-                metadata.put(META_CHUNK_TYPE, CHUNK_TYPE_OTHER);
-                metadata.put("line_start", String.valueOf(i + 1));
-                chunks.add(TextSegment.from(truncate(chunk), metadata));
+                Metadata metadata = copyMetadata(base);
+                metadata.put(META_LINE_START, String.valueOf(start + 1));
+                chunks.add(TextSegment.from(truncate(header == null ? chunk : header + chunk), metadata));
             }
-            i += FALLBACK_CHUNK_LINES - FALLBACK_OVERLAP_LINES;
+            if (end == last) {
+                break;
+            }
+            start = end - Math.min(FALLBACK_OVERLAP_LINES, (end - start) / 2);
         }
-
-        return chunks;
     }
 
     private Metadata copyMetadata(Metadata source) {
@@ -181,6 +355,69 @@ public class CodeAwareDocumentSplitter implements DocumentSplitter {
     }
 
     private String truncate(String text) {
+        if (tokenizer != null) {
+            return tokenizer.truncate(text, tokenizer.chunkTokens());
+        }
         return text.length() > MAX_CHUNK_CHARS ? text.substring(0, MAX_CHUNK_CHARS) : text;
     }
+
+    private static int[] prefixSums(int[] counts) {
+        int[] prefix = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            prefix[i + 1] = prefix[i] + counts[i];
+        }
+        return prefix;
+    }
+
+    /**
+     * Size of the lines of one file: characters, or embedding model tokens counted once for the
+     * whole file when the splitter has a tokenizer.
+     */
+    private final class Budget {
+
+        private final LineIndex lines;
+        // Tokens of lines [0, i), null when sizing in characters
+        private final int[] tokenPrefix;
+
+        Budget(LineIndex lines) {
+            this.lines = lines;
+            this.tokenPrefix = tokenizer == null ? null : prefixSums(tokenizer.lineTokens(lines));
+        }
+
+        int limit() {
+            return tokenizer == null ? MAX_CHUNK_CHARS : tokenizer.chunkTokens();
+        }
+
+        /**
+         * @return the size of lines {@code [from, to)}
+         */
+        int size(int from, int to) {
+            return tokenPrefix == null
+                    ? lines.lineEnd(to - 1) - lines.lineStart(from)
+                    : tokenPrefix[to] - tokenPrefix[from];
+        }
+
+        int size(String text) {
+            return tokenizer == null ? text.length() : tokenizer.count(text);
+        }
+
+        /**
+         * @return the end of the longest window from {@code start} within the limit once
+         * {@code reserved} is taken by a header, at least one line
+         */
+        int windowEnd(int start, int last, int reserved) {
+            if (tokenPrefix == null) {
+                int end = Math.min(start + FALLBACK_CHUNK_LINES, last);
+                while (end > start + 1 && size(start, end) + reserved > MAX_CHUNK_CHARS) {
+                    end--;
+                }
+                return end;
+            }
+            int end = start + 1;
+            while (end < last && size(start, end + 1) + reserved <= limit()) {
+                end++;
+            }
+            return end;
+        }
+    }
 }
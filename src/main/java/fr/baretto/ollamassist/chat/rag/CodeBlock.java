@@ -0,0 +1,17 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import java.util.List;
+
+/**
+ * A declaration of a source file as a range of 0-based lines, {@code [startLine, endLine)}. The range
+ * starts at the comments and annotations right above the declaration, {@code declarationLine} is the
+ * line of the declaration itself. Containers (classes, objects, traits...) hold their member
+ * declarations; functions have no children.
+ */
+record CodeBlock(String name, boolean container, int startLine, int declarationLine, int endLine,
+                 List<CodeBlock> children) {
+
+    int lineCount() {
+        return endLine - startLine;
+    }
+}
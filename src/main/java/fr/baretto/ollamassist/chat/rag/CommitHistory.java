@@ -0,0 +1,105 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The commit history index of {@link CommitHistoryIndex}, searched next to the knowledge index by
+ * chat.
+ *
+ * <p>Commits are a separate source with a budget of their own: at most {@value #MAX_RESULTS} commits
+ * and {@value #TOKEN_BUDGET} tokens are added after the code chunks, never in place of them. A commit
+ * is added when its vector is close to the question, or, for questions about the history ("why",
+ * "when was ... changed"), when it matches the question by keyword as well.
+ */
+@Slf4j
+public final class CommitHistory {
+
+    public static final CommitHistory EMPTY = new CommitHistory(null);
+
+    /**
+     * Metadata of commit chunks: the full hash of the commit.
+     */
+    static final String COMMIT_KEY = "commit";
+    static final int MAX_RESULTS = 3;
+    static final int TOKEN_BUDGET = 800;
+    /**
+     * Cosine similarity of 0.6 on the [0, 1] scale of Lucene scores.
+     */
+    static final double MIN_SCORE = 0.8;
+    private static final int CANDIDATES = 10;
+    private static final Pattern HISTORY_QUESTION = Pattern.compile(
+            "\\b(why|when|who|commit\\w*|chang\\w*|introduc\\w*|histor\\w*|regress\\w*|broke|added|removed|renamed|revert\\w*)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final LuceneEmbeddingStore<TextSegment> store;
+
+    CommitHistory(LuceneEmbeddingStore<TextSegment> store) {
+        this.store = store;
+    }
+
+    public boolean isEmpty() {
+        return store == null;
+    }
+
+    static boolean isCommitChunk(Metadata metadata) {
+        return metadata != null && metadata.getString(COMMIT_KEY) != null;
+    }
+
+    static boolean asksAboutHistory(String queryText) {
+        return queryText != null && HISTORY_QUESTION.matcher(queryText).find();
+    }
+
+    /**
+     * @return the commits relevant to the question, best first, within the budget of the source
+     */
+    public List<TextSegment> search(float[] queryVector, String queryText) {
+        if (store == null) {
+            return List.of();
+        }
+        try {
+            List<EmbeddingMatch<TextSegment>> knn = store.knnSearch(queryVector, CANDIDATES).stream()
+                    .filter(match -> match.score() >= MIN_SCORE)
+                    .toList();
+            List<EmbeddingMatch<TextSegment>> bm25 = asksAboutHistory(queryText)
+                    ? store.bm25Search(queryText, CANDIDATES)
+                    : List.of();
+            return withinBudget(RRFFusion.fuse(knn, bm25, CANDIDATES));
+        } catch (RuntimeException e) {
+            log.debug("Commit history search failed: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Keeps the best commits while they fit the budget; a commit too large for what is left is
+     * skipped for a smaller one.
+     */
+    static List<TextSegment> withinBudget(List<EmbeddingMatch<TextSegment>> ranked) {
+        List<TextSegment> kept = new ArrayList<>();
+        int tokens = 0;
+        for (EmbeddingMatch<TextSegment> match : ranked) {
+            if (kept.size() == MAX_RESULTS) {
+                break;
+            }
+            int size = tokens(match.embedded().text());
+            if (tokens + size <= TOKEN_BUDGET) {
+                kept.add(match.embedded());
+                tokens += size;
+            }
+        }
+        return kept;
+    }
+
+    private static int tokens(String text) {
+        return EmbeddingTokenizer.bgeSmall()
+                .map(tokenizer -> tokenizer.count(text))
+                .orElseGet(() -> (int) Math.ceil(text.length() / 4.0));
+    }
+}
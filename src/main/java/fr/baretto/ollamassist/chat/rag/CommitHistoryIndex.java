@@ -0,0 +1,383 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import fr.baretto.ollamassist.git.CommitLog;
+import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.setting.RAGSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+
+/**
+ * Indexes the commit history of the git repositories of a project, so that chat can answer "why was
+ * this changed" questions from commit messages rather than from the current code alone.
+ *
+ * <p>Each commit is one chunk: its message, author, date, touched paths and a summary of its
+ * changed lines, embedded with the model of the project's knowledge index. The index lives next to
+ * the knowledge index, in {@code database/history_index}, and is kept up to date incrementally: a
+ * refresh reads the commits between the last indexed {@code HEAD} of each repository and the
+ * current one. When the history was rewritten, the last {@link RAGSettings#getCommitHistoryMaxCommits()}
+ * commits are read again and those already indexed are skipped.
+ *
+ * <p>The index holds at most {@link RAGSettings#getCommitHistoryMaxCommits()} commits per
+ * repository, none older than {@link RAGSettings#getCommitHistoryMaxAgeDays()} days. History is read
+ * through {@link CommitLog}, available when the Git plugin is installed.
+ */
+@Slf4j
+public final class CommitHistoryIndex implements Disposable {
+
+    static final String HISTORY_INDEX = "history_index";
+    static final long REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final int BATCH_SIZE = 16;
+    static final int MAX_MESSAGE_LENGTH = 1_500;
+    static final int MAX_PATHS = 20;
+    static final String MANIFEST_FILE = "history.properties";
+    private static final String THREAD_NAME = "ollamassist-history-indexing";
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+    private final Project project;
+    private final Path indexPath;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, THREAD_NAME);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long lastRefreshMillis;
+    private volatile LuceneEmbeddingStore<TextSegment> store;
+
+    public CommitHistoryIndex(Project project) {
+        this(project, Paths.get(OLLAMASSIST_DIR, IndexKey.of(project), "database", HISTORY_INDEX));
+    }
+
+    CommitHistoryIndex(Project project, Path indexPath) {
+        this.project = project;
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * @return the index of the project, or null outside a running IDE
+     */
+    public static CommitHistoryIndex getInstance(Project project) {
+        return ApplicationManager.getApplication() == null ? null : project.getService(CommitHistoryIndex.class);
+    }
+
+    private static boolean isEnabled() {
+        return OllamAssistSettings.getInstance().ragEnabled() && RAGSettings.getInstance().isCommitHistoryIndexing();
+    }
+
+    /**
+     * The commit history to search with the live index, empty until indexed with its embedding model.
+     * Refreshes the index in the background when the last refresh is older than
+     * {@value #REFRESH_INTERVAL_MILLIS} ms.
+     */
+    public CommitHistory history() {
+        if (project.isDisposed() || !isEnabled()) {
+            return CommitHistory.EMPTY;
+        }
+        String modelId = project.getService(LuceneEmbeddingStore.class).getSignature().modelId();
+        requestRefresh(modelId);
+        LuceneEmbeddingStore<TextSegment> current = store;
+        return current != null && current.getSignature().modelId().equals(modelId) ? new CommitHistory(current)
+                : CommitHistory.EMPTY;
+    }
+
+    private void requestRefresh(String modelId) {
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshMillis < REFRESH_INTERVAL_MILLIS || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        lastRefreshMillis = now;
+        CommitLog commitLog = project.getService(CommitLog.class);
+        if (commitLog == null) {
+            refreshing.set(false);
+            return;
+        }
+        RAGSettings settings = RAGSettings.getInstance();
+        int maxCommits = settings.getCommitHistoryMaxCommits();
+        Instant notBefore = Instant.ofEpochMilli(now).minus(Duration.ofDays(settings.getCommitHistoryMaxAgeDays()));
+        executor.execute(() -> {
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(CommitHistoryIndex.class.getClassLoader());
+                IndexingCoordinator coordinator = IndexingCoordinator.getInstance();
+                refresh(commitLog, coordinator, coordinator.limit(coordinator.embeddingModel(modelId)), modelId,
+                        maxCommits, notBefore);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Commit history indexing failed: {}", e.getMessage());
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Indexes the commits made since the last refresh, then drops those beyond the bounds.
+     *
+     * @return number of commits indexed
+     */
+    int refresh(CommitLog commitLog, IndexingCoordinator coordinator, EmbeddingModel model, String modelId,
+                int maxCommits, Instant notBefore) throws IOException, VcsException, InterruptedException {
+        LuceneEmbeddingStore<TextSegment> target = store(modelId);
+        Manifest manifest = Manifest.read(indexPath.resolveSibling(MANIFEST_FILE));
+        if (!modelId.equals(manifest.modelId()) || (target.documentCount() == 0 && !manifest.commits().isEmpty())) {
+            target.removeAll();
+            manifest = new Manifest(modelId, new TreeMap<>(), new TreeMap<>());
+        }
+        Map<String, String> heads = commitLog.heads();
+        int indexed = 0;
+        for (Map.Entry<String, String> head : heads.entrySet()) {
+            String root = head.getKey();
+            String since = manifest.heads().get(root);
+            if (head.getValue().equals(since)) {
+                continue;
+            }
+            List<CommitLog.Commit> commits;
+            if (since == null || isInHistory(commitLog, root, since)) {
+                commits = commitLog.read(root, since, maxCommits, notBefore);
+            } else {
+                log.debug("History of {} was rewritten since {}, reading it again", root, since);
+                commits = commitLog.read(root, null, maxCommits, notBefore);
+                dropUnreachable(target, manifest, root, commits);
+            }
+            indexed += index(root, newCommits(root, commits, manifest), target, coordinator, model, manifest);
+            manifest.heads().put(root, head.getValue());
+        }
+        manifest.heads().keySet().retainAll(heads.keySet());
+        prune(target, manifest, heads.keySet(), maxCommits, notBefore);
+        manifest.write(indexPath.resolveSibling(MANIFEST_FILE));
+        if (indexed > 0) {
+            log.info("Indexed {} commits of {}", indexed, project.getName());
+        }
+        return indexed;
+    }
+
+    /**
+     * Whether the head last indexed is still in the history: after an amend, a rebase or a branch
+     * switch, {@code since..HEAD} still reads fine but misses the commits that were left out.
+     */
+    private static boolean isInHistory(CommitLog commitLog, String root, String since) {
+        try {
+            return commitLog.isAncestorOfHead(root, since);
+        } catch (VcsException e) {
+            log.debug("Could not find {} in the history of {}: {}", since, root, e.getMessage());
+            return false;
+        }
+    }
+
+    private static List<CommitLog.Commit> newCommits(String root, List<CommitLog.Commit> commits, Manifest manifest) {
+        return commits.stream()
+                .filter(commit -> !manifest.commits().containsKey(key(root, commit.hash())))
+                .toList();
+    }
+
+    private int index(String root, List<CommitLog.Commit> commits, LuceneEmbeddingStore<TextSegment> target,
+                      IndexingCoordinator coordinator, EmbeddingModel model, Manifest manifest)
+            throws InterruptedException {
+        for (int from = 0; from < commits.size(); from += BATCH_SIZE) {
+            List<CommitLog.Commit> batch = commits.subList(from, Math.min(commits.size(), from + BATCH_SIZE));
+            List<TextSegment> segments = batch.stream().map(commit -> segment(root, commit)).toList();
+            coordinator.runBatch(project, batch.size(), () -> target.addAll(model.embedAll(segments).content(), segments));
+            batch.forEach(commit -> manifest.commits().put(key(root, commit.hash()), commit.timeMillis()));
+        }
+        return commits.size();
+    }
+
+    /**
+     * The chunk of a commit. Its id starts with {@code <root>/<hash>}, so that it can be removed
+     * with an {@link IdStartWithFilter}.
+     */
+    static TextSegment segment(String root, CommitLog.Commit commit) {
+        StringBuilder text = new StringBuilder()
+                .append("Commit ").append(commit.shortHash())
+                .append(" by ").append(commit.author())
+                .append(" on ").append(DATE.format(Instant.ofEpochMilli(commit.timeMillis()))).append('\n')
+                .append(truncate(commit.message().strip(), MAX_MESSAGE_LENGTH)).append('\n');
+        if (!commit.paths().isEmpty()) {
+            text.append("\nChanged files:\n");
+            commit.paths().stream().limit(MAX_PATHS).forEach(path -> text.append(path).append('\n'));
+            if (commit.paths().size() > MAX_PATHS) {
+                text.append("... and ").append(commit.paths().size() - MAX_PATHS).append(" more\n");
+            }
+        }
+        if (!commit.diffSummary().isBlank()) {
+            text.append("\nChanges:\n").append(commit.diffSummary());
+        }
+        Metadata metadata = new Metadata();
+        metadata.put(Document.ABSOLUTE_DIRECTORY_PATH, root);
+        metadata.put(Document.FILE_NAME, commit.hash());
+        metadata.put(CommitHistory.COMMIT_KEY, commit.hash());
+        metadata.put(CodeAwareDocumentSplitter.META_FQN, "commit " + commit.shortHash() + ": " + commit.subject());
+        return TextSegment.from(text.toString(), metadata);
+    }
+
+    private static String truncate(String text, int maxLength) {
+        return text.length() > maxLength ? text.substring(0, maxLength) + "…" : text;
+    }
+
+    /**
+     * Drops the commits of repositories no longer in the project, older than {@code notBefore}, or
+     * beyond the {@code maxCommits} most recent of their repository.
+     */
+    private static void prune(LuceneEmbeddingStore<TextSegment> target, Manifest manifest, Set<String> roots,
+                              int maxCommits, Instant notBefore) {
+        Map<String, List<Map.Entry<String, Long>>> byRoot = new HashMap<>();
+        for (Map.Entry<String, Long> commit : manifest.commits().entrySet()) {
+            String key = commit.getKey();
+            byRoot.computeIfAbsent(key.substring(0, key.lastIndexOf('/')), root -> new ArrayList<>()).add(commit);
+        }
+        List<String> dropped = new ArrayList<>();
+        for (Map.Entry<String, List<Map.Entry<String, Long>>> repository : byRoot.entrySet()) {
+            List<Map.Entry<String, Long>> newestFirst = repository.getValue().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                    .toList();
+            for (int i = 0; i < newestFirst.size(); i++) {
+                Map.Entry<String, Long> commit = newestFirst.get(i);
+                if (!roots.contains(repository.getKey()) || i >= maxCommits
+                        || commit.getValue() < notBefore.toEpochMilli()) {
+                    dropped.add(commit.getKey());
+                }
+            }
+        }
+        for (String key : dropped) {
+            target.removeAll(new IdStartWithFilter(key));
+            manifest.commits().remove(key);
+        }
+    }
+
+    /**
+     * Drops the indexed commits of a repository that a rewrite of its history left out.
+     */
+    private static void dropUnreachable(LuceneEmbeddingStore<TextSegment> target, Manifest manifest, String root,
+                                        List<CommitLog.Commit> commits) {
+        Set<String> reachable = new HashSet<>();
+        commits.forEach(commit -> reachable.add(key(root, commit.hash())));
+        List<String> unreachable = manifest.commits().keySet().stream()
+                .filter(key -> key.startsWith(root + "/") && key.indexOf('/', root.length() + 1) < 0)
+                .filter(key -> !reachable.contains(key))
+                .toList();
+        for (String key : unreachable) {
+            target.removeAll(new IdStartWithFilter(key));
+            manifest.commits().remove(key);
+        }
+    }
+
+    private static String key(String root, String hash) {
+        return root + "/" + hash;
+    }
+
+    /**
+     * @return the number of commits in the index, 0 before the first refresh
+     */
+    int documentCount() {
+        LuceneEmbeddingStore<TextSegment> current = store;
+        return current != null ? current.documentCount() : 0;
+    }
+
+    private synchronized LuceneEmbeddingStore<TextSegment> store(String modelId) throws IOException {
+        LuceneEmbeddingStore<TextSegment> current = store;
+        if (current != null && current.getSignature().modelId().equals(modelId)) {
+            return current;
+        }
+        if (current != null) {
+            current.close();
+        }
+        store = LuceneEmbeddingStore.open(indexPath, new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, modelId, 0));
+        return store;
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+        LuceneEmbeddingStore<TextSegment> current = store;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * What the index holds, stored next to it in {@value #MANIFEST_FILE}.
+     *
+     * @param modelId embedding model of the index
+     * @param heads   last indexed {@code HEAD}, by repository root
+     * @param commits commit time of the indexed commits, by {@code <root>/<hash>}
+     */
+    record Manifest(String modelId, Map<String, String> heads, Map<String, Long> commits) {
+
+        private static final String MODEL = "model";
+        private static final String HEAD = "head.";
+        private static final String COMMIT = "commit.";
+
+        /**
+         * @return the manifest, an empty one when the index was never built or it is unreadable
+         */
+        static Manifest read(Path file) {
+            Manifest manifest = new Manifest(null, new TreeMap<>(), new TreeMap<>());
+            if (!Files.isRegularFile(file)) {
+                return manifest;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+                for (String name : properties.stringPropertyNames()) {
+                    if (name.startsWith(HEAD)) {
+                        manifest.heads().put(name.substring(HEAD.length()), properties.getProperty(name));
+                    } else if (name.startsWith(COMMIT)) {
+                        manifest.commits().put(name.substring(COMMIT.length()), Long.parseLong(properties.getProperty(name)));
+                    }
+                }
+                return new Manifest(properties.getProperty(MODEL), manifest.heads(), manifest.commits());
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read the commit history manifest {}: {}", file, e.getMessage());
+                return new Manifest(null, new TreeMap<>(), new TreeMap<>());
+            }
+        }
+
+        void write(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(MODEL, modelId);
+            heads.forEach((root, head) -> properties.setProperty(HEAD + root, head));
+            commits.forEach((key, time) -> properties.setProperty(COMMIT + key, Long.toString(time)));
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hash of the text a file was indexed from. Every chunk carries the hash of its whole file, so an
+ * unchanged file can be recognised without embedding it again.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ContentHash {
+
+    public static final String METADATA_KEY = "content_hash";
+
+    public static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,4 +1,12 @@
 package fr.baretto.ollamassist.chat.rag;
 
 public class CorruptedIndexException extends RuntimeException {
+
+    public CorruptedIndexException() {
+        super();
+    }
+
+    public CorruptedIndexException(Throwable cause) {
+        super(cause);
+    }
 }
@@ -6,26 +6,44 @@ public class Debouncer<K> {
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final ConcurrentHashMap<K, ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Long> pendingSince = new ConcurrentHashMap<>();
     private final long delay;
+    private final long maxDelay;
     private final TimeUnit unit;
 
     public Debouncer(long delay, TimeUnit unit) {
+        this(delay, 0, unit);
+    }
+
+    /**
+     * @param maxDelay longest a task waits after the first call of a burst, however often it is
+     *                 debounced again; 0 for no limit
+     */
+    public Debouncer(long delay, long maxDelay, TimeUnit unit) {
         this.delay = delay;
+        this.maxDelay = maxDelay;
         this.unit = unit;
     }
 
     public void debounce(K key, Runnable task) {
+        long now = System.nanoTime();
         tasks.compute(key, (k, existingTask) -> {
             if (existingTask != null) {
                 existingTask.cancel(false);
             }
+            long wait = unit.toNanos(delay);
+            if (maxDelay > 0) {
+                long since = pendingSince.computeIfAbsent(key, first -> now);
+                wait = Math.max(0, Math.min(wait, since + unit.toNanos(maxDelay) - now));
+            }
             return scheduler.schedule(() -> {
+                pendingSince.remove(key);
                 try {
                     task.run();
                 } finally {
                     tasks.remove(key);
                 }
-            }, delay, unit);
+            }, wait, TimeUnit.NANOSECONDS);
         });
     }
 
@@ -1,10 +1,13 @@
 package fr.baretto.ollamassist.chat.rag;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.util.Producer;
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,7 +15,9 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.function.IntConsumer;
 
 @Slf4j
@@ -32,20 +37,86 @@ public class DocumentIndexingPipeline implements AutoCloseable {
     private final Map<String, AtomicInteger> fileRetries = new ConcurrentHashMap<>();
     private final LinkedBlockingDeque<String> processingQueue = new LinkedBlockingDeque<>();
     private final Set<String> pendingDocumentIds = ConcurrentHashMap.newKeySet();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, IndexTier> plannedTiers = new ConcurrentHashMap<>();
+    private final Set<String> lazilyEmbedded = ConcurrentHashMap.newKeySet();
     private final ReentrantLock processingLock = new ReentrantLock(true);
     private final Phaser processingPhaser = new Phaser(1);
     private final AtomicInteger totalIndexedDocuments = new AtomicInteger(0);
-    private EmbeddingStoreIngestor ingestor;
+    private final Function<String, EmbeddingModel> embeddingModels;
+    private final IndexingCoordinator coordinator;
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder ingestNanos = new LongAdder();
+    private final LongAdder embedNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder embeddedChunks = new LongAdder();
+    private final LongAdder reusedEmbeddings = new LongAdder();
+    private volatile EmbeddingStoreIngestor ingestor;
     private volatile boolean isRunning = false;
+    private ScheduledFuture<?> backgroundTask;
+
+    /**
+     * Time spent per indexing stage since the pipeline was created. Splitting is what remains of
+     * ingestion once embedding and writing are taken out.
+     *
+     * @param embeddedChunks   chunks sent to the embedding model
+     * @param reusedEmbeddings chunks that got the vector of a near-duplicate instead
+     */
+    public record StageTimes(int documents, long loadNanos, long splitNanos, long embedNanos, long writeNanos,
+                             long embeddedChunks, long reusedEmbeddings) {
+    }
 
     public DocumentIndexingPipeline(Project project) {
-        this.embeddingStore = project.getService(LuceneEmbeddingStore.class);
+        this(project, project.getService(LuceneEmbeddingStore.class), IndexingCoordinator.getInstance()::embeddingModel);
+    }
+
+    /**
+     * Pipeline over a given store and embedding models, for runs outside a project service such as
+     * benchmarks. Batches are run by the {@link IndexingCoordinator}, in turn with other projects.
+     *
+     * @param embeddingModels creates the embedding model for the model id of the index
+     */
+    public DocumentIndexingPipeline(Project project, LuceneEmbeddingStore<TextSegment> embeddingStore,
+                                    Function<String, EmbeddingModel> embeddingModels) {
+        this.embeddingStore = embeddingStore;
         this.project = project;
-        this.ingestor = DocumentIngestFactory.create(embeddingStore, project);
+        this.embeddingModels = embeddingModels;
+        this.coordinator = IndexingCoordinator.getInstance();
+        this.ingestor = newIngestor();
         start();
     }
 
+    /**
+     * Chunks are embedded with the model the live index was built with, which differs from the
+     * configured one while {@link IndexRebuildService} builds the index for a new model. Near-duplicates
+     * of indexed chunks are not embedded at all.
+     */
+    private EmbeddingStoreIngestor newIngestor() {
+        String modelId = embeddingStore.getSignature().modelId();
+        EmbeddingModel timed = new TimedEmbeddingModel(coordinator.limit(embeddingModels.apply(modelId)), embedNanos);
+        return DocumentIngestFactory.create(embeddingStore, project,
+                new NearDuplicateEmbeddingModel(timed, embeddingStore, embeddedChunks, reusedEmbeddings), modelId);
+    }
+
+    public StageTimes stageTimes() {
+        long embed = embedNanos.sum();
+        long write = writeNanos.sum();
+        return new StageTimes(totalIndexedDocuments.get(), loadNanos.sum(),
+                Math.max(0, ingestNanos.sum() - embed - write), embed, write,
+                embeddedChunks.sum(), reusedEmbeddings.sum());
+    }
+
+    /**
+     * Picks up the embedding model of a newly swapped-in index.
+     */
+    public void reloadIngestor() {
+        processingLock.lock();
+        try {
+            ingestor = newIngestor();
+        } finally {
+            processingLock.unlock();
+        }
+    }
+
     public synchronized void flush(Producer<Boolean> shouldContinue, IntConsumer consumer) {
         processingPhaser.register();
         try {
@@ -59,7 +130,7 @@ public class DocumentIndexingPipeline implements AutoCloseable {
                         break;
                     }
                     processingQueue.drainTo(currentBatch, SYNCHRONOUS_BATCH_SIZE);
-                    processDocuments(currentBatch);
+                    coordinator.runBatch(project, currentBatch.size(), () -> processDocuments(currentBatch));
                     consumer.accept(currentBatch.size());
                     currentBatch.clear();
                 }
@@ -70,7 +141,12 @@ public class DocumentIndexingPipeline implements AutoCloseable {
             Thread.currentThread().interrupt();
         } finally {
             processingPhaser.arriveAndDeregister();
-            log.info("Synchronous flush completed");
+            StageTimes times = stageTimes();
+            log.info("Synchronous flush completed ({} documents so far: load {} ms, split {} ms, embed {} ms, write {} ms;"
+                            + " {} chunks embedded, {} near-duplicates reused an embedding)",
+                    times.documents(), times.loadNanos() / 1_000_000, times.splitNanos() / 1_000_000,
+                    times.embedNanos() / 1_000_000, times.writeNanos() / 1_000_000,
+                    times.embeddedChunks(), times.reusedEmbeddings());
         }
     }
 
@@ -91,9 +167,43 @@ public class DocumentIndexingPipeline implements AutoCloseable {
         return added;
     }
 
+    /**
+     * Queues files to be indexed as their tier in the plan says. Files queued without a plan, such
+     * as files just created or edited, are embedded.
+     */
+    public int addAllDocuments(Collection<String> filePaths, IndexPlan plan) {
+        for (String path : filePaths) {
+            plannedTiers.put(path, plan.tierOf(path));
+        }
+        return addAllDocuments(filePaths);
+    }
+
+    /**
+     * Embeds files of the {@link IndexTier#LAZY} tier that a retrieval found by keyword only. They go
+     * ahead of the queue and are picked up by the next background batch.
+     */
+    public void embedLazily(Collection<String> filePaths) {
+        for (String path : filePaths) {
+            if (lazilyEmbedded.add(path)) {
+                log.debug("Embedding {} on demand", path);
+                plannedTiers.put(path, IndexTier.LAZY);
+                if (pendingDocumentIds.add(path)) {
+                    processingQueue.addFirst(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * True when no document is queued or being processed.
+     */
+    public boolean isIdle() {
+        return processingQueue.isEmpty() && !processingLock.isLocked();
+    }
+
     private void start() {
         isRunning = true;
-        scheduler.scheduleWithFixedDelay(this::processBatch, 0, 30, TimeUnit.SECONDS);
+        backgroundTask = coordinator.schedule(project, this::processBatch, 30, TimeUnit.SECONDS);
     }
 
     private void processBatch() {
@@ -107,9 +217,12 @@ public class DocumentIndexingPipeline implements AutoCloseable {
 
             if (!currentBatch.isEmpty()) {
                 log.debug("Processing async batch of {} documents", currentBatch.size());
-                processDocuments(currentBatch);
+                coordinator.runBatch(project, currentBatch.size(), () -> processDocuments(currentBatch));
                 logProgress();
+                recordIncrementalIndex();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.error("Batch processing error", e);
         } finally {
@@ -129,22 +242,95 @@ public class DocumentIndexingPipeline implements AutoCloseable {
 
     private void processSingleDocument(String filePath) {
         try {
-            Document doc = FileSystemDocumentLoader.loadDocument(Path.of(filePath));
-            ingestor.ingest(doc);
-            pendingDocumentIds.remove(filePath);
-            totalIndexedDocuments.incrementAndGet();
-            fileRetries.remove(filePath);
+            IndexTier tier = plannedTiers.getOrDefault(filePath, IndexTier.EMBEDDED);
+            long start = System.nanoTime();
+            Optional<Document> doc = loadDocument(filePath);
+            loadNanos.add(System.nanoTime() - start);
+            if (doc.isPresent()) {
+                doc.get().metadata().put(IndexTier.METADATA_KEY, tier.name());
+                if (tier == IndexTier.EMBEDDED) {
+                    ingest(doc.get());
+                } else if (lazilyEmbedded.contains(filePath)) {
+                    embeddingStore.removeAll(new IdStartWithFilter(filePath));
+                    ingest(doc.get());
+                } else {
+                    indexKeywords(doc.get());
+                }
+                totalIndexedDocuments.incrementAndGet();
+                dropUnsavedBuffer(filePath, doc.get());
+            }
+            forget(filePath);
         } catch (Exception e) {
             throw new ProcessingException(String.format(PROCESSING_ERROR_FORMAT, filePath), e);
         }
     }
 
+    /**
+     * Loads a file for ingestion, tagged with the {@link ContentHash} of its text so that an unchanged
+     * file is never embedded twice (see {@link IndexSeeder}).
+     *
+     * @return the document, or empty when {@link SourceFileLoader} skips the file
+     */
+    static Optional<Document> loadDocument(String filePath) {
+        Optional<Document> doc = SourceFileLoader.load(Path.of(filePath));
+        doc.ifPresent(d -> d.metadata().put(ContentHash.METADATA_KEY, ContentHash.sha256(d.text())));
+        return doc;
+    }
+
+    /**
+     * The unsaved buffer of a file is stale once what it held is indexed from disk.
+     */
+    private void dropUnsavedBuffer(String filePath, Document document) {
+        UnsavedBufferIndex unsavedBuffers = UnsavedBufferIndex.getInstance(project);
+        if (unsavedBuffers != null) {
+            unsavedBuffers.indexed(filePath, document.metadata().getString(ContentHash.METADATA_KEY));
+        }
+    }
+
     public void processSingleDocument(Document document) {
         try {
-            ingestor.ingest(document);
+            ingest(document);
             totalIndexedDocuments.incrementAndGet();
         } catch (Exception e) {
-            handleCorruption();
+            log.warn("Failed to ingest document: {}", e.getMessage());
+            requestRecovery(e);
+        }
+    }
+
+    /**
+     * Chunks of files that are not embedded up front, see {@link IndexTier}.
+     */
+    private void indexKeywords(Document document) {
+        long start = System.nanoTime();
+        long writtenBefore = embeddingStore.addAllNanos();
+        try {
+            CodeAwareDocumentSplitter splitter = new CodeAwareDocumentSplitter(project,
+                    DocumentIngestFactory.chunkTokenizer(embeddingStore.getSignature().modelId()));
+            embeddingStore.addKeywordOnly(splitter.split(document));
+        } finally {
+            writeNanos.add(embeddingStore.addAllNanos() - writtenBefore);
+            ingestNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private void forget(String filePath) {
+        pendingDocumentIds.remove(filePath);
+        fileRetries.remove(filePath);
+        plannedTiers.remove(filePath);
+        lazilyEmbedded.remove(filePath);
+    }
+
+    /**
+     * Write time is read from the store, so a concurrent writer (a seed, a repair) can inflate it.
+     */
+    private void ingest(Document document) {
+        long start = System.nanoTime();
+        long writtenBefore = embeddingStore.addAllNanos();
+        try {
+            ingestor.ingest(document);
+        } finally {
+            writeNanos.add(embeddingStore.addAllNanos() - writtenBefore);
+            ingestNanos.add(System.nanoTime() - start);
         }
     }
 
@@ -156,12 +342,21 @@ public class DocumentIndexingPipeline implements AutoCloseable {
             reQueueDocument(filePath);
         } else {
             log.error(String.format(PERMANENT_FAILURE_FORMAT, MAX_RETRIES, filePath));
-            pendingDocumentIds.remove(filePath);
-            fileRetries.remove(filePath);
+            forget(filePath);
         }
 
-        if (e instanceof CorruptedIndexException) {
-            handleCorruption();
+        requestRecovery(e);
+    }
+
+    /**
+     * Damaged segments are repaired in the background by {@link IndexRecoveryService}; transient
+     * failures are only retried.
+     */
+    private void requestRecovery(Exception e) {
+        IndexFailure failure = IndexFailure.classify(e, embeddingStore.getSignature(),
+                LuceneEmbeddingStore.configuredModelId());
+        if (failure != IndexFailure.TRANSIENT) {
+            project.getService(IndexRecoveryService.class).recover(failure);
         }
     }
 
@@ -170,6 +365,11 @@ public class DocumentIndexingPipeline implements AutoCloseable {
         pendingDocumentIds.add(filePath);
     }
 
+    private void recordIncrementalIndex() {
+        ApplicationManager.getApplication().getService(IndexRegistry.class)
+                .recordIncrementalIndex(IndexKey.of(project), embeddingStore.documentCount());
+    }
+
     private void logProgress() {
         int count = totalIndexedDocuments.get();
         if (count > 0 && count % LOG_INTERVAL == 0) {
@@ -177,32 +377,38 @@ public class DocumentIndexingPipeline implements AutoCloseable {
         }
     }
 
-    public void handleCorruption() {
-        processingLock.lock();
-        try {
-            log.warn("Index corruption detected - Recreating index...");
-            embeddingStore.recreateIndex();
-            ingestor = DocumentIngestFactory.create(embeddingStore, project);
-
-            log.info("Index recreated - Resuming operations");
-        } catch (Exception ex) {
-            log.error("Critical error during index recovery", ex);
-            close();
-        } finally {
-            processingLock.unlock();
-        }
-    }
-
     @Override
     public void close() {
         isRunning = false;
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
+        backgroundTask.cancel(false);
+        coordinator.unregister(project);
+    }
+
+    /**
+     * Measures embedding time inside the ingestor.
+     */
+    private static final class TimedEmbeddingModel implements EmbeddingModel {
+        private final EmbeddingModel delegate;
+        private final LongAdder nanos;
+
+        TimedEmbeddingModel(EmbeddingModel delegate, LongAdder nanos) {
+            this.delegate = delegate;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            long start = System.nanoTime();
+            try {
+                return delegate.embedAll(textSegments);
+            } finally {
+                nanos.add(System.nanoTime() - start);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public int dimension() {
+            return delegate.dimension();
         }
     }
 
@@ -1,5 +1,6 @@
 package fr.baretto.ollamassist.chat.rag;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -9,6 +10,7 @@ import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import fr.baretto.ollamassist.auth.AuthenticationHelper;
 import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.setting.RAGSettings;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -27,27 +29,89 @@ import static fr.baretto.ollamassist.chat.rag.RAGConstants.DEFAULT_EMBEDDING_MOD
 public class DocumentIngestFactory {
 
     private static final String FALLBACK_EMBEDDING_MODEL = "nomic-embed-text";
+    private static final String MODEL_ID_SEPARATOR = "@";
 
     public static EmbeddingStoreIngestor create(EmbeddingStore<TextSegment> store, Project project) {
+        return create(store, project, createEmbeddingModel());
+    }
+
+    public static EmbeddingStoreIngestor create(EmbeddingStore<TextSegment> store, Project project, EmbeddingModel embeddingModel) {
+        return create(store, project, embeddingModel, (EmbeddingTokenizer) null);
+    }
+
+    /**
+     * @param modelId id of the embedding model, see {@link #chunkTokenizer(String)}
+     */
+    public static EmbeddingStoreIngestor create(EmbeddingStore<TextSegment> store, Project project,
+                                                EmbeddingModel embeddingModel, String modelId) {
+        return create(store, project, embeddingModel, chunkTokenizer(modelId));
+    }
+
+    private static EmbeddingStoreIngestor create(EmbeddingStore<TextSegment> store, Project project,
+                                                 EmbeddingModel embeddingModel, EmbeddingTokenizer tokenizer) {
         ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
         Thread.currentThread().setContextClassLoader(DocumentIngestFactory.class.getClassLoader());
         try {
-            EmbeddingModel embeddingModel = createEmbeddingModel();
             return EmbeddingStoreIngestor
                     .builder()
                     .embeddingStore(store)
                     .embeddingModel(embeddingModel)
-                    .documentSplitter(new CodeAwareDocumentSplitter(project))
+                    .documentSplitter(new CodeAwareDocumentSplitter(project, tokenizer))
                     .build();
         } finally {
             Thread.currentThread().setContextClassLoader(originalClassLoader);
         }
     }
 
+    /**
+     * Identifies the configured embedding model: the local model, or an Ollama model name and URL.
+     * Indexes are tagged with it so that vectors from different models are never mixed.
+     */
+    public static String embeddingModelId() {
+        String modelName = OllamAssistSettings.getInstance().getEmbeddingModelName();
+        if (isLocalModel(modelName)) {
+            return DEFAULT_EMBEDDING_MODEL;
+        }
+        return modelName + MODEL_ID_SEPARATOR + OllamAssistSettings.getInstance().getEmbeddingOllamaUrl();
+    }
+
+    /**
+     * The tokenizer chunks are sized with: the one of the local model when token-aware chunking is
+     * enabled, else none and chunks are sized in characters. The tokenizers of Ollama models are
+     * not available to the plugin.
+     */
+    static EmbeddingTokenizer chunkTokenizer(String modelId) {
+        if (modelId == null || !isLocalModel(modelId) || !isTokenAwareChunkingEnabled()) {
+            return null;
+        }
+        return EmbeddingTokenizer.bgeSmall().orElse(null);
+    }
+
+    private static boolean isTokenAwareChunkingEnabled() {
+        var app = ApplicationManager.getApplication();
+        if (app == null) {
+            return false;
+        }
+        RAGSettings settings = app.getService(RAGSettings.class);
+        return settings != null && settings.isTokenAwareChunking();
+    }
+
+    private static boolean isLocalModel(String modelName) {
+        return StringUtils.equalsIgnoreCase(DEFAULT_EMBEDDING_MODEL, modelName)
+                || org.apache.commons.lang3.StringUtils.isBlank(modelName);
+    }
+
     public static EmbeddingModel createEmbeddingModel() {
+        return createEmbeddingModel(embeddingModelId());
+    }
+
+    /**
+     * Creates the model an index was tagged with, which may differ from the configured one while
+     * a rebuild for a new model is in progress.
+     */
+    public static EmbeddingModel createEmbeddingModel(String modelId) {
         EmbeddingModel embeddingModel;
-        if (StringUtils.equalsIgnoreCase(DEFAULT_EMBEDDING_MODEL, OllamAssistSettings.getInstance().getEmbeddingModelName())
-                || org.apache.commons.lang3.StringUtils.isBlank(OllamAssistSettings.getInstance().getEmbeddingModelName())) {
+        if (isLocalModel(modelId)) {
             // Try to use local DJL model first
             try {
                 embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel(createExecutor());
@@ -60,7 +124,10 @@ public class DocumentIngestFactory {
                 embeddingModel = createOllamaEmbeddingModel(FALLBACK_EMBEDDING_MODEL);
             }
         } else {
-            embeddingModel = createOllamaEmbeddingModel(OllamAssistSettings.getInstance().getEmbeddingModelName());
+            int separator = modelId.indexOf(MODEL_ID_SEPARATOR);
+            embeddingModel = separator < 0
+                    ? createOllamaEmbeddingModel(modelId)
+                    : createOllamaEmbeddingModel(modelId.substring(0, separator), modelId.substring(separator + 1));
         }
         return embeddingModel;
     }
@@ -72,8 +139,12 @@ public class DocumentIngestFactory {
      * @return Configured OllamaEmbeddingModel
      */
     private static OllamaEmbeddingModel createOllamaEmbeddingModel(String modelName) {
+        return createOllamaEmbeddingModel(modelName, OllamAssistSettings.getInstance().getEmbeddingOllamaUrl());
+    }
+
+    private static OllamaEmbeddingModel createOllamaEmbeddingModel(String modelName, String baseUrl) {
         OllamaEmbeddingModel.OllamaEmbeddingModelBuilder builder = new OllamaEmbeddingModel.OllamaEmbeddingModelBuilder();
-        builder.baseUrl(OllamAssistSettings.getInstance().getEmbeddingOllamaUrl())
+        builder.baseUrl(baseUrl)
                 .modelName(modelName)
                 .timeout(OllamAssistSettings.getInstance().getTimeoutDuration());
 
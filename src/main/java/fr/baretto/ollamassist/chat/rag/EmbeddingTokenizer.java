@@ -0,0 +1,117 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.huggingface.tokenizers.jni.CharSpan;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Counts text in the tokens of the local embedding model, so chunks are sized against its real
+ * input window rather than a character estimate. Uses the tokenizer definition shipped in the
+ * model jar; when it or the DJL native library cannot be loaded, {@link #bgeSmall()} is empty and
+ * callers keep counting characters.
+ */
+@Slf4j
+public final class EmbeddingTokenizer {
+
+    /**
+     * Input window of BGE small, special tokens included.
+     */
+    public static final int BGE_MAX_TOKENS = 512;
+    private static final String BGE_TOKENIZER = "bge-small-en-v1.5-q-tokenizer.json";
+    // [CLS] and [SEP], added around every input
+    private static final int SPECIAL_TOKENS = 2;
+
+    private final HuggingFaceTokenizer tokenizer;
+    private final int maxTokens;
+
+    EmbeddingTokenizer(HuggingFaceTokenizer tokenizer, int maxTokens) {
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * @return the tokenizer of the bundled BGE small model, loaded once
+     */
+    public static Optional<EmbeddingTokenizer> bgeSmall() {
+        return Optional.ofNullable(BgeHolder.INSTANCE);
+    }
+
+    /**
+     * @return the number of tokens a chunk may hold, special tokens excluded
+     */
+    public int chunkTokens() {
+        return maxTokens - SPECIAL_TOKENS;
+    }
+
+    /**
+     * @return the number of tokens of the text, special tokens excluded
+     */
+    public int count(CharSequence text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        return encode(text).getIds().length;
+    }
+
+    /**
+     * Tokenizes the whole text once and attributes each token to the line it starts on. Word-piece
+     * tokens never span a line break, so the sum over a range of lines is the token count of those lines.
+     */
+    int[] lineTokens(LineIndex lines) {
+        int[] counts = new int[lines.lineCount()];
+        if (lines.content().isEmpty()) {
+            return counts;
+        }
+        for (CharSpan span : encode(lines.content()).getCharTokenSpans()) {
+            if (span != null) {
+                counts[lines.lineOf(span.getStart())]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the text cut right before its first token past {@code tokens}, or the text itself if it fits
+     */
+    String truncate(String text, int tokens) {
+        if (text.isEmpty()) {
+            return text;
+        }
+        CharSpan[] spans = encode(text).getCharTokenSpans();
+        if (spans.length <= tokens) {
+            return text;
+        }
+        CharSpan first = spans[tokens];
+        return first == null ? text : text.substring(0, first.getStart());
+    }
+
+    private Encoding encode(CharSequence text) {
+        return tokenizer.encode(text.toString(), false, false);
+    }
+
+    private static final class BgeHolder {
+
+        private static final EmbeddingTokenizer INSTANCE = load();
+
+        private static EmbeddingTokenizer load() {
+            try (InputStream in = BgeSmallEnV15QuantizedEmbeddingModel.class.getResourceAsStream(BGE_TOKENIZER)) {
+                if (in == null) {
+                    log.warn("Tokenizer {} not found, chunks are sized in characters", BGE_TOKENIZER);
+                    return null;
+                }
+                HuggingFaceTokenizer tokenizer = HuggingFaceTokenizer.newInstance(in,
+                        Map.of("truncation", "false", "padding", "false", "addSpecialTokens", "false"));
+                return new EmbeddingTokenizer(tokenizer, BGE_MAX_TOKENS);
+            } catch (Exception | UnsatisfiedLinkError | ExceptionInInitializerError e) {
+                log.warn("Embedding tokenizer failed to load, chunks are sized in characters: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
 import com.intellij.notification.Notifications;
 import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.vcs.changes.ChangeListManager;
@@ -17,65 +18,117 @@ import org.jetbrains.annotations.NotNull;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Lists the files of the project to index and plans their {@link IndexTier}: every indexable file is
+ * indexed, and the embedding budget decides which ones are embedded up front.
+ */
 @Slf4j
 public class FilesUtil {
 
     private static final String NOTIFICATION_GROUP = "RAG_Indexation";
-    private static final String LIMIT_REACHED_TITLE = "Limit reached";
-    private static final String LIMIT_REACHED_MESSAGE_FORMAT = "Maximum indexable files limit (%d) exceeded. Editing or creating files will trigger their indexing.";
+    private static final String BUDGET_REACHED_TITLE = "Embedding budget reached";
+    private static final String BUDGET_REACHED_MESSAGE_FORMAT = "%d source files are beyond the embedding budget (%d chunks). "
+            + "They are searched by keyword and embedded the first time a question needs them.";
 
     private final Project project;
     private final ProjectFileIndex fileIndex;
     private final ShouldBeIndexed shouldBeIndexed;
     @Getter
-    private final int maxFiles;
+    private final int embeddingBudget;
+    // Once per session: rebuilds and repairs plan the tiers again
+    private volatile boolean budgetNotified;
 
     public FilesUtil(Project project) {
-        this(project, ProjectFileIndex.getInstance(project), new ShouldBeIndexed(), OllamAssistSettings.getInstance().getIndexationSize());
+        this(project, ProjectFileIndex.getInstance(project), new ShouldBeIndexed(), OllamAssistSettings.getInstance().getEmbeddingBudget());
     }
 
-    public FilesUtil(Project project, ProjectFileIndex fileIndex, ShouldBeIndexed shouldBeIndexed, int maxFiles) {
+    /**
+     * @param embeddingBudget chunks embedded up front, see {@link IndexPlan}
+     */
+    public FilesUtil(Project project, ProjectFileIndex fileIndex, ShouldBeIndexed shouldBeIndexed, int embeddingBudget) {
         this.project = project;
         this.fileIndex = fileIndex;
         this.shouldBeIndexed = shouldBeIndexed;
-        this.maxFiles = maxFiles;
+        this.embeddingBudget = embeddingBudget;
     }
 
-    public List<String> collectFilePaths() {
-        return ReadAction.nonBlocking(this::collectFilePathsInternal).executeSynchronously();
+    /**
+     * Plans the tier of every indexable file: files in source roots and recently touched files are
+     * embedded, most recently touched first, until the embedding budget is spent; the remaining
+     * source files are embedded lazily and the other files are indexed for keyword search only.
+     * Unloaded modules have no source roots, so only the modules open in the project count.
+     */
+    public IndexPlan planTiers() {
+        IndexPlan plan = ReadAction.nonBlocking(this::planTiersInternal).executeSynchronously();
+        if (plan.exceedsBudget() && !budgetNotified) {
+            budgetNotified = true;
+            notifyBudgetReached(plan);
+        }
+        log.info("Index plan: {} files embedded (~{} of {} chunks), {} keyword only, {} embedded on demand",
+                plan.filesIn(IndexTier.EMBEDDED).size(), plan.estimatedEmbeddings(), plan.embeddingBudget(),
+                plan.filesIn(IndexTier.KEYWORD).size(), plan.filesIn(IndexTier.LAZY).size());
+        return plan;
     }
 
-    List<String> collectFilePathsInternal() {
-        VirtualFile baseDir = project.getBaseDir();
-        AtomicInteger count = new AtomicInteger(0);
-        List<String> sourceFiles = new ArrayList<>(getMaxFiles());
-        List<String> otherFiles = new ArrayList<>(getMaxFiles());
+    IndexPlan planTiersInternal() {
+        Set<String> touched = recentlyTouchedFiles();
+        Map<String, Long> touchedFiles = new LinkedHashMap<>();
+        Map<String, Long> sourceFiles = new LinkedHashMap<>();
+        List<String> otherFiles = new ArrayList<>();
+        visitIndexableFiles(file -> {
+            if (touched.contains(file.getPath())) {
+                touchedFiles.put(file.getPath(), file.getLength());
+            } else if (fileIndex.isInSource(file)) {
+                sourceFiles.put(file.getPath(), file.getLength());
+            } else {
+                otherFiles.add(file.getPath());
+            }
+        });
+        Map<String, Long> candidates = new LinkedHashMap<>(touchedFiles);
+        candidates.putAll(sourceFiles);
+        return IndexPlan.allocate(candidates, otherFiles, embeddingBudget);
+    }
+
+    /**
+     * Files open in an editor and files with local changes.
+     */
+    private Set<String> recentlyTouchedFiles() {
+        Set<String> touched = new HashSet<>();
+        try {
+            for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+                touched.add(file.getPath());
+            }
+            for (VirtualFile file : ChangeListManager.getInstance(project).getAffectedFiles()) {
+                touched.add(file.getPath());
+            }
+        } catch (Exception e) {
+            log.debug("Could not list recently touched files: {}", e.getMessage());
+        }
+        return touched;
+    }
 
-        VfsUtilCore.visitChildrenRecursively(baseDir, new VirtualFileVisitor<>() {
+    private void visitIndexableFiles(Consumer<VirtualFile> consumer) {
+        VfsUtilCore.visitChildrenRecursively(project.getBaseDir(), new VirtualFileVisitor<>() {
             @Override
             public boolean visitFile(@NotNull VirtualFile file) {
-                if (count.get() >= getMaxFiles()) {
-                    return false;
-                }
-
                 if (shouldSkipFile(file)) {
                     return false;
                 }
 
                 if (shouldProcessFile(file)) {
-                    addFileToProperList(file, sourceFiles, otherFiles, count);
+                    consumer.accept(file);
                 }
 
                 return true;
             }
         });
-
-        return mergeAndLimitResults(sourceFiles, otherFiles);
-
     }
 
     boolean shouldSkipFile(VirtualFile file) {
@@ -87,42 +140,14 @@ public class FilesUtil {
                 (fileIndex.isInSource(file) || shouldBeIndexed(file));
     }
 
-    void addFileToProperList(VirtualFile file,
-                             List<String> sources,
-                             List<String> others,
-                             AtomicInteger counter) {
-        if (fileIndex.isInSource(file)) {
-            if (sources.size() < getMaxFiles()) {
-                sources.add(file.getPath());
-                counter.incrementAndGet();
-            }
-        } else {
-            if (counter.get() < getMaxFiles()) {
-                others.add(file.getPath());
-                counter.incrementAndGet();
-            }
-        }
-    }
-
-    private List<String> mergeAndLimitResults(List<String> sources, List<String> others) {
-        List<String> result = Stream.concat(sources.stream(), others.stream())
-                .limit(getMaxFiles())
-                .toList();
-
-        if (result.size() >= getMaxFiles()) {
-            notifyLimitReached();
-        }
-
-        return result;
-    }
-
-    private void notifyLimitReached() {
+    private void notifyBudgetReached(IndexPlan plan) {
         project.getMessageBus().syncPublisher(Notifications.TOPIC)
                 .notify(new Notification(
                         NOTIFICATION_GROUP,
-                        LIMIT_REACHED_TITLE,
-                        String.format(LIMIT_REACHED_MESSAGE_FORMAT, getMaxFiles()),
-                        NotificationType.WARNING
+                        BUDGET_REACHED_TITLE,
+                        String.format(BUDGET_REACHED_MESSAGE_FORMAT, plan.filesIn(IndexTier.LAZY).size(),
+                                plan.embeddingBudget()),
+                        NotificationType.INFORMATION
                 ));
     }
 
@@ -5,7 +5,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
 
 /**
  * A filter to match documents with a specific ID.
@@ -14,15 +14,31 @@ import org.apache.lucene.search.TermQuery;
 @Getter
 public class IdStartWithFilter implements Filter {
 
+    private static final String UUID_PATTERN = "?".repeat(36);
+
     private final String id;
 
     /**
      * Converts this filter into a Lucene query.
      *
-     * @return A Lucene {@link TermQuery} targeting the "id" field.
+     * <p>Chunk ids are the file path followed by a 36-character UUID, so the query matches the path
+     * followed by exactly 36 characters: the chunks of {@code Foo.js} but not those of {@code Foo.json}.
+     *
+     * @return A Lucene {@link WildcardQuery} targeting the "id" field.
      */
     public Query toLuceneQuery() {
-        return new TermQuery(new Term("id", id));
+        return new WildcardQuery(new Term("id", escapeWildcards(id) + UUID_PATTERN));
+    }
+
+    private static String escapeWildcards(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR || c == WildcardQuery.WILDCARD_ESCAPE) {
+                escaped.append(WildcardQuery.WILDCARD_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
     }
 
     @Override
@@ -0,0 +1,106 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Emits each identifier followed by its parts: {@code getUserAccountById} gives
+ * {@code getUserAccountById get User Account By Id}, {@code MAX_RETRIES} gives
+ * {@code MAX_RETRIES MAX RETRIES} and {@code fr.baretto.rag} gives {@code fr.baretto.rag fr baretto rag}.
+ *
+ * <p>Splits on camelCase humps, acronym ends ({@code HTTPServer}), letter/digit transitions and
+ * any character that is neither a letter nor a digit. The first part shares the position of the
+ * identifier, the next ones follow it, so phrase queries on either form still work. Case is left
+ * to a following {@link org.apache.lucene.analysis.LowerCaseFilter}.
+ */
+public final class IdentifierSplitFilter extends TokenFilter {
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+    private final Deque<String> pendingParts = new ArrayDeque<>();
+    private State identifierState;
+    private boolean firstPart;
+
+    public IdentifierSplitFilter(TokenStream input) {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!pendingParts.isEmpty()) {
+            restoreState(identifierState);
+            termAttribute.setEmpty().append(pendingParts.poll());
+            positionAttribute.setPositionIncrement(firstPart ? 0 : 1);
+            firstPart = false;
+            return true;
+        }
+        if (!input.incrementToken()) {
+            return false;
+        }
+        List<String> parts = split(termAttribute);
+        if (parts.size() > 1) {
+            pendingParts.addAll(parts);
+            identifierState = captureState();
+            firstPart = true;
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        pendingParts.clear();
+        identifierState = null;
+    }
+
+    static List<String> split(CharSequence term) {
+        List<String> parts = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                addPart(parts, term, start, i);
+                start = -1;
+                continue;
+            }
+            if (start >= 0 && isBoundary(term, i)) {
+                addPart(parts, term, start, i);
+                start = i;
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        addPart(parts, term, start, term.length());
+        return parts;
+    }
+
+    private static boolean isBoundary(CharSequence term, int i) {
+        char previous = term.charAt(i - 1);
+        char current = term.charAt(i);
+        if (!Character.isLetterOrDigit(previous)) {
+            return false;
+        }
+        if (Character.isDigit(previous) != Character.isDigit(current)) {
+            return true;
+        }
+        if (Character.isLowerCase(previous) && Character.isUpperCase(current)) {
+            return true;
+        }
+        return Character.isUpperCase(previous) && Character.isUpperCase(current)
+                && i + 1 < term.length() && Character.isLowerCase(term.charAt(i + 1));
+    }
+
+    private static void addPart(List<String> parts, CharSequence term, int start, int end) {
+        if (start >= 0 && end > start) {
+            parts.add(term.subSequence(start, end).toString());
+        }
+    }
+}
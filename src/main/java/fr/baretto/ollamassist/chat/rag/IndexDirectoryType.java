@@ -0,0 +1,56 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.LockFactory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Constants;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Lucene {@link Directory} implementation backing the knowledge index.
+ *
+ * <ul>
+ *     <li>{@link #AUTO} — {@link #MMAP} on 64-bit Linux when unmapping is supported, {@link #NIO} elsewhere.</li>
+ *     <li>{@link #MMAP} — memory-mapped files: searches read the page cache directly, no syscall per read.</li>
+ *     <li>{@link #NIO} — positional reads through a {@code FileChannel}; the historical behaviour.</li>
+ * </ul>
+ */
+public enum IndexDirectoryType {
+    AUTO,
+    MMAP,
+    NIO;
+
+    /**
+     * Parses a persisted value. Unknown, null or blank values resolve to {@link #AUTO}.
+     */
+    public static IndexDirectoryType fromString(String value) {
+        if (value == null || value.isBlank()) {
+            return AUTO;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return AUTO;
+        }
+    }
+
+    /**
+     * Returns the concrete implementation this value stands for on the running platform.
+     */
+    public IndexDirectoryType resolve() {
+        if (this != AUTO) {
+            return this;
+        }
+        return Constants.LINUX && Constants.JRE_IS_64BIT && MMapDirectory.UNMAP_SUPPORTED ? MMAP : NIO;
+    }
+
+    public Directory open(Path path, LockFactory lockFactory) throws IOException {
+        return resolve() == MMAP
+                ? new MMapDirectory(path, lockFactory)
+                : new NIOFSDirectory(path, lockFactory);
+    }
+}
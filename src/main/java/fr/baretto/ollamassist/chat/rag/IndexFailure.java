@@ -0,0 +1,91 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexFormatTooNewException;
+import org.apache.lucene.index.IndexFormatTooOldException;
+
+import java.io.EOFException;
+import java.util.Locale;
+
+/**
+ * What an index read or write failure calls for.
+ *
+ * <ul>
+ *     <li>{@link #TRANSIENT} — nothing wrong with the files (closed reader, IO hiccup, bad input): retry.</li>
+ *     <li>{@link #CORRUPTED} — checksum, truncation or format error: check the index and drop damaged segments.</li>
+ *     <li>{@link #INCOMPATIBLE} — the index holds vectors of another dimension than its own model
+ *     produces: the index must be rebuilt.</li>
+ * </ul>
+ *
+ * <p>A vector dimension mismatch alone does not tell which side is wrong. It calls for a rebuild
+ * only when the index was built with the configured model, see
+ * {@link #classify(Throwable, IndexSignature, String)}; otherwise the vector that was written or
+ * searched for is the stale one, such as a query embedded while the model was being switched.
+ */
+public enum IndexFailure {
+    TRANSIENT,
+    CORRUPTED,
+    INCOMPATIBLE;
+
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    /**
+     * Walks the cause chain looking for a Lucene corruption. A vector dimension mismatch is
+     * {@link #TRANSIENT}: nothing says the index is the wrong side.
+     */
+    public static IndexFailure classify(Throwable error) {
+        return classify(error, false);
+    }
+
+    /**
+     * Like {@link #classify(Throwable)}, but a vector dimension mismatch is {@link #INCOMPATIBLE}
+     * when the index was built with the configured model: vectors of that model do not fit the
+     * index. An index of another model is rebuilt for the configured one by
+     * {@link IndexRebuildService}, and emptying it would only lose what it still answers.
+     *
+     * @param index             signature of the index that failed
+     * @param configuredModelId see {@link DocumentIngestFactory#embeddingModelId()}
+     */
+    public static IndexFailure classify(Throwable error, IndexSignature index, String configuredModelId) {
+        return classify(error, index != null && index.modelId() != null && index.modelId().equals(configuredModelId));
+    }
+
+    /**
+     * @return whether a vector dimension mismatch is in the cause chain
+     */
+    public static boolean isDimensionMismatch(Throwable error) {
+        Throwable current = error;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (current instanceof IllegalArgumentException && isDimensionMismatch(current.getMessage())) {
+                return true;
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return false;
+    }
+
+    private static IndexFailure classify(Throwable error, boolean indexOfConfiguredModel) {
+        boolean flagged = false;
+        Throwable current = error;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (current instanceof CorruptIndexException
+                    || current instanceof IndexFormatTooOldException
+                    || current instanceof IndexFormatTooNewException
+                    || current instanceof EOFException) {
+                return CORRUPTED;
+            }
+            if (current instanceof IllegalArgumentException && isDimensionMismatch(current.getMessage())) {
+                return indexOfConfiguredModel ? INCOMPATIBLE : TRANSIENT;
+            }
+            if (current instanceof CorruptedIndexException) {
+                flagged = true;
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return flagged ? CORRUPTED : TRANSIENT;
+    }
+
+    private static boolean isDimensionMismatch(String message) {
+        return message != null && message.toLowerCase(Locale.ROOT).contains("dimension");
+    }
+}
@@ -0,0 +1,57 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the knowledge index layout, as reported by {@link LuceneEmbeddingStore#health()}.
+ *
+ * @param segmentCount number of Lucene segments (each one has its own HNSW graph)
+ * @param liveDocs     chunks visible to searches
+ * @param deletedDocs  chunks deleted but still occupying space until their segment is merged
+ * @param vectors      vectors stored on disk, deleted ones included
+ * @param sizeOnDisk   total size of the index files, in bytes
+ * @param nearDuplicates chunks that reuse the embedding of a near-duplicate instead of their own
+ * @param tierChunks     chunks per {@link IndexTier} of their file
+ * @param keywordOnly    chunks stored without a vector
+ */
+public record IndexHealth(int segmentCount, int liveDocs, int deletedDocs, long vectors, long sizeOnDisk,
+                          int nearDuplicates, Map<IndexTier, Integer> tierChunks, int keywordOnly) {
+
+    public static final IndexHealth EMPTY = new IndexHealth(0, 0, 0, 0, 0, 0, Map.of(), 0);
+
+    static final double MAX_DELETED_RATIO = 0.10;
+    static final int MAX_SEGMENTS = 20;
+
+    public double deletedRatio() {
+        int total = liveDocs + deletedDocs;
+        return total == 0 ? 0 : (double) deletedDocs / total;
+    }
+
+    /**
+     * Whether merging segments and expunging deletes is worth the IO.
+     */
+    public boolean needsMaintenance() {
+        return deletedRatio() > MAX_DELETED_RATIO || segmentCount > MAX_SEGMENTS;
+    }
+
+    private static final String SUMMARY_FORMAT =
+            "%d segments, %d chunks (%d near-duplicates not embedded), %.1f%% deleted, %d vectors, %.1f MB on disk";
+
+    private static final String TIERS_FORMAT = "; tiers: %d chunks embedded, %d keyword only, %d on demand (%d embedded so far)";
+
+    public String summary() {
+        return String.format(SUMMARY_FORMAT, segmentCount, liveDocs, nearDuplicates, deletedRatio() * 100, vectors,
+                sizeOnDisk / (1024.0 * 1024.0)) + tiersSummary();
+    }
+
+    private String tiersSummary() {
+        if (tierChunks.isEmpty()) {
+            return "";
+        }
+        int lazy = tierChunks.getOrDefault(IndexTier.LAZY, 0);
+        int keyword = tierChunks.getOrDefault(IndexTier.KEYWORD, 0);
+        // Keyword-only chunks are those of the keyword tier and the lazy ones not embedded yet
+        int lazyEmbedded = Math.max(0, lazy - (keywordOnly - keyword));
+        return String.format(TIERS_FORMAT, tierChunks.getOrDefault(IndexTier.EMBEDDED, 0), keyword, lazy, lazyEmbedded);
+    }
+}
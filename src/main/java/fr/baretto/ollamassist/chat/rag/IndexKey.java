@@ -0,0 +1,63 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+
+/**
+ * Names the index of a project: its directory under {@code ~/.ollamassist} and its id in the
+ * {@link IndexRegistry}. The project name alone is ambiguous (two worktrees of a repository, or two
+ * unrelated repositories, often share it), so a short hash of the project path is appended.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class IndexKey {
+
+    private static final String SEPARATOR = "-";
+    private static final int PATH_HASH_LENGTH = 8;
+
+    public static String of(Project project) {
+        String basePath = project.getBasePath();
+        if (basePath == null) {
+            return project.getName();
+        }
+        String normalized = Paths.get(basePath).toAbsolutePath().normalize().toString().replace('\\', '/');
+        return project.getName() + SEPARATOR + ContentHash.sha256(normalized).substring(0, PATH_HASH_LENGTH);
+    }
+
+    /**
+     * Indexes used to be stored under the bare project name. The first checkout opened after the
+     * upgrade adopts such an index, which keeps its registry entry and statistics; any other
+     * checkout of the same repository then seeds from it (see {@link IndexSeeder}).
+     */
+    static void migrateLegacyIndex(Project project) {
+        String key = of(project);
+        Path legacy = Paths.get(OLLAMASSIST_DIR, project.getName());
+        Path current = Paths.get(OLLAMASSIST_DIR, key);
+        if (key.equals(project.getName()) || !Files.isDirectory(legacy.resolve("database")) || Files.exists(current)) {
+            return;
+        }
+        try {
+            Files.move(legacy, current, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Moved the index of {} to {}", project.getName(), current);
+        } catch (IOException e) {
+            log.warn("Could not move the legacy index of {}: {}", project.getName(), e.getMessage());
+            return;
+        }
+        var app = ApplicationManager.getApplication();
+        IndexRegistry registry = app == null ? null : app.getService(IndexRegistry.class);
+        if (registry != null) {
+            registry.renameProject(project.getName(), key);
+        }
+    }
+}
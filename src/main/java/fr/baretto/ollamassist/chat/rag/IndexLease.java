@@ -0,0 +1,156 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An operating system lock on {@value #LOCK_FILE} in the directory of a project index, which tells
+ * every IDE sharing {@code ~/.ollamassist} whether the index is in use.
+ *
+ * <p>Each IDE that opens the index holds a shared lease for as long as it is open. Deleting the
+ * index takes an exclusive lease, which is refused while any process, this one included, holds a
+ * shared one. The lock file lives next to the {@code database} directory, so that deleting the
+ * index never deletes a lock held by someone else.
+ *
+ * <p>Within this process a lock file is opened at most once: on some systems closing any channel
+ * on a file releases every lock the process holds on it. Leases on the same index are counted.
+ */
+@Slf4j
+final class IndexLease implements Closeable {
+
+    static final String LOCK_FILE = "in_use.lock";
+
+    /**
+     * Leases held by this process, by index directory.
+     */
+    private static final Map<Path, IndexLease> HELD = new HashMap<>();
+
+    private final Path key;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private int holders = 1;
+
+    private IndexLease(Path key, FileChannel channel, FileLock lock) {
+        this.key = key;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Marks the index as in use, waiting while another IDE is deleting it. Never fails: without a
+     * lease the index only loses its protection against eviction by other IDEs.
+     */
+    static IndexLease acquireShared(Path projectDir) {
+        Path key = keyOf(projectDir);
+        synchronized (HELD) {
+            IndexLease held = HELD.get(key);
+            if (held != null) {
+                if (held.lock == null || !held.lock.isShared()) {
+                    // Being deleted by this process
+                    return new IndexLease(null, null, null);
+                }
+                held.holders++;
+                return held;
+            }
+            FileChannel channel = null;
+            try {
+                channel = open(key);
+                IndexLease lease = new IndexLease(key, channel, channel.lock(0, Long.MAX_VALUE, true));
+                HELD.put(key, lease);
+                return lease;
+            } catch (IOException | OverlappingFileLockException e) {
+                log.debug("No in-use lease on {}: {}", projectDir, e.getMessage());
+                closeQuietly(channel);
+                return new IndexLease(null, null, null);
+            }
+        }
+    }
+
+    /**
+     * @return a lease to delete the index under, empty while any process holds it open
+     */
+    static Optional<IndexLease> acquireExclusive(Path projectDir) {
+        Path key = keyOf(projectDir);
+        synchronized (HELD) {
+            if (HELD.containsKey(key)) {
+                return Optional.empty();
+            }
+            FileChannel channel = null;
+            try {
+                channel = open(key);
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    IndexLease lease = new IndexLease(key, channel, lock);
+                    HELD.put(key, lease);
+                    return Optional.of(lease);
+                }
+            } catch (IOException | OverlappingFileLockException e) {
+                log.debug("No exclusive lease on {}: {}", projectDir, e.getMessage());
+            }
+            closeQuietly(channel);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return whether a process, this one included, holds the index open
+     */
+    static boolean isInUse(Path projectDir) {
+        if (!Files.exists(projectDir.resolve(LOCK_FILE))) {
+            return false;
+        }
+        Optional<IndexLease> lease = acquireExclusive(projectDir);
+        lease.ifPresent(IndexLease::close);
+        return lease.isEmpty();
+    }
+
+    private static Path keyOf(Path projectDir) {
+        return projectDir.toAbsolutePath().normalize();
+    }
+
+    private static FileChannel open(Path projectDir) throws IOException {
+        Files.createDirectories(projectDir);
+        return FileChannel.open(projectDir.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (key == null) {
+            return;
+        }
+        synchronized (HELD) {
+            if (holders == 0 || --holders > 0) {
+                return;
+            }
+            HELD.remove(key);
+            try {
+                lock.release();
+            } catch (IOException e) {
+                log.debug("Could not release the in-use lease: {}", e.getMessage());
+            }
+            closeQuietly(channel);
+        }
+    }
+}
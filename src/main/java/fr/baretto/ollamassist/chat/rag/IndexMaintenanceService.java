@@ -0,0 +1,97 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the knowledge index compact while the user is not indexing anything.
+ *
+ * <p>Every few minutes, if the store has not been written to for a while and the indexing
+ * pipeline is idle, the index health is sampled. When too many chunks are deleted or the
+ * segment count grows too large, deletes are expunged and small segments merged.
+ *
+ * <p>The budget is enforced at three levels: the check runs on a single minimum-priority thread,
+ * Lucene merges on a single merge thread, and forced merges are throttled to
+ * {@link #MAINTENANCE_MB_PER_SEC}.
+ */
+@Slf4j
+public class IndexMaintenanceService implements Disposable {
+
+    private static final long CHECK_PERIOD_MINUTES = 5;
+    private static final long IDLE_THRESHOLD_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final double MAINTENANCE_MB_PER_SEC = 10;
+    private static final String THREAD_NAME = "ollamassist-index-maintenance";
+
+    private final Project project;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, THREAD_NAME);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    @Getter
+    private volatile IndexHealth lastHealth = IndexHealth.EMPTY;
+
+    public IndexMaintenanceService(Project project) {
+        this.project = project;
+    }
+
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay(this::maintainIfIdle, CHECK_PERIOD_MINUTES, CHECK_PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    private void maintainIfIdle() {
+        if (project.isDisposed()) {
+            return;
+        }
+        try {
+            LuceneEmbeddingStore<?> store = project.getService(LuceneEmbeddingStore.class);
+            DocumentIndexingPipeline pipeline = project.getService(DocumentIndexingPipeline.class);
+            IndexRegistry registry = ApplicationManager.getApplication().getService(IndexRegistry.class);
+
+            if (store.millisSinceLastWrite() < IDLE_THRESHOLD_MILLIS
+                    || !pipeline.isIdle()
+                    || registry.indexationIsProcessing(IndexKey.of(project))) {
+                return;
+            }
+
+            IndexHealth health = store.health();
+            lastHealth = health;
+            if (health.needsMaintenance()) {
+                log.info("Index maintenance starting: {}", health.summary());
+                if (store.maintain(MAINTENANCE_MB_PER_SEC)) {
+                    lastHealth = store.health();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Index maintenance check failed", e);
+        }
+    }
+
+    /**
+     * Expunges deletes and merges segments immediately, whether or not the index is idle.
+     * Blocking: call it from a background thread.
+     */
+    public IndexHealth maintainNow() {
+        LuceneEmbeddingStore<?> store = project.getService(LuceneEmbeddingStore.class);
+        store.maintain(MAINTENANCE_MB_PER_SEC);
+        lastHealth = store.health();
+        return lastHealth;
+    }
+
+    @Override
+    public void dispose() {
+        scheduler.shutdownNow();
+    }
+}
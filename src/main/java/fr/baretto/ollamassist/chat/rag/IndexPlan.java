@@ -0,0 +1,77 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link IndexTier} of every file to index, as planned by {@link FilesUtil#planTiers()}.
+ *
+ * <p>The budget is a number of embeddings, one per chunk. Files are planned before they are split,
+ * so their chunks are estimated from their size at {@value #ESTIMATED_CHUNK_BYTES} bytes per chunk.
+ *
+ * @param tiers               files in indexing order: embedded ones first, then keyword-only ones
+ * @param embeddingBudget     embeddings allowed for the files indexed up front
+ * @param estimatedEmbeddings embeddings the {@link IndexTier#EMBEDDED} files are expected to take
+ */
+public record IndexPlan(Map<String, IndexTier> tiers, int embeddingBudget, long estimatedEmbeddings) {
+
+    static final int ESTIMATED_CHUNK_BYTES = 1500;
+
+    /**
+     * Embeds the candidates in order as long as they fit in the budget; those that do not fit go to
+     * the {@link IndexTier#LAZY} tier, so a large file does not keep smaller ones after it out.
+     *
+     * @param candidates  candidates to embed with their size in bytes, most wanted first
+     * @param keywordOnly files indexed for keyword search only
+     */
+    public static IndexPlan allocate(Map<String, Long> candidates, Collection<String> keywordOnly, int embeddingBudget) {
+        List<String> embedded = new ArrayList<>();
+        List<String> lazy = new ArrayList<>();
+        long used = 0;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            long chunks = estimatedChunks(candidate.getValue());
+            if (used + chunks <= embeddingBudget) {
+                embedded.add(candidate.getKey());
+                used += chunks;
+            } else {
+                lazy.add(candidate.getKey());
+            }
+        }
+        Map<String, IndexTier> tiers = new LinkedHashMap<>();
+        embedded.forEach(path -> tiers.put(path, IndexTier.EMBEDDED));
+        keywordOnly.forEach(path -> tiers.putIfAbsent(path, IndexTier.KEYWORD));
+        lazy.forEach(path -> tiers.put(path, IndexTier.LAZY));
+        return new IndexPlan(Collections.unmodifiableMap(tiers), embeddingBudget, used);
+    }
+
+    static long estimatedChunks(long bytes) {
+        return Math.max(1, (bytes + ESTIMATED_CHUNK_BYTES - 1) / ESTIMATED_CHUNK_BYTES);
+    }
+
+    public List<String> paths() {
+        return List.copyOf(tiers.keySet());
+    }
+
+    /**
+     * @return the planned tier, {@link IndexTier#EMBEDDED} for a file the plan does not know: one
+     * created or edited since is a recently touched file
+     */
+    public IndexTier tierOf(String path) {
+        return tiers.getOrDefault(path, IndexTier.EMBEDDED);
+    }
+
+    public List<String> filesIn(IndexTier tier) {
+        return tiers.entrySet().stream()
+                .filter(entry -> entry.getValue() == tier)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public boolean exceedsBudget() {
+        return tiers.containsValue(IndexTier.LAZY);
+    }
+}
@@ -0,0 +1,241 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebuilds the knowledge index when the embedding model or the index format changes, without
+ * leaving the chat without context in the meantime.
+ *
+ * <p>The new index is built in a shadow directory while queries keep being served from the live
+ * index, embedded with the model it was built with. Files changed during the build are caught up,
+ * then the shadow index is swapped in.
+ */
+@Slf4j
+public class IndexRebuildService {
+
+    private static final String TASK_TITLE = "OllamAssist - Rebuilding Knowledge Index";
+    private static final String PROGRESS_FORMAT = "%d/%d files, %s remaining";
+
+    private final Project project;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private EmbeddingModel queryModel;
+    private String queryModelId;
+
+    public IndexRebuildService(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * The model matching the index currently served, for embedding queries.
+     */
+    public synchronized EmbeddingModel queryEmbeddingModel() {
+        String liveModelId = store().getSignature().modelId();
+        if (queryModel == null || !liveModelId.equals(queryModelId)) {
+            queryModel = IndexingCoordinator.getInstance().embeddingModel(liveModelId);
+            queryModelId = liveModelId;
+        }
+        return queryModel;
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    /**
+     * Starts a background rebuild when the live index does not match the configured model or the
+     * current index format. A project that was never indexed is simply cleared: the regular
+     * indexation takes over.
+     */
+    public void rebuildIfNeeded() {
+        if (!OllamAssistSettings.getInstance().ragEnabled() || project.isDisposed()) {
+            return;
+        }
+        LuceneEmbeddingStore<TextSegment> store = store();
+        if (!store.needsRebuild(DocumentIngestFactory.embeddingModelId())) {
+            return;
+        }
+        IndexRegistry registry = ApplicationManager.getApplication().getService(IndexRegistry.class);
+        if (!registry.isIndexed(IndexKey.of(project)) && !registry.indexationIsProcessing(IndexKey.of(project))) {
+            store.recreateIndex();
+            project.getService(DocumentIndexingPipeline.class).reloadIngestor();
+            return;
+        }
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        new Task.Backgroundable(project, TASK_TITLE, true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                registry.markAsCurrentIndexation(IndexKey.of(project));
+                ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+                try {
+                    Thread.currentThread().setContextClassLoader(IndexRebuildService.class.getClassLoader());
+                    rebuild(store, indicator);
+                } catch (Exception e) {
+                    log.error("Index rebuild failed, the previous index is kept", e);
+                } finally {
+                    Thread.currentThread().setContextClassLoader(originalClassLoader);
+                    registry.removeFromCurrentIndexation(IndexKey.of(project));
+                    rebuilding.set(false);
+                }
+            }
+        }.queue();
+    }
+
+    private void rebuild(LuceneEmbeddingStore<TextSegment> store, ProgressIndicator indicator) throws IOException {
+        String modelId = DocumentIngestFactory.embeddingModelId();
+        log.info("Rebuilding the knowledge index for {} (live index: {})", modelId, store.getSignature());
+
+        indicator.setText("Collecting files...");
+        FilesUtil filesUtil = project.getService(FilesUtil.class);
+        IndexPlan plan = filesUtil.planTiers();
+        List<String> filePaths = plan.paths();
+        long buildStartMillis = System.currentTimeMillis();
+
+        boolean sealed = false;
+        IndexSignature target = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, modelId, 0);
+        try (LuceneEmbeddingStore<TextSegment> shadow = LuceneEmbeddingStore.createShadow(project, target)) {
+            LongAdder embedded = new LongAdder();
+            LongAdder reused = new LongAdder();
+            IndexingCoordinator coordinator = IndexingCoordinator.getInstance();
+            EmbeddingModel model = coordinator.limit(coordinator.embeddingModel(modelId));
+            EmbeddingStoreIngestor ingestor = DocumentIngestFactory.create(shadow, project,
+                    new NearDuplicateEmbeddingModel(model, shadow, embedded, reused), modelId);
+            TieredIngestor tiered = new TieredIngestor(shadow, ingestor,
+                    new CodeAwareDocumentSplitter(project, DocumentIngestFactory.chunkTokenizer(modelId)));
+
+            indicator.setText("Rebuilding index...");
+            indicator.setIndeterminate(false);
+            long start = System.nanoTime();
+            for (int i = 0; i < filePaths.size(); i++) {
+                if (indicator.isCanceled()) {
+                    log.info("Index rebuild cancelled, the previous index is kept");
+                    return;
+                }
+                String path = filePaths.get(i);
+                try {
+                    coordinator.runBatch(project, 1, () -> tiered.ingest(path, plan.tierOf(path)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.info("Index rebuild interrupted, the previous index is kept");
+                    return;
+                }
+                indicator.setFraction((double) (i + 1) / filePaths.size());
+                indicator.setText2(String.format(PROGRESS_FORMAT, i + 1, filePaths.size(),
+                        formatEta(System.nanoTime() - start, i + 1, filePaths.size())));
+            }
+
+            indicator.setText("Catching up with changes...");
+            catchUp(shadow, tiered, filePaths, filesUtil.planTiers(), buildStartMillis);
+            log.info("{} chunks embedded, {} near-duplicates reused an embedding", embedded.sum(), reused.sum());
+            shadow.seal();
+            sealed = true;
+        } finally {
+            if (!sealed) {
+                LuceneEmbeddingStore.discardShadow(project);
+            }
+        }
+
+        store.swapInShadow();
+        project.getService(DocumentIndexingPipeline.class).reloadIngestor();
+        IndexRegistry registry = ApplicationManager.getApplication().getService(IndexRegistry.class);
+        registry.markAsIndexed(IndexKey.of(project));
+        registry.recordFullIndex(IndexKey.of(project), store.documentCount(), modelId);
+    }
+
+    /**
+     * Applies the files created, modified or deleted since the build started.
+     */
+    private void catchUp(LuceneEmbeddingStore<TextSegment> shadow, TieredIngestor ingestor,
+                         List<String> indexedPaths, IndexPlan currentPlan, long sinceMillis) {
+        Set<String> indexed = new HashSet<>(indexedPaths);
+        Set<String> current = currentPlan.tiers().keySet();
+        int changed = 0;
+        for (String path : current) {
+            if (!indexed.contains(path) || modifiedSince(path, sinceMillis)) {
+                shadow.removeAll(new IdStartWithFilter(path));
+                ingestor.ingest(path, currentPlan.tierOf(path));
+                changed++;
+            }
+        }
+        for (String path : indexedPaths) {
+            if (!current.contains(path)) {
+                shadow.removeAll(new IdStartWithFilter(path));
+                changed++;
+            }
+        }
+        log.info("Caught up with {} files changed during the rebuild", changed);
+    }
+
+    private static boolean modifiedSince(String path, long sinceMillis) {
+        try {
+            return Files.getLastModifiedTime(Path.of(path)).toMillis() >= sinceMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Embeds the files of the {@link IndexTier#EMBEDDED} tier and indexes the others for keyword search
+     * only, as {@link DocumentIndexingPipeline} does. Files embedded on demand in the live index are
+     * back to keyword only in the rebuilt one, until a retrieval needs them again.
+     */
+    private record TieredIngestor(LuceneEmbeddingStore<TextSegment> shadow, EmbeddingStoreIngestor ingestor,
+                                  CodeAwareDocumentSplitter splitter) {
+
+        void ingest(String path, IndexTier tier) {
+            try {
+                DocumentIndexingPipeline.loadDocument(path).ifPresent(document -> {
+                    document.metadata().put(IndexTier.METADATA_KEY, tier.name());
+                    if (tier == IndexTier.EMBEDDED) {
+                        ingestor.ingest(document);
+                    } else {
+                        shadow.addKeywordOnly(splitter.split(document));
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("Skipping {} during the index rebuild: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Remaining time extrapolated from the average time per file so far, as {@code m:ss} or {@code h:mm:ss}.
+     */
+    static String formatEta(long elapsedNanos, int done, int total) {
+        if (done <= 0) {
+            return "unknown";
+        }
+        long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(elapsedNanos / done * (total - done));
+        long hours = remainingSeconds / 3600;
+        long minutes = (remainingSeconds % 3600) / 60;
+        long seconds = remainingSeconds % 60;
+        return hours > 0
+                ? String.format("%d:%02d:%02d", hours, minutes, seconds)
+                : String.format("%d:%02d", minutes, seconds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LuceneEmbeddingStore<TextSegment> store() {
+        return project.getService(LuceneEmbeddingStore.class);
+    }
+}
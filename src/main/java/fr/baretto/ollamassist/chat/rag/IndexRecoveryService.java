@@ -0,0 +1,133 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repairs the knowledge index after a read or write failure without re-embedding the whole project.
+ *
+ * <ol>
+ *     <li>{@link IndexFailure#TRANSIENT} failures are ignored.</li>
+ *     <li>{@link IndexFailure#CORRUPTED} failures trigger a background index check. Damaged segments
+ *     are dropped and only the files that lost chunks are re-ingested.</li>
+ *     <li>A full rebuild happens only when the check finds no readable commit, or when the index
+ *     holds vectors of another dimension than its own model produces ({@link IndexFailure#INCOMPATIBLE}).
+ *     The index is emptied
+ *     and the project indexed again once the recovery is over.</li>
+ * </ol>
+ *
+ * <p>Indexes found corrupted when the project opens are emptied through {@link #resetIndex()} too.
+ *
+ * <p>Concurrent requests are coalesced: while a recovery runs, further failures are dropped.
+ */
+@Slf4j
+public class IndexRecoveryService {
+
+    private static final String TASK_TITLE = "OllamAssist - Index Recovery";
+    private static final String FILES_PROGRESS_FORMAT = "%d/%d files";
+
+    private final Project project;
+    private final AtomicBoolean recovering = new AtomicBoolean(false);
+
+    public IndexRecoveryService(Project project) {
+        this.project = project;
+    }
+
+    public void recover(IndexFailure failure) {
+        if (failure == IndexFailure.TRANSIENT || project.isDisposed() || !recovering.compareAndSet(false, true)) {
+            return;
+        }
+        new Task.Backgroundable(project, TASK_TITLE, true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                IndexRegistry registry = ApplicationManager.getApplication().getService(IndexRegistry.class);
+                registry.markAsCurrentIndexation(IndexKey.of(project));
+                boolean reset = false;
+                try {
+                    reset = runRecovery(failure, indicator);
+                } catch (Exception e) {
+                    log.error("Index recovery failed", e);
+                } finally {
+                    registry.removeFromCurrentIndexation(IndexKey.of(project));
+                    recovering.set(false);
+                }
+                if (reset && !project.isDisposed()) {
+                    // Queued once this task no longer counts as an indexation in progress
+                    registry.removeProject(IndexKey.of(project));
+                    new InitEmbeddingStoreTask(project, registry).queue();
+                }
+            }
+        }.queue();
+    }
+
+    public boolean isRecovering() {
+        return recovering.get();
+    }
+
+    /**
+     * Empties the index and reloads the ingestor for the model the index is recreated with. The
+     * caller indexes the project again.
+     */
+    public void resetIndex() {
+        project.getService(LuceneEmbeddingStore.class).recreateIndex();
+        project.getService(DocumentIndexingPipeline.class).reloadIngestor();
+    }
+
+    /**
+     * @return true when the index was emptied and the project must be indexed again
+     */
+    private boolean runRecovery(IndexFailure failure, ProgressIndicator indicator) {
+        LuceneEmbeddingStore<?> store = project.getService(LuceneEmbeddingStore.class);
+
+        if (failure == IndexFailure.CORRUPTED) {
+            indicator.setText("Checking index...");
+            switch (store.checkAndRepair()) {
+                case CLEAN -> {
+                    return false;
+                }
+                case REPAIRED -> {
+                    reingestMissingFiles(store, indicator);
+                    return false;
+                }
+                case UNRECOVERABLE -> log.warn("Index cannot be repaired");
+            }
+        }
+
+        log.warn("Falling back to a full index rebuild ({})", failure);
+        resetIndex();
+        return true;
+    }
+
+    private void reingestMissingFiles(LuceneEmbeddingStore<?> store, ProgressIndicator indicator) {
+        indicator.setText("Collecting files...");
+        Set<String> indexed = store.indexedFilePaths();
+        IndexPlan plan = project.getService(FilesUtil.class).planTiers();
+        List<String> missing = plan.paths().stream()
+                .filter(path -> !indexed.contains(path.replace('\\', '/')))
+                .toList();
+        log.info("Re-ingesting {} files whose chunks were lost", missing.size());
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        indicator.setText("Re-indexing damaged files...");
+        indicator.setIndeterminate(false);
+        AtomicInteger processed = new AtomicInteger();
+        DocumentIndexingPipeline pipeline = project.getService(DocumentIndexingPipeline.class);
+        pipeline.addAllDocuments(missing, plan);
+        pipeline.flush(indicator::isCanceled, batch -> {
+            int done = processed.addAndGet(batch);
+            indicator.setFraction((double) done / missing.size());
+            indicator.setText2(String.format(FILES_PROGRESS_FORMAT, done, missing.size()));
+        });
+    }
+}
@@ -1,5 +1,8 @@
 package fr.baretto.ollamassist.chat.rag;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intellij.openapi.Disposable;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -9,40 +12,64 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Tracks which projects are indexed, which ones need a rebuild, and per-project index statistics.
+ *
+ * <p>The registry lives in memory and is written to {@code indexed_projects.txt} (one
+ * {@code id,date,corrupted} line per project) whenever it changes, through a temporary file and
+ * an atomic rename. The file is shared by every IDE running the plugin: it is reloaded when its
+ * size or modification time changes, which costs one {@code stat} per lookup instead of a parse.
+ *
+ * <p>Statistics are kept in {@code index_stats.json}. Incremental updates are frequent, so they are
+ * written behind: with the next registry write, the next full index, or when the IDE shuts down.
+ */
 @Slf4j
-public class IndexRegistry {
+public class IndexRegistry implements Disposable {
 
     public static final Charset CHARSET = StandardCharsets.UTF_8;
     private static final String USER_HOME = System.getProperty("user.home");
     private static final String OLLAMASSIST_DIR_FORMAT = "%s%s.ollamassist";
     private static final String PROJECTS_FILE_FORMAT = "%s%sindexed_projects.txt";
+    private static final String STATS_FILE_FORMAT = "%s%sindex_stats.json";
     public static final String OLLAMASSIST_DIR = String.format(OLLAMASSIST_DIR_FORMAT, USER_HOME, File.separator);
     private static final String PROJECTS_FILE = String.format(PROJECTS_FILE_FORMAT, OLLAMASSIST_DIR, File.separator);
+    private static final String STATS_FILE = String.format(STATS_FILE_FORMAT, OLLAMASSIST_DIR, File.separator);
+    private static final String TEMP_SUFFIX = ".tmp";
     private static final String SEPARATOR = ",";
-    private final Set<String> currentIndexations = new HashSet<>();
 
+    private final Set<String> currentIndexations = ConcurrentHashMap.newKeySet();
+    private final Map<String, ProjectMetadata> projects = new ConcurrentHashMap<>();
+    private final Map<String, IndexStats> stats = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile FileStamp loadedStamp;
+    private volatile boolean statsDirty;
 
     public IndexRegistry() {
         ensureDirectoryExists();
         ensureFileExists();
+        reloadProjects();
+        loadStats();
     }
 
     public boolean isIndexed(String projectId) {
         if (currentIndexations.contains(projectId)) {
             return true;
         }
-        Map<String, ProjectMetadata> indexedProjects = getIndexedProjects();
-        ProjectMetadata metadata = indexedProjects.get(projectId);
+        ProjectMetadata metadata = metadataOf(projectId);
         if (metadata == null) {
             return false;
         }
@@ -66,46 +93,139 @@ public class IndexRegistry {
         return currentIndexations.contains(projectId);
     }
 
-    public void markAsIndexed(String projectId) {
-        Map<String, ProjectMetadata> projects = getIndexedProjects();
+    public synchronized void markAsIndexed(String projectId) {
+        refreshIfChanged();
         projects.put(projectId, new ProjectMetadata(LocalDate.now(), false));
-        writeProjectsToFile(projects);
+        persist();
     }
 
     public boolean isCorrupted(String projectId) {
-        ProjectMetadata metadata = getIndexedProjects().get(projectId);
+        ProjectMetadata metadata = metadataOf(projectId);
         return metadata != null && metadata.isCorrupted();
     }
 
-    public void markAllAsCorrupted() {
-        getIndexedProjects().keySet().forEach(this::markAsCorrupted);
+    public synchronized void markAllAsCorrupted() {
+        refreshIfChanged();
+        projects.replaceAll((projectId, metadata) -> new ProjectMetadata(metadata.getLastIndexedDate(), true));
+        persist();
     }
 
-    public void markAsCleared(String projectId) {
-        Map<String, ProjectMetadata> projects = getIndexedProjects();
+    public synchronized void markAsCleared(String projectId) {
+        refreshIfChanged();
         ProjectMetadata existing = projects.get(projectId);
-        if (existing != null) {
-            projects.put(projectId, new ProjectMetadata(existing.getLastIndexedDate(), false));
-        } else {
-            projects.put(projectId, new ProjectMetadata(LocalDate.now(), false));
-        }
-        writeProjectsToFile(projects);
+        LocalDate date = existing != null ? existing.getLastIndexedDate() : LocalDate.now();
+        projects.put(projectId, new ProjectMetadata(date, false));
+        persist();
     }
 
-    public void markAsCorrupted(String projectId) {
-        Map<String, ProjectMetadata> projects = getIndexedProjects();
+    public synchronized void markAsCorrupted(String projectId) {
+        refreshIfChanged();
         ProjectMetadata existing = projects.get(projectId);
-        if (existing != null) {
-            projects.put(projectId, new ProjectMetadata(existing.getLastIndexedDate(), true));
-        } else {
-            projects.put(projectId, new ProjectMetadata(LocalDate.now(), true));
+        LocalDate date = existing != null ? existing.getLastIndexedDate() : LocalDate.now();
+        projects.put(projectId, new ProjectMetadata(date, true));
+        persist();
+    }
+
+    /**
+     * Reads the live map: only {@link #getIndexedProjects()} copies it.
+     */
+    private ProjectMetadata metadataOf(String projectId) {
+        refreshIfChanged();
+        return projects.get(projectId);
+    }
+
+    /**
+     * Snapshot of the registered projects.
+     */
+    public synchronized Map<String, ProjectMetadata> getIndexedProjects() {
+        refreshIfChanged();
+        return new HashMap<>(projects);
+    }
+
+    public synchronized void removeProject(String projectId) {
+        refreshIfChanged();
+        boolean removed = projects.remove(projectId) != null;
+        if (stats.remove(projectId) != null) {
+            statsDirty = true;
+        }
+        if (removed) {
+            persist();
+        } else if (statsDirty) {
+            persistStats();
         }
-        writeProjectsToFile(projects);
     }
 
-    public Map<String, ProjectMetadata> getIndexedProjects() {
-        Map<String, ProjectMetadata> projects = new HashMap<>();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(PROJECTS_FILE))) {
+    /**
+     * Moves the entry and statistics of a project to a new id, keeping an existing entry for that id.
+     */
+    public synchronized void renameProject(String fromId, String toId) {
+        refreshIfChanged();
+        ProjectMetadata metadata = projects.remove(fromId);
+        if (metadata != null) {
+            projects.putIfAbsent(toId, metadata);
+        }
+        IndexStats previous = stats.remove(fromId);
+        if (previous != null) {
+            stats.putIfAbsent(toId, previous);
+            statsDirty = true;
+        }
+        if (metadata != null) {
+            persist();
+        } else if (statsDirty) {
+            persistStats();
+        }
+    }
+
+    /**
+     * Records a completed full indexation. Written immediately.
+     */
+    public synchronized void recordFullIndex(String projectId, int docCount, String modelId) {
+        long now = System.currentTimeMillis();
+        IndexStats previous = getStats(projectId);
+        stats.put(projectId, new IndexStats(docCount, now, Math.max(now, previous.lastIncrementalIndexMillis()), modelId, now));
+        statsDirty = true;
+        persistStats();
+    }
+
+    /**
+     * Records an incremental update (files added, changed or deleted). Written behind.
+     */
+    public void recordIncrementalIndex(String projectId, int docCount) {
+        long now = System.currentTimeMillis();
+        stats.compute(projectId, (id, previous) -> previous == null
+                ? new IndexStats(docCount, 0, now, null, now)
+                : new IndexStats(docCount, previous.lastFullIndexMillis(), now, previous.modelId(), now));
+        statsDirty = true;
+    }
+
+    /**
+     * Records that the index of a project was opened. Written behind; drives storage eviction.
+     */
+    public void recordUse(String projectId) {
+        long now = System.currentTimeMillis();
+        stats.compute(projectId, (id, previous) -> (previous == null ? IndexStats.EMPTY : previous).withLastUsed(now));
+        statsDirty = true;
+    }
+
+    /**
+     * In-memory statistics of a project, never read from disk.
+     */
+    public IndexStats getStats(String projectId) {
+        return stats.getOrDefault(projectId, IndexStats.EMPTY);
+    }
+
+    private void refreshIfChanged() {
+        FileStamp current = FileStamp.of(Paths.get(PROJECTS_FILE));
+        if (!current.equals(loadedStamp)) {
+            reloadProjects();
+        }
+    }
+
+    private synchronized void reloadProjects() {
+        Path path = Paths.get(PROJECTS_FILE);
+        FileStamp stamp = FileStamp.of(path);
+        Map<String, ProjectMetadata> loaded = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, CHARSET)) {
             String line;
             while ((line = reader.readLine()) != null) {
                 line = line.trim();
@@ -117,7 +237,7 @@ public class IndexRegistry {
                     try {
                         LocalDate date = LocalDate.parse(parts[1].trim());
                         boolean isCorrupted = parts.length >= 3 && Boolean.parseBoolean(parts[2].trim());
-                        projects.put(projectId, new ProjectMetadata(date, isCorrupted));
+                        loaded.put(projectId, new ProjectMetadata(date, isCorrupted));
                     } catch (DateTimeParseException e) {
                         log.warn("Invalid date format for project {}: {}", parts[0], parts[1]);
                     }
@@ -128,25 +248,64 @@ public class IndexRegistry {
         } catch (IOException e) {
             log.error("Error reading indexed projects file", e);
         }
-        return projects;
+        // Updated in place, so that unsynchronized readers never see an empty map
+        projects.keySet().retainAll(loaded.keySet());
+        projects.putAll(loaded);
+        loadedStamp = stamp;
     }
 
-    public void removeProject(String projectId) {
-        Map<String, ProjectMetadata> projects = getIndexedProjects();
-        if (projects.remove(projectId) != null) {
-            writeProjectsToFile(projects);
+    private void persist() {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, ProjectMetadata> entry : projects.entrySet()) {
+            ProjectMetadata metadata = entry.getValue();
+            content.append(String.format("%s%s%s%s%s", entry.getKey(), SEPARATOR, metadata.getLastIndexedDate(), SEPARATOR, metadata.isCorrupted()))
+                    .append(System.lineSeparator());
+        }
+        try {
+            writeAtomically(Paths.get(PROJECTS_FILE), content.toString());
+            loadedStamp = FileStamp.of(Paths.get(PROJECTS_FILE));
+        } catch (IOException e) {
+            log.error("Error updating indexed projects file", e);
+        }
+        if (statsDirty) {
+            persistStats();
         }
     }
 
-    private void writeProjectsToFile(Map<String, ProjectMetadata> projects) {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(PROJECTS_FILE))) {
-            for (Map.Entry<String, ProjectMetadata> entry : projects.entrySet()) {
-                ProjectMetadata metadata = entry.getValue();
-                writer.write(String.format("%s%s%s%s%s", entry.getKey(), SEPARATOR, metadata.getLastIndexedDate(), SEPARATOR, metadata.isCorrupted()));
-                writer.newLine();
-            }
+    private synchronized void persistStats() {
+        try {
+            writeAtomically(Paths.get(STATS_FILE), mapper.writeValueAsString(new HashMap<>(stats)));
+            statsDirty = false;
         } catch (IOException e) {
-            log.error("Error updating indexed projects file", e);
+            log.error("Error updating index stats file", e);
+        }
+    }
+
+    private void loadStats() {
+        Path path = Paths.get(STATS_FILE);
+        if (Files.notExists(path)) {
+            return;
+        }
+        try {
+            stats.putAll(mapper.readValue(path.toFile(), new TypeReference<Map<String, IndexStats>>() {
+            }));
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable index stats file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Readers, including other IDE processes, see either the old or the new file, never a partial one.
+     */
+    private static void writeAtomically(Path target, String content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, CHARSET)) {
+            writer.write(content);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
@@ -169,6 +328,13 @@ public class IndexRegistry {
         }
     }
 
+    @Override
+    public void dispose() {
+        if (statsDirty) {
+            persistStats();
+        }
+    }
+
     public static class ProjectMetadata {
         @Getter
         private final LocalDate lastIndexedDate;
@@ -183,4 +349,35 @@ public class IndexRegistry {
             return isCorrupted;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param docCount                   chunks in the index after the last update
+     * @param lastFullIndexMillis        end of the last full indexation or rebuild, 0 if unknown
+     * @param lastIncrementalIndexMillis last time files were added, updated or removed, 0 if unknown
+     * @param modelId                    embedding model of the last full indexation
+     * @param lastUsedMillis             last time the project was opened or its index updated, 0 if unknown
+     */
+    public record IndexStats(int docCount, long lastFullIndexMillis, long lastIncrementalIndexMillis, String modelId,
+                             long lastUsedMillis) {
+
+        public static final IndexStats EMPTY = new IndexStats(0, 0, 0, null, 0);
+
+        public IndexStats withLastUsed(long millis) {
+            return new IndexStats(docCount, lastFullIndexMillis, lastIncrementalIndexMillis, modelId, millis);
+        }
+    }
+
+    private record FileStamp(long size, long lastModifiedNanos) {
+
+        private static final FileStamp MISSING = new FileStamp(-1, -1);
+
+        static FileStamp of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileStamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+            } catch (IOException e) {
+                return MISSING;
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+import static fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore.DATABASE_KNOWLEDGE_INDEX;
+
+/**
+ * Avoids embedding files again when their text has not changed.
+ *
+ * <p>Before a full indexation, files whose chunks are already in the index with the same
+ * {@link ContentHash} are kept as they are. When the index is empty, chunks are copied from the index
+ * of another checkout of the same repository (a worktree or a clone, see {@link CheckoutIdentity}),
+ * or from an index of the repository built by {@link OfflineIndexBuilder} and imported into
+ * {@code ~/.ollamassist/imports/}, with their paths rewritten. Either way, only files that differ
+ * are left to embed.
+ */
+@Slf4j
+public class IndexSeeder {
+
+    private static final int COPY_BATCH_SIZE = 500;
+    private static final String ABSOLUTE_DIRECTORY_PATH = "absolute_directory_path";
+    private static final String SOURCE_FILE = "source_file";
+    private static final Set<String> COPIED_FIELDS = Set.of(LuceneEmbeddingStore.ID, LuceneEmbeddingStore.EMBEDDED,
+            LuceneEmbeddingStore.METADATA);
+
+    private final LuceneEmbeddingStore<TextSegment> store;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, String> currentHashes = new HashMap<>();
+
+    public IndexSeeder(LuceneEmbeddingStore<TextSegment> store) {
+        this.store = store;
+    }
+
+    /**
+     * @param filePaths files about to be indexed
+     * @return the files that are already up to date in the index and need no embedding
+     */
+    public Set<String> seed(Collection<String> filePaths) {
+        Set<String> wanted = new HashSet<>(filePaths);
+        Set<String> upToDate = new HashSet<>();
+        Map<String, String> indexed = store.fileContentHashes();
+        for (Map.Entry<String, String> entry : indexed.entrySet()) {
+            String path = entry.getKey();
+            if (wanted.contains(path) && entry.getValue().equals(currentHash(path))) {
+                upToDate.add(path);
+            } else if (wanted.contains(path) || Files.notExists(Path.of(path))) {
+                store.removeAll(new IdStartWithFilter(path));
+            }
+        }
+        if (!upToDate.isEmpty()) {
+            log.info("{} of {} indexed files are unchanged", upToDate.size(), indexed.size());
+        }
+        if (indexed.isEmpty()) {
+            upToDate.addAll(copyFromSibling(wanted));
+        }
+        return upToDate;
+    }
+
+    private Set<String> copyFromSibling(Set<String> filePaths) {
+        CheckoutIdentity own = store.getCheckout();
+        if (own.repositoryId() == null) {
+            return Set.of();
+        }
+        Path sibling = findSibling(own);
+        if (sibling == null) {
+            return Set.of();
+        }
+        try (Directory directory = new NIOFSDirectory(sibling);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            CheckoutIdentity from = CheckoutIdentity.fromUserData(reader.getIndexCommit().getUserData());
+            Map<String, String> reusable = new HashMap<>();
+            for (Map.Entry<String, String> entry : LuceneEmbeddingStore.fileContentHashes(reader).entrySet()) {
+                String target = own.translate(entry.getKey(), from);
+                if (target != null && filePaths.contains(target) && entry.getValue().equals(currentHash(target))) {
+                    reusable.put(entry.getKey(), target);
+                }
+            }
+            Set<String> seeded = new HashSet<>();
+            int copied = copyChunks(reader, reusable, own, from, seeded);
+            log.info("Seeded {} files ({} chunks) from the index of {}", seeded.size(), copied, from.rootPath());
+            return seeded;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not seed the index from {}, indexing from scratch: {}", sibling, e.getMessage());
+            store.removeAll();
+            return Set.of();
+        }
+    }
+
+    /**
+     * The largest compatible index of another checkout of the same repository, or imported for it.
+     */
+    private Path findSibling(CheckoutIdentity own) {
+        Path best = null;
+        long bestSize = 0;
+        for (Path child : directories(Paths.get(OLLAMASSIST_DIR))) {
+            Path candidate = Paths.get(child.toString(), DATABASE_KNOWLEDGE_INDEX);
+            long size = compatibleSize(candidate, own, false);
+            if (size > bestSize) {
+                best = candidate;
+                bestSize = size;
+            }
+        }
+        for (Path child : directories(Paths.get(OLLAMASSIST_DIR, OfflineIndexBuilder.IMPORTS_DIR))) {
+            // An import without manifest is still being built or copied
+            if (OfflineIndexBuilder.Manifest.read(child).isEmpty()) {
+                continue;
+            }
+            Path candidate = child.resolve(OfflineIndexBuilder.INDEX_DIR);
+            long size = compatibleSize(candidate, own, true);
+            if (size > bestSize) {
+                best = candidate;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    private static List<Path> directories(Path parent) {
+        if (!Files.isDirectory(parent)) {
+            return List.of();
+        }
+        try (Stream<Path> children = Files.list(parent)) {
+            return children.filter(Files::isDirectory).toList();
+        } catch (IOException e) {
+            log.debug("Could not look for sibling indexes in {}: {}", parent, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * @param imported an imported index may have been built in this very checkout, while the index
+     *                 of a project in the same checkout is this project's own
+     * @return number of documents in the index, 0 when it cannot seed this checkout
+     */
+    private long compatibleSize(Path candidate, CheckoutIdentity own, boolean imported) {
+        if (!Files.isDirectory(candidate)) {
+            return 0;
+        }
+        try (Directory directory = new NIOFSDirectory(candidate)) {
+            if (!DirectoryReader.indexExists(directory)) {
+                return 0;
+            }
+            SegmentInfos commit = SegmentInfos.readLatestCommit(directory);
+            IndexSignature signature = IndexSignature.fromUserData(commit.getUserData());
+            IndexSignature ownSignature = store.getSignature();
+            CheckoutIdentity origin = CheckoutIdentity.fromUserData(commit.getUserData());
+            boolean compatible = signature != null && signature.dimension() > 0
+                    && signature.isCompatibleWith(LuceneEmbeddingStore.INDEX_VERSION, ownSignature.modelId())
+                    && (ownSignature.dimension() == 0 || ownSignature.dimension() == signature.dimension())
+                    && (imported ? own.isSameRepositoryAs(origin) : own.isSiblingOf(origin));
+            return compatible ? commit.totalMaxDoc() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies the embedded chunks of the reusable files. Chunks without a vector are left out: they are
+     * cheaper to index again than to copy, so their files are not added to {@code seeded}.
+     */
+    private int copyChunks(DirectoryReader reader, Map<String, String> reusable, CheckoutIdentity own,
+                           CheckoutIdentity from, Set<String> seeded) throws IOException {
+        List<Embedding> embeddings = new ArrayList<>(COPY_BATCH_SIZE);
+        List<TextSegment> segments = new ArrayList<>(COPY_BATCH_SIZE);
+        int copied = 0;
+        for (LeafReaderContext context : reader.leaves()) {
+            LeafReader leaf = context.reader();
+            FloatVectorValues vectors = leaf.getFloatVectorValues(LuceneEmbeddingStore.VECTOR);
+            if (vectors == null) {
+                continue;
+            }
+            Bits liveDocs = leaf.getLiveDocs();
+            StoredFields storedFields = leaf.storedFields();
+            for (int doc = vectors.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = vectors.nextDoc()) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                Document stored = storedFields.document(doc, COPIED_FIELDS);
+                String path = LuceneEmbeddingStore.filePathFromId(stored.get(LuceneEmbeddingStore.ID));
+                if (path == null || !reusable.containsKey(path)) {
+                    continue;
+                }
+                seeded.add(reusable.get(path));
+                embeddings.add(new Embedding(vectors.vectorValue().clone()));
+                segments.add(TextSegment.from(stored.get(LuceneEmbeddingStore.EMBEDDED),
+                        translateMetadata(stored.get(LuceneEmbeddingStore.METADATA), own, from)));
+                if (embeddings.size() == COPY_BATCH_SIZE) {
+                    copied += flush(embeddings, segments);
+                }
+            }
+        }
+        return copied + flush(embeddings, segments);
+    }
+
+    private int flush(List<Embedding> embeddings, List<TextSegment> segments) {
+        int size = embeddings.size();
+        if (size > 0) {
+            store.addAll(embeddings, segments);
+            embeddings.clear();
+            segments.clear();
+        }
+        return size;
+    }
+
+    /**
+     * Chunk ids are derived from {@code absolute_directory_path}, so rewriting it moves the chunk to
+     * this checkout.
+     */
+    private Metadata translateMetadata(String json, CheckoutIdentity own, CheckoutIdentity from) throws IOException {
+        Map<String, Object> values = mapper.readValue(json, new TypeReference<LinkedHashMap<String, Object>>() {
+        });
+        Map<String, Object> translated = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (ABSOLUTE_DIRECTORY_PATH.equals(entry.getKey()) || SOURCE_FILE.equals(entry.getKey())) {
+                value = own.translate(String.valueOf(value).replace('\\', '/'), from);
+            }
+            if (value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double) {
+                translated.put(entry.getKey(), value);
+            }
+        }
+        return Metadata.from(translated);
+    }
+
+    private String currentHash(String path) {
+        return currentHashes.computeIfAbsent(path, p -> {
+            try {
+                return DocumentIndexingPipeline.loadDocument(p)
+                        .map(doc -> doc.metadata().getString(ContentHash.METADATA_KEY))
+                        .orElse(null);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        });
+    }
+}
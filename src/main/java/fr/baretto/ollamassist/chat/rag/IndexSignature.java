@@ -0,0 +1,56 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identifies what a knowledge index was built with. It is stored in the Lucene commit user data,
+ * so it is always consistent with the documents of the commit.
+ *
+ * @param formatVersion layout version of the index ({@code INDEX_VERSION} when it was built)
+ * @param modelId       embedding model, as returned by {@link DocumentIngestFactory#embeddingModelId()}
+ * @param dimension     vector dimension, 0 while the index holds no vector
+ */
+public record IndexSignature(String formatVersion, String modelId, int dimension) {
+
+    static final String FORMAT_VERSION_KEY = "ollamassist.format_version";
+    static final String MODEL_ID_KEY = "ollamassist.model_id";
+    static final String DIMENSION_KEY = "ollamassist.dimension";
+
+    /**
+     * Reads a signature from commit user data.
+     *
+     * @return null when the commit was written before indexes were tagged
+     */
+    public static IndexSignature fromUserData(Map<String, String> userData) {
+        if (userData == null || !userData.containsKey(MODEL_ID_KEY)) {
+            return null;
+        }
+        int dimension;
+        try {
+            dimension = Integer.parseInt(userData.getOrDefault(DIMENSION_KEY, "0"));
+        } catch (NumberFormatException e) {
+            dimension = 0;
+        }
+        return new IndexSignature(userData.get(FORMAT_VERSION_KEY), userData.get(MODEL_ID_KEY), dimension);
+    }
+
+    public Map<String, String> toUserData() {
+        Map<String, String> userData = new HashMap<>();
+        userData.put(FORMAT_VERSION_KEY, String.valueOf(formatVersion));
+        userData.put(MODEL_ID_KEY, String.valueOf(modelId));
+        userData.put(DIMENSION_KEY, Integer.toString(dimension));
+        return userData;
+    }
+
+    public IndexSignature withDimension(int newDimension) {
+        return newDimension == dimension ? this : new IndexSignature(formatVersion, modelId, newDimension);
+    }
+
+    /**
+     * Whether an index with this signature can be queried and updated with the given model.
+     */
+    public boolean isCompatibleWith(String currentFormatVersion, String currentModelId) {
+        return currentFormatVersion.equals(formatVersion) && currentModelId.equals(modelId);
+    }
+}
@@ -0,0 +1,188 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.ProjectManager;
+import fr.baretto.ollamassist.setting.RAGSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+
+/**
+ * Keeps the knowledge indexes of all projects under {@code ~/.ollamassist} within a disk quota.
+ *
+ * <p>Every project ever opened leaves an index behind. When their total size exceeds
+ * {@link RAGSettings#getIndexQuotaMb()}, the least recently used indexes of closed projects are
+ * deleted; those projects are re-indexed the next time they are opened. Indexes of open projects
+ * are never evicted, whether open in this IDE or in another one sharing {@code ~/.ollamassist}:
+ * the latter hold an {@link IndexLease} on the index.
+ */
+@Slf4j
+public class IndexStorageManager {
+
+    private static final String DATABASE_DIR = "database";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    /**
+     * @param projectId      directory of the index under {@code ~/.ollamassist}
+     * @param sizeBytes      size on disk, shadow and backup indexes included
+     * @param lastUsedMillis last time the project was opened or indexed, 0 if unknown
+     * @param open           whether the project is open in this IDE or another one
+     */
+    public record IndexUsage(String projectId, long sizeBytes, long lastUsedMillis, boolean open) {
+    }
+
+    public static IndexStorageManager getInstance() {
+        return ApplicationManager.getApplication().getService(IndexStorageManager.class);
+    }
+
+    /**
+     * Scans the index directories. Walks the file system: call it from a background thread.
+     */
+    public List<IndexUsage> usage() {
+        Path root = Paths.get(OLLAMASSIST_DIR);
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        IndexRegistry registry = ApplicationManager.getApplication().getService(IndexRegistry.class);
+        Set<String> openProjects = openProjectIds();
+        List<IndexUsage> usages = new ArrayList<>();
+        try (Stream<Path> children = Files.list(root)) {
+            for (Path projectDir : children.filter(dir -> Files.isDirectory(dir.resolve(DATABASE_DIR))).toList()) {
+                String projectId = projectDir.getFileName().toString();
+                long lastUsed = registry.getStats(projectId).lastUsedMillis();
+                if (lastUsed == 0) {
+                    lastUsed = Files.getLastModifiedTime(projectDir.resolve(DATABASE_DIR)).toMillis();
+                }
+                usages.add(new IndexUsage(projectId, sizeOf(projectDir), lastUsed,
+                        openProjects.contains(projectId) || IndexLease.isInUse(projectDir)));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not scan index storage: {}", e.getMessage());
+        }
+        usages.sort(Comparator.comparingLong(IndexUsage::sizeBytes).reversed());
+        return usages;
+    }
+
+    /**
+     * Evicts least recently used indexes of closed projects until the total fits the configured quota.
+     *
+     * @return ids of the evicted projects
+     */
+    public List<String> enforceQuota() {
+        long quotaBytes = RAGSettings.getInstance().getIndexQuotaMb() * BYTES_PER_MB;
+        if (quotaBytes <= 0) {
+            return List.of();
+        }
+        List<String> evicted = new ArrayList<>();
+        for (IndexUsage usage : selectEvictions(usage(), quotaBytes)) {
+            if (purge(usage.projectId())) {
+                evicted.add(usage.projectId());
+            }
+        }
+        if (!evicted.isEmpty()) {
+            log.info("Index storage over quota, evicted: {}", evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Least recently used closed indexes to delete so the total size fits in {@code quotaBytes}.
+     * When open indexes alone exceed the quota, every closed index is selected.
+     */
+    static List<IndexUsage> selectEvictions(List<IndexUsage> usages, long quotaBytes) {
+        long total = usages.stream().mapToLong(IndexUsage::sizeBytes).sum();
+        List<IndexUsage> candidates = usages.stream()
+                .filter(usage -> !usage.open())
+                .sorted(Comparator.comparingLong(IndexUsage::lastUsedMillis))
+                .toList();
+        List<IndexUsage> evictions = new ArrayList<>();
+        for (IndexUsage candidate : candidates) {
+            if (total <= quotaBytes) {
+                break;
+            }
+            evictions.add(candidate);
+            total -= candidate.sizeBytes();
+        }
+        return evictions;
+    }
+
+    /**
+     * Deletes the index of a closed project and forgets it, so it is re-indexed when next opened.
+     *
+     * @return false when the project is open, here or in another IDE, or the index could not be deleted
+     */
+    public boolean purge(String projectId) {
+        if (openProjectIds().contains(projectId)) {
+            log.warn("Not purging the index of open project {}", projectId);
+            return false;
+        }
+        if (!deleteUnlessInUse(Paths.get(OLLAMASSIST_DIR, projectId))) {
+            return false;
+        }
+        ApplicationManager.getApplication().getService(IndexRegistry.class).removeProject(projectId);
+        return true;
+    }
+
+    /**
+     * Deletes the index of a project under an exclusive {@link IndexLease}, so that no IDE opens it
+     * while it is being deleted.
+     *
+     * @return false when a process holds the index open or it could not be deleted
+     */
+    static boolean deleteUnlessInUse(Path projectDir) {
+        Optional<IndexLease> lease = IndexLease.acquireExclusive(projectDir);
+        if (lease.isEmpty()) {
+            log.info("Not purging the index of {}: in use by another IDE", projectDir.getFileName());
+            return false;
+        }
+        try (IndexLease ignored = lease.get()) {
+            deleteRecursively(projectDir.resolve(DATABASE_DIR));
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not purge the index of {}: {}", projectDir.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static Set<String> openProjectIds() {
+        return Stream.of(ProjectManager.getInstance().getOpenProjects())
+                .map(IndexKey::of)
+                .collect(Collectors.toSet());
+    }
+
+    static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+
+import java.util.Locale;
+
+/**
+ * How much indexing a file gets, decided by {@link IndexPlan} within the embedding budget.
+ *
+ * <ul>
+ *     <li>{@link #EMBEDDED} — source roots of the project modules and recently touched files: embedded
+ *     when indexed, found by vector, keyword and symbol search.</li>
+ *     <li>{@link #KEYWORD} — other indexable files (documentation, configuration, scripts): found by
+ *     keyword and symbol search only, never embedded.</li>
+ *     <li>{@link #LAZY} — source files beyond the embedding budget: indexed like {@link #KEYWORD}, then
+ *     embedded the first time a retrieval finds them by keyword while the vector search could not.</li>
+ * </ul>
+ *
+ * Chunks carry their tier in {@link #METADATA_KEY}, and chunks stored without a vector are flagged
+ * with {@link #KEYWORD_ONLY_KEY}.
+ */
+public enum IndexTier {
+    EMBEDDED("tier 1, embedded"),
+    KEYWORD("tier 2, keyword search only"),
+    LAZY("tier 3, embedded on demand");
+
+    public static final String METADATA_KEY = "index_tier";
+    public static final String KEYWORD_ONLY_KEY = "keyword_only";
+
+    private final String description;
+
+    IndexTier(String description) {
+        this.description = description;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    /**
+     * @return the tier of a chunk, {@link #EMBEDDED} for chunks indexed before tiers existed, null
+     * without metadata
+     */
+    public static IndexTier of(Metadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        String value = metadata.getString(METADATA_KEY);
+        if (value == null || value.isBlank()) {
+            return EMBEDDED;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return EMBEDDED;
+        }
+    }
+
+    /**
+     * A chunk of the lazy tier that has no vector yet.
+     */
+    static boolean awaitsEmbedding(Metadata metadata) {
+        return of(metadata) == LAZY && "true".equals(metadata.getString(KEYWORD_ONLY_KEY));
+    }
+}
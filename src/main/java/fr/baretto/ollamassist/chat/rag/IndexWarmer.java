@@ -0,0 +1,77 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Pre-touches the index files read by the first KNN and BM25 queries so that the first chat
+ * question after opening a project is served from the page cache instead of the disk.
+ *
+ * <p>Only vector data ({@code .vec}, {@code .vex}, {@code .vem}, {@code .vemf}), postings
+ * ({@code .doc}, {@code .pos}, {@code .tim}, {@code .tip}, {@code .tmd}) and compound files
+ * ({@code .cfs}, used for small segments) are read. Stored fields are left alone: they are only
+ * fetched for the handful of top hits.
+ *
+ * <p>Files can disappear while warming (a merge committed in between); they are skipped.
+ */
+@Slf4j
+public class IndexWarmer {
+
+    private static final Set<String> WARMED_EXTENSIONS = Set.of(
+            "vec", "vex", "vem", "vemf",
+            "doc", "pos", "tim", "tip", "tmd",
+            "cfs"
+    );
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private IndexWarmer() {
+    }
+
+    /**
+     * Reads every warmed file of the directory once, sequentially.
+     *
+     * @return number of bytes touched
+     */
+    public static long warm(Directory directory) {
+        long touched = 0;
+        long start = System.nanoTime();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        String[] files;
+        try {
+            files = directory.listAll();
+        } catch (IOException e) {
+            log.warn("Index warm-up skipped: {}", e.getMessage());
+            return 0;
+        }
+
+        for (String file : files) {
+            if (!shouldWarm(file)) {
+                continue;
+            }
+            try (IndexInput input = directory.openInput(file, IOContext.READONCE)) {
+                long remaining = input.length();
+                while (remaining > 0) {
+                    int len = (int) Math.min(buffer.length, remaining);
+                    input.readBytes(buffer, 0, len);
+                    remaining -= len;
+                    touched += len;
+                }
+            } catch (IOException e) {
+                log.debug("Index warm-up skipped {}: {}", file, e.getMessage());
+            }
+        }
+
+        log.info("Index warm-up touched {} KB in {} ms", touched / 1024, (System.nanoTime() - start) / 1_000_000);
+        return touched;
+    }
+
+    static boolean shouldWarm(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 && WARMED_EXTENSIONS.contains(fileName.substring(dot + 1));
+    }
+}
@@ -0,0 +1,258 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.IdeFocusManager;
+import com.intellij.openapi.wm.IdeFrame;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Shares indexing resources between all open projects, instead of each project running its own
+ * indexer against the same CPU and embedding server.
+ *
+ * <ul>
+ *   <li>Background indexing of every project runs on one pool of low-priority threads, half the
+ *   cores and at most 4.</li>
+ *   <li>Indexing batches, background or synchronous, wait for their turn in {@link #runBatch}: at
+ *   most one per pool thread runs at once, and the next one goes to the waiting project that has
+ *   indexed the fewest documents relative to its weight. The project of the focused window weighs
+ *   {@value #FOCUS_WEIGHT}, others 1.</li>
+ *   <li>Embedding calls of all projects to the local model are capped at
+ *   {@value #DEFAULT_EMBEDDING_CALLS} in flight, and projects indexed with the same model share one
+ *   model instance.</li>
+ *   <li>Embedding calls to Ollama start with the same cap, which then follows the capacity of the
+ *   server between 1 and {@value #MAX_OLLAMA_EMBEDDING_CALLS}, see {@link AdaptiveConcurrencyLimit}. The
+ *   chunks a batch sends to Ollama are split into calls made at once, so that even a single
+ *   project indexing fills that cap.</li>
+ * </ul>
+ */
+public final class IndexingCoordinator implements Disposable {
+
+    static final int FOCUS_WEIGHT = 3;
+    private static final int DEFAULT_EMBEDDING_CALLS = 2;
+    private static final int MAX_OLLAMA_EMBEDDING_CALLS = 16;
+    private static final String THREAD_NAME = "ollamassist-indexing-%d";
+    private static final String EMBEDDING_THREAD_NAME = "ollamassist-embedding-%d";
+    /**
+     * A project that finished a batch this recently still counts as waiting: its next batch is on
+     * its way, and a less served project must not take its turn in between.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ScheduledExecutorService workers;
+    private final ExecutorService ollamaCalls;
+    private final int maxBatches;
+    private final AdaptiveConcurrencyLimit embeddingCalls;
+    private final AdaptiveConcurrencyLimit ollamaEmbeddingCalls;
+    private final Predicate<Project> focused;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition turnChanged = lock.newCondition();
+    private final Map<Project, Share> shares = new IdentityHashMap<>();
+    private final Map<String, EmbeddingModel> embeddingModels = new ConcurrentHashMap<>();
+    private int runningBatches;
+    /**
+     * Virtual time of the last batch started, never ahead of a waiting project: where a project
+     * becoming active starts from.
+     */
+    private double clock;
+
+    /**
+     * Documents indexed by a project divided by its weight, the virtual time of fair queuing.
+     */
+    private static final class Share {
+        private double served;
+        private int waiting;
+        private long idleAt = System.nanoTime();
+    }
+
+    public IndexingCoordinator() {
+        this(defaultWorkers(), DEFAULT_EMBEDDING_CALLS, IndexingCoordinator::isFocused);
+    }
+
+    IndexingCoordinator(int workers, int maxEmbeddingCalls, Predicate<Project> focused) {
+        this.workers = Executors.newScheduledThreadPool(workers, daemonThreads(THREAD_NAME));
+        ThreadPoolExecutor calls = new ThreadPoolExecutor(MAX_OLLAMA_EMBEDDING_CALLS, MAX_OLLAMA_EMBEDDING_CALLS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreads(EMBEDDING_THREAD_NAME));
+        calls.allowCoreThreadTimeOut(true);
+        this.ollamaCalls = calls;
+        this.maxBatches = workers;
+        this.embeddingCalls = AdaptiveConcurrencyLimit.fixed(maxEmbeddingCalls);
+        this.ollamaEmbeddingCalls = new AdaptiveConcurrencyLimit(1, maxEmbeddingCalls, MAX_OLLAMA_EMBEDDING_CALLS);
+        this.focused = focused;
+    }
+
+    /**
+     * The application service, or a process-wide instance when running without an IDE (benchmarks).
+     */
+    public static IndexingCoordinator getInstance() {
+        var app = ApplicationManager.getApplication();
+        return app != null ? app.getService(IndexingCoordinator.class) : Headless.INSTANCE;
+    }
+
+    private static final class Headless {
+        private static final IndexingCoordinator INSTANCE = new IndexingCoordinator();
+    }
+
+    private static ThreadFactory daemonThreads(String nameFormat) {
+        AtomicInteger threads = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format(nameFormat, threads.incrementAndGet()));
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static int defaultWorkers() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    private static boolean isFocused(Project project) {
+        IdeFrame frame = IdeFocusManager.getGlobalInstance().getLastFocusedFrame();
+        return frame != null && frame.getProject() == project;
+    }
+
+    /**
+     * Runs the background indexing of a project on the shared pool, until the returned future is
+     * cancelled or the project is closed.
+     */
+    public ScheduledFuture<?> schedule(Project project, Runnable task, long delay, TimeUnit unit) {
+        AtomicReference<ScheduledFuture<?>> future = new AtomicReference<>();
+        future.set(workers.scheduleWithFixedDelay(() -> {
+            if (project.isDisposed()) {
+                ScheduledFuture<?> self = future.get();
+                if (self != null) {
+                    self.cancel(false);
+                }
+                unregister(project);
+                return;
+            }
+            task.run();
+        }, 0, delay, unit));
+        return future.get();
+    }
+
+    /**
+     * Waits for the project's turn, then runs a batch of {@code documents} documents. A project
+     * becoming active starts no earlier than the last batch started, so that idle time is not saved
+     * up into a burst.
+     */
+    public void runBatch(Project project, int documents, Runnable batch) throws InterruptedException {
+        lock.lockInterruptibly();
+        Share share = shares.computeIfAbsent(project, p -> new Share());
+        try {
+            if (share.waiting++ == 0) {
+                share.served = Math.max(share.served, clock);
+            }
+            while (runningBatches >= maxBatches || leastServed() < share.served) {
+                turnChanged.awaitNanos(IDLE_NANOS);
+            }
+            runningBatches++;
+            clock = Math.max(clock, share.served);
+        } finally {
+            share.waiting--;
+            lock.unlock();
+        }
+        try {
+            batch.run();
+        } finally {
+            lock.lock();
+            try {
+                runningBatches--;
+                share.served += (double) documents / weight(project);
+                share.idleAt = System.nanoTime() + IDLE_NANOS;
+                turnChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the lowest virtual time of the projects waiting for a turn or just done with a batch
+     */
+    private double leastServed() {
+        long now = System.nanoTime();
+        double least = Double.MAX_VALUE;
+        for (Share share : shares.values()) {
+            if (share.waiting > 0 || now - share.idleAt < 0) {
+                least = Math.min(least, share.served);
+            }
+        }
+        return least == Double.MAX_VALUE ? 0 : least;
+    }
+
+    /**
+     * @return the batches waiting for their turn
+     */
+    int waitingBatches() {
+        lock.lock();
+        try {
+            return shares.values().stream().mapToInt(share -> share.waiting).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int weight(Project project) {
+        try {
+            return focused.test(project) ? FOCUS_WEIGHT : 1;
+        } catch (RuntimeException e) {
+            return 1;
+        }
+    }
+
+    public void unregister(Project project) {
+        lock.lock();
+        try {
+            shares.remove(project);
+            turnChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One instance per model id for all projects: the local model loads its ONNX session once.
+     */
+    public EmbeddingModel embeddingModel(String modelId) {
+        return embeddingModels.computeIfAbsent(modelId, DocumentIngestFactory::createEmbeddingModel);
+    }
+
+    /**
+     * Wraps a model so that its calls count against the cap of embedding calls in flight: the fixed
+     * one of the local model, or the adaptive one shared by Ollama models, whose calls are split to
+     * run concurrently.
+     */
+    public EmbeddingModel limit(EmbeddingModel model) {
+        return model instanceof OllamaEmbeddingModel
+                ? ollamaEmbeddingCalls.wrapConcurrent(model, ollamaCalls)
+                : embeddingCalls.wrap(model);
+    }
+
+    @Override
+    public void dispose() {
+        workers.shutdownNow();
+        ollamaCalls.shutdownNow();
+        embeddingModels.clear();
+    }
+}
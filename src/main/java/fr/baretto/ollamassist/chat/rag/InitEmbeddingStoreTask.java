@@ -4,11 +4,14 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.segment.TextSegment;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -31,44 +34,63 @@ public class InitEmbeddingStoreTask extends Task.Backgroundable {
 
     @Override
     public void run(@NotNull ProgressIndicator indicator) {
-        if (!indexationRegistry.isIndexed(getProject().getName()) || indexationRegistry.isCorrupted(getProject().getName())) {
+        if (!indexationRegistry.isIndexed(IndexKey.of(getProject())) || indexationRegistry.isCorrupted(IndexKey.of(getProject()))) {
 
-            if (indexationRegistry.isCorrupted(getProject().getName())) {
-                documentIndexingPipeline.handleCorruption();
-                indexationRegistry.markAsCleared(getProject().getName());
+            if (indexationRegistry.isCorrupted(IndexKey.of(getProject()))) {
+                getProject().getService(IndexRecoveryService.class).resetIndex();
+                indexationRegistry.markAsCleared(IndexKey.of(getProject()));
             }
 
-            indexationRegistry.markAsCurrentIndexation(getProject().getName());
+            indexationRegistry.markAsCurrentIndexation(IndexKey.of(getProject()));
             ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
             try {
                 indicator.setText("Collecting files...");
-                FilesUtil filesUtil = getProject().getService(FilesUtil.class);
-                List<String> filePaths = filesUtil.collectFilePaths();
+                IndexPlan plan = getProject().getService(FilesUtil.class).planTiers();
+                indicator.setText2("Indexing files...");
+                List<String> filePaths = skipUpToDateFiles(plan, indicator);
                 totalFiles = filePaths.size();
-                if (totalFiles > filesUtil.getMaxFiles()) {
-                    totalFiles = filesUtil.getMaxFiles();
-                    filePaths = filePaths.subList(0, filesUtil.getMaxFiles());
-                    indicator.setText2("Indexing files...");
-                } else {
-                    indicator.setText2("Indexing files...");
-                }
-                documentIndexingPipeline.addAllDocuments(filePaths);
+                documentIndexingPipeline.addAllDocuments(filePaths, plan);
                 documentIndexingPipeline.flush(indicator::isCanceled, indexedFiles -> updateProgress(indicator, indexedFiles));
 
                 if (!indicator.isCanceled()) {
-                    new IndexRegistry().markAsIndexed(getProject().getName());
+                    indexationRegistry.markAsIndexed(IndexKey.of(getProject()));
+                    LuceneEmbeddingStore<?> store = getProject().getService(LuceneEmbeddingStore.class);
+                    indexationRegistry.recordFullIndex(IndexKey.of(getProject()), store.documentCount(), store.getSignature().modelId());
                 }
 
             } catch (Exception e) {
                 handleError(e, indicator);
             } finally {
-                indexationRegistry.removeFromCurrentIndexation(getProject().getName());
+                indexationRegistry.removeFromCurrentIndexation(IndexKey.of(getProject()));
                 Thread.currentThread().setContextClassLoader(originalClassLoader);
             }
         }
 
     }
 
+    /**
+     * Files whose text is unchanged since they were embedded, here or in another checkout of the
+     * same repository, are not embedded again. Files now planned to be embedded that were indexed
+     * for keyword search only are indexed again.
+     */
+    private List<String> skipUpToDateFiles(IndexPlan plan, ProgressIndicator indicator) {
+        indicator.setText("Reusing existing embeddings...");
+        List<String> filePaths = plan.paths();
+        LuceneEmbeddingStore<TextSegment> store = getProject().getService(LuceneEmbeddingStore.class);
+        Set<String> upToDate = new HashSet<>(new IndexSeeder(store).seed(filePaths));
+        for (String path : store.keywordOnlyFilePaths()) {
+            if (plan.tierOf(path) == IndexTier.EMBEDDED && upToDate.remove(path)) {
+                store.removeAll(new IdStartWithFilter(path));
+            }
+        }
+        indicator.setText("Indexing files...");
+        if (upToDate.isEmpty()) {
+            return filePaths;
+        }
+        log.info("{} of {} files are already indexed and up to date", upToDate.size(), filePaths.size());
+        return filePaths.stream().filter(path -> !upToDate.contains(path)).toList();
+    }
+
     private void updateProgress(ProgressIndicator indicator, int batchSize) {
         processedFiles.addAndGet(batchSize);
         ApplicationManager.getApplication().invokeLater(() -> {
@@ -0,0 +1,515 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.LibraryOrSdkOrderEntry;
+import com.intellij.openapi.roots.OrderEntry;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassOwner;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiShortNamesCache;
+import com.intellij.psi.search.ProjectScope;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.setting.RAGSettings;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+
+/**
+ * Indexes the sources of the libraries and JDK classes that chat questions and completions run
+ * into, so that answers can rely on the library code rather than guess its API.
+ *
+ * <p>Class names in a query are resolved to library classes through the IDE's library roots, and
+ * the package of each class is indexed in the background from the sources attached to its library
+ * (source jar, {@code src.zip} of the JDK). Indexing a package at a time keeps the JDK and large
+ * frameworks affordable: only the parts a project uses are ever embedded. Libraries without
+ * sources are skipped.
+ *
+ * <p>Library indexes live under {@code ~/.ollamassist/libraries}, one per library version and
+ * embedding model, and are shared by all projects. Their total size is kept within
+ * {@link RAGSettings#getLibraryCacheMb()} by evicting the least recently used libraries.
+ *
+ * <p>IDEs share {@code ~/.ollamassist/libraries} too. An IDE opens a library index under an
+ * exclusive {@link IndexLease}, so that a single one writes to it; the others skip the library
+ * while it is open, and never evict it.
+ */
+@Slf4j
+public final class LibrarySourceIndex implements Disposable {
+
+    static final String LIBRARIES_DIR = "libraries";
+    static final int MAX_CLASSES_PER_NAME = 2;
+    static final int MAX_PACKAGES_PER_REQUEST = 4;
+    static final int MAX_PACKAGE_FILES = 200;
+    private static final String INDEX_DIR = "index";
+    private static final String MANIFEST_FILE = "library.properties";
+    private static final String THREAD_NAME = "ollamassist-library-indexing";
+    private static final int KEY_HASH_LENGTH = 12;
+    private static final int MAX_READABLE_KEY = 80;
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+    /**
+     * A class name is resolved again after this delay only: completion asks about the same names
+     * on every keystroke pause.
+     */
+    private static final long REQUEST_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_REQUESTS_REMEMBERED = 10_000;
+
+    private final Path root;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, THREAD_NAME);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, LuceneEmbeddingStore<TextSegment>> stores = new ConcurrentHashMap<>();
+    private final Map<String, IndexLease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> projectLibraries = new ConcurrentHashMap<>();
+    private final Map<String, Long> requested = new ConcurrentHashMap<>();
+    private final Set<String> busy = ConcurrentHashMap.newKeySet();
+
+    public LibrarySourceIndex() {
+        this(Paths.get(OLLAMASSIST_DIR, LIBRARIES_DIR));
+    }
+
+    LibrarySourceIndex(Path root) {
+        this.root = root;
+    }
+
+    public static LibrarySourceIndex getInstance() {
+        return ApplicationManager.getApplication().getService(LibrarySourceIndex.class);
+    }
+
+    private static boolean isEnabled() {
+        return OllamAssistSettings.getInstance().ragEnabled() && RAGSettings.getInstance().isLibraryIndexing();
+    }
+
+    /**
+     * A package of library sources.
+     *
+     * @param library     the library as the IDE names it, with its version
+     * @param key         directory of the library index
+     * @param packageName package of the class that was asked about
+     * @param directory   the package in the library sources
+     */
+    private record LibraryPackage(String library, String key, String packageName, VirtualFile directory) {
+    }
+
+    /**
+     * Indexes in the background the source packages of the library classes named in a chat question
+     * or around the caret. Returns at once: the packages are searched once indexed.
+     */
+    public void request(Project project, String text) {
+        if (project.isDisposed() || !isEnabled()) {
+            return;
+        }
+        List<String> classNames = newClassNames(IndexKey.of(project), classNames(SymbolQueryRouter.extractIdentifiers(text)));
+        if (classNames.isEmpty()) {
+            return;
+        }
+        String modelId = DocumentIngestFactory.embeddingModelId();
+        executor.execute(() -> {
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(LibrarySourceIndex.class.getClassLoader());
+                for (LibraryPackage target : resolve(project, classNames, modelId)) {
+                    if (project.isDisposed()) {
+                        return;
+                    }
+                    index(project, target, modelId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Library source indexing failed: {}", e.getMessage());
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+            }
+        });
+    }
+
+    /**
+     * Simple names of the classes among query identifiers: {@code RestTemplate} for
+     * {@code RestTemplate.exchange} or {@code org.springframework.web.client.RestTemplate}. Constants
+     * and methods are left out.
+     */
+    static List<String> classNames(Collection<String> identifiers) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String identifier : identifiers) {
+            for (String segment : identifier.replace("()", "").split("[.#]")) {
+                if (!segment.isEmpty() && Character.isUpperCase(segment.charAt(0))
+                        && !segment.equals(segment.toUpperCase(Locale.ROOT))) {
+                    names.add(segment);
+                }
+            }
+        }
+        return List.copyOf(names);
+    }
+
+    private List<String> newClassNames(String projectId, List<String> classNames) {
+        long now = System.currentTimeMillis();
+        if (requested.size() > MAX_REQUESTS_REMEMBERED) {
+            requested.clear();
+        }
+        List<String> fresh = new ArrayList<>();
+        for (String className : classNames) {
+            Long previous = requested.put(projectId + "#" + className, now);
+            if (previous == null || now - previous > REQUEST_TTL_MILLIS) {
+                fresh.add(className);
+            }
+        }
+        return fresh;
+    }
+
+    private List<LibraryPackage> resolve(Project project, List<String> classNames, String modelId) {
+        if (DumbService.isDumb(project)) {
+            return List.of();
+        }
+        return ReadAction.compute(() -> {
+            GlobalSearchScope libraries = ProjectScope.getLibrariesScope(project);
+            PsiShortNamesCache shortNames = PsiShortNamesCache.getInstance(project);
+            ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+            Map<String, LibraryPackage> packages = new LinkedHashMap<>();
+            for (String className : classNames) {
+                PsiClass[] classes = shortNames.getClassesByName(className, libraries);
+                for (PsiClass psiClass : Arrays.copyOf(classes, Math.min(classes.length, MAX_CLASSES_PER_NAME))) {
+                    libraryPackage(psiClass, fileIndex, modelId)
+                            .ifPresent(target -> packages.putIfAbsent(target.key() + "#" + target.packageName(), target));
+                }
+            }
+            return packages.values().stream().limit(MAX_PACKAGES_PER_REQUEST).toList();
+        });
+    }
+
+    /**
+     * The source package of a library class, when the library has sources attached: the IDE then
+     * navigates from the compiled class to its source.
+     */
+    private static Optional<LibraryPackage> libraryPackage(PsiClass psiClass, ProjectFileIndex fileIndex, String modelId) {
+        PsiFile file = psiClass.getNavigationElement().getContainingFile();
+        VirtualFile sourceFile = file != null ? file.getVirtualFile() : null;
+        if (!(file instanceof PsiClassOwner owner) || sourceFile == null || !fileIndex.isInLibrarySource(sourceFile)) {
+            return Optional.empty();
+        }
+        VirtualFile archive = VfsUtilCore.getVirtualFileForJar(sourceFile);
+        VirtualFile sourceRoot = fileIndex.getSourceRootForFile(sourceFile);
+        String sourceName = archive != null ? archive.getName() : sourceRoot != null ? sourceRoot.getPath() : "";
+        long sourceSize = archive != null ? archive.getLength() : 0;
+        for (OrderEntry entry : fileIndex.getOrderEntriesForFile(sourceFile)) {
+            if (entry instanceof LibraryOrSdkOrderEntry library) {
+                String name = library.getPresentableName();
+                return Optional.of(new LibraryPackage(name, libraryKey(name, sourceName, sourceSize, modelId),
+                        owner.getPackageName(), sourceFile.getParent()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * One index per library version and embedding model. The name the IDE gives a library carries
+     * its version ({@code Gradle: org.slf4j:slf4j-api:2.0.9}); the name and size of its source archive
+     * tell apart two JDKs registered under the same name.
+     */
+    static String libraryKey(String library, String sourceName, long sourceSize, String modelId) {
+        String readable = library.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_+|_+$", "");
+        if (readable.length() > MAX_READABLE_KEY) {
+            readable = readable.substring(0, MAX_READABLE_KEY);
+        }
+        String hash = ContentHash.sha256(library + "|" + sourceName + "|" + sourceSize + "|" + modelId)
+                .substring(0, KEY_HASH_LENGTH);
+        return readable.isEmpty() ? hash : readable + "-" + hash;
+    }
+
+    private void index(Project project, LibraryPackage target, String modelId) throws InterruptedException, IOException {
+        Path libraryDir = root.resolve(target.key());
+        Optional<LuceneEmbeddingStore<TextSegment>> opened = store(target.key(), modelId);
+        if (opened.isEmpty()) {
+            return;
+        }
+        LuceneEmbeddingStore<TextSegment> store = opened.get();
+        projectLibraries.computeIfAbsent(IndexKey.of(project), id -> ConcurrentHashMap.newKeySet()).add(target.key());
+        Manifest manifest = Manifest.read(libraryDir, target.library());
+        if (manifest.packages().contains(target.packageName())) {
+            manifest.touch(System.currentTimeMillis()).write(libraryDir);
+            return;
+        }
+        busy.add(target.key());
+        try {
+            List<VirtualFile> files = ReadAction.compute(() -> sourceFiles(target.directory()));
+            CodeAwareDocumentSplitter splitter = new CodeAwareDocumentSplitter(project, DocumentIngestFactory.chunkTokenizer(modelId));
+            IndexingCoordinator coordinator = IndexingCoordinator.getInstance();
+            EmbeddingModel model = coordinator.limit(coordinator.embeddingModel(modelId));
+            long start = System.nanoTime();
+            int chunks = 0;
+            for (VirtualFile file : files) {
+                Document document = Document.from(VfsUtilCore.loadText(file), metadata(file, target.library()));
+                List<TextSegment> segments = splitter.split(document);
+                if (segments.isEmpty()) {
+                    continue;
+                }
+                coordinator.runBatch(project, 1, () -> {
+                    store.removeAll(new IdStartWithFilter(file.getPath()));
+                    store.addAll(model.embedAll(segments).content(), segments);
+                });
+                chunks += segments.size();
+            }
+            manifest.withPackage(target.packageName(), System.currentTimeMillis()).write(libraryDir);
+            log.info("Indexed package {} of {}: {} files, {} chunks in {} ms", target.packageName(), target.library(),
+                    files.size(), chunks, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            busy.remove(target.key());
+        }
+        enforceQuota(target.key());
+    }
+
+    /**
+     * Source files directly in the package, without its sub-packages.
+     */
+    private static List<VirtualFile> sourceFiles(VirtualFile directory) {
+        if (directory == null || !directory.isValid()) {
+            return List.of();
+        }
+        return Stream.of(directory.getChildren())
+                .filter(child -> !child.isDirectory())
+                .filter(child -> child.getName().endsWith(".java") || SourceOutline.supports(child.getName()))
+                .limit(MAX_PACKAGE_FILES)
+                .toList();
+    }
+
+    private static Metadata metadata(VirtualFile file, String library) {
+        Metadata metadata = new Metadata();
+        metadata.put(Document.FILE_NAME, file.getName());
+        metadata.put(Document.ABSOLUTE_DIRECTORY_PATH, file.getParent().getPath());
+        metadata.put(LibrarySources.LIBRARY_KEY, library);
+        return metadata;
+    }
+
+    /**
+     * @return the index of the library, empty while another IDE has it open
+     */
+    private synchronized Optional<LuceneEmbeddingStore<TextSegment>> store(String key, String modelId) throws IOException {
+        LuceneEmbeddingStore<TextSegment> store = stores.get(key);
+        if (store != null) {
+            return Optional.of(store);
+        }
+        Path libraryDir = root.resolve(key);
+        Optional<IndexLease> lease = IndexLease.acquireExclusive(libraryDir);
+        if (lease.isEmpty()) {
+            log.debug("Library index {} is open in another IDE", key);
+            return Optional.empty();
+        }
+        try {
+            store = LuceneEmbeddingStore.open(libraryDir.resolve(INDEX_DIR),
+                    new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, modelId, 0));
+        } catch (IOException | RuntimeException e) {
+            lease.get().close();
+            throw e;
+        }
+        stores.put(key, store);
+        leases.put(key, lease.get());
+        return Optional.of(store);
+    }
+
+    private void close(String key) {
+        LuceneEmbeddingStore<TextSegment> store = stores.remove(key);
+        if (store != null) {
+            store.close();
+        }
+        IndexLease lease = leases.remove(key);
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
+    /**
+     * The library indexes the project has used since it was opened, for the embedding model of its
+     * live knowledge index: query vectors of another model could not be compared with them.
+     */
+    public LibrarySources sources(Project project) {
+        Set<String> keys = projectLibraries.get(IndexKey.of(project));
+        if (keys == null || keys.isEmpty() || project.isDisposed() || !isEnabled()) {
+            return LibrarySources.EMPTY;
+        }
+        String modelId = project.getService(LuceneEmbeddingStore.class).getSignature().modelId();
+        List<LuceneEmbeddingStore<TextSegment>> used = keys.stream()
+                .map(stores::get)
+                .filter(store -> store != null && store.getSignature().modelId().equals(modelId))
+                .toList();
+        return used.isEmpty() ? LibrarySources.EMPTY : new LibrarySources(used);
+    }
+
+    /**
+     * Evicts least recently used libraries until the total fits the configured cache size.
+     *
+     * @return keys of the evicted libraries
+     */
+    public List<String> enforceQuota() {
+        return enforceQuota(null);
+    }
+
+    /**
+     * @param keep library just indexed, never evicted
+     */
+    private synchronized List<String> enforceQuota(String keep) {
+        long quotaBytes = RAGSettings.getInstance().getLibraryCacheMb() * BYTES_PER_MB;
+        if (quotaBytes <= 0) {
+            return List.of();
+        }
+        List<String> evicted = new ArrayList<>();
+        for (IndexStorageManager.IndexUsage usage : IndexStorageManager.selectEvictions(usage(keep), quotaBytes)) {
+            if (evict(usage.projectId())) {
+                evicted.add(usage.projectId());
+            }
+        }
+        if (!evicted.isEmpty()) {
+            log.info("Library source cache over quota, evicted: {}", evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Library indexes as {@link IndexStorageManager} sees project indexes, keyed by library. Those
+     * being indexed, and those another IDE holds open, count as open.
+     */
+    private List<IndexStorageManager.IndexUsage> usage(String keep) {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        List<IndexStorageManager.IndexUsage> usages = new ArrayList<>();
+        try (Stream<Path> children = Files.list(root)) {
+            for (Path libraryDir : children.filter(Files::isDirectory).toList()) {
+                String key = libraryDir.getFileName().toString();
+                if (!Files.isDirectory(libraryDir.resolve(INDEX_DIR))) {
+                    continue;
+                }
+                boolean open = key.equals(keep) || busy.contains(key)
+                        || !stores.containsKey(key) && IndexLease.isInUse(libraryDir);
+                usages.add(new IndexStorageManager.IndexUsage(key, IndexStorageManager.sizeOf(libraryDir),
+                        Manifest.read(libraryDir, key).lastUsedMillis(), open));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not scan the library source cache: {}", e.getMessage());
+        }
+        return usages;
+    }
+
+    /**
+     * Deletes a library index under an exclusive {@link IndexLease}. The lock file stays, so that
+     * an IDE opening the library again locks the same file.
+     */
+    private boolean evict(String key) {
+        close(key);
+        projectLibraries.values().forEach(keys -> keys.remove(key));
+        Path libraryDir = root.resolve(key);
+        Optional<IndexLease> lease = IndexLease.acquireExclusive(libraryDir);
+        if (lease.isEmpty()) {
+            log.info("Not evicting library index {}: in use by another IDE", key);
+            return false;
+        }
+        try (IndexLease ignored = lease.get()) {
+            IndexStorageManager.deleteRecursively(libraryDir.resolve(INDEX_DIR));
+            Files.deleteIfExists(libraryDir.resolve(MANIFEST_FILE));
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not evict library index {}: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+        List.copyOf(stores.keySet()).forEach(this::close);
+    }
+
+    /**
+     * What a library index holds, stored next to it in {@value #MANIFEST_FILE}.
+     *
+     * @param library        the library as the IDE names it
+     * @param packages       packages indexed so far
+     * @param lastUsedMillis last time a project indexed or asked about the library, 0 if never
+     */
+    record Manifest(String library, Set<String> packages, long lastUsedMillis) {
+
+        private static final String LIBRARY = "library";
+        private static final String PACKAGES = "packages";
+        private static final String LAST_USED = "last_used";
+
+        /**
+         * @return the manifest of the library, an empty one when it was never indexed or is unreadable
+         */
+        static Manifest read(Path libraryDir, String library) {
+            Path file = libraryDir.resolve(MANIFEST_FILE);
+            if (!Files.isRegularFile(file)) {
+                return new Manifest(library, Set.of(), 0);
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+                String packages = properties.getProperty(PACKAGES, "");
+                return new Manifest(properties.getProperty(LIBRARY, library),
+                        packages.isEmpty() ? Set.of() : Set.of(packages.split(",")),
+                        Long.parseLong(properties.getProperty(LAST_USED, "0")));
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read the manifest of {}: {}", libraryDir, e.getMessage());
+                return new Manifest(library, Set.of(), 0);
+            }
+        }
+
+        void write(Path libraryDir) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(LIBRARY, library);
+            properties.setProperty(PACKAGES, String.join(",", packages));
+            properties.setProperty(LAST_USED, Long.toString(lastUsedMillis));
+            Files.createDirectories(libraryDir);
+            try (Writer writer = Files.newBufferedWriter(libraryDir.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+
+        Manifest withPackage(String packageName, long nowMillis) {
+            Set<String> updated = new TreeSet<>(packages);
+            updated.add(packageName);
+            return new Manifest(library, updated, nowMillis);
+        }
+
+        Manifest touch(long nowMillis) {
+            return new Manifest(library, packages, nowMillis);
+        }
+    }
+}
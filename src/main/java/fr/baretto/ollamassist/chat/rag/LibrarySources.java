@@ -0,0 +1,99 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The library indexes of {@link LibrarySourceIndex} a project has used, searched next to its
+ * knowledge index by chat and completion.
+ *
+ * <p>Library code only complements the project's own code: at most {@value #MAX_RESULTS} library
+ * chunks are merged into a result list, where they rank by score with the project chunks. Scores
+ * are on the scale of {@link LuceneEmbeddingStore}, both come from the same kind of index.
+ */
+@Slf4j
+public final class LibrarySources {
+
+    public static final LibrarySources EMPTY = new LibrarySources(List.of());
+
+    /**
+     * Metadata of library chunks: the library as the IDE names it.
+     */
+    static final String LIBRARY_KEY = "library";
+    static final int MAX_RESULTS = 2;
+
+    private final List<LuceneEmbeddingStore<TextSegment>> stores;
+
+    LibrarySources(List<LuceneEmbeddingStore<TextSegment>> stores) {
+        this.stores = List.copyOf(stores);
+    }
+
+    public boolean isEmpty() {
+        return stores.isEmpty();
+    }
+
+    static boolean isLibraryChunk(Metadata metadata) {
+        return metadata != null && metadata.getString(LIBRARY_KEY) != null;
+    }
+
+    public List<EmbeddingMatch<TextSegment>> knnSearch(float[] queryVector, int topK) {
+        return search(store -> store.knnSearch(queryVector, topK), topK);
+    }
+
+    public List<EmbeddingMatch<TextSegment>> bm25Search(String queryText, int topK) {
+        return search(store -> store.bm25Search(queryText, topK), topK);
+    }
+
+    public List<EmbeddingMatch<TextSegment>> symbolSearch(Collection<String> identifiers, int topK) {
+        return search(store -> store.symbolSearch(identifiers, topK), topK);
+    }
+
+    /**
+     * A library evicted while being searched is closed: it is skipped.
+     */
+    private List<EmbeddingMatch<TextSegment>> search(
+            Function<LuceneEmbeddingStore<TextSegment>, List<EmbeddingMatch<TextSegment>>> search, int topK) {
+        if (stores.isEmpty()) {
+            return List.of();
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (LuceneEmbeddingStore<TextSegment> store : stores) {
+            try {
+                matches.addAll(search.apply(store));
+            } catch (RuntimeException e) {
+                log.debug("Library index search failed: {}", e.getMessage());
+            }
+        }
+        return top(matches, topK);
+    }
+
+    /**
+     * Adds the best {@value #MAX_RESULTS} library matches to the project matches.
+     *
+     * @return the {@code topK} best matches of both, by score
+     */
+    public List<EmbeddingMatch<TextSegment>> merge(List<EmbeddingMatch<TextSegment>> indexed,
+                                                   List<EmbeddingMatch<TextSegment>> library, int topK) {
+        if (library.isEmpty()) {
+            return indexed;
+        }
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>(indexed);
+        merged.addAll(top(library, MAX_RESULTS));
+        return top(merged, topK);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> top(List<EmbeddingMatch<TextSegment>> matches, int topK) {
+        return matches.stream()
+                .sorted(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed())
+                .limit(topK)
+                .toList();
+    }
+}
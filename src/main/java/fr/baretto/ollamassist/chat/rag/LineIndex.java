@@ -0,0 +1,85 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import java.util.Arrays;
+
+/**
+ * Start offsets of the lines of a text, computed in one pass. Lines are then read as substrings
+ * of the original text, and an offset maps back to its line by binary search, so a file is never
+ * split into an array of line strings.
+ */
+final class LineIndex {
+
+    private final CharSequence text;
+    private final int[] starts;
+    private final int lineCount;
+
+    private LineIndex(CharSequence text, int[] starts, int lineCount) {
+        this.text = text;
+        this.starts = starts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Lines are separated by {@code \n}; as with {@code split("\n", -1)}, a trailing separator ends
+     * with an empty last line.
+     */
+    static LineIndex of(CharSequence text) {
+        int[] starts = new int[Math.max(16, text.length() / 32)];
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        return new LineIndex(text, starts, count);
+    }
+
+    CharSequence content() {
+        return text;
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the offset of the first character of a 0-based line
+     */
+    int lineStart(int line) {
+        return starts[line];
+    }
+
+    /**
+     * @return the offset just past the last character of a 0-based line, before its {@code \n}
+     */
+    int lineEnd(int line) {
+        return line + 1 < lineCount ? starts[line + 1] - 1 : text.length();
+    }
+
+    /**
+     * @return the 0-based line containing the offset
+     */
+    int lineOf(int offset) {
+        int index = Arrays.binarySearch(starts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return lines {@code [from, to)} without the final separator
+     */
+    String text(int from, int to) {
+        return text.subSequence(lineStart(from), lineEnd(to - 1)).toString();
+    }
+
+    /**
+     * Appends lines {@code [from, to)} and a separator, without an intermediate string.
+     */
+    void appendTo(StringBuilder sb, int from, int to) {
+        if (from < to) {
+            sb.append(text, lineStart(from), lineEnd(to - 1)).append('\n');
+        }
+    }
+}
@@ -16,17 +16,19 @@ import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.Filter;
-import fr.baretto.ollamassist.events.StoreNotifier;
+import fr.baretto.ollamassist.setting.RAGSettings;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.SingleInstanceLockFactory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -34,8 +36,11 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Stream;
 
@@ -48,37 +53,203 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
     private static final String PATH_SEPARATOR = "/";
     private static final String FILE_NOT_FOUND_FORMAT = "File not found for id: %s";
     private static final String FILE_READ_ERROR_FORMAT = "Failed to read file content for: %s";
-    private static final String INDEX_VERSION = "2.0";
+    /**
+     * 2.1: BM25 postings built with {@link CodeAnalyzer}. 2.2: symbol fields.
+     * Bumping it rebuilds indexes in the background. The file path field needs no rebuild: chunks
+     * written before it are re-indexed with it as their files change.
+     */
+    public static final String INDEX_VERSION = "2.2";
     private static final String VERSION_FILE = "index.version";
-    private static final String VECTOR = "vector";
-    private static final String EMBEDDED = "embedded";
+    private static final String SHADOW_SUFFIX = ".shadow";
+    private static final String BACKUP_SUFFIX = ".old";
+    private static final String SWAP_READY_FILE = "swap.ready";
+    private static final String UNKNOWN_MODEL = "unknown";
+    static final String VECTOR = "vector";
+    static final String EMBEDDED = "embedded";
     private static final String CONTENT_BM25 = "content_bm25";
     private static final String LAST_INDEXED_DATE = "last_indexed_date";
-    private static final String METADATA = "metadata";
-    private static final String ID = "id";
-
-
-    private final Directory directory;
-    private final StandardAnalyzer analyzer;
+    static final String METADATA = "metadata";
+    static final String ID = "id";
+    private static final String CONTENT_HASH = "content_hash";
+    private static final String FILE_PATH = "file_path";
+    private static final String SYMBOL_FQN = "symbol_fqn";
+    private static final String SYMBOL_QUALIFIED = "symbol_qualified";
+    private static final String SYMBOL_NAME = "symbol_name";
+    private static final String SYMBOL_FILE = "symbol_file";
+    private static final String SIMHASH_BAND = "simhash_band";
+    private static final String NEAR_DUPLICATE = "near_duplicate";
+    private static final String INDEX_TIER = "index_tier";
+    private static final String KEYWORD_ONLY = "keyword_only";
+    private static final String FQN_METADATA = "fqn";
+    private static final String FILE_NAME_METADATA = "file_name";
+    private static final String JAVA_EXTENSION = ".java";
+    private static final String UNKNOWN_HASH = "";
+    private static final int BM25_MAX_CLAUSES = 64;
+    private static final int COARSE_FILES = 64;
+    private static final int NEAR_DUPLICATE_CANDIDATES = 16;
+    private static final long BM25_TIME_BUDGET_MS = 200;
+    private static final double FLOOR_SEGMENT_MB = 16;
+    private static final int MERGE_THREADS = 1;
+    private static final int UUID_LENGTH = 36;
+    private static final String WRITE_FAILED = "Failed to write to the knowledge index";
+
+
+    private volatile Directory directory;
+    private final IndexDirectoryType directoryType;
+    private final Path indexPath;
+    private final Analyzer analyzer;
     private final ObjectMapper mapper;
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
     private final Project project;
+    private final CheckoutIdentity checkout;
+    /**
+     * Tells the other IDEs sharing {@code ~/.ollamassist} that the index is open; null for indexes
+     * that belong to no project or once closed.
+     */
+    private IndexLease lease;
     private IndexWriter indexWriter;
+    private volatile IndexSignature signature;
+    private volatile long lastWriteNanos = System.nanoTime();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final LongAdder addAllNanos = new LongAdder();
+    private final CentroidIndex centroids = new CentroidIndex(VECTOR, FILE_PATH);
 
     public LuceneEmbeddingStore(Project project) throws IOException {
+        this(project, configuredDirectoryType());
+    }
+
+    public LuceneEmbeddingStore(Project project, IndexDirectoryType directoryType) throws IOException {
         this.project = project;
-        this.directory = new NIOFSDirectory(
-                Paths.get(OLLAMASSIST_DIR, project.getName(), DATABASE_KNOWLEDGE_INDEX),
-                new SingleInstanceLockFactory()
-        );
-        this.analyzer = new StandardAnalyzer();
+        this.checkout = CheckoutIdentity.of(project.getBasePath());
+        IndexKey.migrateLegacyIndex(project);
+        this.lease = IndexLease.acquireShared(Paths.get(OLLAMASSIST_DIR, IndexKey.of(project)));
+        this.indexPath = Paths.get(OLLAMASSIST_DIR, IndexKey.of(project), DATABASE_KNOWLEDGE_INDEX);
+        this.directoryType = directoryType.resolve();
+        this.analyzer = new CodeAnalyzer();
         this.mapper = new ObjectMapper();
-        checkAndMigrateIndexVersion();
-        this.indexWriter = retrieveIndexWriter();
+        try {
+            completeInterruptedSwap();
+            this.directory = this.directoryType.open(indexPath, new SingleInstanceLockFactory());
+            log.info("Knowledge index opened with {} directory", this.directoryType);
+            String formatVersion = checkAndMigrateIndexVersion();
+            this.indexWriter = retrieveIndexWriter();
+            this.signature = readSignature(formatVersion);
+        } catch (IOException | RuntimeException e) {
+            // The store is never handed out, so close() will not release the lease
+            IOUtils.closeWhileHandlingException(directory);
+            lease.close();
+            lease = null;
+            throw e;
+        }
     }
 
-    private void checkAndMigrateIndexVersion() {
-        Path indexPath = Paths.get(OLLAMASSIST_DIR, project.getName(), DATABASE_KNOWLEDGE_INDEX);
+    /**
+     * Opens an index at a given path: an empty one next to the live one, to be filled in the
+     * background and swapped in with {@link #swapInShadow()}, or a standalone one without project.
+     *
+     * @param project  null for an index that belongs to no project, such as a library cache
+     * @param checkout recorded in the commits, {@link CheckoutIdentity#NONE} for an index of no checkout
+     * @param append   keeps the documents already in the index instead of starting empty
+     */
+    private LuceneEmbeddingStore(Project project, CheckoutIdentity checkout, IndexDirectoryType directoryType,
+                                 Path indexPath, IndexSignature signature, boolean append) throws IOException {
+        this.project = project;
+        this.checkout = checkout;
+        this.lease = null;
+        this.indexPath = indexPath;
+        this.directoryType = directoryType.resolve();
+        if (!append) {
+            deleteRecursively(indexPath);
+        }
+        Files.createDirectories(indexPath);
+        Files.writeString(indexPath.resolve(VERSION_FILE), signature.formatVersion());
+        this.directory = this.directoryType.open(indexPath, new SingleInstanceLockFactory());
+        this.analyzer = new CodeAnalyzer();
+        this.mapper = new ObjectMapper();
+        this.signature = signature;
+        this.indexWriter = new IndexWriter(directory, newIndexWriterConfig(append
+                ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                : IndexWriterConfig.OpenMode.CREATE));
+    }
+
+    public static LuceneEmbeddingStore<TextSegment> createShadow(Project project, IndexSignature signature) throws IOException {
+        Path livePath = Paths.get(OLLAMASSIST_DIR, IndexKey.of(project), DATABASE_KNOWLEDGE_INDEX);
+        return new LuceneEmbeddingStore<>(project, CheckoutIdentity.of(project.getBasePath()), configuredDirectoryType(),
+                siblingOf(livePath, SHADOW_SUFFIX), signature, false);
+    }
+
+    /**
+     * Opens an index that belongs to no project, such as a cached library index. An index built
+     * with another format or embedding model is cleared; a failed search is only logged, as there
+     * is no project to re-index.
+     */
+    public static LuceneEmbeddingStore<TextSegment> open(Path indexPath, IndexSignature signature) throws IOException {
+        return open(indexPath, signature, CheckoutIdentity.NONE);
+    }
+
+    /**
+     * Opens an index built outside the IDE for a checkout, see {@link OfflineIndexBuilder}. The
+     * checkout is recorded so that {@link IndexSeeder} can map the paths to wherever the
+     * repository is opened.
+     */
+    public static LuceneEmbeddingStore<TextSegment> open(Path indexPath, IndexSignature signature,
+                                                         CheckoutIdentity checkout) throws IOException {
+        IndexSignature stored = storedSignature(indexPath);
+        boolean reusable = stored != null && stored.isCompatibleWith(signature.formatVersion(), signature.modelId());
+        return new LuceneEmbeddingStore<>(null, checkout, configuredDirectoryType(), indexPath,
+                reusable ? stored : signature, reusable);
+    }
+
+    private static IndexSignature storedSignature(Path indexPath) {
+        if (!Files.isDirectory(indexPath)) {
+            return null;
+        }
+        try (Directory existing = FSDirectory.open(indexPath)) {
+            return DirectoryReader.indexExists(existing)
+                    ? IndexSignature.fromUserData(SegmentInfos.readLatestCommit(existing).getUserData())
+                    : null;
+        } catch (IOException e) {
+            log.warn("Could not read the signature of {}: {}", indexPath, e.getMessage());
+            return null;
+        }
+    }
+
+    public static void discardShadow(Project project) {
+        Path livePath = Paths.get(OLLAMASSIST_DIR, IndexKey.of(project), DATABASE_KNOWLEDGE_INDEX);
+        try {
+            deleteRecursively(siblingOf(livePath, SHADOW_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Could not delete the shadow index: {}", e.getMessage());
+        }
+    }
+
+    private static Path siblingOf(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    /**
+     * The embedding model the settings select, {@value #UNKNOWN_MODEL} without an IDE.
+     */
+    static String configuredModelId() {
+        var app = ApplicationManager.getApplication();
+        return app == null ? UNKNOWN_MODEL : DocumentIngestFactory.embeddingModelId();
+    }
+    private static IndexDirectoryType configuredDirectoryType() {
+        var app = ApplicationManager.getApplication();
+        if (app == null) {
+            return IndexDirectoryType.AUTO;
+        }
+        RAGSettings settings = app.getService(RAGSettings.class);
+        return settings != null ? IndexDirectoryType.fromString(settings.getIndexDirectoryType()) : IndexDirectoryType.AUTO;
+    }
+
+    /**
+     * An index of an older format keeps serving queries until a rebuild replaces it; indexes that
+     * predate the version file are cleared.
+     *
+     * @return the format version of the index on disk
+     */
+    private String checkAndMigrateIndexVersion() {
         Path versionFile = indexPath.resolve(VERSION_FILE);
 
         String storedVersion = null;
@@ -90,6 +261,11 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             }
         }
 
+        if (storedVersion != null && !INDEX_VERSION.equals(storedVersion) && indexExists()) {
+            log.info("Index version {} is outdated (current={}). It is kept until the rebuild completes.", storedVersion, INDEX_VERSION);
+            return storedVersion;
+        }
+
         if (!INDEX_VERSION.equals(storedVersion)) {
             log.info("Index version mismatch (stored={}, current={}). Clearing index.", storedVersion, INDEX_VERSION);
             try {
@@ -100,18 +276,78 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
                 if (app != null) {
                     IndexRegistry registry = app.getService(IndexRegistry.class);
                     if (registry != null) {
-                        registry.markAsCorrupted(project.getName());
+                        registry.markAsCorrupted(IndexKey.of(project));
                     }
                 }
             } catch (IOException e) {
                 log.error("Failed to migrate index version", e);
             }
         }
+        return INDEX_VERSION;
     }
 
-    private void initIndexWriter() throws IOException {
+    private boolean indexExists() {
+        try {
+            return DirectoryReader.indexExists(directory);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Indexes written before signatures existed are assumed to match the configured model: any
+     * model change used to clear the index.
+     */
+    private IndexSignature readSignature(String formatVersion) {
+        try {
+            if (DirectoryReader.indexExists(directory)) {
+                IndexSignature stored = IndexSignature.fromUserData(SegmentInfos.readLatestCommit(directory).getUserData());
+                if (stored != null) {
+                    return stored;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read the index signature: {}", e.getMessage());
+        }
+        return new IndexSignature(formatVersion, configuredModelId(), 0);
+    }
+
+    public IndexSignature getSignature() {
+        return signature;
+    }
+
+    public CheckoutIdentity getCheckout() {
+        return checkout;
+    }
+
+    /**
+     * Whether the index was built with another format or embedding model than the current ones.
+     */
+    public boolean needsRebuild(String currentModelId) {
+        return !signature.isCompatibleWith(INDEX_VERSION, currentModelId);
+    }
+
+    /**
+     * Every file edit deletes and re-adds its chunks, one commit each, so the index accumulates
+     * tiny segments. A larger floor lets the merge policy fold them together, and a single merge
+     * thread keeps background merging from competing with the IDE for CPU.
+     */
+    private IndexWriterConfig newIndexWriterConfig(IndexWriterConfig.OpenMode openMode) {
         IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setOpenMode(openMode);
+
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setFloorSegmentMB(FLOOR_SEGMENT_MB);
+        config.setMergePolicy(mergePolicy);
+
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        mergeScheduler.setMaxMergesAndThreads(MERGE_THREADS + 1, MERGE_THREADS);
+        config.setMergeScheduler(mergeScheduler);
+        return config;
+    }
+
+    private void initIndexWriter() throws IOException {
+        IndexWriterConfig config = newIndexWriterConfig(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         try {
             this.indexWriter = new IndexWriter(directory, config);
@@ -154,8 +390,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
 
                     // Recreate with CREATE mode to force fresh index
                     // IMPORTANT: Create a new IndexWriterConfig instance to avoid sharing across IndexWriter instances
-                    IndexWriterConfig recreateConfig = new IndexWriterConfig(analyzer);
-                    recreateConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                    IndexWriterConfig recreateConfig = newIndexWriterConfig(IndexWriterConfig.OpenMode.CREATE);
                     this.indexWriter = new IndexWriter(directory, recreateConfig);
 
                     log.info("Index successfully recreated. Your workspace files will be re-indexed automatically.");
@@ -173,12 +408,21 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         }
     }
 
-    private synchronized IndexWriter retrieveIndexWriter() throws IOException {
-        if (indexWriter == null || !indexWriter.isOpen()) {
-            closeIndexWriter();
-            initIndexWriter();
+    /**
+     * Reopens the writer when it was closed. Guarded by the write lock only, like every other access
+     * to the writer, so that locks are always taken in the same order.
+     */
+    private IndexWriter retrieveIndexWriter() throws IOException {
+        rwLock.writeLock().lock();
+        try {
+            if (indexWriter == null || !indexWriter.isOpen()) {
+                closeIndexWriter();
+                initIndexWriter();
+            }
+            return indexWriter;
+        } finally {
+            rwLock.writeLock().unlock();
         }
-        return indexWriter;
     }
 
     public void closeIndexWriter() {
@@ -222,7 +466,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             add(id, embedding, embedded);
             return id;
         } catch (Exception exception) {
-            throw new CorruptedIndexException();
+            throw writeFailure(exception);
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -235,38 +479,34 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
                 indexWriter = retrieveIndexWriter();
             }
             indexWriter.updateDocument(new Term(ID, id), toDocument(embedding, embedded, id));
-            indexWriter.commit();
+            commit();
         } catch (Exception e) {
-            throw new CorruptedIndexException();
+            throw writeFailure(e);
         } finally {
             rwLock.writeLock().unlock();
         }
     }
 
-    private Document toDocument(Embedding embedding, EMBEDDED embedded, String id) {
-        Document doc = new Document();
-
-        doc.add(new StringField(ID, id, Field.Store.YES));
-        String text = ((TextSegment) embedded).text();
-        doc.add(new StoredField(EMBEDDED, text));
-        doc.add(new TextField(CONTENT_BM25, text, Field.Store.NO));
-
-        String lastIndexedDate = ZonedDateTime.now().toString();
-        doc.add(new StringField(LAST_INDEXED_DATE, lastIndexedDate, Field.Store.YES));
-
-        String metadata = null;
-        try {
-            metadata = mapper.writeValueAsString(((TextSegment) embedded).metadata().toMap());
-        } catch (JsonProcessingException e) {
-            metadata = "";
+    /**
+     * Only damaged or incompatible indexes are reported as {@link CorruptedIndexException}: the
+     * pipeline retries anything else without touching the index.
+     */
+    private RuntimeException writeFailure(Exception e) {
+        if (e instanceof CorruptedIndexException || e instanceof IllegalStateException) {
+            return (RuntimeException) e;
         }
-        doc.add(new StoredField(METADATA, metadata));
-
-        float[] vector = embedding.vector();
-        FieldType vectorFieldType = KnnFloatVectorField.createFieldType(vector.length, VectorSimilarityFunction.COSINE);
-        doc.add(new KnnFloatVectorField(VECTOR, vector, vectorFieldType));
+        return IndexFailure.classify(e, signature, configuredModelId()) == IndexFailure.TRANSIENT
+                ? new IllegalStateException(WRITE_FAILED, e)
+                : new CorruptedIndexException(e);
+    }
 
-        return doc;
+    private void commit() throws IOException {
+        Map<String, String> userData = signature.toUserData();
+        userData.putAll(checkout.toUserData());
+        indexWriter.setLiveCommitData(userData.entrySet());
+        indexWriter.commit();
+        lastWriteNanos = System.nanoTime();
+        commitCount.incrementAndGet();
     }
 
     public List<String> addAll(List<Embedding> embeddings) {
@@ -275,6 +515,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
 
     @Override
     public List<String> addAll(List<Embedding> embeddings, List<EMBEDDED> metadataList) {
+        long start = System.nanoTime();
         rwLock.writeLock().lock();
         try {
             List<Document> documents = new ArrayList<>(embeddings.size());
@@ -285,25 +526,30 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
                 String id = getUniqueId(embedded, UUID.randomUUID().toString());
                 ids.add(id);
 
-                documents.add(createDocument(
-                        embeddings.get(i),
-                        embedded,
-                        id
-                ));
+                documents.add(toDocument(embeddings.get(i), embedded, id));
             }
             if (indexWriter == null || !indexWriter.isOpen()) {
                 indexWriter = retrieveIndexWriter();
             }
             indexWriter.addDocuments(documents);
-            indexWriter.commit();
+            commit();
             return ids;
         } catch (Exception exception) {
-            throw new CorruptedIndexException();
+            throw writeFailure(exception);
         } finally {
             rwLock.writeLock().unlock();
+            addAllNanos.add(System.nanoTime() - start);
         }
     }
 
+    /**
+     * Adds chunks without a vector: they are found by keyword and symbol search, never by vector
+     * search. Used for the files of the {@link IndexTier#KEYWORD} and {@link IndexTier#LAZY} tiers.
+     */
+    public List<String> addKeywordOnly(List<EMBEDDED> segments) {
+        return addAll(Collections.nCopies(segments.size(), null), segments);
+    }
+
     @Override
     public void removeAll() {
         rwLock.writeLock().lock();
@@ -311,7 +557,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             retrieveIndexWriter();
             Query query = new MatchAllDocsQuery();
             indexWriter.deleteDocuments(query);
-            indexWriter.commit();
+            commit();
         } catch (IOException e) {
             log.error("Failed to remove all documents, resetting IndexWriter", e);
             recreateIndex();
@@ -332,7 +578,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
                 indexWriter = retrieveIndexWriter();
             }
             indexWriter.deleteDocuments(builder.build());
-            indexWriter.commit();
+            commit();
         } catch (IOException e) {
             log.error("Failed to remove documents with specified IDs", e);
         } finally {
@@ -349,7 +595,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
                     indexWriter = retrieveIndexWriter();
                 }
                 indexWriter.deleteDocuments(idStartWithFilter.toLuceneQuery());
-                indexWriter.commit();
+                commit();
             } else {
                 throw new UnsupportedOperationException("Filter type not supported: " + filter.getClass());
             }
@@ -362,6 +608,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
 
     @Override
     public EmbeddingSearchResult<EMBEDDED> search(EmbeddingSearchRequest request) {
+        rwLock.readLock().lock();
         try (DirectoryReader reader = DirectoryReader.open(directory)) {
             IndexSearcher searcher = new IndexSearcher(reader);
 
@@ -372,11 +619,7 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             try {
                 topDocs = searcher.search(vectorQuery, request.maxResults());
             } catch (Exception exception) {
-                recreateIndex();
-                project.getMessageBus()
-                        .syncPublisher(StoreNotifier.TOPIC)
-                        .clearDatabaseAndRunIndexation();
-
+                requestRecovery("KNN search", exception);
                 return new EmbeddingSearchResult<>(List.of());
             }
 
@@ -409,6 +652,34 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         } catch (Exception e) {
             log.error("Exception during lucene embedding request", e);
             return new EmbeddingSearchResult<>(List.of());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A failed search only hands the index to {@link IndexRecoveryService} when the failure looks
+     * like damage; a transient error is logged and the next search simply tries again. A vector
+     * dimension mismatch is on the query side, such as a query embedded with the previous model
+     * during a model switch: it never empties an index that searches fine otherwise.
+     */
+    private void requestRecovery(String operation, Exception e) {
+        if (IndexFailure.isDimensionMismatch(e)) {
+            log.warn("{} skipped, the query vector does not fit the index ({}): {}", operation, signature, e.getMessage());
+            return;
+        }
+        IndexFailure failure = IndexFailure.classify(e);
+        if (failure == IndexFailure.TRANSIENT) {
+            log.error("{} failed", operation, e);
+            return;
+        }
+        log.warn("{} failed on a {} index: {}", operation, failure, e.getMessage());
+        if (project == null) {
+            return;
+        }
+        IndexRecoveryService recovery = project.getService(IndexRecoveryService.class);
+        if (recovery != null) {
+            recovery.recover(failure);
         }
     }
 
@@ -452,22 +723,22 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         return Math.max(baseMinScore, dynamicThreshold);
     }
 
+    /**
+     * Keyword search over {@link #CONTENT_BM25}. Long texts are reduced to their
+     * {@value #BM25_MAX_CLAUSES} most discriminating terms by {@link Bm25QueryBuilder}, and the search
+     * returns what it has found after {@value #BM25_TIME_BUDGET_MS} ms.
+     */
     public List<EmbeddingMatch<EMBEDDED>> bm25Search(String queryText, int topK) {
         rwLock.readLock().lock();
         try (DirectoryReader reader = DirectoryReader.open(directory)) {
             IndexSearcher searcher = new IndexSearcher(reader);
-            QueryParser parser = new QueryParser(CONTENT_BM25, analyzer);
-            parser.setDefaultOperator(QueryParser.Operator.OR);
-
-            Query query;
-            try {
-                query = parser.parse(QueryParser.escape(queryText));
-            } catch (ParseException e) {
-                log.warn("BM25 query parse failed for '{}': {}", queryText, e.getMessage());
-                return List.of();
-            }
+            searcher.setTimeout(new QueryTimeoutImpl(BM25_TIME_BUDGET_MS));
+            Query query = Bm25QueryBuilder.build(queryText, analyzer, reader, CONTENT_BM25, BM25_MAX_CLAUSES);
 
             TopDocs topDocs = searcher.search(query, topK);
+            if (searcher.timedOut()) {
+                log.debug("BM25 search exceeded {} ms, returning partial results", BM25_TIME_BUDGET_MS);
+            }
             List<EmbeddingMatch<EMBEDDED>> results = new ArrayList<>();
 
             for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
@@ -480,19 +751,124 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             }
             return results;
         } catch (Exception e) {
-            log.error("BM25 search failed", e);
+            requestRecovery("BM25 search", e);
             return List.of();
         } finally {
             rwLock.readLock().unlock();
         }
     }
 
+    /**
+     * Exact lookup of class, method and file names, normalised with {@link SymbolKeys}. A full FQN
+     * ranks above {@code Class.member}, which ranks above a simple name, then a file name.
+     *
+     * @param identifiers identifiers as written in the query, e.g. {@code LuceneEmbeddingStore.knnSearch}
+     */
+    public List<EmbeddingMatch<EMBEDDED>> symbolSearch(Collection<String> identifiers, int topK) {
+        if (identifiers.isEmpty()) {
+            return List.of();
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String identifier : identifiers) {
+            String key = SymbolKeys.normalize(identifier);
+            builder.add(exactTerm(SYMBOL_FQN, key, 8f), BooleanClause.Occur.SHOULD);
+            builder.add(exactTerm(SYMBOL_QUALIFIED, key, 4f), BooleanClause.Occur.SHOULD);
+            builder.add(exactTerm(SYMBOL_NAME, key, 2f), BooleanClause.Occur.SHOULD);
+            builder.add(exactTerm(SYMBOL_FILE, key, 1f), BooleanClause.Occur.SHOULD);
+            if (!key.contains(".")) {
+                builder.add(exactTerm(SYMBOL_FILE, key + JAVA_EXTENSION, 1f), BooleanClause.Occur.SHOULD);
+            }
+        }
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            TopDocs topDocs = searcher.search(builder.build(), topK);
+            List<EmbeddingMatch<EMBEDDED>> results = new ArrayList<>();
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document doc = searcher.storedFields().document(scoreDoc.doc);
+                String text = doc.get(EMBEDDED);
+                if (text == null) continue;
+                Metadata metadata = new Metadata(mapper.readValue(doc.get(METADATA), Map.class));
+                results.add(new EmbeddingMatch<>((double) scoreDoc.score, doc.get(ID), null, (EMBEDDED) TextSegment.from(text, metadata)));
+            }
+            return results;
+        } catch (Exception e) {
+            requestRecovery("Symbol search", e);
+            return List.of();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up, for each fingerprint, an indexed chunk within {@value NearDuplicates#MAX_DISTANCE}
+     * bits of it, and reads its vector. Chunks of the excluded files are skipped: they are the
+     * previous version of the file being indexed, about to be replaced.
+     *
+     * @return the match of each fingerprint that has one
+     */
+    Map<Long, NearDuplicates.Match> findNearDuplicates(Collection<Long> simHashes, Collection<String> excludedFiles) {
+        if (simHashes.isEmpty()) {
+            return Map.of();
+        }
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Set<String> metadataOnly = Set.of(METADATA);
+            Map<Long, NearDuplicates.Match> matches = new HashMap<>();
+            for (long simHash : simHashes) {
+                BooleanQuery.Builder builder = new BooleanQuery.Builder();
+                for (String band : NearDuplicates.bands(simHash)) {
+                    builder.add(new TermQuery(new Term(SIMHASH_BAND, band)), BooleanClause.Occur.SHOULD);
+                }
+                for (String file : excludedFiles) {
+                    builder.add(new TermQuery(new Term(FILE_PATH, file)), BooleanClause.Occur.MUST_NOT);
+                }
+                TopDocs candidates = searcher.search(new ConstantScoreQuery(builder.build()), NEAR_DUPLICATE_CANDIDATES);
+                for (ScoreDoc candidate : candidates.scoreDocs) {
+                    Metadata metadata = new Metadata(mapper.readValue(
+                            searcher.storedFields().document(candidate.doc, metadataOnly).get(METADATA), Map.class));
+                    String candidateHash = metadata.getString(NearDuplicates.META_SIMHASH);
+                    if (candidateHash == null
+                            || NearDuplicates.distance(simHash, NearDuplicates.parse(candidateHash)) > NearDuplicates.MAX_DISTANCE) {
+                        continue;
+                    }
+                    float[] vector = vectorOf(reader, candidate.doc);
+                    if (vector != null) {
+                        matches.put(simHash, new NearDuplicates.Match(NearDuplicates.group(metadata), new Embedding(vector)));
+                        break;
+                    }
+                }
+            }
+            return matches;
+        } catch (IndexNotFoundException e) {
+            return Map.of();
+        } catch (IOException | AlreadyClosedException e) {
+            log.debug("Near-duplicate lookup failed, chunks are embedded: {}", e.getMessage());
+            return Map.of();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private static float[] vectorOf(DirectoryReader reader, int doc) throws IOException {
+        LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+        FloatVectorValues vectors = leaf.reader().getFloatVectorValues(VECTOR);
+        int target = doc - leaf.docBase;
+        return vectors != null && vectors.advance(target) == target ? vectors.vectorValue().clone() : null;
+    }
+
+    private static Query exactTerm(String field, String key, float boost) {
+        return new BoostQuery(new ConstantScoreQuery(new TermQuery(new Term(field, key))), boost);
+    }
+
     public List<EmbeddingMatch<EMBEDDED>> knnSearch(float[] queryVector, int topK) {
         rwLock.readLock().lock();
         try (DirectoryReader reader = DirectoryReader.open(directory)) {
             IndexSearcher searcher = new IndexSearcher(reader);
-            Query vectorQuery = KnnFloatVectorField.newVectorQuery(VECTOR, queryVector, topK);
-            TopDocs topDocs = searcher.search(vectorQuery, topK);
+            TopDocs topDocs = isCoarseToFineEnabled()
+                    ? coarseToFineSearch(searcher, queryVector, topK)
+                    : searcher.search(KnnFloatVectorField.newVectorQuery(VECTOR, queryVector, topK), topK);
             List<EmbeddingMatch<EMBEDDED>> results = new ArrayList<>();
 
             for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
@@ -505,13 +881,352 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             }
             return results;
         } catch (Exception e) {
-            log.error("KNN search failed", e);
+            requestRecovery("KNN search", e);
             return List.of();
         } finally {
             rwLock.readLock().unlock();
         }
     }
 
+    /**
+     * Searches the chunks of the {@value #COARSE_FILES} files whose centroid is closest to the query,
+     * falling back to a flat search when they hold fewer than {@code topK} chunks.
+     */
+    private TopDocs coarseToFineSearch(IndexSearcher searcher, float[] queryVector, int topK) throws IOException {
+        List<String> files = centroids.nearestFiles(searcher.getIndexReader(), queryVector, COARSE_FILES);
+        if (!files.isEmpty()) {
+            TopDocs restricted = searcher.search(new KnnFloatVectorQuery(VECTOR, queryVector, topK,
+                    centroids.restrictTo(files)), topK);
+            if (restricted.scoreDocs.length >= topK) {
+                return restricted;
+            }
+        }
+        return searcher.search(KnnFloatVectorField.newVectorQuery(VECTOR, queryVector, topK), topK);
+    }
+
+    private static boolean isCoarseToFineEnabled() {
+        var app = ApplicationManager.getApplication();
+        if (app == null) {
+            return false;
+        }
+        RAGSettings settings = app.getService(RAGSettings.class);
+        return settings != null && settings.isCoarseToFineRetrieval();
+    }
+
+    /**
+     * Pre-touches the vector and postings files so the first query after opening the project
+     * does not pay cold-cache latency, and computes the file centroids when coarse-to-fine retrieval
+     * is on. Runs without the store lock: Lucene files are write-once and a file removed by a
+     * concurrent merge is simply skipped.
+     *
+     * @return number of bytes touched
+     */
+    public long warmUp() {
+        long touched;
+        try {
+            touched = IndexWarmer.warm(directory);
+        } catch (AlreadyClosedException e) {
+            return 0;
+        }
+        if (isCoarseToFineEnabled()) {
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                centroids.prime(reader);
+            } catch (IndexNotFoundException e) {
+                // empty index
+            } catch (IOException | AlreadyClosedException e) {
+                log.debug("Could not compute the file centroids: {}", e.getMessage());
+            }
+        }
+        return touched;
+    }
+
+    public IndexDirectoryType getDirectoryType() {
+        return directoryType;
+    }
+
+    /**
+     * Chunks in the index, read from the writer without opening a reader.
+     */
+    public int documentCount() {
+        IndexWriter writer = indexWriter;
+        return writer != null && writer.isOpen() ? writer.getDocStats().numDocs : 0;
+    }
+
+    /**
+     * Commits since the store was opened.
+     */
+    public long commitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Cumulated time spent in {@link #addAll(List, List)}, lock wait and commit included.
+     */
+    public long addAllNanos() {
+        return addAllNanos.sum();
+    }
+
+    /**
+     * Time elapsed since the last committed write, used to detect an idle index.
+     */
+    public long millisSinceLastWrite() {
+        return (System.nanoTime() - lastWriteNanos) / 1_000_000;
+    }
+
+    /**
+     * Reports segment count, deleted ratio, vector count, near-duplicate chunks and size on disk.
+     */
+    public IndexHealth health() {
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            long vectors = 0;
+            for (LeafReaderContext leaf : reader.leaves()) {
+                FloatVectorValues values = leaf.reader().getFloatVectorValues(VECTOR);
+                if (values != null) {
+                    vectors += values.size();
+                }
+            }
+            IndexSearcher searcher = new IndexSearcher(reader);
+            int nearDuplicates = searcher.count(new TermQuery(new Term(NEAR_DUPLICATE, "true")));
+            int keywordOnly = searcher.count(new TermQuery(new Term(KEYWORD_ONLY, "true")));
+            Map<IndexTier, Integer> tierChunks = new EnumMap<>(IndexTier.class);
+            int tiered = 0;
+            for (IndexTier tier : List.of(IndexTier.KEYWORD, IndexTier.LAZY)) {
+                int chunks = searcher.count(new TermQuery(new Term(INDEX_TIER, tier.name())));
+                tierChunks.put(tier, chunks);
+                tiered += chunks;
+            }
+            tierChunks.put(IndexTier.EMBEDDED, reader.numDocs() - tiered);
+            return new IndexHealth(reader.leaves().size(), reader.numDocs(), reader.numDeletedDocs(), vectors, sizeOnDisk(),
+                    nearDuplicates, tierChunks, keywordOnly);
+        } catch (IndexNotFoundException e) {
+            return IndexHealth.EMPTY;
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Could not read index health: {}", e.getMessage());
+            return IndexHealth.EMPTY;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private long sizeOnDisk() throws IOException {
+        long size = 0;
+        for (String file : directory.listAll()) {
+            try {
+                size += directory.fileLength(file);
+            } catch (IOException e) {
+                // removed by a concurrent merge
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Expunges deleted chunks and merges small segments, throttling forced merges to
+     * {@code mbPerSec}. Searches and writes keep running: merges never block the writer, so the lock
+     * is only taken to pick up the writer and for the final commit.
+     *
+     * @return true when the maintenance completed
+     */
+    public boolean maintain(double mbPerSec) {
+        try {
+            IndexWriter writer;
+            rwLock.writeLock().lock();
+            try {
+                writer = retrieveIndexWriter();
+                if (writer.getConfig().getMergeScheduler() instanceof ConcurrentMergeScheduler cms) {
+                    cms.setForceMergeMBPerSec(mbPerSec);
+                }
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+            long start = System.nanoTime();
+            writer.forceMergeDeletes(true);
+            writer.maybeMerge();
+
+            rwLock.writeLock().lock();
+            try {
+                if (writer != indexWriter || !writer.isOpen()) {
+                    // Closed by a check or a swap while merging: the merged segments were not committed
+                    log.info("Index maintenance aborted: the index was reopened meanwhile");
+                    return false;
+                }
+                writer.commit();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+            log.info("Index maintenance completed in {} ms", (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Index maintenance aborted: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks every segment of the index and drops the damaged ones. Writes and searches are
+     * blocked for the duration of the check.
+     */
+    public RepairResult checkAndRepair() {
+        rwLock.writeLock().lock();
+        try {
+            closeIndexWriter();
+            try (CheckIndex checker = new CheckIndex(directory)) {
+                long start = System.nanoTime();
+                CheckIndex.Status status = checker.checkIndex();
+                if (status.clean) {
+                    log.info("Index check found no damage in {} ms", (System.nanoTime() - start) / 1_000_000);
+                    return RepairResult.CLEAN;
+                }
+                if (status.missingSegments || status.cantOpenSegments || status.toolOutOfDate) {
+                    log.warn("Index check cannot repair the index (no readable commit)");
+                    return RepairResult.UNRECOVERABLE;
+                }
+                checker.exorciseIndex(status);
+                log.warn("Index check dropped {} damaged segments ({} chunks lost) in {} ms",
+                        status.numBadSegments, status.totLoseDocCount, (System.nanoTime() - start) / 1_000_000);
+                return RepairResult.REPAIRED;
+            }
+        } catch (IndexNotFoundException e) {
+            return RepairResult.CLEAN;
+        } catch (Exception e) {
+            log.warn("Index check failed: {}", e.getMessage());
+            return RepairResult.UNRECOVERABLE;
+        } finally {
+            try {
+                retrieveIndexWriter();
+            } catch (IOException e) {
+                log.warn("Could not reopen the IndexWriter after the index check: {}", e.getMessage());
+            }
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Source files that still have at least one chunk in the index, with {@code /} separators.
+     */
+    public Set<String> indexedFilePaths() {
+        Set<String> paths = new HashSet<>();
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            StoredFields storedFields = reader.storedFields();
+            Bits liveDocs = MultiBits.getLiveDocs(reader);
+            Set<String> idOnly = Set.of(ID);
+            for (int doc = 0; doc < reader.maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                String path = filePathFromId(storedFields.document(doc, idOnly).get(ID));
+                if (path != null) {
+                    paths.add(path);
+                }
+            }
+        } catch (IndexNotFoundException e) {
+            // empty index
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Could not list indexed files: {}", e.getMessage());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        return paths;
+    }
+
+    /**
+     * Files with chunks stored without a vector, with {@code /} separators.
+     */
+    public Set<String> keywordOnlyFilePaths() {
+        Set<String> paths = new HashSet<>();
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            Term keywordOnly = new Term(KEYWORD_ONLY, "true");
+            Set<String> idOnly = Set.of(ID);
+            for (LeafReaderContext leaf : reader.leaves()) {
+                PostingsEnum postings = leaf.reader().postings(keywordOnly, PostingsEnum.NONE);
+                if (postings == null) {
+                    continue;
+                }
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                StoredFields storedFields = leaf.reader().storedFields();
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    String path = filePathFromId(storedFields.document(doc, idOnly).get(ID));
+                    if (path != null) {
+                        paths.add(path);
+                    }
+                }
+            }
+        } catch (IndexNotFoundException e) {
+            // empty index
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Could not list keyword-only files: {}", e.getMessage());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        return paths;
+    }
+
+    /**
+     * Content hash of every indexed file, with {@code /} separators; see {@link #fileContentHashes(IndexReader)}.
+     */
+    public Map<String, String> fileContentHashes() {
+        rwLock.readLock().lock();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            return fileContentHashes(reader);
+        } catch (IndexNotFoundException e) {
+            return Map.of();
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Could not read file hashes: {}", e.getMessage());
+            return Map.of();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Maps each indexed file to the {@link ContentHash} its chunks were embedded from. Files indexed
+     * before hashes were recorded, or whose chunks disagree, map to an empty string: they can only
+     * be re-embedded.
+     */
+    static Map<String, String> fileContentHashes(IndexReader reader) throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+        StoredFields storedFields = reader.storedFields();
+        Bits liveDocs = MultiBits.getLiveDocs(reader);
+        Set<String> fields = Set.of(ID, CONTENT_HASH);
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+            Document stored = storedFields.document(doc, fields);
+            String path = filePathFromId(stored.get(ID));
+            if (path != null) {
+                String hash = Objects.requireNonNullElse(stored.get(CONTENT_HASH), UNKNOWN_HASH);
+                hashes.merge(path, hash, (previous, current) -> previous.equals(current) ? previous : UNKNOWN_HASH);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Chunk ids are the source path followed by a random UUID (see {@link #getUniqueId}).
+     */
+    static String filePathFromId(String id) {
+        if (id == null || id.length() <= UUID_LENGTH) {
+            return null;
+        }
+        return id.substring(0, id.length() - UUID_LENGTH).replace('\\', '/');
+    }
+
+    public enum RepairResult {
+        /** No damage: the failure that triggered the check was transient. */
+        CLEAN,
+        /** Damaged segments were dropped; their files must be re-ingested. */
+        REPAIRED,
+        /** No readable commit left: only a full rebuild helps. */
+        UNRECOVERABLE
+    }
+
     @Override
     public void close() {
         rwLock.writeLock().lock();
@@ -521,6 +1236,10 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         } catch (IOException e) {
             log.error("Error closing Lucene directory", e);
         } finally {
+            if (lease != null) {
+                lease.close();
+                lease = null;
+            }
             rwLock.writeLock().unlock();
         }
     }
@@ -530,8 +1249,8 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             log.info("Recreating index...");
             closeIndexWriter();
             deleteAllIndexFiles();
+            signature = new IndexSignature(INDEX_VERSION, configuredModelId(), 0);
             initIndexWriter();
-            Path indexPath = Paths.get(OLLAMASSIST_DIR, project.getName(), DATABASE_KNOWLEDGE_INDEX);
             Files.writeString(indexPath.resolve(VERSION_FILE), INDEX_VERSION);
             log.info("Index recreated successfully");
         } catch (IOException e) {
@@ -539,17 +1258,98 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         }
     }
 
+    /**
+     * Marks this store, a shadow index, as complete and closes it. Only a sealed shadow is swapped in,
+     * including when the IDE stopped halfway through the swap.
+     */
+    public void seal() throws IOException {
+        rwLock.writeLock().lock();
+        try {
+            commit();
+            closeIndexWriter();
+            directory.close();
+            Files.writeString(indexPath.resolve(SWAP_READY_FILE), signature.modelId());
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the live index with the sealed shadow index. Searches wait for the swap (two directory
+     * renames) instead of seeing a half-moved index.
+     */
+    public void swapInShadow() throws IOException {
+        Path shadowPath = siblingOf(indexPath, SHADOW_SUFFIX);
+        if (!Files.exists(shadowPath.resolve(SWAP_READY_FILE))) {
+            throw new IOException("Shadow index is not sealed: " + shadowPath);
+        }
+        rwLock.writeLock().lock();
+        try {
+            closeIndexWriter();
+            directory.close();
+            try {
+                swapDirectories(indexPath, shadowPath);
+            } finally {
+                directory = directoryType.open(indexPath, new SingleInstanceLockFactory());
+                retrieveIndexWriter();
+                signature = readSignature(INDEX_VERSION);
+            }
+            lastWriteNanos = System.nanoTime();
+            log.info("Swapped in the rebuilt index ({})", signature);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    private static void swapDirectories(Path livePath, Path shadowPath) throws IOException {
+        Path backupPath = siblingOf(livePath, BACKUP_SUFFIX);
+        deleteRecursively(backupPath);
+        if (Files.exists(livePath)) {
+            Files.move(livePath, backupPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(shadowPath, livePath, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(livePath.resolve(SWAP_READY_FILE));
+        deleteRecursively(backupPath);
+    }
+
+    /**
+     * Finishes a swap the IDE did not complete, restores the live index if it was moved away, and
+     * drops an unsealed shadow index: the rebuild starts over since the signature still differs.
+     */
+    private void completeInterruptedSwap() {
+        Path shadowPath = siblingOf(indexPath, SHADOW_SUFFIX);
+        Path backupPath = siblingOf(indexPath, BACKUP_SUFFIX);
+        try {
+            if (Files.exists(shadowPath.resolve(SWAP_READY_FILE))) {
+                log.info("Completing an interrupted index swap");
+                swapDirectories(indexPath, shadowPath);
+                return;
+            }
+            if (!Files.exists(indexPath) && Files.exists(backupPath)) {
+                Files.move(backupPath, indexPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            deleteRecursively(shadowPath);
+            deleteRecursively(backupPath);
+        } catch (IOException e) {
+            log.warn("Could not clean up after an interrupted index swap: {}", e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        cleanDirectory(path);
+        Files.deleteIfExists(path);
+    }
+
     private void deleteAllIndexFiles() throws IOException {
         closeIndexWriter();
         cleanIndexDirectory();
     }
 
     private void cleanIndexDirectory() throws IOException {
-        Path indexPath = Paths.get(OLLAMASSIST_DIR, project.getName(), DATABASE_KNOWLEDGE_INDEX);
         cleanDirectory(indexPath);
     }
 
-    private void cleanDirectory(Path directoryPath) throws IOException {
+    private static void cleanDirectory(Path directoryPath) throws IOException {
         if (!Files.isDirectory(directoryPath)) {
             return;
         }
@@ -593,11 +1393,19 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
         return defaultId;
     }
 
-    private Document createDocument(Embedding embedding, EMBEDDED embedded, String filePath) {
+    /**
+     * The document of a chunk, for {@link #add} and {@link #addAll} alike. Without an embedding the
+     * chunk is {@link #addKeywordOnly keyword only}.
+     */
+    private Document toDocument(Embedding embedding, EMBEDDED embedded, String id) {
         Document doc = new Document();
 
-        doc.add(new StringField(ID, filePath, Field.Store.YES));
+        doc.add(new StringField(ID, id, Field.Store.YES));
+        addFilePath(doc, id);
 
+        if (embedding == null) {
+            doc.add(new StringField(KEYWORD_ONLY, "true", Field.Store.NO));
+        }
         if (embedded instanceof TextSegment segment) {
             String text = segment.text();
             doc.add(new StoredField(EMBEDDED, text));
@@ -606,17 +1414,92 @@ public final class LuceneEmbeddingStore<EMBEDDED> implements EmbeddingStore<EMBE
             String lastIndexedDate = ZonedDateTime.now().toString();
             doc.add(new StringField(LAST_INDEXED_DATE, lastIndexedDate, Field.Store.YES));
 
-            String metadata = serializeMetadata(segment.metadata());
-            doc.add(new StoredField(METADATA, metadata));
+            // Flags the stored copy only: the caller's segment is left as is
+            Metadata stored = embedding == null
+                    ? segment.metadata().copy().put(IndexTier.KEYWORD_ONLY_KEY, "true")
+                    : segment.metadata();
+            doc.add(new StoredField(METADATA, serializeMetadata(stored)));
+            addContentHash(doc, segment.metadata());
+            addSymbolFields(doc, segment.metadata());
+            addNearDuplicateFields(doc, segment.metadata());
+            addTierField(doc, segment.metadata());
         }
 
-        float[] vector = embedding.vector();
-        FieldType vectorType = KnnFloatVectorField.createFieldType(vector.length, VectorSimilarityFunction.COSINE);
-        doc.add(new KnnFloatVectorField(VECTOR, vector, vectorType));
+        if (embedding != null) {
+            float[] vector = embedding.vector();
+            signature = signature.withDimension(vector.length);
+            FieldType vectorType = KnnFloatVectorField.createFieldType(vector.length, VectorSimilarityFunction.COSINE);
+            doc.add(new KnnFloatVectorField(VECTOR, vector, vectorType));
+        }
 
         return doc;
     }
 
+    /**
+     * Groups chunks by file for {@link CentroidIndex}.
+     */
+    private static void addFilePath(Document doc, String id) {
+        String path = filePathFromId(id);
+        if (path != null) {
+            doc.add(new StringField(FILE_PATH, path, Field.Store.NO));
+            doc.add(new SortedDocValuesField(FILE_PATH, new BytesRef(path)));
+        }
+    }
+
+    private static void addContentHash(Document doc, Metadata metadata) {
+        String hash = metadata.getString(ContentHash.METADATA_KEY);
+        if (hash != null) {
+            doc.add(new StoredField(CONTENT_HASH, hash));
+        }
+    }
+
+    /**
+     * Band terms of the chunk fingerprint for {@link #findNearDuplicates}, and a flag on chunks that
+     * reuse the embedding of a near-duplicate, counted by {@link #health()}.
+     */
+    private static void addNearDuplicateFields(Document doc, Metadata metadata) {
+        String simHash = metadata.getString(NearDuplicates.META_SIMHASH);
+        if (simHash != null) {
+            for (String band : NearDuplicates.bands(NearDuplicates.parse(simHash))) {
+                doc.add(new StringField(SIMHASH_BAND, band, Field.Store.NO));
+            }
+        }
+        if (metadata.getString(NearDuplicates.META_DUPLICATE_OF) != null) {
+            doc.add(new StringField(NEAR_DUPLICATE, "true", Field.Store.NO));
+        }
+    }
+
+    /**
+     * Tier of the file of the chunk, counted by {@link #health()}. Chunks without one were embedded.
+     */
+    private static void addTierField(Document doc, Metadata metadata) {
+        String tier = metadata.getString(IndexTier.METADATA_KEY);
+        if (tier != null) {
+            doc.add(new StringField(INDEX_TIER, tier, Field.Store.NO));
+        }
+    }
+
+    /**
+     * Exact lookup keys for {@link #symbolSearch}: the FQN of class and method chunks, in full, as
+     * {@code Class.member} and as a simple name, and the file name of every chunk.
+     */
+    private static void addSymbolFields(Document doc, Metadata metadata) {
+        String fqn = metadata.getString(FQN_METADATA);
+        if (fqn != null && !fqn.isBlank()) {
+            String key = SymbolKeys.normalize(fqn);
+            doc.add(new StringField(SYMBOL_FQN, key, Field.Store.NO));
+            doc.add(new StringField(SYMBOL_NAME, SymbolKeys.simpleName(key), Field.Store.NO));
+            String qualified = SymbolKeys.qualifiedName(key);
+            if (qualified != null) {
+                doc.add(new StringField(SYMBOL_QUALIFIED, qualified, Field.Store.NO));
+            }
+        }
+        String fileName = metadata.getString(FILE_NAME_METADATA);
+        if (fileName != null) {
+            doc.add(new StringField(SYMBOL_FILE, SymbolKeys.normalize(fileName), Field.Store.NO));
+        }
+    }
+
     private String serializeMetadata(Metadata metadata) {
         try {
             return mapper.writeValueAsString(metadata.toMap());
@@ -0,0 +1,129 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embeds only the chunks that have no near-duplicate in the index or earlier in the same call; the
+ * others get the vector of that chunk and are tagged with its fingerprint, see {@link NearDuplicates}.
+ * The ingestor hands the same segments to the store right after embedding them, so the fingerprints
+ * put in their metadata here are indexed with them.
+ */
+final class NearDuplicateEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final LuceneEmbeddingStore<TextSegment> store;
+    private final LongAdder embedded;
+    private final LongAdder reused;
+
+    /**
+     * @param embedded counts the chunks sent to the delegate
+     * @param reused   counts the chunks that got the vector of a near-duplicate
+     */
+    NearDuplicateEmbeddingModel(EmbeddingModel delegate, LuceneEmbeddingStore<TextSegment> store,
+                                LongAdder embedded, LongAdder reused) {
+        this.delegate = delegate;
+        this.store = store;
+        this.embedded = embedded;
+        this.reused = reused;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        int size = textSegments.size();
+        long[] hashes = new long[size];
+        boolean[] hashed = new boolean[size];
+        Set<Long> lookups = new HashSet<>();
+        Set<String> files = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            TextSegment segment = textSegments.get(i);
+            OptionalLong hash = NearDuplicates.simHash(segment);
+            if (hash.isPresent()) {
+                hashes[i] = hash.getAsLong();
+                hashed[i] = true;
+                lookups.add(hashes[i]);
+                segment.metadata().put(NearDuplicates.META_SIMHASH, NearDuplicates.format(hashes[i]));
+            }
+            String file = filePath(segment);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        Map<Long, NearDuplicates.Match> indexed = store.findNearDuplicates(lookups, files);
+
+        Embedding[] embeddings = new Embedding[size];
+        int[] canonical = new int[size];
+        List<Integer> toEmbed = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            canonical[i] = -1;
+            NearDuplicates.Match match = hashed[i] ? indexed.get(hashes[i]) : null;
+            if (match != null) {
+                embeddings[i] = match.embedding();
+                textSegments.get(i).metadata().put(NearDuplicates.META_DUPLICATE_OF, match.group());
+                continue;
+            }
+            canonical[i] = hashed[i] ? earlierDuplicate(hashes, toEmbed, hashes[i], hashed) : -1;
+            if (canonical[i] < 0) {
+                toEmbed.add(i);
+            }
+        }
+
+        Response<List<Embedding>> response = null;
+        if (!toEmbed.isEmpty()) {
+            List<TextSegment> segments = new ArrayList<>(toEmbed.size());
+            toEmbed.forEach(i -> segments.add(textSegments.get(i)));
+            response = delegate.embedAll(segments);
+            for (int i = 0; i < toEmbed.size(); i++) {
+                embeddings[toEmbed.get(i)] = response.content().get(i);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (canonical[i] >= 0) {
+                embeddings[i] = embeddings[canonical[i]];
+                textSegments.get(i).metadata().put(NearDuplicates.META_DUPLICATE_OF,
+                        NearDuplicates.format(hashes[canonical[i]]));
+            }
+        }
+        embedded.add(toEmbed.size());
+        reused.add(size - toEmbed.size());
+        List<Embedding> result = Arrays.asList(embeddings);
+        return response == null ? Response.from(result) : Response.from(result, response.tokenUsage());
+    }
+
+    /**
+     * @return the first chunk to embed in this call that is a near-duplicate of the fingerprint, or -1
+     */
+    private static int earlierDuplicate(long[] hashes, List<Integer> toEmbed, long hash, boolean[] hashed) {
+        for (int candidate : toEmbed) {
+            if (hashed[candidate] && NearDuplicates.distance(hashes[candidate], hash) <= NearDuplicates.MAX_DISTANCE) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The path the store derives from the chunk id, see {@link LuceneEmbeddingStore#filePathFromId}.
+     */
+    private static String filePath(TextSegment segment) {
+        String directory = segment.metadata().getString("absolute_directory_path");
+        String fileName = segment.metadata().getString("file_name");
+        return directory == null || fileName == null ? null : (directory + "/" + fileName).replace('\\', '/');
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
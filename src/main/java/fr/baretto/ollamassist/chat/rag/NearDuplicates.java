@@ -0,0 +1,155 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash fingerprints of chunks, so that near-identical chunks (generated code, copied
+ * tests, license headers) share one embedding. Two chunks are near-duplicates when their
+ * fingerprints differ by at most {@value #MAX_DISTANCE} bits; such fingerprints always share one of
+ * {@value #BANDS} 16-bit bands, which the index looks them up by.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class NearDuplicates {
+
+    static final int MAX_DISTANCE = 3;
+    static final int BANDS = MAX_DISTANCE + 1;
+    /**
+     * Shorter chunks (getters, one-line statements) are too small for their fingerprint to tell
+     * them apart and are always embedded.
+     */
+    static final int MIN_TOKENS = 24;
+    /**
+     * Fingerprint of a chunk, in hexadecimal.
+     */
+    static final String META_SIMHASH = "simhash";
+    /**
+     * Fingerprint of the chunk whose embedding a near-duplicate reuses.
+     */
+    static final String META_DUPLICATE_OF = "duplicate_of";
+
+    private static final int SHINGLE_TOKENS = 3;
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}_]+|[^\\s\\p{L}\\p{N}_]");
+
+    /**
+     * The index entry a chunk was matched with: its group and its vector.
+     */
+    record Match(String group, Embedding embedding) {
+    }
+
+    /**
+     * SimHash of the 3-token shingles of the chunk, leaving out the {@code // fqn} header the
+     * splitter puts on declaration chunks, which differs between otherwise identical chunks.
+     *
+     * @return empty for chunks of fewer than {@value #MIN_TOKENS} tokens
+     */
+    static OptionalLong simHash(TextSegment segment) {
+        String text = segment.text();
+        if (segment.metadata().getString(CodeAwareDocumentSplitter.META_FQN) != null) {
+            int header = text.indexOf('\n');
+            text = header < 0 ? "" : text.substring(header + 1);
+        }
+        return simHash(text);
+    }
+
+    static OptionalLong simHash(String text) {
+        List<Long> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(mix(matcher.group().hashCode()));
+        }
+        if (tokens.size() < MIN_TOKENS) {
+            return OptionalLong.empty();
+        }
+        int[] weights = new int[Long.SIZE];
+        for (int i = 0; i + SHINGLE_TOKENS <= tokens.size(); i++) {
+            long shingle = 0;
+            for (int j = 0; j < SHINGLE_TOKENS; j++) {
+                shingle = mix(shingle * 31 + tokens.get(i + j));
+            }
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += (shingle >>> bit & 1) == 1 ? 1 : -1;
+            }
+        }
+        long hash = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                hash |= 1L << bit;
+            }
+        }
+        return OptionalLong.of(hash);
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Index terms of a fingerprint, one per band: {@code band:value}.
+     */
+    static List<String> bands(long hash) {
+        List<String> bands = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            bands.add(band + ":" + Long.toHexString(hash >>> band * BAND_BITS & 0xFFFF));
+        }
+        return bands;
+    }
+
+    static String format(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    static long parse(String hash) {
+        return Long.parseUnsignedLong(hash, 16);
+    }
+
+    /**
+     * Chunks of a group share one embedding: the fingerprint of the chunk it was computed for.
+     *
+     * @return null for chunks that were never fingerprinted
+     */
+    static String group(Metadata metadata) {
+        String duplicateOf = metadata.getString(META_DUPLICATE_OF);
+        return duplicateOf != null ? duplicateOf : metadata.getString(META_SIMHASH);
+    }
+
+    /**
+     * Keeps the best ranked match of each group of near-duplicates, up to {@code topK} matches.
+     */
+    static List<EmbeddingMatch<TextSegment>> collapse(List<EmbeddingMatch<TextSegment>> matches, int topK) {
+        List<EmbeddingMatch<TextSegment>> kept = new ArrayList<>(Math.min(topK, matches.size()));
+        Set<String> groups = new HashSet<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            if (kept.size() == topK) {
+                break;
+            }
+            String group = group(match.embedded().metadata());
+            if (group == null || groups.add(group)) {
+                kept.add(match);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * SplitMix64 finalizer, spreading a hash over all 64 bits.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
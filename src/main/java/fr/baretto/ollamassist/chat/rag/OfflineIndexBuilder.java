@@ -0,0 +1,328 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.baretto.ollamassist.chat.rag.IndexRegistry.OLLAMASSIST_DIR;
+import static fr.baretto.ollamassist.chat.rag.RAGConstants.DEFAULT_EMBEDDING_MODEL;
+
+/**
+ * Builds the knowledge index of a directory without an IDE, with the local embedding model: on a
+ * CI machine, or ahead of opening a repository too large to embed interactively.
+ *
+ * <p>The output directory holds the index in {@value #INDEX_DIR} and a {@value #MANIFEST_FILE},
+ * written last. Copied (or built directly) into {@code ~/.ollamassist/imports/<name>/}, it seeds the
+ * index of any checkout of the same repository through {@link IndexSeeder}: paths are mapped to the
+ * checkout and only the files whose content differs are embedded by the plugin, which keeps the
+ * index up to date incrementally from there.
+ *
+ * <p>Without PSI, Java files are chunked with the {@link SourceOutline} as other languages are.
+ * Chunks are sized in tokens and near-duplicates reuse an embedding, as the plugin does by default,
+ * so that an imported index looks like one the plugin built. Files are loaded, split and embedded
+ * by {@code threads} workers; the chunks of a worker are written by batches of {@code batchSize}.
+ *
+ * <p>Run: {@code ./gradlew buildOfflineIndex -Pindex.source=/path/to/repo -Pindex.threads=8}
+ */
+@Slf4j
+public final class OfflineIndexBuilder {
+
+    static final String IMPORTS_DIR = "imports";
+    static final String INDEX_DIR = "knowledge_index";
+    static final String MANIFEST_FILE = "manifest.properties";
+    static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of("build", "out", "target", "node_modules", "dist");
+    private static final String USAGE = "Usage: OfflineIndexBuilder --source <dir> [--output <dir>] [--threads <n>]"
+            + " [--batch-size <n>] [--chunk-by-characters]";
+    private static final int PATH_HASH_LENGTH = 8;
+
+    private final Path source;
+    private final Path output;
+    private final int threads;
+    private final int batchSize;
+    private final EmbeddingModel model;
+    private final String modelId;
+    private final EmbeddingTokenizer tokenizer;
+
+    /**
+     * @param model     embeds the chunks, called by up to {@code threads} workers at once
+     * @param modelId   tags the index, see {@link DocumentIngestFactory#embeddingModelId()}
+     * @param tokenizer sizes the chunks as token-aware chunking does in the plugin; null to size them
+     *                  in characters, as the plugin does with that setting off
+     */
+    public OfflineIndexBuilder(Path source, Path output, int threads, int batchSize, EmbeddingModel model,
+                               String modelId, EmbeddingTokenizer tokenizer) {
+        this.source = source.toAbsolutePath().normalize();
+        this.output = output.toAbsolutePath().normalize();
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+        this.model = model;
+        this.modelId = modelId;
+        this.tokenizer = tokenizer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path source = null;
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = DEFAULT_BATCH_SIZE;
+        boolean chunkByCharacters = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--source" -> source = Paths.get(args[++i]);
+                    case "--output" -> output = Paths.get(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--batch-size" -> batchSize = Integer.parseInt(args[++i]);
+                    case "--chunk-by-characters" -> chunkByCharacters = true;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() + "\n" + USAGE : USAGE);
+            System.exit(2);
+        }
+        if (source == null || !Files.isDirectory(source)) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (output == null) {
+            output = defaultOutput(source);
+        }
+
+        ExecutorService embeddingExecutor = Executors.newFixedThreadPool(threads);
+        try {
+            EmbeddingTokenizer tokenizer = chunkByCharacters ? null : EmbeddingTokenizer.bgeSmall().orElse(null);
+            Manifest manifest = new OfflineIndexBuilder(source, output, threads, batchSize,
+                    new BgeSmallEnV15QuantizedEmbeddingModel(embeddingExecutor), DEFAULT_EMBEDDING_MODEL, tokenizer)
+                    .build();
+            System.out.printf("Indexed %d files (%d chunks) in %.1f s: %s%n", manifest.files(), manifest.chunks(),
+                    manifest.buildSeconds(), output);
+        } finally {
+            embeddingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * An import directory named like the index of the checkout, so that building in place makes
+     * the index available to the plugin right away.
+     */
+    static Path defaultOutput(Path source) {
+        Path root = source.toAbsolutePath().normalize();
+        String normalized = root.toString().replace('\\', '/');
+        String name = root.getFileName() != null ? root.getFileName().toString() : "root";
+        return Paths.get(OLLAMASSIST_DIR, IMPORTS_DIR,
+                name + "-" + ContentHash.sha256(normalized).substring(0, PATH_HASH_LENGTH));
+    }
+
+    /**
+     * Indexes every text file of the source directory from scratch.
+     */
+    public Manifest build() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(output);
+        Files.deleteIfExists(output.resolve(MANIFEST_FILE));
+        IndexStorageManager.deleteRecursively(output.resolve(INDEX_DIR));
+
+        List<Path> files = collectFiles(source);
+        CheckoutIdentity checkout = CheckoutIdentity.of(source.toString());
+        if (checkout.repositoryId() == null) {
+            log.warn("{} is not a git checkout: the plugin will not recognise the repository of its index", source);
+        }
+        log.info("Indexing {} files of {} with {} threads, chunks sized in {}", files.size(), source, threads,
+                tokenizer != null ? "tokens" : "characters");
+
+        IndexSignature signature = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, modelId, 0);
+        LongAdder indexedFiles = new LongAdder();
+        LongAdder chunks = new LongAdder();
+        LongAdder embedded = new LongAdder();
+        LongAdder reused = new LongAdder();
+        int dimension;
+        try (LuceneEmbeddingStore<TextSegment> store = LuceneEmbeddingStore.open(output.resolve(INDEX_DIR), signature,
+                checkout)) {
+            CodeAwareDocumentSplitter splitter = new CodeAwareDocumentSplitter(null, tokenizer);
+            EmbeddingModel deduplicating = new NearDuplicateEmbeddingModel(model, store, embedded, reused);
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    futures.add(workers.submit(() -> index(files, next, splitter, deduplicating, store, indexedFiles,
+                            chunks)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Offline indexation failed", e.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+            dimension = store.getSignature().dimension();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Manifest manifest = new Manifest(LuceneEmbeddingStore.INDEX_VERSION, modelId, dimension,
+                checkout.repositoryId(), checkout.rootPath(), indexedFiles.intValue(), chunks.intValue(),
+                Instant.now().toString(), seconds);
+        manifest.write(output);
+        log.info("Indexed {} files ({} chunks, {} near-duplicates reused an embedding) in {} s", manifest.files(),
+                manifest.chunks(), reused.sum(), String.format("%.1f", seconds));
+        return manifest;
+    }
+
+    private void index(List<Path> files, AtomicInteger next, CodeAwareDocumentSplitter splitter, EmbeddingModel model,
+                       LuceneEmbeddingStore<TextSegment> store, LongAdder indexedFiles, LongAdder chunks) {
+        List<TextSegment> batch = new ArrayList<>(batchSize);
+        for (int i = next.getAndIncrement(); i < files.size(); i = next.getAndIncrement()) {
+            Path file = files.get(i);
+            try {
+                Optional<Document> document = DocumentIndexingPipeline.loadDocument(file.toString());
+                if (document.isEmpty()) {
+                    continue;
+                }
+                document.get().metadata().put(IndexTier.METADATA_KEY, IndexTier.EMBEDDED.name());
+                batch.addAll(splitter.split(document.get()));
+                indexedFiles.increment();
+            } catch (RuntimeException e) {
+                log.warn("Skipping {}: {}", file, e.getMessage());
+            }
+            if (batch.size() >= batchSize) {
+                chunks.add(flush(model, store, batch));
+            }
+        }
+        chunks.add(flush(model, store, batch));
+    }
+
+    private static int flush(EmbeddingModel model, LuceneEmbeddingStore<TextSegment> store, List<TextSegment> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Embedding> embeddings = model.embedAll(batch).content();
+        store.addAll(embeddings, batch);
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    /**
+     * The plain text files of the directory, without hidden directories and build outputs.
+     */
+    static List<Path> collectFiles(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+                boolean skipped = !dir.equals(root) && (name.startsWith(".") || SKIPPED_DIRECTORIES.contains(name));
+                return skipped ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && attributes.size() > 0 && SourceFileLoader.isPlainText(file)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.debug("Skipping unreadable {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * What an offline index was built from, for the people and scripts shipping it; the plugin
+     * itself relies on the signature and checkout stored in the index commits.
+     */
+    public record Manifest(String formatVersion, String modelId, int dimension, String repositoryId,
+                           String rootPath, int files, int chunks, String createdAt, double buildSeconds) {
+
+        private static final String FORMAT_VERSION = "format_version";
+        private static final String MODEL_ID = "model_id";
+        private static final String DIMENSION = "dimension";
+        private static final String REPOSITORY_ID = "repository_id";
+        private static final String ROOT_PATH = "root_path";
+        private static final String FILES = "files";
+        private static final String CHUNKS = "chunks";
+        private static final String CREATED_AT = "created_at";
+        private static final String BUILD_SECONDS = "build_seconds";
+
+        /**
+         * @return empty when the directory holds no complete offline index
+         */
+        static Optional<Manifest> read(Path directory) {
+            Path file = directory.resolve(MANIFEST_FILE);
+            if (!Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+                return Optional.of(new Manifest(properties.getProperty(FORMAT_VERSION),
+                        properties.getProperty(MODEL_ID),
+                        Integer.parseInt(properties.getProperty(DIMENSION, "0")),
+                        properties.getProperty(REPOSITORY_ID),
+                        properties.getProperty(ROOT_PATH),
+                        Integer.parseInt(properties.getProperty(FILES, "0")),
+                        Integer.parseInt(properties.getProperty(CHUNKS, "0")),
+                        properties.getProperty(CREATED_AT),
+                        Double.parseDouble(properties.getProperty(BUILD_SECONDS, "0"))));
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read the manifest of {}: {}", directory, e.getMessage());
+                return Optional.empty();
+            }
+        }
+
+        void write(Path directory) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(FORMAT_VERSION, formatVersion);
+            properties.setProperty(MODEL_ID, modelId);
+            properties.setProperty(DIMENSION, Integer.toString(dimension));
+            if (repositoryId != null) {
+                properties.setProperty(REPOSITORY_ID, repositoryId);
+            }
+            if (rootPath != null) {
+                properties.setProperty(ROOT_PATH, rootPath);
+            }
+            properties.setProperty(FILES, Integer.toString(files));
+            properties.setProperty(CHUNKS, Integer.toString(chunks));
+            properties.setProperty(CREATED_AT, createdAt);
+            properties.setProperty(BUILD_SECONDS, Double.toString(buildSeconds));
+            try (Writer writer = Files.newBufferedWriter(directory.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        }
+    }
+}
@@ -14,8 +14,9 @@ import java.nio.file.Path;
 public record RagSource(
         String fileName,      // basename of the source file, e.g. "MyClass.java"
         String displayLabel,  // fqn, "line N", or a short description
-        String absolutePath,  // full path for editor navigation; null for web sources
-        SourceType sourceType
+        String absolutePath,  // full path for editor navigation; null for web sources and commits
+        SourceType sourceType,
+        IndexTier tier        // tier of the indexed file; null for library, commit, workspace and web sources
 ) {
 
     public enum SourceType { INDEX, WORKSPACE, WEB }
@@ -38,6 +39,13 @@ public record RagSource(
                 absolutePath = dir + "/" + name;
             }
         }
+        if (CommitHistory.isCommitChunk(meta)) {
+            // Commit chunks name a commit, not a file to open
+            String commit = meta.getString(CommitHistory.COMMIT_KEY);
+            String fqn = meta.getString(CodeAwareDocumentSplitter.META_FQN);
+            return new RagSource("commit " + commit.substring(0, Math.min(8, commit.length())),
+                    fqn != null ? fqn : commit, null, sourceType, null);
+        }
         String fileName = absolutePath != null ? Path.of(absolutePath).getFileName().toString() : null;
 
         String displayLabel;
@@ -64,7 +72,8 @@ public record RagSource(
                 fileName != null ? fileName : "unknown",
                 displayLabel,
                 absolutePath,
-                sourceType
+                sourceType,
+                sourceType == SourceType.INDEX && !LibrarySources.isLibraryChunk(meta) ? IndexTier.of(meta) : null
         );
     }
 }
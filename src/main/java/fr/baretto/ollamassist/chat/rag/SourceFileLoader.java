@@ -0,0 +1,165 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Loads files for indexing. Source and configuration files are plain text: they are read directly,
+ * at most {@value #MAX_FILE_BYTES} bytes, and decoded without going through the default document
+ * parser (Apache Tika), which only handles the remaining, richer formats.
+ *
+ * <p>A text file is skipped, rather than failed, when it is empty, binary, oversized or minified:
+ * retrying would not change the outcome and its chunks would only add noise to the index.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SourceFileLoader {
+
+    static final int MAX_FILE_BYTES = 1024 * 1024;
+    static final int MINIFIED_MIN_BYTES = 4 * 1024;
+    static final int MINIFIED_AVERAGE_LINE_LENGTH = 300;
+    private static final int BINARY_SAMPLE_BYTES = 8 * 1024;
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "java", "kt", "kts", "groovy", "gradle", "scala", "clj", "py", "rb", "php", "go", "rs", "swift",
+            "c", "h", "cc", "cpp", "hpp", "cs", "m", "js", "jsx", "mjs", "cjs", "ts", "tsx", "vue", "svelte",
+            "css", "scss", "less", "sql", "sh", "bash", "zsh", "ps1", "bat", "lua", "dart", "r", "pl",
+            "xml", "xsd", "json", "yaml", "yml", "toml", "ini", "cfg", "conf", "properties", "env",
+            "md", "markdown", "adoc", "rst", "txt", "csv", "proto", "graphql", "tf", "dockerfile", "mk");
+
+    /**
+     * @return the document, or empty when the file is skipped
+     * @throws UncheckedIOException if a text file cannot be read
+     */
+    public static Optional<Document> load(Path path) {
+        if (!isPlainText(path)) {
+            return Optional.of(FileSystemDocumentLoader.loadDocument(path));
+        }
+        try {
+            return loadText(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + path, e);
+        }
+    }
+
+    /**
+     * Whether the file is read directly rather than parsed, based on its extension, or its name for
+     * extension-less build files such as {@code Dockerfile} or {@code Makefile}.
+     */
+    public static boolean isPlainText(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return TEXT_EXTENSIONS.contains(dot < 0 ? name : name.substring(dot + 1))
+                || "makefile".equals(name);
+    }
+
+    private static Optional<Document> loadText(Path path) throws IOException {
+        if (Files.size(path) > MAX_FILE_BYTES) {
+            log.debug("Skipping {}: larger than {} bytes", path, MAX_FILE_BYTES);
+            return Optional.empty();
+        }
+        byte[] bytes;
+        try (InputStream in = Files.newInputStream(path)) {
+            bytes = in.readNBytes(MAX_FILE_BYTES + 1);
+        }
+        if (bytes.length > MAX_FILE_BYTES) {
+            log.debug("Skipping {}: grew past {} bytes while reading", path, MAX_FILE_BYTES);
+            return Optional.empty();
+        }
+        String text = decode(bytes);
+        if (text == null) {
+            log.debug("Skipping {}: binary content", path);
+            return Optional.empty();
+        }
+        if (text.isBlank()) {
+            return Optional.empty();
+        }
+        if (isMinified(path, text)) {
+            log.debug("Skipping {}: minified", path);
+            return Optional.empty();
+        }
+        Metadata metadata = new Metadata();
+        metadata.put(Document.FILE_NAME, path.getFileName().toString());
+        metadata.put(Document.ABSOLUTE_DIRECTORY_PATH, path.toAbsolutePath().getParent().toString());
+        return Optional.of(Document.from(text, metadata));
+    }
+
+    /**
+     * Decodes with the charset of a byte order mark if there is one, else as UTF-8, falling back to
+     * ISO-8859-1 when the bytes are not valid UTF-8.
+     *
+     * @return the text, or {@code null} when a NUL byte shows the content is binary
+     */
+    static String decode(byte[] bytes) {
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            return new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8);
+        }
+        if (startsWith(bytes, 0xFF, 0xFE)) {
+            return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16LE);
+        }
+        if (startsWith(bytes, 0xFE, 0xFF)) {
+            return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16BE);
+        }
+        for (int i = 0, end = Math.min(bytes.length, BINARY_SAMPLE_BYTES); i < end; i++) {
+            if (bytes[i] == 0) {
+                return null;
+            }
+        }
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Bundled or generated one-liners: a {@code .min.} name, or lines far longer than hand-written code.
+     */
+    static boolean isMinified(Path path, String text) {
+        if (path.getFileName().toString().contains(".min.")) {
+            return true;
+        }
+        if (text.length() < MINIFIED_MIN_BYTES) {
+            return false;
+        }
+        int lines = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return text.length() / lines > MINIFIED_AVERAGE_LINE_LENGTH;
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
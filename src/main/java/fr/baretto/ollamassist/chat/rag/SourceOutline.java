@@ -0,0 +1,468 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Outline of a source file when its language has no PSI in the IDE, or when there is no IDE at
+ * all, as for Java files in an offline index build. Declarations are recognised line by line with
+ * regular expressions. Their extent comes from matching braces, or from indentation for Python.
+ * Strings and comments are skipped while counting.
+ *
+ * <p>This is a heuristic, not a parser. A declaration it cannot delimit is left out, and its
+ * text is chunked with the lines around it. Only classes and their members are outlined: a
+ * function's body is never searched for nested declarations.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class SourceOutline {
+
+    static final int MIN_BLOCK_LINES = 3;
+    private static final int MAX_SIGNATURE_LINES = 12;
+    private static final int PACKAGE_SCAN_LINES = 200;
+
+    private static final Set<String> BRACE_LANGUAGES = Set.of(
+            "java", "kt", "kts", "groovy", "scala", "js", "jsx", "mjs", "cjs", "ts", "tsx", "go", "rs", "swift",
+            "cs", "c", "h", "cc", "cpp", "hpp", "php", "dart");
+    private static final Set<String> INDENT_LANGUAGES = Set.of("py");
+    // Functions declared by their return type rather than a keyword, at any level
+    private static final Set<String> TYPED_FUNCTION_LANGUAGES = Set.of("java", "c", "h", "cc", "cpp", "hpp", "cs", "dart");
+    // Methods declared by their name alone, inside a class body
+    private static final Set<String> BARE_METHOD_LANGUAGES = Set.of(
+            "js", "jsx", "mjs", "cjs", "ts", "tsx", "swift", "php", "groovy");
+    private static final Set<String> ARROW_LANGUAGES = Set.of("js", "jsx", "mjs", "cjs", "ts", "tsx");
+    // Languages where 'x' is a string; elsewhere it is a character literal or a Rust lifetime
+    private static final Set<String> SINGLE_QUOTE_STRING_LANGUAGES = Set.of(
+            "js", "jsx", "mjs", "cjs", "ts", "tsx", "php", "dart", "groovy");
+    private static final Set<String> CONTAINER_KEYWORDS = Set.of(
+            "class", "interface", "object", "trait", "struct", "impl", "enum", "record", "namespace", "module", "mod");
+    private static final Set<String> NOT_A_NAME = Set.of(
+            "if", "for", "foreach", "while", "switch", "catch", "return", "else", "do", "try", "new", "throw",
+            "sizeof", "synchronized", "using", "lock", "when", "with", "fixed", "checked", "unchecked",
+            "function", "super", "this", "await", "yield", "case", "delete", "typeof");
+
+    private static final Pattern KEYWORD_DECLARATION = Pattern.compile(
+            "^\\s*(?:@[\\w.]+(?:\\([^)]*\\))?\\s+)*"
+                    + "(?:(?:public|private|protected|internal|export|default|static|abstract|final|open|data"
+                    + "|sealed|inner|enum|annotation|value|inline|suspend|override|operator|infix|tailrec|async"
+                    + "|pub(?:\\([^)]*\\))?|unsafe|extern|const|virtual|partial|readonly|declare|case|implicit"
+                    + "|lazy|companion)\\s+)*"
+                    + "(class|interface|object|trait|struct|impl|enum|record|namespace|module|mod|fun|func|function"
+                    + "|fn|def)\\b\\*?"
+                    + "\\s*(?:\\([^)]*\\)\\s*)?(?:<[^>{]*>\\s*)?([A-Za-z_$][\\w$.]*)?");
+    private static final Pattern GO_TYPE = Pattern.compile("^\\s*type\\s+([A-Za-z_]\\w*)\\s+(?:struct|interface)\\b");
+    private static final Pattern BARE_FUNCTION = Pattern.compile(
+            "^\\s*((?:[\\w$<>\\[\\],.*&?:~]+\\s+)*?)[*&]?\\s*((?:[\\w$~]+::)*[A-Za-z_$~#][\\w$]*)"
+                    + "\\s*(?:<[^>(]*>\\s*)?\\([^;]*$");
+    private static final Pattern ARROW_FUNCTION = Pattern.compile(
+            "^\\s*(?:export\\s+)?(?:default\\s+)?(?:const|let|var)\\s+([A-Za-z_$][\\w$]*)\\s*(?::[^=]+)?="
+                    + "\\s*(?:async\\s+)?(?:function\\b|\\([^)]*\\)\\s*(?::[^=]+)?=>|[A-Za-z_$][\\w$]*\\s*=>)");
+    private static final Pattern PYTHON_DECLARATION = Pattern.compile("^\\s*(?:async\\s+)?(def|class)\\s+([A-Za-z_]\\w*)");
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)");
+    private static final Pattern NAMESPACE_STATEMENT = Pattern.compile("^\\s*namespace\\s+([\\w.\\\\]+)\\s*;");
+
+    static boolean supports(String fileName) {
+        String extension = extension(fileName);
+        return BRACE_LANGUAGES.contains(extension) || INDENT_LANGUAGES.contains(extension);
+    }
+
+    /**
+     * @return the top-level declarations, empty when the language is not supported or none is found
+     */
+    static List<CodeBlock> parse(String fileName, LineIndex lines) {
+        String extension = extension(fileName);
+        List<CodeBlock> blocks;
+        if (BRACE_LANGUAGES.contains(extension)) {
+            blocks = parseBraces(extension, lines);
+        } else if (INDENT_LANGUAGES.contains(extension)) {
+            blocks = parseIndented(lines);
+        } else {
+            return List.of();
+        }
+        return withLeadingComments(blocks, lines, 0, INDENT_LANGUAGES.contains(extension));
+    }
+
+    /**
+     * Package or namespace statement, used as the prefix of the fully qualified names of the file.
+     *
+     * @return the package, or an empty string when the file declares none
+     */
+    static String packageName(LineIndex lines) {
+        for (int line = 0; line < Math.min(lines.lineCount(), PACKAGE_SCAN_LINES); line++) {
+            String text = lines.text(line, line + 1);
+            Matcher matcher = PACKAGE.matcher(text);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+            matcher = NAMESPACE_STATEMENT.matcher(text);
+            if (matcher.find()) {
+                return matcher.group(1).replace('\\', '.');
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Line comment marker used to prefix a chunk with its fully qualified name.
+     */
+    static String commentPrefix(String fileName) {
+        return INDENT_LANGUAGES.contains(extension(fileName)) ? "#" : "//";
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class OpenBlock {
+        private final String name;
+        private final boolean container;
+        private final int start;
+        private final int level;
+        private final List<CodeBlock> children = new ArrayList<>();
+        private int lastLine;
+
+        private OpenBlock(String name, boolean container, int start, int level) {
+            this.name = name;
+            this.container = container;
+            this.start = start;
+            this.level = level;
+            this.lastLine = start;
+        }
+    }
+
+    private record Declaration(String name, boolean container) {
+    }
+
+    private enum Scan {CODE, BLOCK_COMMENT, STRING, MULTILINE_STRING}
+
+    private static List<CodeBlock> parseBraces(String extension, LineIndex lines) {
+        boolean singleQuoteStrings = SINGLE_QUOTE_STRING_LANGUAGES.contains(extension);
+        CharSequence text = lines.content();
+        List<CodeBlock> top = new ArrayList<>();
+        Deque<OpenBlock> open = new ArrayDeque<>();
+        OpenBlock pending = null;
+        Scan state = Scan.CODE;
+        char quote = 0;
+        int depth = 0;
+        int parens = 0;
+
+        for (int line = 0; line < lines.lineCount(); line++) {
+            int from = lines.lineStart(line);
+            int to = lines.lineEnd(line);
+            if (state == Scan.CODE && (open.isEmpty() || open.peek().container)) {
+                Declaration declaration = braceDeclaration(extension, lines.text(line, line + 1), !open.isEmpty());
+                if (declaration != null) {
+                    pending = new OpenBlock(declaration.name(), declaration.container(), line, depth);
+                }
+            }
+
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                char next = i + 1 < to ? text.charAt(i + 1) : 0;
+                switch (state) {
+                    case BLOCK_COMMENT -> {
+                        if (c == '*' && next == '/') {
+                            state = Scan.CODE;
+                            i++;
+                        }
+                    }
+                    case STRING -> {
+                        if (c == '\\') {
+                            i++;
+                        } else if (c == quote) {
+                            state = Scan.CODE;
+                        }
+                    }
+                    case MULTILINE_STRING -> {
+                        if (c == '\\' && quote == '`') {
+                            i++;
+                        } else if (quote == '`' ? c == '`' : startsWith(text, i, "\"\"\"")) {
+                            state = Scan.CODE;
+                            i += quote == '`' ? 0 : 2;
+                        }
+                    }
+                    case CODE -> {
+                        if (c == '/' && next == '/') {
+                            i = to;
+                        } else if (c == '/' && next == '*') {
+                            state = Scan.BLOCK_COMMENT;
+                            i++;
+                        } else if (c == '"' && startsWith(text, i, "\"\"\"")) {
+                            state = Scan.MULTILINE_STRING;
+                            quote = '"';
+                            i += 2;
+                        } else if (c == '"' || (c == '\'' && singleQuoteStrings)) {
+                            state = Scan.STRING;
+                            quote = c;
+                        } else if (c == '`') {
+                            state = Scan.MULTILINE_STRING;
+                            quote = '`';
+                        } else if (c == '\'') {
+                            i = skipCharLiteral(text, i, to);
+                        } else if (c == '(') {
+                            parens++;
+                        } else if (c == ')') {
+                            parens = Math.max(0, parens - 1);
+                        } else if (c == '{') {
+                            if (pending != null && pending.level == depth) {
+                                open.push(pending);
+                                pending = null;
+                            }
+                            depth++;
+                        } else if (c == '}') {
+                            depth = Math.max(0, depth - 1);
+                            if (!open.isEmpty() && open.peek().level == depth) {
+                                OpenBlock block = open.pop();
+                                block.lastLine = line;
+                                close(block, open, top);
+                            }
+                        } else if (c == ';' && pending != null && pending.level == depth && parens == 0) {
+                            pending = null;
+                        }
+                    }
+                }
+            }
+
+            if (state == Scan.STRING) {
+                state = Scan.CODE;
+            }
+            if (pending != null && state == Scan.CODE && parens == 0 && !signatureContinues(lines, line)) {
+                pending = null;
+            }
+            if (pending != null && line - pending.start >= MAX_SIGNATURE_LINES) {
+                pending = null;
+            }
+        }
+        while (!open.isEmpty()) {
+            OpenBlock block = open.pop();
+            block.lastLine = lines.lineCount() - 1;
+            close(block, open, top);
+        }
+        return top;
+    }
+
+    private static Declaration braceDeclaration(String extension, String line, boolean inContainer) {
+        Matcher matcher = KEYWORD_DECLARATION.matcher(line);
+        if (matcher.find()) {
+            String keyword = matcher.group(1);
+            String name = matcher.group(2) != null ? matcher.group(2) : unnamed(keyword, line);
+            return new Declaration(name.substring(name.lastIndexOf('.') + 1), CONTAINER_KEYWORDS.contains(keyword));
+        }
+        if ("go".equals(extension)) {
+            matcher = GO_TYPE.matcher(line);
+            return matcher.find() ? new Declaration(matcher.group(1), true) : null;
+        }
+        if (ARROW_LANGUAGES.contains(extension)) {
+            matcher = ARROW_FUNCTION.matcher(line);
+            if (matcher.find()) {
+                return new Declaration(matcher.group(1), false);
+            }
+        }
+        if (TYPED_FUNCTION_LANGUAGES.contains(extension) || (inContainer && BARE_METHOD_LANGUAGES.contains(extension))) {
+            matcher = BARE_FUNCTION.matcher(line);
+            if (matcher.find()) {
+                String name = matcher.group(2).substring(matcher.group(2).lastIndexOf(':') + 1);
+                boolean typed = !matcher.group(1).isBlank();
+                if (NOT_A_NAME.contains(name) || (!inContainer && !typed) || containsWord(matcher.group(1), NOT_A_NAME)) {
+                    return null;
+                }
+                return new Declaration(name, false);
+            }
+        }
+        return null;
+    }
+
+    private static String unnamed(String keyword, String line) {
+        return "object".equals(keyword) && line.contains("companion") ? "Companion" : keyword;
+    }
+
+    /**
+     * Whether the statement of a pending declaration goes on past this line: the line ends on an
+     * operator, or the next one opens the body or continues the signature.
+     */
+    private static boolean signatureContinues(LineIndex lines, int line) {
+        String current = lines.text(line, line + 1).strip();
+        if (current.endsWith(",") || current.endsWith(":") || current.endsWith("=") || current.endsWith("->")
+                || current.endsWith("=>") || current.endsWith("(") || current.endsWith("<")) {
+            return true;
+        }
+        for (int next = line + 1; next < lines.lineCount(); next++) {
+            String text = lines.text(next, next + 1).strip();
+            if (!text.isEmpty()) {
+                return text.startsWith("{") || text.startsWith(":") || text.startsWith(".") || text.startsWith("->")
+                        || text.startsWith("=>") || text.startsWith("where") || text.startsWith("throws")
+                        || text.startsWith("extends") || text.startsWith("implements") || text.startsWith("with");
+            }
+        }
+        return false;
+    }
+
+    private static int skipCharLiteral(CharSequence text, int quote, int lineEnd) {
+        if (quote + 2 < lineEnd && text.charAt(quote + 1) != '\\' && text.charAt(quote + 2) == '\'') {
+            return quote + 2;
+        }
+        if (quote + 1 < lineEnd && text.charAt(quote + 1) == '\\') {
+            for (int i = quote + 2; i < Math.min(lineEnd, quote + 12); i++) {
+                if (text.charAt(i) == '\'') {
+                    return i;
+                }
+            }
+        }
+        // A Rust lifetime or a stray quote
+        return quote;
+    }
+
+    private static List<CodeBlock> parseIndented(LineIndex lines) {
+        List<CodeBlock> top = new ArrayList<>();
+        Deque<OpenBlock> open = new ArrayDeque<>();
+        String tripleQuote = null;
+        int parens = 0;
+
+        for (int line = 0; line < lines.lineCount(); line++) {
+            String text = lines.text(line, line + 1);
+            boolean continuation = parens > 0 || tripleQuote != null;
+            String stripped = text.strip();
+            boolean code = !stripped.isEmpty() && !stripped.startsWith("#");
+            if (!continuation && code) {
+                int indent = indentOf(text);
+                while (!open.isEmpty() && indent <= open.peek().level) {
+                    close(open.pop(), open, top);
+                }
+                if (open.isEmpty() || open.peek().container) {
+                    Matcher matcher = PYTHON_DECLARATION.matcher(text);
+                    if (matcher.find()) {
+                        open.push(new OpenBlock(matcher.group(2), "class".equals(matcher.group(1)), line, indent));
+                    }
+                }
+            }
+            if (code || continuation) {
+                for (OpenBlock block : open) {
+                    block.lastLine = line;
+                }
+            }
+
+            for (int i = 0; i < text.length(); i++) {
+                if (tripleQuote != null) {
+                    if (text.startsWith(tripleQuote, i)) {
+                        tripleQuote = null;
+                        i += 2;
+                    }
+                    continue;
+                }
+                char c = text.charAt(i);
+                if (c == '#') {
+                    break;
+                } else if (text.startsWith("\"\"\"", i) || text.startsWith("'''", i)) {
+                    tripleQuote = text.substring(i, i + 3);
+                    i += 2;
+                } else if (c == '"' || c == '\'') {
+                    i = skipString(text, i);
+                } else if (c == '(' || c == '[' || c == '{') {
+                    parens++;
+                } else if (c == ')' || c == ']' || c == '}') {
+                    parens = Math.max(0, parens - 1);
+                }
+            }
+        }
+        while (!open.isEmpty()) {
+            close(open.pop(), open, top);
+        }
+        return top;
+    }
+
+    private static int skipString(String text, int quote) {
+        char delimiter = text.charAt(quote);
+        for (int i = quote + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == delimiter) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int indentOf(String line) {
+        int indent = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                indent++;
+            } else if (c == '\t') {
+                indent = (indent / 8 + 1) * 8;
+            } else {
+                break;
+            }
+        }
+        return indent;
+    }
+
+    /**
+     * Keeps the block if it is large enough to stand alone; smaller ones stay part of the enclosing text.
+     */
+    private static void close(OpenBlock block, Deque<OpenBlock> open, List<CodeBlock> top) {
+        int end = block.lastLine + 1;
+        if (end - block.start < MIN_BLOCK_LINES && block.children.isEmpty()) {
+            return;
+        }
+        CodeBlock closed = new CodeBlock(block.name, block.container || !block.children.isEmpty(),
+                block.start, block.start, end, List.copyOf(block.children));
+        (open.isEmpty() ? top : open.peek().children).add(closed);
+    }
+
+    private static List<CodeBlock> withLeadingComments(List<CodeBlock> blocks, LineIndex lines, int floor,
+                                                       boolean python) {
+        List<CodeBlock> result = new ArrayList<>(blocks.size());
+        int previousEnd = floor;
+        for (CodeBlock block : blocks) {
+            int start = block.startLine();
+            while (start > previousEnd && isLeadingLine(lines.text(start - 1, start).strip(), python)) {
+                start--;
+            }
+            List<CodeBlock> children = withLeadingComments(block.children(), lines, block.declarationLine() + 1, python);
+            result.add(new CodeBlock(block.name(), block.container(), start, block.declarationLine(), block.endLine(),
+                    children));
+            previousEnd = block.endLine();
+        }
+        return result;
+    }
+
+    private static boolean isLeadingLine(String line, boolean python) {
+        if (python) {
+            return line.startsWith("#") || line.startsWith("@");
+        }
+        return line.startsWith("//") || line.startsWith("/*") || line.startsWith("*") || line.startsWith("@")
+                || line.startsWith("#[");
+    }
+
+    private static boolean startsWith(CharSequence text, int offset, String prefix) {
+        if (offset + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsWord(String text, Set<String> words) {
+        for (String word : text.split("\\s+")) {
+            if (words.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Locale;
+
+/**
+ * Normalised lookup keys of the symbol index. {@code fr.baretto.Foo#bar}, {@code Foo.bar} and
+ * {@code foo.bar()} are all written and looked up the same way: lower case, {@code .} as the only
+ * separator, no call parentheses.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SymbolKeys {
+
+    private static final String CALL_SUFFIX = "()";
+
+    public static String normalize(String identifier) {
+        String key = identifier.trim();
+        if (key.endsWith(CALL_SUFFIX)) {
+            key = key.substring(0, key.length() - CALL_SUFFIX.length());
+        }
+        return key.replace('#', '.').toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Last segment: {@code bar} for {@code fr.baretto.Foo#bar}.
+     */
+    public static String simpleName(String key) {
+        int dot = key.lastIndexOf('.');
+        return dot < 0 ? key : key.substring(dot + 1);
+    }
+
+    /**
+     * Last two segments, {@code foo.bar} for {@code fr.baretto.Foo#bar}; null for a single segment.
+     */
+    public static String qualifiedName(String key) {
+        int last = key.lastIndexOf('.');
+        if (last < 0) {
+            return null;
+        }
+        int previous = key.lastIndexOf('.', last - 1);
+        return key.substring(previous + 1);
+    }
+}
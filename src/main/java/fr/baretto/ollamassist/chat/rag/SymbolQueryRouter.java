@@ -0,0 +1,255 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves questions that name a class, method or file from the exact symbol index of the
+ * {@link LuceneEmbeddingStore}, and falls back to the {@link HybridRetriever} for the rest.
+ *
+ * <p>Identifier-like tokens ({@code LuceneEmbeddingStore.knnSearch}, {@code MAX_RETRIES},
+ * {@code load()} or anything in backticks) are looked up first. When they fill every result slot,
+ * no embedding is computed at all; otherwise the remaining slots are filled from hybrid search.
+ * Latency and hit rate are tracked per {@link Route} and logged every {@value #LOG_INTERVAL} queries.
+ * Symbols of files with unsaved changes are looked up in their {@link UnsavedBuffers} instead.
+ * Identifiers that name library classes get their sources indexed by {@link LibrarySourceIndex},
+ * and are looked up in the library indexes too.
+ *
+ * <p>Commits found by hybrid search are kept on top of the result slots, within the budget of
+ * {@link CommitHistory}; a question about history ("why was {@code load()} changed") goes through
+ * hybrid search for them even when symbols fill every slot.
+ */
+@Slf4j
+public class SymbolQueryRouter implements ContentRetriever {
+
+    private static final int MAX_RESULTS = 3;
+    private static final int LOG_INTERVAL = 50;
+    private static final Pattern BACKTICKED = Pattern.compile("`([^`\\s]+)`");
+    private static final Pattern CANDIDATE = Pattern.compile(
+            "(?<![\\w$.#])[A-Za-z_$][\\w$]*(?:[.#][A-Za-z_$][\\w$]*)*(?:\\(\\))?");
+
+    public enum Route {
+        /** Every result came from the symbol index. */
+        SYMBOL,
+        /** Symbol hits first, completed by hybrid search. */
+        MIXED,
+        /** No identifier in the query, or none found in the symbol index. */
+        HYBRID
+    }
+
+    /**
+     * @param queries        queries served by the route
+     * @param hitRate        share of those queries that returned at least one result
+     * @param meanLatencyMs  mean retrieval time
+     * @param maxLatencyMs   slowest retrieval
+     */
+    public record RouteStats(long queries, double hitRate, double meanLatencyMs, double maxLatencyMs) {
+    }
+
+    private final LuceneEmbeddingStore<TextSegment> store;
+    private final ContentRetriever fallback;
+    private final Supplier<UnsavedBuffers> unsavedBuffers;
+    private final Supplier<LibrarySources> libraries;
+    private final Consumer<String> requestLibraries;
+    private final Map<Route, RouteMetrics> metrics = new EnumMap<>(Route.class);
+    private final AtomicLong totalQueries = new AtomicLong();
+
+    public SymbolQueryRouter(LuceneEmbeddingStore<TextSegment> store, ContentRetriever fallback) {
+        this(builder(store, fallback));
+    }
+
+    private SymbolQueryRouter(Builder builder) {
+        this.store = builder.store;
+        this.fallback = builder.fallback;
+        this.unsavedBuffers = builder.unsavedBuffers;
+        this.libraries = builder.libraries;
+        this.requestLibraries = builder.requestLibraries;
+        for (Route route : Route.values()) {
+            metrics.put(route, new RouteMetrics());
+        }
+    }
+
+    public static Builder builder(LuceneEmbeddingStore<TextSegment> store, ContentRetriever fallback) {
+        return new Builder(store, fallback);
+    }
+
+    /**
+     * Optional sources of a router; each defaults to none.
+     */
+    public static final class Builder {
+        private final LuceneEmbeddingStore<TextSegment> store;
+        private final ContentRetriever fallback;
+        private Supplier<UnsavedBuffers> unsavedBuffers = () -> UnsavedBuffers.EMPTY;
+        private Supplier<LibrarySources> libraries = () -> LibrarySources.EMPTY;
+        private Consumer<String> requestLibraries = text -> {
+        };
+
+        private Builder(LuceneEmbeddingStore<TextSegment> store, ContentRetriever fallback) {
+            this.store = store;
+            this.fallback = fallback;
+        }
+
+        public Builder unsavedBuffers(Supplier<UnsavedBuffers> unsavedBuffers) {
+            this.unsavedBuffers = unsavedBuffers;
+            return this;
+        }
+
+        /**
+         * @param libraries library indexes searched with the project, see {@link LibrarySourceIndex#sources}
+         */
+        public Builder libraries(Supplier<LibrarySources> libraries) {
+            this.libraries = libraries;
+            return this;
+        }
+
+        /**
+         * @param requestLibraries receives every query, see {@link LibrarySourceIndex#request}
+         */
+        public Builder requestLibraries(Consumer<String> requestLibraries) {
+            this.requestLibraries = requestLibraries;
+            return this;
+        }
+
+        public SymbolQueryRouter build() {
+            return new SymbolQueryRouter(this);
+        }
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long start = System.nanoTime();
+        List<String> identifiers = extractIdentifiers(query.text());
+        List<Content> results = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        if (!identifiers.isEmpty()) {
+            requestLibraries.accept(query.text());
+            UnsavedBuffers unsaved = unsavedBuffers.get();
+            LibrarySources librarySources = libraries.get();
+            List<EmbeddingMatch<TextSegment>> matches = librarySources.merge(
+                    unsaved.merge(store.symbolSearch(identifiers, MAX_RESULTS),
+                            unsaved.symbolSearch(identifiers, MAX_RESULTS), MAX_RESULTS),
+                    librarySources.symbolSearch(identifiers, MAX_RESULTS), MAX_RESULTS);
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                if (seen.add(match.embedded().text())) {
+                    results.add(Content.from(match.embedded()));
+                }
+            }
+        }
+        Route route = results.size() >= MAX_RESULTS ? Route.SYMBOL : results.isEmpty() ? Route.HYBRID : Route.MIXED;
+        if (route != Route.SYMBOL || CommitHistory.asksAboutHistory(query.text())) {
+            List<Content> commits = new ArrayList<>();
+            for (Content content : fallback.retrieve(query)) {
+                if (CommitHistory.isCommitChunk(content.textSegment().metadata())) {
+                    commits.add(content);
+                } else if (results.size() < MAX_RESULTS && seen.add(content.textSegment().text())) {
+                    results.add(content);
+                }
+            }
+            results.addAll(commits);
+        }
+        record(route, System.nanoTime() - start, !results.isEmpty());
+        log.debug("Query routed to {} ({} identifiers, {} results)", route, identifiers.size(), results.size());
+        return results;
+    }
+
+    /**
+     * Tokens that look like code rather than prose: camelCase or PascalCase compounds,
+     * {@code snake_case}, dotted paths with a capitalised segment, calls and backticked words.
+     */
+    static List<String> extractIdentifiers(String text) {
+        Set<String> identifiers = new LinkedHashSet<>();
+        if (text == null) {
+            return List.of();
+        }
+        Matcher backticked = BACKTICKED.matcher(text);
+        while (backticked.find()) {
+            identifiers.add(backticked.group(1));
+        }
+        Matcher candidates = CANDIDATE.matcher(text);
+        while (candidates.find()) {
+            String candidate = candidates.group();
+            if (looksLikeCode(candidate)) {
+                identifiers.add(candidate);
+            }
+        }
+        return List.copyOf(identifiers);
+    }
+
+    private static boolean looksLikeCode(String token) {
+        if (token.endsWith("()")) {
+            return true;
+        }
+        for (String segment : token.split("[.#]")) {
+            if (isCompound(segment)) {
+                return true;
+            }
+        }
+        return (token.indexOf('.') > 0 || token.indexOf('#') > 0) && Character.isUpperCase(token.charAt(0));
+    }
+
+    private static boolean isCompound(String segment) {
+        if (segment.length() > 1 && segment.indexOf('_') > 0 && segment.indexOf('_') < segment.length() - 1) {
+            return true;
+        }
+        for (int i = 1; i < segment.length(); i++) {
+            if (Character.isLowerCase(segment.charAt(i - 1)) && Character.isUpperCase(segment.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<Route, RouteStats> stats() {
+        Map<Route, RouteStats> snapshot = new EnumMap<>(Route.class);
+        metrics.forEach((route, routeMetrics) -> snapshot.put(route, routeMetrics.snapshot()));
+        return snapshot;
+    }
+
+    private void record(Route route, long elapsedNanos, boolean hit) {
+        metrics.get(route).record(elapsedNanos, hit);
+        if (totalQueries.incrementAndGet() % LOG_INTERVAL == 0) {
+            log.info("Retrieval routes: {}", stats());
+        }
+    }
+
+    private static final class RouteMetrics {
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long elapsedNanos, boolean hit) {
+            queries.increment();
+            if (hit) {
+                hits.increment();
+            }
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        }
+
+        RouteStats snapshot() {
+            long count = queries.sum();
+            if (count == 0) {
+                return new RouteStats(0, 0, 0, 0);
+            }
+            return new RouteStats(count, (double) hits.sum() / count, totalNanos.sum() / 1e6 / count, maxNanos.get() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.setting.RAGSettings;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes in memory the files open with unsaved changes, so that chat and completion see the code
+ * as it is being written rather than as it was last saved and indexed. Searches merge these
+ * {@link UnsavedBuffers} with the knowledge index; a buffer is dropped once the file is saved and
+ * re-indexed, or its changes are undone.
+ *
+ * <p>A buffer is indexed when typing pauses for {@value #QUIET_MILLIS} ms, and at least every
+ * {@value #MAX_WAIT_MILLIS} ms while typing goes on. Embedding calls are bounded by that debounce,
+ * by indexing one buffer at a time, by reusing the vectors of the chunks an edit left unchanged,
+ * and by the cap of the {@link IndexingCoordinator}. Memory is bounded to the {@value #MAX_BUFFERS}
+ * most recently edited files and {@value #MAX_BYTES} bytes of text and vectors.
+ */
+@Slf4j
+public class UnsavedBufferIndex implements Disposable {
+
+    static final long QUIET_MILLIS = 1500;
+    static final long MAX_WAIT_MILLIS = 10_000;
+    static final int MAX_BUFFERS = 16;
+    static final long MAX_BYTES = 8L * 1024 * 1024;
+
+    private final Project project;
+    private final Debouncer<String> debouncer = new Debouncer<>(QUIET_MILLIS, MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+    // Least recently indexed first
+    private final LinkedHashMap<String, UnsavedBuffers.Buffer> buffers = new LinkedHashMap<>();
+    private volatile UnsavedBuffers view = UnsavedBuffers.EMPTY;
+
+    public UnsavedBufferIndex(Project project) {
+        this.project = project;
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                handleDocumentChanged(event.getDocument());
+            }
+        }, this);
+    }
+
+    /**
+     * The unsaved buffers to search with the live index; empty once the index was swapped for one
+     * of another embedding model, until the buffers are indexed again.
+     */
+    public UnsavedBuffers buffers() {
+        UnsavedBuffers current = view;
+        if (current.isEmpty() || current.modelId().equals(liveModelId())) {
+            return current;
+        }
+        return UnsavedBuffers.EMPTY;
+    }
+
+    private void handleDocumentChanged(com.intellij.openapi.editor.Document document) {
+        if (!isEnabled()) {
+            return;
+        }
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file == null || !file.isInLocalFileSystem()
+                || !ProjectFileIndex.getInstance(project).isInContent(file)
+                || !project.getService(FilesUtil.class).shouldBeIndexed(file)) {
+            return;
+        }
+        debouncer.debounce(file.getPath(), () -> refresh(file, document));
+    }
+
+    private static boolean isEnabled() {
+        return OllamAssistSettings.getInstance().ragEnabled() && RAGSettings.getInstance().isUnsavedBufferIndexing();
+    }
+
+    private record Edit(String text, boolean unsaved) {
+    }
+
+    private void refresh(VirtualFile file, com.intellij.openapi.editor.Document document) {
+        String path = file.getPath();
+        try {
+            Edit edit = ReadAction.compute(() -> new Edit(document.getText(),
+                    FileDocumentManager.getInstance().isDocumentUnsaved(document)));
+            if (!edit.unsaved() || edit.text().isBlank() || edit.text().length() > SourceFileLoader.MAX_FILE_BYTES) {
+                discard(path);
+                return;
+            }
+            String modelId = liveModelId();
+            String hash = ContentHash.sha256(edit.text());
+            UnsavedBuffers.Buffer previous = previous(path, modelId);
+            if (previous != null && previous.contentHash().equals(hash)) {
+                return;
+            }
+            Document doc = Document.from(edit.text(), metadata(file, hash));
+            List<TextSegment> segments = new CodeAwareDocumentSplitter(project, DocumentIngestFactory.chunkTokenizer(modelId))
+                    .split(doc);
+            IndexingCoordinator coordinator = IndexingCoordinator.getInstance();
+            List<Embedding> embeddings = embed(segments, previous,
+                    coordinator.limit(coordinator.embeddingModel(modelId)));
+            put(modelId, new UnsavedBuffers.Buffer(path, hash, segments, embeddings));
+        } catch (Exception e) {
+            log.debug("Failed to index the unsaved buffer of {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static Metadata metadata(VirtualFile file, String hash) {
+        Metadata metadata = new Metadata();
+        metadata.put(Document.FILE_NAME, file.getName());
+        metadata.put(Document.ABSOLUTE_DIRECTORY_PATH, file.getParent().getPath());
+        metadata.put(ContentHash.METADATA_KEY, hash);
+        return metadata;
+    }
+
+    /**
+     * Embeds the chunks, reusing the vectors of the chunks of the previous version of the buffer
+     * that are unchanged: an edit usually touches one or two chunks of the file.
+     */
+    static List<Embedding> embed(List<TextSegment> segments, UnsavedBuffers.Buffer previous, EmbeddingModel model) {
+        Map<String, Embedding> known = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.segments().size(); i++) {
+                known.put(previous.segments().get(i).text(), previous.embeddings().get(i));
+            }
+        }
+        List<TextSegment> toEmbed = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            if (!known.containsKey(segment.text())) {
+                toEmbed.add(segment);
+            }
+        }
+        if (!toEmbed.isEmpty()) {
+            List<Embedding> embedded = model.embedAll(toEmbed).content();
+            for (int i = 0; i < toEmbed.size(); i++) {
+                known.put(toEmbed.get(i).text(), embedded.get(i));
+            }
+        }
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            embeddings.add(known.get(segment.text()));
+        }
+        return embeddings;
+    }
+
+    private synchronized UnsavedBuffers.Buffer previous(String path, String modelId) {
+        return modelId.equals(view.modelId()) ? buffers.get(path) : null;
+    }
+
+    /**
+     * Adds the buffer as the most recent one, drops the buffers of another embedding model, then the
+     * least recent ones beyond the bounds.
+     */
+    private synchronized void put(String modelId, UnsavedBuffers.Buffer buffer) {
+        if (!modelId.equals(view.modelId())) {
+            buffers.clear();
+        }
+        buffers.remove(buffer.path());
+        buffers.put(buffer.path(), buffer);
+        long bytes = buffers.values().stream().mapToLong(UnsavedBuffers.Buffer::bytes).sum();
+        var eldest = buffers.values().iterator();
+        while (buffers.size() > 1 && (buffers.size() > MAX_BUFFERS || bytes > MAX_BYTES)) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+        view = new UnsavedBuffers(modelId, buffers.values());
+    }
+
+    /**
+     * Called when a file was indexed from disk: its buffer is dropped if it held the same content.
+     * A buffer edited since is kept, it is still newer than the index.
+     */
+    public synchronized void indexed(String path, String contentHash) {
+        UnsavedBuffers.Buffer buffer = buffers.get(normalize(path));
+        if (buffer != null && buffer.contentHash().equals(contentHash)) {
+            discard(path);
+        }
+    }
+
+    public synchronized void discard(String path) {
+        if (buffers.remove(normalize(path)) != null) {
+            view = buffers.isEmpty() ? UnsavedBuffers.EMPTY : new UnsavedBuffers(view.modelId(), buffers.values());
+        }
+    }
+
+    private static String normalize(String path) {
+        return path.replace('\\', '/');
+    }
+
+    private String liveModelId() {
+        return project.getService(LuceneEmbeddingStore.class).getSignature().modelId();
+    }
+
+    /**
+     * @return the index of the project, or null outside a running IDE
+     */
+    static UnsavedBufferIndex getInstance(Project project) {
+        return ApplicationManager.getApplication() == null ? null : project.getService(UnsavedBufferIndex.class);
+    }
+
+    @Override
+    public void dispose() {
+        debouncer.shutdown();
+    }
+}
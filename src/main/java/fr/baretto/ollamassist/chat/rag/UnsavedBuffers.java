@@ -0,0 +1,228 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable view of the unsaved files indexed in memory by {@link UnsavedBufferIndex}, searched next
+ * to the knowledge index. The indexed chunks of these files are stale: {@link #merge} replaces them
+ * with the unsaved ones.
+ *
+ * <p>Scores are on the scale of {@link LuceneEmbeddingStore} so that both result lists merge by
+ * score: cosine relevance for vectors, BM25 for keywords (with the statistics of the unsaved chunks)
+ * and the same boosts for symbols.
+ */
+@Slf4j
+public final class UnsavedBuffers {
+
+    public static final UnsavedBuffers EMPTY = new UnsavedBuffers(null, List.of());
+
+    private static final String CONTENT = "content";
+    private static final String CHUNK = "chunk";
+    private static final int BM25_MAX_CLAUSES = 64;
+    private static final String JAVA_EXTENSION = ".java";
+
+    /**
+     * The chunks of a file as its buffer was when it was indexed.
+     *
+     * @param path        file path with {@code /} separators, as {@link LuceneEmbeddingStore#filePathFromId} returns
+     * @param contentHash {@link ContentHash} of the buffer text
+     */
+    record Buffer(String path, String contentHash, List<TextSegment> segments, List<Embedding> embeddings) {
+
+        /**
+         * Heap taken by the text and vectors, the part that grows with the buffer.
+         */
+        long bytes() {
+            long bytes = 0;
+            for (TextSegment segment : segments) {
+                bytes += 2L * segment.text().length();
+            }
+            for (Embedding embedding : embeddings) {
+                bytes += 4L * embedding.dimension();
+            }
+            return bytes;
+        }
+    }
+
+    private record Chunk(String id, TextSegment segment, Embedding embedding) {
+    }
+
+    private final String modelId;
+    private final Map<String, Buffer> buffers = new LinkedHashMap<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Analyzer analyzer = new CodeAnalyzer();
+    private final DirectoryReader keywords;
+
+    /**
+     * @param modelId embedding model all the vectors come from
+     */
+    UnsavedBuffers(String modelId, Collection<Buffer> buffers) {
+        this.modelId = modelId;
+        for (Buffer buffer : buffers) {
+            this.buffers.put(buffer.path(), buffer);
+            for (int i = 0; i < buffer.segments().size(); i++) {
+                chunks.add(new Chunk(buffer.path() + UUID.randomUUID(), buffer.segments().get(i),
+                        buffer.embeddings().get(i)));
+            }
+        }
+        this.keywords = chunks.isEmpty() ? null : keywordIndex();
+    }
+
+    /**
+     * Heap-only index: its reader holds no file and is left to the garbage collector with the view.
+     */
+    private DirectoryReader keywordIndex() {
+        ByteBuffersDirectory directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            for (int i = 0; i < chunks.size(); i++) {
+                Document doc = new Document();
+                doc.add(new TextField(CONTENT, chunks.get(i).segment().text(), Field.Store.NO));
+                doc.add(new StoredField(CHUNK, i));
+                writer.addDocument(doc);
+            }
+            writer.commit();
+            return DirectoryReader.open(directory);
+        } catch (IOException e) {
+            log.debug("Keyword index of unsaved buffers failed, they are found by vector only: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public boolean isEmpty() {
+        return buffers.isEmpty();
+    }
+
+    String modelId() {
+        return modelId;
+    }
+
+    Map<String, Buffer> buffers() {
+        return buffers;
+    }
+
+    public Set<String> files() {
+        return buffers.keySet();
+    }
+
+    public List<EmbeddingMatch<TextSegment>> knnSearch(float[] queryVector, int topK) {
+        if (chunks.isEmpty()) {
+            return List.of();
+        }
+        Embedding query = new Embedding(queryVector);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.embedding().dimension() == queryVector.length) {
+                double score = RelevanceScore.fromCosineSimilarity(CosineSimilarity.between(query, chunk.embedding()));
+                matches.add(new EmbeddingMatch<>(score, chunk.id(), chunk.embedding(), chunk.segment()));
+            }
+        }
+        return top(matches, topK);
+    }
+
+    public List<EmbeddingMatch<TextSegment>> bm25Search(String queryText, int topK) {
+        if (keywords == null) {
+            return List.of();
+        }
+        try {
+            IndexSearcher searcher = new IndexSearcher(keywords);
+            TopDocs topDocs = searcher.search(
+                    Bm25QueryBuilder.build(queryText, analyzer, keywords, CONTENT, BM25_MAX_CLAUSES), topK);
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Chunk chunk = chunks.get(searcher.storedFields().document(scoreDoc.doc).getField(CHUNK).numericValue().intValue());
+                matches.add(new EmbeddingMatch<>((double) scoreDoc.score, chunk.id(), chunk.embedding(), chunk.segment()));
+            }
+            return matches;
+        } catch (IOException e) {
+            log.debug("Keyword search of unsaved buffers failed: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Same lookup and scores as {@link LuceneEmbeddingStore#symbolSearch}.
+     */
+    public List<EmbeddingMatch<TextSegment>> symbolSearch(Collection<String> identifiers, int topK) {
+        if (identifiers.isEmpty() || chunks.isEmpty()) {
+            return List.of();
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            double score = 0;
+            for (String identifier : identifiers) {
+                score += symbolScore(chunk.segment(), SymbolKeys.normalize(identifier));
+            }
+            if (score > 0) {
+                matches.add(new EmbeddingMatch<>(score, chunk.id(), chunk.embedding(), chunk.segment()));
+            }
+        }
+        return top(matches, topK);
+    }
+
+    private static double symbolScore(TextSegment segment, String key) {
+        double score = 0;
+        String fqn = segment.metadata().getString(CodeAwareDocumentSplitter.META_FQN);
+        if (fqn != null && !fqn.isBlank()) {
+            String fqnKey = SymbolKeys.normalize(fqn);
+            score += fqnKey.equals(key) ? 8 : 0;
+            score += key.equals(SymbolKeys.qualifiedName(fqnKey)) ? 4 : 0;
+            score += SymbolKeys.simpleName(fqnKey).equals(key) ? 2 : 0;
+        }
+        String fileName = segment.metadata().getString("file_name");
+        if (fileName != null) {
+            String fileKey = SymbolKeys.normalize(fileName);
+            score += fileKey.equals(key) || (!key.contains(".") && fileKey.equals(key + JAVA_EXTENSION)) ? 1 : 0;
+        }
+        return score;
+    }
+
+    /**
+     * Replaces the indexed chunks of the unsaved files with their unsaved chunks, keeping the
+     * {@code topK} best scores of both.
+     */
+    public List<EmbeddingMatch<TextSegment>> merge(List<EmbeddingMatch<TextSegment>> indexed,
+                                                   List<EmbeddingMatch<TextSegment>> unsaved, int topK) {
+        if (isEmpty()) {
+            return indexed;
+        }
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>(unsaved);
+        for (EmbeddingMatch<TextSegment> match : indexed) {
+            if (!buffers.containsKey(LuceneEmbeddingStore.filePathFromId(match.embeddingId()))) {
+                merged.add(match);
+            }
+        }
+        return top(merged, topK);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> top(List<EmbeddingMatch<TextSegment>> matches, int topK) {
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return new ArrayList<>(matches.subList(0, Math.min(topK, matches.size())));
+    }
+}
@@ -27,6 +27,7 @@ import fr.baretto.ollamassist.events.ConversationSwitchedNotifier;
 import fr.baretto.ollamassist.setting.ActionsSettings;
 import fr.baretto.ollamassist.setting.ModelListener;
 import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.setting.RAGSettings;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
@@ -114,9 +115,23 @@ public final class OllamaService implements Disposable, ModelListener {
                 log.info("Tools are disabled in settings");
             }
 
+            UnsavedBufferIndex unsavedBuffers = project.getService(UnsavedBufferIndex.class);
+            LibrarySourceIndex libraries = LibrarySourceIndex.getInstance();
+            CommitHistoryIndex commitHistory = project.getService(CommitHistoryIndex.class);
             return aiServicesBuilder
                     .contentRetriever(new ContextRetriever(
-                            new HybridRetriever(embeddingStore, DocumentIngestFactory.createEmbeddingModel()),
+                            SymbolQueryRouter.builder(embeddingStore,
+                                            HybridRetriever.builder(embeddingStore,
+                                                            project.getService(IndexRebuildService.class)::queryEmbeddingModel)
+                                                    .unsavedBuffers(unsavedBuffers::buffers)
+                                                    .embedLazily(project.getService(DocumentIndexingPipeline.class)::embedLazily)
+                                                    .libraries(() -> libraries.sources(project))
+                                                    .history(commitHistory::history)
+                                                    .build())
+                                    .unsavedBuffers(unsavedBuffers::buffers)
+                                    .libraries(() -> libraries.sources(project))
+                                    .requestLibraries(text -> libraries.request(project, text))
+                                    .build(),
                             project))
                     .build();
         } finally {
@@ -136,7 +151,14 @@ public final class OllamaService implements Disposable, ModelListener {
     }
 
     public void init() {
+        ApplicationManager.getApplication().getService(IndexRegistry.class).recordUse(IndexKey.of(project));
+        project.getService(IndexRebuildService.class).rebuildIfNeeded();
         projectFileListener.load();
+        ApplicationManager.getApplication().executeOnPooledThread(IndexStorageManager.getInstance()::enforceQuota);
+        project.getService(IndexMaintenanceService.class).start();
+        if (OllamAssistSettings.getInstance().ragEnabled() && RAGSettings.getInstance().isIndexWarmUpEnabled()) {
+            ApplicationManager.getApplication().executeOnPooledThread(embeddingStore::warmUp);
+        }
     }
 
     @Override
@@ -4,6 +4,7 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.JBColor;
@@ -106,14 +107,14 @@ public class SourcesPanel extends JPanel {
             LinkLabel<RagSource> link = new LinkLabel<>(source.displayLabel(), null,
                     (lbl, src) -> openInEditor(src.absolutePath(), project), source);
             link.setFont(FontUtils.getSmallFont());
-            link.setToolTipText(source.absolutePath());
+            link.setToolTipText(tooltipFor(source));
             sourceLabel = link;
         } else {
             JLabel plain = new JLabel(source.displayLabel());
             plain.setFont(FontUtils.getSmallFont());
             plain.setForeground(JBColor.GRAY);
             if (source.absolutePath() != null) {
-                plain.setToolTipText(source.absolutePath());
+                plain.setToolTipText(tooltipFor(source));
             }
             sourceLabel = plain;
         }
@@ -124,6 +125,12 @@ public class SourcesPanel extends JPanel {
         return row;
     }
 
+    private static String tooltipFor(RagSource source) {
+        return source.tier() != null
+                ? source.absolutePath() + " (" + source.tier().description() + ")"
+                : source.absolutePath();
+    }
+
     private static Icon iconFor(RagSource source) {
         return switch (source.sourceType()) {
             case WEB       -> IconUtils.WEB_SEARCH_ENABLED;
@@ -141,7 +148,9 @@ public class SourcesPanel extends JPanel {
     }
 
     private static void openInEditor(String absolutePath, Project project) {
-        VirtualFile vf = LocalFileSystem.getInstance().findFileByPath(absolutePath);
+        VirtualFile vf = absolutePath.contains(JarFileSystem.JAR_SEPARATOR)
+                ? JarFileSystem.getInstance().findFileByPath(absolutePath)
+                : LocalFileSystem.getInstance().findFileByPath(absolutePath);
         if (vf != null) {
             FileEditorManager.getInstance(project).openFile(vf, true);
         }
@@ -3,6 +3,7 @@ package fr.baretto.ollamassist.completion;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
@@ -10,18 +11,21 @@ import com.intellij.openapi.vfs.VirtualFile;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
-import fr.baretto.ollamassist.auth.AuthenticationHelper;
+import fr.baretto.ollamassist.chat.rag.IndexRebuildService;
+import fr.baretto.ollamassist.chat.rag.LibrarySourceIndex;
+import fr.baretto.ollamassist.chat.rag.LibrarySources;
 import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
-import fr.baretto.ollamassist.setting.OllamAssistSettings;
+import fr.baretto.ollamassist.chat.rag.UnsavedBufferIndex;
+import fr.baretto.ollamassist.chat.rag.UnsavedBuffers;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.time.Duration;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -40,13 +44,13 @@ public class EnhancedContextProvider {
     private static final int TIMEOUT_SECONDS = 2;
     
     private final Project project;
-    private final LuceneEmbeddingStore<?> embeddingStore;
-    private EmbeddingModel embeddingModel;
+    private final LuceneEmbeddingStore<TextSegment> embeddingStore;
+    private final UnsavedBufferIndex unsavedBuffers;
     
     public EnhancedContextProvider(@NotNull Project project) {
         this.project = project;
         this.embeddingStore = project.getService(LuceneEmbeddingStore.class);
-        initializeEmbeddingModel();
+        this.unsavedBuffers = project.getService(UnsavedBufferIndex.class);
     }
     
     /**
@@ -83,7 +87,7 @@ public class EnhancedContextProvider {
         // Deliberately outside the read action: this embeds the context through Ollama and
         // searches the Lucene index. Holding a read action across a network call blocks write
         // actions, which freezes typing — the editor model is already captured above.
-        String similarPatterns = getSimilarCodePatterns(snapshot.immediateContext());
+        String similarPatterns = getSimilarCodePatterns(snapshot.immediateContext(), snapshot.filePath());
 
         return CompletionContext.builder()
                 .immediateContext(snapshot.immediateContext())
@@ -98,7 +102,7 @@ public class EnhancedContextProvider {
     /** Everything that reads the editor model, captured in one read action. */
     private record EditorSnapshot(String immediateContext, String projectContext,
                                   String fileExtension, int cursorOffset,
-                                  CompletionContext.FileMetadata metadata) {
+                                  CompletionContext.FileMetadata metadata, String filePath) {
     }
 
     private EditorSnapshot readEditorSnapshot(@NotNull Editor editor) {
@@ -109,7 +113,8 @@ public class EnhancedContextProvider {
                 getProjectContext(editor),
                 getFileExtension(editor),
                 editor.getCaretModel().getOffset(),
-                buildFileMetadata(editor));
+                buildFileMetadata(editor),
+                filePath(editor));
     }
     
     /**
@@ -187,17 +192,23 @@ public class EnhancedContextProvider {
     }
     
     /**
-     * Retrieves similar code patterns from the indexed codebase using semantic search.
+     * Retrieves similar code patterns from the indexed codebase using semantic search. Files with
+     * unsaved changes are searched in their unsaved buffers instead, except the edited file, which
+     * the immediate context already covers. Indexed library sources are searched too.
+     *
+     * <p>The query is embedded with the model of the live index: vectors of another model cannot
+     * be compared with the indexed ones.
      */
     @Nullable
-    private String getSimilarCodePatterns(@NotNull String queryContext) {
-        if (embeddingModel == null || embeddingStore == null) {
-            log.debug("Embedding model or store not available for similar patterns retrieval");
+    private String getSimilarCodePatterns(@NotNull String queryContext, @Nullable String filePath) {
+        if (embeddingStore == null) {
+            log.debug("Store not available for similar patterns retrieval");
             return null;
         }
         
         try {
             // Create embedding for the query context
+            EmbeddingModel embeddingModel = project.getService(IndexRebuildService.class).queryEmbeddingModel();
             Embedding queryEmbedding = embeddingModel.embed(queryContext).content();
             
             // Search for similar patterns
@@ -207,17 +218,26 @@ public class EnhancedContextProvider {
                 .minScore(MIN_SIMILARITY_SCORE)
                 .build();
                 
-            EmbeddingSearchResult<?> searchResult = embeddingStore.search(request);
+            EmbeddingSearchResult<TextSegment> searchResult = embeddingStore.search(request);
+            UnsavedBuffers unsaved = unsavedBuffers.buffers();
+            List<EmbeddingMatch<TextSegment>> unsavedMatches = new ArrayList<>();
+            for (EmbeddingMatch<TextSegment> match : unsaved.knnSearch(queryEmbedding.vector(), SEARCH_RESULTS_LIMIT + 1)) {
+                if (match.score() >= MIN_SIMILARITY_SCORE && (filePath == null || !match.embeddingId().startsWith(filePath))) {
+                    unsavedMatches.add(match);
+                }
+            }
+            List<EmbeddingMatch<TextSegment>> matches = unsaved.merge(searchResult.matches(), unsavedMatches, SEARCH_RESULTS_LIMIT);
+            matches = libraryMatches(queryContext, queryEmbedding, matches);
             
-            if (searchResult.matches().isEmpty()) {
+            if (matches.isEmpty()) {
                 log.debug("No similar patterns found above similarity threshold");
                 return null;
             }
             
             // Format similar patterns
-            return searchResult.matches().stream()
+            return matches.stream()
                 .map(match -> {
-                    String text = ((TextSegment) match.embedded()).text();
+                    String text = match.embedded().text();
                     // Limit individual pattern size
                     return text.length() > 500 ? text.substring(0, 500) + "..." : text;
                 })
@@ -228,6 +248,27 @@ public class EnhancedContextProvider {
             return null;
         }
     }
+
+    /**
+     * Adds the library code the project indexed so far, and has the library classes named around
+     * the caret indexed for the next completions.
+     */
+    private List<EmbeddingMatch<TextSegment>> libraryMatches(@NotNull String queryContext, @NotNull Embedding queryEmbedding,
+                                                             List<EmbeddingMatch<TextSegment>> matches) {
+        LibrarySourceIndex libraries = LibrarySourceIndex.getInstance();
+        libraries.request(project, queryContext);
+        LibrarySources sources = libraries.sources(project);
+        List<EmbeddingMatch<TextSegment>> libraryMatches = sources.knnSearch(queryEmbedding.vector(), SEARCH_RESULTS_LIMIT).stream()
+                .filter(match -> match.score() >= MIN_SIMILARITY_SCORE)
+                .toList();
+        return sources.merge(matches, libraryMatches, SEARCH_RESULTS_LIMIT);
+    }
+
+    @Nullable
+    private static String filePath(@NotNull Editor editor) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+        return file == null ? null : file.getPath();
+    }
     
     /**
      * Builds basic file metadata for context enhancement.
@@ -295,29 +336,4 @@ public class EnhancedContextProvider {
             .cursorOffset(offset)
             .build();
     }
-    
-    /**
-     * Initializes the embedding model for semantic search.
-     */
-    private void initializeEmbeddingModel() {
-        try {
-            OllamAssistSettings settings = OllamAssistSettings.getInstance();
-            OllamaEmbeddingModel.OllamaEmbeddingModelBuilder builder = OllamaEmbeddingModel.builder()
-                .baseUrl(settings.getEmbeddingOllamaUrl())
-                .modelName(settings.getEmbeddingModelName())
-                .timeout(Duration.ofSeconds(TIMEOUT_SECONDS));
-            
-            // Add authentication if configured (Basic or Bearer, resolved centrally)
-            Map<String, String> authHeaders = AuthenticationHelper.authHeaders();
-            if (!authHeaders.isEmpty()) {
-                builder.customHeaders(authHeaders);
-            }
-
-            this.embeddingModel = builder.build();
-                
-        } catch (Exception e) {
-            log.warn("Failed to initialize embedding model for similar patterns retrieval", e);
-            this.embeddingModel = null;
-        }
-    }
 }
\ No newline at end of file
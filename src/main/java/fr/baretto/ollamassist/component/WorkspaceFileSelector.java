@@ -11,6 +11,7 @@ import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.table.JBTable;
 import com.intellij.util.ui.JBUI;
+import fr.baretto.ollamassist.chat.rag.EmbeddingTokenizer;
 import fr.baretto.ollamassist.chat.rag.WorkspaceContextRetriever;
 import fr.baretto.ollamassist.chat.ui.IconUtils;
 import lombok.Getter;
@@ -120,10 +121,16 @@ public class WorkspaceFileSelector extends JPanel implements WorkspaceFileSelect
         return button;
     }
 
+    /**
+     * Counted with the tokenizer of the local embedding model when it loads, else estimated at four
+     * characters per token.
+     */
     private int estimateTokenCount(File file) {
         try {
             String content = Files.readString(file.toPath());
-            return (int) Math.ceil(content.length() / 4.0);
+            return EmbeddingTokenizer.bgeSmall()
+                    .map(tokenizer -> tokenizer.count(content))
+                    .orElseGet(() -> (int) Math.ceil(content.length() / 4.0));
         } catch (Exception e) {
             return 0;
         }
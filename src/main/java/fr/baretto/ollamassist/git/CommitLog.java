@@ -0,0 +1,58 @@
+package fr.baretto.ollamassist.git;
+
+import com.intellij.openapi.vcs.VcsException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to the commit history of the git repositories of a project.
+ *
+ * <p>Registered as a project service when the Git plugin is installed (see {@code plugin-git.xml});
+ * absent otherwise.
+ */
+public interface CommitLog {
+
+    /**
+     * @return the current {@code HEAD} of each repository of the project, by repository root
+     */
+    Map<String, String> heads();
+
+    /**
+     * Commits of a repository reachable from {@code HEAD}, newest first, merges left out.
+     *
+     * @param root      root of the repository, as returned by {@link #heads()}
+     * @param since     commit already read: only the commits after it are returned; {@code null} for all
+     * @param maxCount  maximum number of commits returned
+     * @param notBefore commits older than this are left out
+     * @throws VcsException when git fails, among others when {@code since} is no longer in the history
+     */
+    List<Commit> read(String root, String since, int maxCount, Instant notBefore) throws VcsException;
+
+    /**
+     * Whether a commit is still in the history of {@code HEAD}. An amend, rebase or branch switch
+     * leaves the previous {@code HEAD} readable but out of that history.
+     *
+     * @param root root of the repository, as returned by {@link #heads()}
+     * @throws VcsException when git fails, among others when the commit no longer exists
+     */
+    boolean isAncestorOfHead(String root, String commit) throws VcsException;
+
+    /**
+     * @param paths       touched paths, relative to the repository root
+     * @param diffSummary changed lines of the first files of the commit, empty if none could be read
+     */
+    record Commit(String hash, String author, long timeMillis, String message, List<String> paths,
+                  String diffSummary) {
+
+        public String shortHash() {
+            return hash.length() > 8 ? hash.substring(0, 8) : hash;
+        }
+
+        public String subject() {
+            int end = message.indexOf('\n');
+            return (end < 0 ? message : message.substring(0, end)).trim();
+        }
+    }
+}
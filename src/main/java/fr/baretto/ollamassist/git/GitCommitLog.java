@@ -0,0 +1,140 @@
+package fr.baretto.ollamassist.git;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.BinaryContentRevision;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ChangesUtil;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import git4idea.GitCommit;
+import git4idea.commands.Git;
+import git4idea.commands.GitCommand;
+import git4idea.commands.GitCommandResult;
+import git4idea.commands.GitLineHandler;
+import git4idea.history.GitHistoryUtils;
+import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link CommitLog} over Git4Idea, which runs the git executable the IDE is configured with.
+ */
+public final class GitCommitLog implements CommitLog {
+
+    static final int MAX_DIFF_FILES = 3;
+    static final int MAX_DIFF_LINES_PER_FILE = 12;
+    private static final int MAX_DIFF_LINE_LENGTH = 160;
+
+    private final Project project;
+
+    public GitCommitLog(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public Map<String, String> heads() {
+        Map<String, String> heads = new LinkedHashMap<>();
+        for (GitRepository repository : GitRepositoryManager.getInstance(project).getRepositories()) {
+            String head = repository.getCurrentRevision();
+            if (head != null) {
+                heads.put(repository.getRoot().getPath(), head);
+            }
+        }
+        return heads;
+    }
+
+    @Override
+    public List<Commit> read(String root, String since, int maxCount, Instant notBefore) throws VcsException {
+        VirtualFile rootFile = LocalFileSystem.getInstance().findFileByPath(root);
+        if (rootFile == null || maxCount <= 0) {
+            return List.of();
+        }
+        List<String> parameters = new ArrayList<>(List.of("--no-merges", "--max-count=" + maxCount,
+                "--since=" + notBefore.getEpochSecond()));
+        if (since != null) {
+            parameters.add(since + "..HEAD");
+        }
+        List<Commit> commits = new ArrayList<>();
+        for (GitCommit commit : GitHistoryUtils.history(project, rootFile, parameters.toArray(String[]::new))) {
+            List<String> paths = new ArrayList<>();
+            for (Change change : commit.getChanges()) {
+                paths.add(relative(root, ChangesUtil.getFilePath(change).getPath()));
+            }
+            commits.add(new Commit(commit.getId().asString(), commit.getAuthor().getName(), commit.getCommitTime(),
+                    commit.getFullMessage(), paths, diffSummary(root, commit.getChanges())));
+        }
+        return commits;
+    }
+
+    /**
+     * Runs {@code git merge-base --is-ancestor}, which exits with 0 for an ancestor and 1 otherwise.
+     */
+    @Override
+    public boolean isAncestorOfHead(String root, String commit) throws VcsException {
+        VirtualFile rootFile = LocalFileSystem.getInstance().findFileByPath(root);
+        if (rootFile == null) {
+            return false;
+        }
+        GitLineHandler handler = new GitLineHandler(project, rootFile, GitCommand.MERGE_BASE);
+        handler.addParameters("--is-ancestor", commit, "HEAD");
+        handler.setSilent(true);
+        GitCommandResult result = Git.getInstance().runCommand(handler);
+        if (result.getExitCode() == 0 || result.getExitCode() == 1) {
+            return result.getExitCode() == 0;
+        }
+        throw new VcsException(result.getErrorOutputAsJoinedString());
+    }
+
+    /**
+     * Changed lines of the first {@value #MAX_DIFF_FILES} text files of a commit, at most
+     * {@value #MAX_DIFF_LINES_PER_FILE} lines each: enough to tell what the commit did without
+     * letting one large commit fill the index.
+     */
+    private static String diffSummary(String root, Iterable<Change> changes) {
+        StringBuilder summary = new StringBuilder();
+        int files = 0;
+        for (Change change : changes) {
+            if (files == MAX_DIFF_FILES) {
+                break;
+            }
+            ContentRevision before = change.getBeforeRevision();
+            ContentRevision after = change.getAfterRevision();
+            if (before instanceof BinaryContentRevision || after instanceof BinaryContentRevision) {
+                continue;
+            }
+            String compact = MyersDiff.computeCompactDiff(content(before), content(after));
+            if (compact.isBlank()) {
+                continue;
+            }
+            files++;
+            summary.append("=== ").append(relative(root, ChangesUtil.getFilePath(change).getPath())).append(" ===\n");
+            compact.lines().limit(MAX_DIFF_LINES_PER_FILE)
+                    .map(line -> line.length() > MAX_DIFF_LINE_LENGTH ? line.substring(0, MAX_DIFF_LINE_LENGTH) : line)
+                    .forEach(line -> summary.append(line).append('\n'));
+        }
+        return summary.toString();
+    }
+
+    private static String content(ContentRevision revision) {
+        if (revision == null) {
+            return "";
+        }
+        try {
+            String content = revision.getContent();
+            return content != null ? content : "";
+        } catch (VcsException e) {
+            return "";
+        }
+    }
+
+    private static String relative(String root, String path) {
+        return path.startsWith(root + "/") ? path.substring(root.length() + 1) : path;
+    }
+}
@@ -2,6 +2,7 @@ package fr.baretto.ollamassist.setting;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.components.JBTabbedPane;
+import fr.baretto.ollamassist.chat.rag.IndexDirectoryType;
 import fr.baretto.ollamassist.setting.panels.ActionsConfigPanel;
 import fr.baretto.ollamassist.setting.panels.AgentConfigPanel;
 import fr.baretto.ollamassist.setting.panels.OllamaConfigPanel;
@@ -156,20 +157,108 @@ public class ConfigurationPanel extends JPanel {
         ragPanel.setSources(sources);
     }
 
-    public int getMaxDocuments() {
-        return ragPanel.getMaxDocuments();
+    public int getEmbeddingBudget() {
+        return ragPanel.getEmbeddingBudget();
     }
 
-    public void setMaxDocuments(int maxDocuments) {
-        ragPanel.setMaxDocuments(maxDocuments);
+    public void setEmbeddingBudget(int embeddingBudget) {
+        ragPanel.setEmbeddingBudget(embeddingBudget);
+    }
+
+    public IndexDirectoryType getIndexDirectoryType() {
+        return ragPanel.getIndexDirectoryType();
+    }
+
+    public void setIndexDirectoryType(IndexDirectoryType type) {
+        ragPanel.setIndexDirectoryType(type);
+    }
+
+    public boolean isIndexWarmUpEnabled() {
+        return ragPanel.isIndexWarmUpEnabled();
+    }
+
+    public void setIndexWarmUpEnabled(boolean enabled) {
+        ragPanel.setIndexWarmUpEnabled(enabled);
+    }
+
+    public boolean isCoarseToFineRetrieval() {
+        return ragPanel.isCoarseToFineRetrieval();
+    }
+
+    public void setCoarseToFineRetrieval(boolean enabled) {
+        ragPanel.setCoarseToFineRetrieval(enabled);
+    }
+
+    public boolean isTokenAwareChunking() {
+        return ragPanel.isTokenAwareChunking();
+    }
+
+    public void setTokenAwareChunking(boolean enabled) {
+        ragPanel.setTokenAwareChunking(enabled);
+    }
+
+    public boolean isUnsavedBufferIndexing() {
+        return ragPanel.isUnsavedBufferIndexing();
+    }
+
+    public void setUnsavedBufferIndexing(boolean enabled) {
+        ragPanel.setUnsavedBufferIndexing(enabled);
+    }
+
+    public boolean isLibraryIndexing() {
+        return ragPanel.isLibraryIndexing();
+    }
+
+    public void setLibraryIndexing(boolean enabled) {
+        ragPanel.setLibraryIndexing(enabled);
+    }
+
+    public int getLibraryCacheMb() {
+        return ragPanel.getLibraryCacheMb();
+    }
+
+    public void setLibraryCacheMb(int cacheMb) {
+        ragPanel.setLibraryCacheMb(cacheMb);
+    }
+
+    public boolean isCommitHistoryIndexing() {
+        return ragPanel.isCommitHistoryIndexing();
+    }
+
+    public void setCommitHistoryIndexing(boolean enabled) {
+        ragPanel.setCommitHistoryIndexing(enabled);
+    }
+
+    public int getCommitHistoryMaxCommits() {
+        return ragPanel.getCommitHistoryMaxCommits();
+    }
+
+    public void setCommitHistoryMaxCommits(int maxCommits) {
+        ragPanel.setCommitHistoryMaxCommits(maxCommits);
+    }
+
+    public int getCommitHistoryMaxAgeDays() {
+        return ragPanel.getCommitHistoryMaxAgeDays();
+    }
+
+    public void setCommitHistoryMaxAgeDays(int maxAgeDays) {
+        ragPanel.setCommitHistoryMaxAgeDays(maxAgeDays);
+    }
+
+    public int getIndexQuotaMb() {
+        return ragPanel.getIndexQuotaMb();
+    }
+
+    public void setIndexQuotaMb(int quotaMb) {
+        ragPanel.setIndexQuotaMb(quotaMb);
     }
 
     public void triggerClearLocalStorage() {
         ragPanel.triggerClearLocalStorage();
     }
 
-    public void triggerCleanAllDatabase() {
-        ragPanel.triggerCleanAllDatabase();
+    public void triggerIndexRebuild() {
+        ragPanel.triggerIndexRebuild();
     }
 
     // Actions settings
@@ -138,12 +138,12 @@ public class OllamAssistSettings implements PersistentStateComponent<OllamAssist
     }
 
     // RAG settings - delegating to RAGSettings
-    public void setIndexationSize(int numberOfDocuments) {
-        RAGSettings.getInstance().setIndexationSize(numberOfDocuments);
+    public void setEmbeddingBudget(int embeddingBudget) {
+        RAGSettings.getInstance().setEmbeddingBudget(embeddingBudget);
     }
 
-    public int getIndexationSize() {
-        return RAGSettings.getInstance().getIndexationSize();
+    public int getEmbeddingBudget() {
+        return RAGSettings.getInstance().getEmbeddingBudget();
     }
 
     public String getSources() {
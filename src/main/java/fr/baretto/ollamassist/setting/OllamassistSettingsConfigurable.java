@@ -4,6 +4,9 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.options.Configurable;
 import com.intellij.openapi.project.Project;
+import fr.baretto.ollamassist.chat.rag.IndexDirectoryType;
+import fr.baretto.ollamassist.chat.rag.IndexStorageManager;
+import fr.baretto.ollamassist.chat.rag.LibrarySourceIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.Nullable;
@@ -59,7 +62,18 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
                 || !ollamaSettings.getApiKey().equals(configurationPanel.getApiKey())
                 || !ollamaSettings.getTimeout().equals(configurationPanel.getTimeout())
                 || !ragSettings.getSources().equals(configurationPanel.getSources())
-                || ragSettings.getIndexationSize() != configurationPanel.getMaxDocuments()
+                || ragSettings.getEmbeddingBudget() != configurationPanel.getEmbeddingBudget()
+                || IndexDirectoryType.fromString(ragSettings.getIndexDirectoryType()) != configurationPanel.getIndexDirectoryType()
+                || ragSettings.isIndexWarmUpEnabled() != configurationPanel.isIndexWarmUpEnabled()
+                || ragSettings.isCoarseToFineRetrieval() != configurationPanel.isCoarseToFineRetrieval()
+                || ragSettings.isTokenAwareChunking() != configurationPanel.isTokenAwareChunking()
+                || ragSettings.isUnsavedBufferIndexing() != configurationPanel.isUnsavedBufferIndexing()
+                || ragSettings.getIndexQuotaMb() != configurationPanel.getIndexQuotaMb()
+                || ragSettings.isLibraryIndexing() != configurationPanel.isLibraryIndexing()
+                || ragSettings.getLibraryCacheMb() != configurationPanel.getLibraryCacheMb()
+                || ragSettings.isCommitHistoryIndexing() != configurationPanel.isCommitHistoryIndexing()
+                || ragSettings.getCommitHistoryMaxCommits() != configurationPanel.getCommitHistoryMaxCommits()
+                || ragSettings.getCommitHistoryMaxAgeDays() != configurationPanel.getCommitHistoryMaxAgeDays()
                 || actionsSettings.isAutoApproveFileCreation() != configurationPanel.isAutoApproveFileCreation()
                 || actionsSettings.isToolsEnabled() != configurationPanel.isToolsEnabled()
                 || actionsSettings.isCodeCompletionEnabled() != configurationPanel.isCodeCompletionEnabled()
@@ -84,7 +98,7 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
             }
 
             boolean needIndexation = needIndexation();
-            boolean shouldCleanAllDatabase = shouldCleanAllDatabase();
+            boolean shouldRebuildIndex = shouldRebuildIndex();
 
             // Save to OllamaSettings
             OllamaSettings ollamaSettings = OllamaSettings.getInstance();
@@ -103,7 +117,24 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
             // Save to RAGSettings
             RAGSettings ragSettings = RAGSettings.getInstance();
             ragSettings.setSources(configurationPanel.getSources());
-            ragSettings.setIndexationSize(configurationPanel.getMaxDocuments());
+            ragSettings.setEmbeddingBudget(configurationPanel.getEmbeddingBudget());
+            ragSettings.setIndexDirectoryType(configurationPanel.getIndexDirectoryType().name());
+            ragSettings.setIndexWarmUpEnabled(configurationPanel.isIndexWarmUpEnabled());
+            ragSettings.setCoarseToFineRetrieval(configurationPanel.isCoarseToFineRetrieval());
+            ragSettings.setTokenAwareChunking(configurationPanel.isTokenAwareChunking());
+            ragSettings.setUnsavedBufferIndexing(configurationPanel.isUnsavedBufferIndexing());
+            if (ragSettings.getIndexQuotaMb() != configurationPanel.getIndexQuotaMb()) {
+                ragSettings.setIndexQuotaMb(configurationPanel.getIndexQuotaMb());
+                ApplicationManager.getApplication().executeOnPooledThread(IndexStorageManager.getInstance()::enforceQuota);
+            }
+            ragSettings.setLibraryIndexing(configurationPanel.isLibraryIndexing());
+            if (ragSettings.getLibraryCacheMb() != configurationPanel.getLibraryCacheMb()) {
+                ragSettings.setLibraryCacheMb(configurationPanel.getLibraryCacheMb());
+                ApplicationManager.getApplication().executeOnPooledThread(LibrarySourceIndex.getInstance()::enforceQuota);
+            }
+            ragSettings.setCommitHistoryIndexing(configurationPanel.isCommitHistoryIndexing());
+            ragSettings.setCommitHistoryMaxCommits(configurationPanel.getCommitHistoryMaxCommits());
+            ragSettings.setCommitHistoryMaxAgeDays(configurationPanel.getCommitHistoryMaxAgeDays());
 
             // Save to ActionsSettings
             ActionsSettings actionsSettings = ActionsSettings.getInstance();
@@ -131,8 +162,8 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
                     .syncPublisher(ModelListener.TOPIC)
                     .reloadModel();
 
-            if (shouldCleanAllDatabase) {
-                configurationPanel.triggerCleanAllDatabase();
+            if (shouldRebuildIndex) {
+                configurationPanel.triggerIndexRebuild();
                 return;
             }
 
@@ -144,10 +175,10 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
 
     private boolean needIndexation() {
         RAGSettings ragSettings = RAGSettings.getInstance();
-        return configurationPanel.getMaxDocuments() != ragSettings.getIndexationSize();
+        return configurationPanel.getEmbeddingBudget() != ragSettings.getEmbeddingBudget();
     }
 
-    private boolean shouldCleanAllDatabase() {
+    private boolean shouldRebuildIndex() {
         OllamaSettings ollamaSettings = OllamaSettings.getInstance();
 
         String panelEmbeddingModel = configurationPanel.getEmbeddingModel();
@@ -188,7 +219,18 @@ public class OllamassistSettingsConfigurable implements Configurable, Disposable
         // Load from RAGSettings
         RAGSettings ragSettings = RAGSettings.getInstance();
         configurationPanel.setSources(ragSettings.getSources());
-        configurationPanel.setMaxDocuments(ragSettings.getIndexationSize());
+        configurationPanel.setEmbeddingBudget(ragSettings.getEmbeddingBudget());
+        configurationPanel.setIndexDirectoryType(IndexDirectoryType.fromString(ragSettings.getIndexDirectoryType()));
+        configurationPanel.setIndexWarmUpEnabled(ragSettings.isIndexWarmUpEnabled());
+        configurationPanel.setCoarseToFineRetrieval(ragSettings.isCoarseToFineRetrieval());
+        configurationPanel.setTokenAwareChunking(ragSettings.isTokenAwareChunking());
+        configurationPanel.setUnsavedBufferIndexing(ragSettings.isUnsavedBufferIndexing());
+        configurationPanel.setIndexQuotaMb(ragSettings.getIndexQuotaMb());
+        configurationPanel.setLibraryIndexing(ragSettings.isLibraryIndexing());
+        configurationPanel.setLibraryCacheMb(ragSettings.getLibraryCacheMb());
+        configurationPanel.setCommitHistoryIndexing(ragSettings.isCommitHistoryIndexing());
+        configurationPanel.setCommitHistoryMaxCommits(ragSettings.getCommitHistoryMaxCommits());
+        configurationPanel.setCommitHistoryMaxAgeDays(ragSettings.getCommitHistoryMaxAgeDays());
 
         // Load from ActionsSettings
         ActionsSettings actionsSettings = ActionsSettings.getInstance();
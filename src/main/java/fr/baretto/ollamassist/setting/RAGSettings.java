@@ -17,6 +17,8 @@ import org.jetbrains.annotations.Nullable;
 )
 public class RAGSettings implements PersistentStateComponent<RAGSettings.State> {
 
+    public static final int DEFAULT_EMBEDDING_BUDGET = 20000;
+
     private State myState = new State();
 
     public static RAGSettings getInstance() {
@@ -45,12 +47,12 @@ public class RAGSettings implements PersistentStateComponent<RAGSettings.State>
         myState.sources = sources;
     }
 
-    public int getIndexationSize() {
-        return myState.indexationSize;
+    public int getEmbeddingBudget() {
+        return myState.embeddingBudget;
     }
 
-    public void setIndexationSize(int numberOfDocuments) {
-        myState.indexationSize = numberOfDocuments;
+    public void setEmbeddingBudget(int embeddingBudget) {
+        myState.embeddingBudget = embeddingBudget;
     }
 
     public boolean isWebSearchEnabled() {
@@ -69,11 +71,124 @@ public class RAGSettings implements PersistentStateComponent<RAGSettings.State>
         myState.ragEnabled = ragEnabled;
     }
 
+    public String getIndexDirectoryType() {
+        return myState.indexDirectoryType;
+    }
+
+    public void setIndexDirectoryType(String indexDirectoryType) {
+        myState.indexDirectoryType = indexDirectoryType;
+    }
+
+    public boolean isIndexWarmUpEnabled() {
+        return myState.indexWarmUpEnabled;
+    }
+
+    public void setIndexWarmUpEnabled(boolean indexWarmUpEnabled) {
+        myState.indexWarmUpEnabled = indexWarmUpEnabled;
+    }
+
+    public boolean isCoarseToFineRetrieval() {
+        return myState.coarseToFineRetrieval;
+    }
+
+    public void setCoarseToFineRetrieval(boolean coarseToFineRetrieval) {
+        myState.coarseToFineRetrieval = coarseToFineRetrieval;
+    }
+
+    public boolean isTokenAwareChunking() {
+        return myState.tokenAwareChunking;
+    }
+
+    public void setTokenAwareChunking(boolean tokenAwareChunking) {
+        myState.tokenAwareChunking = tokenAwareChunking;
+    }
+
+    public boolean isUnsavedBufferIndexing() {
+        return myState.unsavedBufferIndexing;
+    }
+
+    public void setUnsavedBufferIndexing(boolean unsavedBufferIndexing) {
+        myState.unsavedBufferIndexing = unsavedBufferIndexing;
+    }
+
+    public int getIndexQuotaMb() {
+        return myState.indexQuotaMb;
+    }
+
+    public void setIndexQuotaMb(int indexQuotaMb) {
+        myState.indexQuotaMb = indexQuotaMb;
+    }
+
+    public boolean isLibraryIndexing() {
+        return myState.libraryIndexing;
+    }
+
+    public void setLibraryIndexing(boolean libraryIndexing) {
+        myState.libraryIndexing = libraryIndexing;
+    }
+
+    public int getLibraryCacheMb() {
+        return myState.libraryCacheMb;
+    }
+
+    public void setLibraryCacheMb(int libraryCacheMb) {
+        myState.libraryCacheMb = libraryCacheMb;
+    }
+
+    public boolean isCommitHistoryIndexing() {
+        return myState.commitHistoryIndexing;
+    }
+
+    public void setCommitHistoryIndexing(boolean commitHistoryIndexing) {
+        myState.commitHistoryIndexing = commitHistoryIndexing;
+    }
+
+    public int getCommitHistoryMaxCommits() {
+        return myState.commitHistoryMaxCommits;
+    }
+
+    public void setCommitHistoryMaxCommits(int commitHistoryMaxCommits) {
+        myState.commitHistoryMaxCommits = commitHistoryMaxCommits;
+    }
+
+    public int getCommitHistoryMaxAgeDays() {
+        return myState.commitHistoryMaxAgeDays;
+    }
+
+    public void setCommitHistoryMaxAgeDays(int commitHistoryMaxAgeDays) {
+        myState.commitHistoryMaxAgeDays = commitHistoryMaxAgeDays;
+    }
+
     @Getter
     public static class State {
         public String sources = "src/";
+        // Former number of files indexed per batch, no longer read: kept so that existing settings still load
         public int indexationSize = 5000;
+        // Chunks embedded up front when indexing, see IndexPlan
+        public int embeddingBudget = DEFAULT_EMBEDDING_BUDGET;
         public boolean webSearchEnabled = false;
         public boolean ragEnabled = false;
+        // Lucene directory implementation (AUTO, MMAP, NIO), applied when the project is opened
+        public String indexDirectoryType = "AUTO";
+        // Pre-touch vector and postings files in the background when the project is opened
+        public boolean indexWarmUpEnabled = true;
+        // Experimental: pick the nearest files by centroid first, then search their chunks only
+        public boolean coarseToFineRetrieval = false;
+        // Size chunks in tokens of the local embedding model instead of characters
+        public boolean tokenAwareChunking = true;
+        // Index files with unsaved changes in memory, so chat and completion see them before they are saved
+        public boolean unsavedBufferIndexing = true;
+        // Total size allowed for the indexes of all projects, least recently used ones are evicted; 0 = unlimited
+        public int indexQuotaMb = 5120;
+        // Index the sources of the library classes chat and completion run into, in a cache shared by all projects
+        public boolean libraryIndexing = true;
+        // Size of the library source cache, least recently used libraries are evicted; 0 = unlimited
+        public int libraryCacheMb = 2048;
+        // Index the commit history of the project's git repositories, for questions about why code changed
+        public boolean commitHistoryIndexing = false;
+        // Most recent commits kept in the commit history index
+        public int commitHistoryMaxCommits = 2000;
+        // Commits older than this are left out of the commit history index
+        public int commitHistoryMaxAgeDays = 730;
     }
 }
@@ -16,6 +16,7 @@ import java.util.Set;
  * - webSearchEnabled: managed by PromptPanel
  * - ragEnabled: managed by PromptPanel
  * - uistate: managed by OllamaContent
+ * - indexationSize: replaced by the embedding budget of RAGSettings, no longer read
  */
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -24,7 +25,8 @@ public class SettingsBindingHelper {
     private static final Set<String> EXCLUDED_FIELDS = Set.of(
             "webSearchEnabled",
             "ragEnabled",
-            "uistate"
+            "uistate",
+            "indexationSize"
     );
     private static final String GETTER_PREFIX = "get";
     private static final String SETTER_PREFIX = "set";
@@ -168,9 +170,6 @@ public class SettingsBindingHelper {
      * Examples: chatOllamaUrl -> setChatOllamaUrl, timeout -> setTimeout
      */
     private static String getSetterName(String fieldName) {
-        if (fieldName.equals("indexationSize")) {
-            return "setMaxDocuments"; // Special case: field name != panel method name
-        }
         return SETTER_PREFIX + capitalize(fieldName);
     }
 
@@ -179,9 +178,6 @@ public class SettingsBindingHelper {
      * Examples: chatOllamaUrl -> getChatOllamaUrl, timeout -> getTimeout
      */
     private static String getGetterName(String fieldName) {
-        if (fieldName.equals("indexationSize")) {
-            return "getMaxDocuments"; // Special case: field name != panel method name
-        }
         if (fieldName.equals("chatModelName")) {
             return "getChatModel"; // Special case
         }
@@ -157,7 +157,6 @@ public class SettingsMigrationService implements PersistentStateComponent<Settin
         if (isDefaultRAGSettings(currentState)) {
             log.info("Migrating RAG settings");
             ragSettings.setSources(legacyState.sources);
-            ragSettings.setIndexationSize(legacyState.indexationSize);
             ragSettings.setWebSearchEnabled(legacyState.webSearchEnabled);
             ragSettings.setRAGEnabled(legacyState.ragEnabled);
             log.info("RAG settings migrated successfully");
@@ -206,7 +205,7 @@ public class SettingsMigrationService implements PersistentStateComponent<Settin
 
     private boolean isDefaultRAGSettings(RAGSettings.State state) {
         return "src/".equals(state.sources)
-                && state.indexationSize == 5000
+                && state.embeddingBudget == RAGSettings.DEFAULT_EMBEDDING_BUDGET
                 && !state.webSearchEnabled
                 && !state.ragEnabled;
     }
@@ -1,22 +1,58 @@
 package fr.baretto.ollamassist.setting.panels;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.ui.ComboBox;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBPanel;
+import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.ui.components.fields.IntegerField;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.text.DateFormatUtil;
 import com.intellij.util.ui.JBUI;
+import fr.baretto.ollamassist.chat.rag.IndexDirectoryType;
+import fr.baretto.ollamassist.chat.rag.IndexHealth;
+import fr.baretto.ollamassist.chat.rag.IndexKey;
+import fr.baretto.ollamassist.chat.rag.IndexMaintenanceService;
+import fr.baretto.ollamassist.chat.rag.IndexRebuildService;
+import fr.baretto.ollamassist.chat.rag.IndexRegistry;
+import fr.baretto.ollamassist.chat.rag.IndexStorageManager;
+import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
 import fr.baretto.ollamassist.component.ComponentCustomizer;
 import fr.baretto.ollamassist.events.StoreNotifier;
+import fr.baretto.ollamassist.setting.OllamAssistSettings;
 
 import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 
 public class RAGConfigPanel extends JBPanel<RAGConfigPanel> {
 
     private final JBTextField sources = new JBTextField();
-    private final IntegerField maxDocuments = new IntegerField(null, 1, 100000);
+    private final IntegerField embeddingBudget = new IntegerField(null, 1, 10_000_000);
+    private final ComboBox<IndexDirectoryType> indexDirectoryType = new ComboBox<>(IndexDirectoryType.values());
+    private final JCheckBox indexWarmUpEnabled = new JCheckBox("Warm up the index when the project opens");
+    private final JCheckBox coarseToFineRetrieval = new JCheckBox("Search the nearest files first (experimental, very large repositories)");
+    private final JCheckBox tokenAwareChunking = new JCheckBox("Size chunks with the embedding model tokenizer");
+    private final JCheckBox unsavedBufferIndexing = new JCheckBox("Index unsaved changes of open files");
+    private final JBLabel indexHealth = new JBLabel();
+    private final JBLabel indexStats = new JBLabel();
+    private final IntegerField indexQuotaMb = new IntegerField(null, 0, 10_000_000);
+    private final JCheckBox libraryIndexing = new JCheckBox("Index the sources of libraries and the JDK on demand");
+    private final IntegerField libraryCacheMb = new IntegerField(null, 0, 10_000_000);
+    private final JCheckBox commitHistoryIndexing = new JCheckBox("Index the commit history of git repositories");
+    private final IntegerField commitHistoryMaxCommits = new IntegerField(null, 1, 1_000_000);
+    private final IntegerField commitHistoryMaxAgeDays = new IntegerField(null, 1, 100_000);
+    private final DefaultTableModel storageModel = new DefaultTableModel(new String[]{"Project", "Size (MB)", "Last used", "Open"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JBTable storageTable = new JBTable(storageModel);
     private final transient Project project;
 
     public RAGConfigPanel(Project project) {
@@ -25,9 +61,60 @@ public class RAGConfigPanel extends JBPanel<RAGConfigPanel> {
         setBorder(JBUI.Borders.empty(10));
 
         add(createLabeledField("Indexed Folders:", sources, "Separated by ';'"));
-        add(createLabeledField("Maximum number of documents indexed at once", maxDocuments,
-                "The maximum number of documents indexed during a batch indexation"));
+        add(createLabeledField("Embedding budget (chunks)", embeddingBudget,
+                "Chunks embedded when the project is indexed. Source files and recently touched files are "
+                        + "embedded first; other files are searched by keyword only, and source files beyond "
+                        + "the budget are embedded the first time a question needs them"));
+        add(createLabeledField("Index storage", indexDirectoryType,
+                "AUTO memory-maps the index on 64-bit Linux and uses positional reads elsewhere. "
+                        + "Takes effect the next time the project is opened."));
+
+        indexWarmUpEnabled.setAlignmentX(Component.LEFT_ALIGNMENT);
+        indexWarmUpEnabled.setToolTipText("Reads the vector and keyword index files in the background "
+                + "so the first chat question is not slowed down by a cold disk cache");
+        add(indexWarmUpEnabled);
+
+        coarseToFineRetrieval.setAlignmentX(Component.LEFT_ALIGNMENT);
+        coarseToFineRetrieval.setToolTipText("Ranks files by the average vector of their chunks, then searches "
+                + "the chunks of the closest files only. Can shorten queries on indexes of hundreds of thousands "
+                + "of chunks, at the cost of some recall; indexing time and memory are unchanged, and computing "
+                + "the file averages reads the whole index once per session");
+        add(coarseToFineRetrieval);
+
+        tokenAwareChunking.setAlignmentX(Component.LEFT_ALIGNMENT);
+        tokenAwareChunking.setToolTipText("Fills each chunk up to the 512-token window of the local embedding "
+                + "model instead of a character limit, so chunks are neither cut by the model nor too small. "
+                + "Applies to files indexed from now on");
+        add(tokenAwareChunking);
+
+        unsavedBufferIndexing.setAlignmentX(Component.LEFT_ALIGNMENT);
+        unsavedBufferIndexing.setToolTipText("Indexes the edited files in memory when typing pauses, so chat "
+                + "answers and completions use the code as written rather than as last saved");
+        add(unsavedBufferIndexing);
+
+        libraryIndexing.setAlignmentX(Component.LEFT_ALIGNMENT);
+        libraryIndexing.setToolTipText("When a question or a completion involves a library class, indexes the "
+                + "source package of that class in the background, from the sources attached to the library");
+        add(libraryIndexing);
+        add(createLabeledField("Library source cache (MB)", libraryCacheMb,
+                "Disk space for the library indexes, shared by all projects. When exceeded, the least recently "
+                        + "used libraries are deleted. 0 means unlimited."));
+
+        commitHistoryIndexing.setAlignmentX(Component.LEFT_ALIGNMENT);
+        commitHistoryIndexing.setToolTipText("Indexes commit messages, authors, touched files and a summary of "
+                + "each diff, so that chat can answer why and when code changed. New commits are added in the "
+                + "background as questions are asked");
+        add(commitHistoryIndexing);
+        add(createLabeledField("Commit history: commits", commitHistoryMaxCommits,
+                "Most recent commits kept in the commit history index"));
+        add(createLabeledField("Commit history: days", commitHistoryMaxAgeDays,
+                "Commits older than this are left out of the commit history index"));
 
+        add(createIndexHealthSection());
+        add(createLabeledField("Index storage quota (MB)", indexQuotaMb,
+                "Total disk space for the indexes of all projects. When exceeded, the indexes of the least "
+                        + "recently used closed projects are deleted; they are re-indexed when reopened. 0 means unlimited."));
+        add(createStorageSection());
         add(createClearEmbeddingButton());
     }
 
@@ -68,6 +155,180 @@ public class RAGConfigPanel extends JBPanel<RAGConfigPanel> {
         return panel;
     }
 
+    private JPanel createIndexHealthSection() {
+        JPanel panel = new JBPanel<>();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBorder(JBUI.Borders.empty(10, 0, 0, 0));
+        panel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        JBLabel title = new JBLabel("Index health");
+        title.setAlignmentX(Component.LEFT_ALIGNMENT);
+        panel.add(title);
+        panel.add(Box.createVerticalStrut(5));
+
+        indexHealth.setAlignmentX(Component.LEFT_ALIGNMENT);
+        panel.add(indexHealth);
+        indexStats.setAlignmentX(Component.LEFT_ALIGNMENT);
+        indexStats.setForeground(UIManager.getColor("Label.disabledForeground"));
+        panel.add(indexStats);
+        panel.add(Box.createVerticalStrut(5));
+
+        JButton refreshButton = new JButton("Refresh");
+        ComponentCustomizer.applyHoverEffect(refreshButton);
+        refreshButton.addActionListener(e -> refreshIndexHealth(false));
+
+        JButton optimizeButton = new JButton("Optimize Now");
+        ComponentCustomizer.applyHoverEffect(optimizeButton);
+        optimizeButton.setToolTipText("Merges small segments and purges deleted chunks. "
+                + "This also runs automatically when the index is idle.");
+        optimizeButton.addActionListener(e -> refreshIndexHealth(true));
+
+        JPanel buttons = new JBPanel<>();
+        buttons.setLayout(new BoxLayout(buttons, BoxLayout.X_AXIS));
+        buttons.setAlignmentX(Component.LEFT_ALIGNMENT);
+        buttons.add(refreshButton);
+        buttons.add(Box.createHorizontalStrut(5));
+        buttons.add(optimizeButton);
+        panel.add(buttons);
+
+        showIndexHealth();
+        return panel;
+    }
+
+    /**
+     * Reads the health of an index the project already has open: opening the settings must not open
+     * one, such as for the default project or with RAG disabled.
+     */
+    private void showIndexHealth() {
+        if (!hasKnowledgeIndex()) {
+            indexHealth.setText("No knowledge index: RAG is disabled or no project is open");
+            return;
+        }
+        indexStats.setText(formatStats(ApplicationManager.getApplication().getService(IndexRegistry.class)
+                .getStats(IndexKey.of(project))));
+        LuceneEmbeddingStore<?> store = project.getServiceIfCreated(LuceneEmbeddingStore.class);
+        if (store == null) {
+            indexHealth.setText("Index not opened yet, click Refresh to read it");
+            return;
+        }
+        indexHealth.setText("Reading index...");
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            IndexHealth health = store.health();
+            SwingUtilities.invokeLater(() -> indexHealth.setText(health.summary()));
+        });
+    }
+
+    private boolean hasKnowledgeIndex() {
+        return project != null && !project.isDefault() && !project.isDisposed()
+                && OllamAssistSettings.getInstance().ragEnabled();
+    }
+
+    private void refreshIndexHealth(boolean optimize) {
+        if (!hasKnowledgeIndex()) {
+            showIndexHealth();
+            return;
+        }
+        indexStats.setText(formatStats(ApplicationManager.getApplication().getService(IndexRegistry.class)
+                .getStats(IndexKey.of(project))));
+        indexHealth.setText(optimize ? "Optimizing..." : "Reading index...");
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            IndexHealth health = optimize
+                    ? project.getService(IndexMaintenanceService.class).maintainNow()
+                    : project.getService(LuceneEmbeddingStore.class).health();
+            SwingUtilities.invokeLater(() -> indexHealth.setText(health.summary()));
+        });
+    }
+
+    private JPanel createStorageSection() {
+        JPanel panel = new JBPanel<>();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBorder(JBUI.Borders.empty(5, 0));
+        panel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        storageTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JBScrollPane scrollPane = new JBScrollPane(storageTable);
+        scrollPane.setPreferredSize(new Dimension(400, 120));
+        scrollPane.setMaximumSize(new Dimension(Integer.MAX_VALUE, 120));
+        scrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        panel.add(scrollPane);
+        panel.add(Box.createVerticalStrut(5));
+
+        JButton refreshButton = new JButton("Refresh");
+        ComponentCustomizer.applyHoverEffect(refreshButton);
+        refreshButton.addActionListener(e -> refreshStorage());
+
+        JButton purgeButton = new JButton("Purge Selected");
+        ComponentCustomizer.applyHoverEffect(purgeButton);
+        purgeButton.setToolTipText("Deletes the index of a closed project. It is re-indexed when the project is reopened.");
+        purgeButton.addActionListener(e -> purgeSelected());
+
+        JPanel buttons = new JBPanel<>();
+        buttons.setLayout(new BoxLayout(buttons, BoxLayout.X_AXIS));
+        buttons.setAlignmentX(Component.LEFT_ALIGNMENT);
+        buttons.add(refreshButton);
+        buttons.add(Box.createHorizontalStrut(5));
+        buttons.add(purgeButton);
+        panel.add(buttons);
+
+        refreshStorage();
+        return panel;
+    }
+
+    private void refreshStorage() {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            List<IndexStorageManager.IndexUsage> usages = IndexStorageManager.getInstance().usage();
+            SwingUtilities.invokeLater(() -> {
+                storageModel.setRowCount(0);
+                for (IndexStorageManager.IndexUsage usage : usages) {
+                    storageModel.addRow(new Object[]{
+                            usage.projectId(),
+                            String.format("%.1f", usage.sizeBytes() / (1024.0 * 1024.0)),
+                            formatTime(usage.lastUsedMillis()),
+                            usage.open() ? "yes" : ""
+                    });
+                }
+            });
+        });
+    }
+
+    private void purgeSelected() {
+        int row = storageTable.getSelectedRow();
+        if (row < 0) {
+            return;
+        }
+        String projectId = (String) storageModel.getValueAt(storageTable.convertRowIndexToModel(row), 0);
+        if ("yes".equals(storageModel.getValueAt(storageTable.convertRowIndexToModel(row), 3))) {
+            Messages.showInfoMessage("The index of an open project cannot be purged. "
+                    + "Use \"Clear Embedding Store\" from that project instead.", "Purge Index");
+            return;
+        }
+        int result = Messages.showYesNoDialog(
+                "Delete the index of " + projectId + "? It will be rebuilt the next time the project is opened.",
+                "Purge Index",
+                Messages.getWarningIcon()
+        );
+        if (result == Messages.YES) {
+            ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                IndexStorageManager.getInstance().purge(projectId);
+                refreshStorage();
+            });
+        }
+    }
+
+    private static String formatStats(IndexRegistry.IndexStats stats) {
+        if (stats.lastFullIndexMillis() == 0 && stats.lastIncrementalIndexMillis() == 0) {
+            return "Not indexed yet";
+        }
+        return String.format("Full index: %s, last update: %s, model: %s",
+                formatTime(stats.lastFullIndexMillis()),
+                formatTime(stats.lastIncrementalIndexMillis()),
+                stats.modelId() != null ? stats.modelId() : "unknown");
+    }
+
+    private static String formatTime(long millis) {
+        return millis == 0 ? "never" : DateFormatUtil.formatPrettyDateTime(millis);
+    }
+
     private JPanel createClearEmbeddingButton() {
         JPanel panel = new JBPanel<>();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
@@ -107,10 +368,16 @@ public class RAGConfigPanel extends JBPanel<RAGConfigPanel> {
                 .clear();
     }
 
-    public void triggerCleanAllDatabase() {
-        project.getMessageBus()
-                .syncPublisher(StoreNotifier.TOPIC)
-                .clearDatabaseAndRunIndexation();
+    /**
+     * The embedding model is application-wide: every open project rebuilds its index in the
+     * background, and closed ones do so when they are next opened.
+     */
+    public void triggerIndexRebuild() {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            for (Project openProject : ProjectManager.getInstance().getOpenProjects()) {
+                openProject.getService(IndexRebuildService.class).rebuildIfNeeded();
+            }
+        });
     }
 
     // Getters and setters
@@ -122,19 +389,108 @@ public class RAGConfigPanel extends JBPanel<RAGConfigPanel> {
         this.sources.setText(sources.trim());
     }
 
-    public int getMaxDocuments() {
-        return maxDocuments.getValue();
+    public int getEmbeddingBudget() {
+        return embeddingBudget.getValue();
+    }
+
+    public void setEmbeddingBudget(int embeddingBudgetValue) {
+        embeddingBudget.setValue(embeddingBudgetValue);
+    }
+
+    public int getIndexQuotaMb() {
+        return indexQuotaMb.getValue();
+    }
+
+    public void setIndexQuotaMb(int quotaMb) {
+        indexQuotaMb.setValue(quotaMb);
+    }
+
+    public IndexDirectoryType getIndexDirectoryType() {
+        IndexDirectoryType selected = (IndexDirectoryType) indexDirectoryType.getSelectedItem();
+        return selected != null ? selected : IndexDirectoryType.AUTO;
+    }
+
+    public void setIndexDirectoryType(IndexDirectoryType type) {
+        indexDirectoryType.setSelectedItem(type);
+    }
+
+    public boolean isIndexWarmUpEnabled() {
+        return indexWarmUpEnabled.isSelected();
+    }
+
+    public void setIndexWarmUpEnabled(boolean enabled) {
+        indexWarmUpEnabled.setSelected(enabled);
+    }
+
+    public boolean isCoarseToFineRetrieval() {
+        return coarseToFineRetrieval.isSelected();
+    }
+
+    public void setCoarseToFineRetrieval(boolean enabled) {
+        coarseToFineRetrieval.setSelected(enabled);
+    }
+
+    public boolean isTokenAwareChunking() {
+        return tokenAwareChunking.isSelected();
+    }
+
+    public void setTokenAwareChunking(boolean enabled) {
+        tokenAwareChunking.setSelected(enabled);
+    }
+
+    public boolean isUnsavedBufferIndexing() {
+        return unsavedBufferIndexing.isSelected();
+    }
+
+    public void setUnsavedBufferIndexing(boolean enabled) {
+        unsavedBufferIndexing.setSelected(enabled);
+    }
+
+    public boolean isLibraryIndexing() {
+        return libraryIndexing.isSelected();
+    }
+
+    public void setLibraryIndexing(boolean enabled) {
+        libraryIndexing.setSelected(enabled);
+    }
+
+    public int getLibraryCacheMb() {
+        return libraryCacheMb.getValue();
+    }
+
+    public void setLibraryCacheMb(int cacheMb) {
+        libraryCacheMb.setValue(cacheMb);
+    }
+
+    public boolean isCommitHistoryIndexing() {
+        return commitHistoryIndexing.isSelected();
+    }
+
+    public void setCommitHistoryIndexing(boolean enabled) {
+        commitHistoryIndexing.setSelected(enabled);
+    }
+
+    public int getCommitHistoryMaxCommits() {
+        return commitHistoryMaxCommits.getValue();
+    }
+
+    public void setCommitHistoryMaxCommits(int maxCommits) {
+        commitHistoryMaxCommits.setValue(maxCommits);
+    }
+
+    public int getCommitHistoryMaxAgeDays() {
+        return commitHistoryMaxAgeDays.getValue();
     }
 
-    public void setMaxDocuments(int maxDocumentsValue) {
-        maxDocuments.setValue(maxDocumentsValue);
+    public void setCommitHistoryMaxAgeDays(int maxAgeDays) {
+        commitHistoryMaxAgeDays.setValue(maxAgeDays);
     }
 
     public JBTextField getSourcesField() {
         return sources;
     }
 
-    public IntegerField getMaxDocumentsField() {
-        return maxDocuments;
+    public IntegerField getEmbeddingBudgetField() {
+        return embeddingBudget;
     }
 }
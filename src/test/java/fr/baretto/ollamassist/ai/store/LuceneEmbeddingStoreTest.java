@@ -6,9 +6,16 @@ import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModelFactory;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import fr.baretto.ollamassist.chat.rag.IdStartWithFilter;
+import fr.baretto.ollamassist.chat.rag.IndexHealth;
+import fr.baretto.ollamassist.chat.rag.IndexKey;
+import fr.baretto.ollamassist.chat.rag.IndexRegistry;
+import fr.baretto.ollamassist.chat.rag.IndexTier;
+import fr.baretto.ollamassist.chat.rag.IndexSignature;
 import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
 import fr.baretto.ollamassist.setting.OllamAssistSettings;
 import org.jetbrains.annotations.NotNull;
@@ -19,8 +26,17 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -117,6 +133,136 @@ class LuceneEmbeddingStoreTest {
 
     }
 
+    @Test
+    void testMaintenanceExpungesDeletedChunks() {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            embeddings.add(new Embedding(new float[]{i + 1f, 0.2f, 0.3f}));
+            segments.add(TextSegment.from("chunk " + i, Metadata.from("source", "test" + i)));
+        }
+        List<String> ids = store.addAll(embeddings, segments);
+        store.removeAll(ids.subList(0, 5));
+
+        IndexHealth before = store.health();
+        assertEquals(5, before.liveDocs());
+        assertEquals(5, before.deletedDocs());
+        assertTrue(before.needsMaintenance());
+
+        assertTrue(store.maintain(Double.POSITIVE_INFINITY));
+
+        IndexHealth after = store.health();
+        assertEquals(5, after.liveDocs());
+        assertEquals(0, after.deletedDocs());
+        assertEquals(5, after.vectors());
+        assertTrue(after.sizeOnDisk() > 0);
+    }
+
+    @Test
+    void testMaintenanceAfterTheWriterClosedDoesNotBlockWrites() throws Exception {
+        store.closeIndexWriter();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            calls.add(threads.submit(() -> store.maintain(Double.POSITIVE_INFINITY)));
+            for (int i = 0; i < 3; i++) {
+                float x = i + 1f;
+                calls.add(threads.submit(() -> store.add(new Embedding(new float[]{x, 0.2f, 0.3f}),
+                        TextSegment.from("chunk " + x))));
+            }
+            for (Future<?> call : calls) {
+                call.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(3, store.health().liveDocs());
+    }
+
+    @Test
+    void testKeywordOnlyChunksAreFoundByKeywordNotByVector() {
+        store.recreateIndex();
+        store.addAll(List.of(new Embedding(new float[]{1f, 0.2f, 0.3f})), List.of(chunkOf("A.java")));
+        TextSegment readme = chunkOf("README.md");
+        readme.metadata().put(IndexTier.METADATA_KEY, IndexTier.LAZY.name());
+        store.addKeywordOnly(List.of(readme));
+        assertNull(readme.metadata().getString(IndexTier.KEYWORD_ONLY_KEY), "the caller's segment is left as is");
+
+        assertEquals(1, store.knnSearch(new float[]{1f, 0.2f, 0.3f}, 2).size());
+        List<EmbeddingMatch<TextSegment>> keywordMatches = store.bm25Search("README", 2);
+        assertEquals(1, keywordMatches.size());
+        assertEquals("true", keywordMatches.get(0).embedded().metadata().getString(IndexTier.KEYWORD_ONLY_KEY));
+        assertEquals(Set.of("/work/src/README.md"), store.keywordOnlyFilePaths());
+
+        IndexHealth health = store.health();
+        assertEquals(1, health.vectors());
+        assertEquals(1, health.keywordOnly());
+        assertEquals(1, health.tierChunks().get(IndexTier.LAZY));
+        assertEquals(1, health.tierChunks().get(IndexTier.EMBEDDED));
+    }
+
+    @Test
+    void testCheckAndRepairDropsOnlyDamagedSegments() throws Exception {
+        store.recreateIndex();
+        store.addAll(List.of(new Embedding(new float[]{1f, 0.2f, 0.3f})), List.of(chunkOf("A.java")));
+        store.addAll(List.of(new Embedding(new float[]{0.1f, 1f, 0.3f})), List.of(chunkOf("B.java")));
+        assertEquals(LuceneEmbeddingStore.RepairResult.CLEAN, store.checkAndRepair());
+        assertEquals(Set.of("/work/src/A.java", "/work/src/B.java"), store.indexedFilePaths());
+        store.close();
+
+        Path indexPath = Path.of(IndexRegistry.OLLAMASSIST_DIR, IndexKey.of(new DummyProject()), LuceneEmbeddingStore.DATABASE_KNOWLEDGE_INDEX);
+        try (Stream<Path> files = Files.list(indexPath)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().startsWith("_0")
+                    && !f.getFileName().toString().endsWith(".si")).toList()) {
+                byte[] bytes = Files.readAllBytes(file);
+                bytes[bytes.length / 2] ^= 0x5A;
+                Files.write(file, bytes);
+            }
+        }
+
+        store = new LuceneEmbeddingStore<>(new DummyProject());
+        assertEquals(LuceneEmbeddingStore.RepairResult.REPAIRED, store.checkAndRepair());
+        assertEquals(Set.of("/work/src/B.java"), store.indexedFilePaths());
+        assertEquals(1, store.health().liveDocs());
+    }
+
+    @Test
+    void testSwapInShadowServesRebuiltIndex() throws Exception {
+        store.recreateIndex();
+        store.addAll(List.of(new Embedding(new float[]{1f, 0.2f, 0.3f})), List.of(chunkOf("A.java")));
+
+        IndexSignature target = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, "test-model", 0);
+        try (LuceneEmbeddingStore<TextSegment> shadow = LuceneEmbeddingStore.createShadow(new DummyProject(), target)) {
+            shadow.addAll(List.of(new Embedding(new float[]{0.1f, 1f, 0.3f, 0.4f})), List.of(chunkOf("B.java")));
+            shadow.seal();
+        }
+        assertEquals(Set.of("/work/src/A.java"), store.indexedFilePaths());
+        assertTrue(store.needsRebuild("test-model"));
+
+        store.swapInShadow();
+
+        assertEquals(Set.of("/work/src/B.java"), store.indexedFilePaths());
+        assertEquals(new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, "test-model", 4), store.getSignature());
+        assertFalse(store.needsRebuild("test-model"));
+        assertEquals(1, store.knnSearch(new float[]{0.1f, 1f, 0.3f, 0.4f}, 1).size());
+    }
+
+    @Test
+    void testRemoveByFilePathKeepsFilesSharingThePrefix() {
+        store.recreateIndex();
+        store.addAll(List.of(new Embedding(new float[]{1f, 0.2f, 0.3f}), new Embedding(new float[]{0.1f, 1f, 0.3f})),
+                List.of(chunkOf("Foo.js"), chunkOf("Foo.json")));
+
+        store.removeAll(new IdStartWithFilter("/work/src/Foo.js"));
+
+        assertEquals(Set.of("/work/src/Foo.json"), store.indexedFilePaths());
+    }
+
+    private static TextSegment chunkOf(String fileName) {
+        return TextSegment.from("content of " + fileName,
+                Metadata.from(Map.of("absolute_directory_path", "/work/src", "file_name", fileName)));
+    }
+
     private @NotNull Embedding embed(String string) {
         return EMBEDDING_FACTORY.create().embed(string).content();
     }
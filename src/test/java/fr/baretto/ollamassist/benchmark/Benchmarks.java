@@ -0,0 +1,108 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.intellij.openapi.project.Project;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Fixtures and console reports shared by the benchmarks.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * A project whose index lives under {@code ~/.ollamassist}, keyed by {@code name}.
+     */
+    static Project mockProjectNamed(String name) {
+        Project mock = Mockito.mock(Project.class);
+        Mockito.when(mock.getName()).thenReturn(name);
+        Mockito.when(mock.getBasePath()).thenReturn(System.getProperty("user.home"));
+        return mock;
+    }
+
+    /**
+     * Deletes a scratch directory and everything under it, if it exists.
+     */
+    static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Box-drawn results table printed on the console. Text cells are left-aligned, others
+     * right-aligned; a column is as wide as its title unless given a width.
+     */
+    static final class Table {
+
+        private final List<String> titles = new ArrayList<>();
+        private final List<String> formats = new ArrayList<>();
+        private final List<Integer> widths = new ArrayList<>();
+
+        Table column(String title, String format) {
+            return column(title, format, title.length());
+        }
+
+        Table column(String title, String format, int width) {
+            titles.add(title);
+            formats.add(format);
+            widths.add(Math.max(width, title.length()));
+            return this;
+        }
+
+        void printHeader() {
+            System.out.println();
+            System.out.println(border('╔', '╦', '╗'));
+            System.out.println(line(titles.toArray()));
+            System.out.println(border('╠', '╬', '╣'));
+        }
+
+        void printRow(Object... values) {
+            Object[] cells = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                cells[i] = String.format(Locale.ROOT, formats.get(i), values[i]);
+            }
+            System.out.println(line(cells, values));
+        }
+
+        void printFooter() {
+            System.out.println(border('╚', '╩', '╝'));
+        }
+
+        private String line(Object[] cells) {
+            return line(cells, cells);
+        }
+
+        private String line(Object[] cells, Object[] values) {
+            StringBuilder line = new StringBuilder("║");
+            for (int i = 0; i < cells.length; i++) {
+                String align = values[i] instanceof CharSequence || values[i] instanceof Enum<?> ? "-" : "";
+                line.append(String.format(" %" + align + widths.get(i) + "s ║", cells[i]));
+            }
+            return line.toString();
+        }
+
+        private String border(char left, char middle, char right) {
+            StringBuilder border = new StringBuilder().append(left);
+            for (int i = 0; i < widths.size(); i++) {
+                border.append("═".repeat(widths.get(i) + 2)).append(i == widths.size() - 1 ? right : middle);
+            }
+            return border.toString();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.baretto.ollamassist.chat.rag.CodeAnalyzer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BM25 retrieval quality of {@link StandardAnalyzer} versus {@link CodeAnalyzer} on the plugin's own
+ * source code.
+ *
+ * <p>Every file under {@code src/main/java} is cut into 60-line chunks (10 lines of overlap, as the
+ * fallback splitter does) and indexed once per analyzer, with the same field settings and query
+ * parser as {@code LuceneEmbeddingStore#bm25Search}. Each query of a fixed set has one relevant
+ * file; chunk hits are collapsed to files in rank order.
+ *
+ * <p>Metrics: MRR@10, recall@1, recall@5 and recall@10, overall and for queries phrased in words
+ * versus queries that quote an identifier.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_bm25-analyzer.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*Bm25AnalyzerBenchmarkTest'
+ * </pre>
+ */
+@Tag("benchmark")
+class Bm25AnalyzerBenchmarkTest {
+
+    private static final Path SOURCE_ROOT = Path.of("src/main/java");
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final String CONTENT = "content_bm25";
+    private static final String FILE = "file";
+    private static final int CHUNK_LINES = 60;
+    private static final int OVERLAP_LINES = 10;
+    private static final int CHUNK_HITS = 50;
+    private static final int TOP_FILES = 10;
+
+    private record Judged(String query, String expectedFile, boolean identifier) {
+    }
+
+    private static final List<Judged> QUERIES = List.of(
+            new Judged("calculate dynamic threshold", "LuceneEmbeddingStore.java", false),
+            new Judged("handle document error and retry", "DocumentIndexingPipeline.java", false),
+            new Judged("embedding model id", "DocumentIngestFactory.java", false),
+            new Judged("collect file paths", "FilesUtil.java", false),
+            new Judged("mark all as corrupted", "IndexRegistry.java", false),
+            new Judged("generate cache key", "SuggestionCache.java", false),
+            new Judged("authorization header value", "AuthenticationHelper.java", false),
+            new Judged("check embedding model async", "PrerequisiteService.java", false),
+            new Judged("restore memory when conversation switched", "OllamaService.java", false),
+            new Judged("detect secrets", "SecretDetector.java", false),
+            new Judged("file path guard", "FilePathGuard.java", false),
+            new Judged("resolve source root", "SourceRootResolver.java", false),
+            new Judged("parse model size", "ModelSizeParser.java", false),
+            new Judged("line diff highlighter", "LineDiffHighlighter.java", false),
+            new Judged("settings migration", "SettingsMigrationService.java", false),
+            new Judged("tool call parser", "ToolCallParser.java", false),
+            new Judged("split java file into class and method chunks", "CodeAwareDocumentSplitter.java", false),
+            new Judged("reciprocal rank fusion", "RRFFusion.java", false),
+            new Judged("select evictions over quota", "IndexStorageManager.java", false),
+            new Judged("swap in shadow index", "LuceneEmbeddingStore.java", false),
+            new Judged("calculateDynamicThreshold", "LuceneEmbeddingStore.java", true),
+            new Judged("generateCacheKey", "SuggestionCache.java", true),
+            new Judged("checkAndMigrateIndexVersion", "LuceneEmbeddingStore.java", true),
+            new Judged("handleDocumentError", "DocumentIndexingPipeline.java", true),
+            new Judged("selectEvictions", "IndexStorageManager.java", true)
+    );
+
+    @Test
+    void benchmark() throws Exception {
+        List<Chunk> chunks = chunkSources();
+        assertTrue(!chunks.isEmpty(), "No source found under " + SOURCE_ROOT.toAbsolutePath());
+
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_bm25-analyzer.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        System.out.println("\n╔══════════╦═════════╦══════════╦══════════╦═══════════╦══════════════╦══════════════╗");
+        System.out.println("║ Analyzer ║ MRR@10  ║ recall@1 ║ recall@5 ║ recall@10 ║ MRR (words)  ║ MRR (idents) ║");
+        System.out.println("╠══════════╬═════════╬══════════╬══════════╬═══════════╬══════════════╬══════════════╣");
+
+        Map<String, Analyzer> analyzers = new LinkedHashMap<>();
+        analyzers.put("standard", new StandardAnalyzer());
+        analyzers.put("code", new CodeAnalyzer());
+        for (Map.Entry<String, Analyzer> entry : analyzers.entrySet()) {
+            try (Analyzer analyzer = entry.getValue(); Directory directory = new ByteBuffersDirectory()) {
+                index(directory, analyzer, chunks);
+                Scores all = new Scores();
+                Scores words = new Scores();
+                Scores identifiers = new Scores();
+                try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    for (Judged judged : QUERIES) {
+                        int rank = rankOf(searcher, analyzer, judged);
+                        all.add(rank);
+                        (judged.identifier() ? identifiers : words).add(rank);
+                    }
+                }
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("ts", runTs);
+                row.put("analyzer", entry.getKey());
+                row.put("chunks", chunks.size());
+                row.put("queries", QUERIES.size());
+                row.put("mrr10", all.mrr());
+                row.put("recall1", all.recall(1));
+                row.put("recall5", all.recall(5));
+                row.put("recall10", all.recall(10));
+                row.put("mrr10Words", words.mrr());
+                row.put("mrr10Identifiers", identifiers.mrr());
+                Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+                System.out.printf("║ %-8s ║ %7.3f ║ %8.2f ║ %8.2f ║ %9.2f ║ %12.3f ║ %12.3f ║%n", entry.getKey(),
+                        all.mrr(), all.recall(1), all.recall(5), all.recall(10), words.mrr(), identifiers.mrr());
+            }
+        }
+        System.out.println("╚══════════╩═════════╩══════════╩══════════╩═══════════╩══════════════╩══════════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private record Chunk(String file, String text) {
+    }
+
+    private static List<Chunk> chunkSources() throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        if (!Files.isDirectory(SOURCE_ROOT)) {
+            return chunks;
+        }
+        try (Stream<Path> files = Files.walk(SOURCE_ROOT)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".java")).sorted().toList()) {
+                List<String> lines = Files.readAllLines(file);
+                for (int start = 0; start < lines.size(); start += CHUNK_LINES - OVERLAP_LINES) {
+                    int end = Math.min(lines.size(), start + CHUNK_LINES);
+                    chunks.add(new Chunk(file.getFileName().toString(), String.join("\n", lines.subList(start, end))));
+                    if (end == lines.size()) {
+                        break;
+                    }
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static void index(Directory directory, Analyzer analyzer, List<Chunk> chunks) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            for (Chunk chunk : chunks) {
+                Document doc = new Document();
+                doc.add(new StringField(FILE, chunk.file(), Field.Store.YES));
+                doc.add(new TextField(CONTENT, chunk.text(), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+    }
+
+    /**
+     * @return 1-based rank of the expected file among the distinct files hit, 0 when not in the top 10
+     */
+    private static int rankOf(IndexSearcher searcher, Analyzer analyzer, Judged judged) throws Exception {
+        QueryParser parser = new QueryParser(CONTENT, analyzer);
+        parser.setDefaultOperator(QueryParser.Operator.OR);
+        Query query = parser.parse(QueryParser.escape(judged.query()));
+        Set<String> files = new LinkedHashSet<>();
+        for (ScoreDoc hit : searcher.search(query, CHUNK_HITS).scoreDocs) {
+            files.add(searcher.storedFields().document(hit.doc).get(FILE));
+            if (files.size() == TOP_FILES) {
+                break;
+            }
+        }
+        int rank = 1;
+        for (String file : files) {
+            if (file.equals(judged.expectedFile())) {
+                return rank;
+            }
+            rank++;
+        }
+        return 0;
+    }
+
+    private static final class Scores {
+        private final List<Integer> ranks = new ArrayList<>();
+
+        void add(int rank) {
+            ranks.add(rank);
+        }
+
+        double mrr() {
+            return ranks.stream().mapToDouble(rank -> rank == 0 ? 0 : 1.0 / rank).average().orElse(0);
+        }
+
+        double recall(int k) {
+            return ranks.stream().mapToDouble(rank -> rank > 0 && rank <= k ? 1 : 0).average().orElse(0);
+        }
+    }
+}
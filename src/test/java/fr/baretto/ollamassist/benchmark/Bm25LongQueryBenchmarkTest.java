@@ -0,0 +1,231 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.baretto.ollamassist.chat.rag.Bm25QueryBuilder;
+import fr.baretto.ollamassist.chat.rag.CodeAnalyzer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BM25 search with long query texts: the classic query parser, as {@code bm25Search} used it, versus
+ * {@link Bm25QueryBuilder}.
+ *
+ * <p>The plugin's own sources are cut into 60-line chunks and indexed with {@link CodeAnalyzer}.
+ * Queries are runs of 10 to 10,000 consecutive whitespace-separated tokens of that source, as a pasted
+ * selection or stack trace would be.
+ *
+ * <p>Metrics per query length: p50 and p95 latency (query construction and search), queries the
+ * parser rejected with {@code TooManyClauses}, mean clause count, and overlap of the top 10 with the
+ * parser's top 10 when the parser succeeded.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_bm25-long-query.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*Bm25LongQueryBenchmarkTest'
+ * </pre>
+ */
+@Tag("benchmark")
+class Bm25LongQueryBenchmarkTest {
+
+    private static final Path SOURCE_ROOT = Path.of("src/main/java");
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final String CONTENT = "content_bm25";
+    private static final int CHUNK_LINES = 60;
+    private static final int[] QUERY_TOKENS = {10, 100, 1_000, 10_000};
+    private static final int QUERIES_PER_LENGTH = 20;
+    private static final int MAX_CLAUSES = 64;
+    private static final int TOP_K = 10;
+    private static final long SEED = 42;
+
+    @Test
+    void benchmark() throws Exception {
+        List<String> chunks = chunkSources();
+        assertTrue(!chunks.isEmpty(), "No source found under " + SOURCE_ROOT.toAbsolutePath());
+        String[] tokens = String.join("\n", chunks).split("\\s+");
+
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_bm25-long-query.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        System.out.println("\n╔════════╦═════════╦═════════════╦═════════════╦═════════╦═════════╦═════════╦═════════╗");
+        System.out.println("║ Tokens ║ Method  ║ p50 (ms)    ║ p95 (ms)    ║ Failed  ║ Clauses ║ Overlap ║ Queries ║");
+        System.out.println("╠════════╬═════════╬═════════════╬═════════════╬═════════╬═════════╬═════════╬═════════╣");
+
+        try (Analyzer analyzer = new CodeAnalyzer(); Directory directory = new ByteBuffersDirectory()) {
+            index(directory, analyzer, chunks);
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                Random random = new Random(SEED);
+                for (int length : QUERY_TOKENS) {
+                    Stats parser = new Stats();
+                    Stats builder = new Stats();
+                    for (int q = 0; q < QUERIES_PER_LENGTH; q++) {
+                        int start = random.nextInt(Math.max(1, tokens.length - length));
+                        String text = String.join(" ", Arrays.copyOfRange(tokens, start, Math.min(tokens.length, start + length)));
+
+                        Set<Integer> parserTop = null;
+                        long t0 = System.nanoTime();
+                        try {
+                            QueryParser queryParser = new QueryParser(CONTENT, analyzer);
+                            queryParser.setDefaultOperator(QueryParser.Operator.OR);
+                            Query query = queryParser.parse(QueryParser.escape(text));
+                            parserTop = top(searcher, query);
+                            parser.add(System.nanoTime() - t0, clauses(query), -1);
+                        } catch (Exception e) {
+                            parser.fail();
+                        }
+
+                        t0 = System.nanoTime();
+                        Query query = Bm25QueryBuilder.build(text, analyzer, reader, CONTENT, MAX_CLAUSES);
+                        Set<Integer> builderTop = top(searcher, query);
+                        builder.add(System.nanoTime() - t0, clauses(query), parserTop == null ? -1 : overlap(parserTop, builderTop));
+                    }
+                    report(mapper, outputFile, runTs, length, "parser", parser, chunks.size());
+                    report(mapper, outputFile, runTs, length, "builder", builder, chunks.size());
+                }
+            }
+        }
+        System.out.println("╚════════╩═════════╩═════════════╩═════════════╩═════════╩═════════╩═════════╩═════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private static void report(ObjectMapper mapper, Path outputFile, String runTs, int length, String method,
+                               Stats stats, int chunks) throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("ts", runTs);
+        row.put("queryTokens", length);
+        row.put("method", method);
+        row.put("chunks", chunks);
+        row.put("queries", QUERIES_PER_LENGTH);
+        row.put("failed", stats.failed);
+        row.put("p50Ms", stats.percentileMs(50));
+        row.put("p95Ms", stats.percentileMs(95));
+        row.put("meanClauses", stats.meanClauses());
+        row.put("overlapWithParser", stats.meanOverlap());
+        Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        System.out.printf("║ %6d ║ %-7s ║ %11.2f ║ %11.2f ║ %7d ║ %7.0f ║ %7s ║ %7d ║%n",
+                length, method, stats.percentileMs(50), stats.percentileMs(95), stats.failed, stats.meanClauses(),
+                stats.meanOverlap() < 0 ? "-" : String.format("%.2f", stats.meanOverlap()), QUERIES_PER_LENGTH);
+    }
+
+    private static List<String> chunkSources() throws IOException {
+        List<String> chunks = new ArrayList<>();
+        if (!Files.isDirectory(SOURCE_ROOT)) {
+            return chunks;
+        }
+        try (Stream<Path> files = Files.walk(SOURCE_ROOT)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".java")).sorted().toList()) {
+                List<String> lines = Files.readAllLines(file);
+                for (int start = 0; start < lines.size(); start += CHUNK_LINES) {
+                    chunks.add(String.join("\n", lines.subList(start, Math.min(lines.size(), start + CHUNK_LINES))));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static void index(Directory directory, Analyzer analyzer, List<String> chunks) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            for (String chunk : chunks) {
+                Document doc = new Document();
+                doc.add(new TextField(CONTENT, chunk, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+    }
+
+    private static Set<Integer> top(IndexSearcher searcher, Query query) throws IOException {
+        Set<Integer> docs = new HashSet<>();
+        for (ScoreDoc hit : searcher.search(query, TOP_K).scoreDocs) {
+            docs.add(hit.doc);
+        }
+        return docs;
+    }
+
+    private static int clauses(Query query) {
+        return query instanceof BooleanQuery booleanQuery ? booleanQuery.clauses().size() : 1;
+    }
+
+    private static double overlap(Set<Integer> expected, Set<Integer> actual) {
+        if (expected.isEmpty()) {
+            return actual.isEmpty() ? 1 : 0;
+        }
+        long shared = actual.stream().filter(expected::contains).count();
+        return (double) shared / expected.size();
+    }
+
+    private static final class Stats {
+        private final List<Long> nanos = new ArrayList<>();
+        private final List<Integer> clauseCounts = new ArrayList<>();
+        private final List<Double> overlaps = new ArrayList<>();
+        private int failed;
+
+        void add(long elapsedNanos, int clauses, double overlap) {
+            nanos.add(elapsedNanos);
+            clauseCounts.add(clauses);
+            if (overlap >= 0) {
+                overlaps.add(overlap);
+            }
+        }
+
+        void fail() {
+            failed++;
+        }
+
+        double percentileMs(int percentile) {
+            if (nanos.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = nanos.stream().sorted().toList();
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, index)) / 1e6;
+        }
+
+        double meanClauses() {
+            return clauseCounts.stream().mapToInt(Integer::intValue).average().orElse(0);
+        }
+
+        double meanOverlap() {
+            return overlaps.isEmpty() ? -1 : overlaps.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        }
+    }
+}
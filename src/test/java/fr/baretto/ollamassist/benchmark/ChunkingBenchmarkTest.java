@@ -7,6 +7,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
@@ -17,29 +18,35 @@ import fr.baretto.ollamassist.benchmark.judge.BenchmarkJudge;
 import fr.baretto.ollamassist.benchmark.judge.ContextJudge;
 import fr.baretto.ollamassist.benchmark.judge.RagUnitJudge;
 import fr.baretto.ollamassist.chat.rag.CodeAwareDocumentSplitter;
+import fr.baretto.ollamassist.chat.rag.EmbeddingTokenizer;
 import fr.baretto.ollamassist.chat.rag.HybridRetriever;
 import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
-import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Stream;
 
+import static fr.baretto.ollamassist.benchmark.Benchmarks.mockProjectNamed;
+
 /**
  * LLM-as-a-judge benchmark comparing chunking strategies using the real production pipeline.
  *
@@ -62,11 +69,32 @@ import java.util.stream.Stream;
  * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_chunking.jsonl}
  * (relative to project root) to track quality evolution over time.
  *
+ * <p>{@link #allocation()} measures the line-based fallback alone: heap allocated per input character
+ * and time, for the {@link CodeAwareDocumentSplitter} windows built from a line offset index versus the
+ * former {@code split("\n")} / {@code String.join} windows. Inputs are the source files and a
+ * generated {@value #LARGE_FILE_LINES}-line text file. Results go to
+ * {@code benchmark-results/YYYY-MM-DD_chunking-allocation.jsonl}.
+ *
+ * <p>{@link #languages()} compares, per language (Kotlin, Python, TypeScript, Go), the declaration
+ * chunks of {@link CodeAwareDocumentSplitter} with plain line windows on generated files: chunk count,
+ * chunks/s, mean chunk size and the share of chunks carrying an {@code fqn}. Without a running IDE the
+ * declarations come from the source outline, not from PSI. Results go to
+ * {@code benchmark-results/YYYY-MM-DD_chunking-languages.jsonl}.
+ *
+ * <p>{@link #tokenSizing()} splits the source files (line windows) and the generated files of each
+ * language (declarations) once with the character limit and once with the BGE tokenizer, and counts
+ * the chunks, the share of chunks over the {@value EmbeddingTokenizer#BGE_MAX_TOKENS}-token window of
+ * the model, and the mean tokens per chunk. Results go to
+ * {@code benchmark-results/YYYY-MM-DD_chunking-tokens.jsonl}.
+ *
  * <p>Run:
  * <pre>
  *   ./gradlew benchmark
  *   ./gradlew benchmark -Dbenchmark.judge.enabled=true
  *   ./gradlew benchmark -Dbenchmark.judge.enabled=true -Dbenchmark.judge.model=llama3.2:3b
+ *   ./gradlew benchmark --tests '*ChunkingBenchmarkTest.allocation'
+ *   ./gradlew benchmark --tests '*ChunkingBenchmarkTest.languages' -Pbenchmark.chunking.language.files=1000
+ *   ./gradlew benchmark --tests '*ChunkingBenchmarkTest.tokenSizing'
  * </pre>
  */
 @Tag("benchmark")
@@ -78,6 +106,18 @@ class ChunkingBenchmarkTest {
     private static final Path SOURCE_DIR    = Path.of("src/main/java/fr/baretto/ollamassist");
     private static final Path RESULTS_DIR   = Path.of("benchmark-results");
     private static final int  SEARCH_TOP_K  = 5;
+    private static final int  LARGE_FILE_LINES = 200_000;
+    private static final int  ALLOCATION_ROUNDS = 5;
+    private static final int  LANGUAGE_FILES = Integer.getInteger("benchmark.chunking.language.files", 200);
+    private static final List<Syntax> SYNTAXES = List.of(
+            new Syntax("kt", "class %s {\n", "    fun %s(value: String): Int {\n",
+                    "        val %s = value.length + %d\n", "        return 0\n    }\n\n", "}\n"),
+            new Syntax("py", "class %s:\n", "    def %s(self, value):\n",
+                    "        %s = len(value) + %d\n", "        return 0\n\n", "\n"),
+            new Syntax("ts", "export class %s {\n", "  %s(value: string): number {\n",
+                    "    const %s = value.length + %d;\n", "    return 0;\n  }\n\n", "}\n"),
+            new Syntax("go", "type %s struct {\n\tvalue string\n}\n\n", "func (s *%2$s) %1$s(value string) int {\n",
+                    "\t%s := len(value) + %d\n", "\treturn 0\n}\n\n", ""));
 
     private EmbeddingModel embeddingModel;
     private ContextJudge     judge;
@@ -186,6 +226,248 @@ class ChunkingBenchmarkTest {
         }
     }
 
+    @Test
+    void allocation() throws Exception {
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_chunking-allocation.jsonl");
+
+        List<String> sources = new ArrayList<>();
+        for (Path file : sourceFiles) {
+            sources.add(Files.readString(file));
+        }
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < LARGE_FILE_LINES; i++) {
+            large.append("2024-01-01T00:00:00 INFO [worker-").append(i % 16).append("] processed request ")
+                    .append(i).append(" in ").append(i % 97).append(" ms\n");
+        }
+        Map<String, List<String>> inputs = new LinkedHashMap<>();
+        inputs.put("sources", sources);
+        inputs.put("large-file", List.of(large.toString()));
+
+        CodeAwareDocumentSplitter splitter = new CodeAwareDocumentSplitter(null);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        System.out.println("\n╔════════════╦════════════╦══════════╦══════════╦═══════════════╦══════════╗");
+        System.out.println("║ Input      ║ Chunker    ║ M chars  ║ Chunks   ║ Alloc B/char  ║ ms       ║");
+        System.out.println("╠════════════╬════════════╬══════════╬══════════╬═══════════════╬══════════╣");
+        for (Map.Entry<String, List<String>> input : inputs.entrySet()) {
+            long inputChars = input.getValue().stream().mapToLong(String::length).sum();
+            Map<String, java.util.function.ToIntFunction<String>> chunkers = new LinkedHashMap<>();
+            chunkers.put("line-index", text -> splitter.split(Document.from(text, new Metadata())).size());
+            chunkers.put("split-join", ChunkingBenchmarkTest::legacyLineChunks);
+            for (Map.Entry<String, java.util.function.ToIntFunction<String>> chunker : chunkers.entrySet()) {
+                int chunks = 0;
+                for (String text : input.getValue()) {
+                    chunker.getValue().applyAsInt(text);
+                }
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+                    chunks = 0;
+                    for (String text : input.getValue()) {
+                        chunks += chunker.getValue().applyAsInt(text);
+                    }
+                }
+                double ms = (System.nanoTime() - start) / 1e6 / ALLOCATION_ROUNDS;
+                double bytesPerChar = (threads.getCurrentThreadAllocatedBytes() - allocated)
+                        / (double) ALLOCATION_ROUNDS / inputChars;
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("ts", runTs);
+                row.put("input", input.getKey());
+                row.put("chunker", chunker.getKey());
+                row.put("inputChars", inputChars);
+                row.put("chunks", chunks);
+                row.put("allocatedBytesPerInputChar", bytesPerChar);
+                row.put("ms", ms);
+                Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                        java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+
+                System.out.printf("║ %-10s ║ %-10s ║ %8.1f ║ %8d ║ %13.1f ║ %8.1f ║%n", input.getKey(), chunker.getKey(),
+                        inputChars / 1e6, chunks, bytesPerChar, ms);
+            }
+        }
+        System.out.println("╚════════════╩════════════╩══════════╩══════════╩═══════════════╩══════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    /**
+     * The windows the fallback chunker used to build, kept as the allocation baseline.
+     */
+    private static int legacyLineChunks(String text) {
+        String[] lines = text.split("\n", -1);
+        List<TextSegment> chunks = new ArrayList<>();
+        for (int i = 0; i < lines.length; i += 50) {
+            String chunk = String.join("\n", Arrays.copyOfRange(lines, i, Math.min(i + 60, lines.length)));
+            if (!chunk.isBlank()) {
+                Metadata metadata = new Metadata();
+                metadata.put("chunk_type", "other");
+                metadata.put("line_start", String.valueOf(i + 1));
+                chunks.add(TextSegment.from(chunk.length() > 3000 ? chunk.substring(0, 3000) : chunk, metadata));
+            }
+        }
+        return chunks.size();
+    }
+
+    /**
+     * Templates of a generated source file: a class (or Go struct) opening, then per method its
+     * signature, body statements and end. Method signatures get the method and class names.
+     */
+    private record Syntax(String extension, String classOpen, String method, String statement, String methodClose,
+                          String classClose) {
+    }
+
+    @Test
+    void languages() throws Exception {
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_chunking-languages.jsonl");
+        CodeAwareDocumentSplitter splitter = new CodeAwareDocumentSplitter(null);
+
+        System.out.println("\n╔══════╦═══════╦════════════╦════════════╦═════════════╦═════════════╦═════════╦═══════════╗");
+        System.out.println("║ Lang ║ Files ║ decl chunks║ win chunks ║ decl chunk/s║ win chunk/s ║ fqn %   ║ decl chars║");
+        System.out.println("╠══════╬═══════╬════════════╬════════════╬═════════════╬═════════════╬═════════╬═══════════╣");
+        for (Syntax syntax : SYNTAXES) {
+            List<Document> structural = new ArrayList<>();
+            List<Document> windows = new ArrayList<>();
+            Random random = new Random(42);
+            for (int i = 0; i < LANGUAGE_FILES; i++) {
+                String text = generateSource(syntax, random);
+                Metadata metadata = new Metadata();
+                metadata.put("file_name", "File" + i + "." + syntax.extension());
+                metadata.put("absolute_directory_path", "/benchmark/src");
+                structural.add(Document.from(text, metadata));
+                windows.add(Document.from(text, new Metadata()));
+            }
+
+            List<TextSegment> declarationChunks = splitAll(splitter, structural);
+            long start = System.nanoTime();
+            declarationChunks = splitAll(splitter, structural);
+            double declarationSeconds = (System.nanoTime() - start) / 1e9;
+            List<TextSegment> windowChunks = splitAll(splitter, windows);
+            start = System.nanoTime();
+            windowChunks = splitAll(splitter, windows);
+            double windowSeconds = (System.nanoTime() - start) / 1e9;
+
+            long withFqn = declarationChunks.stream().filter(c -> c.metadata().getString("fqn") != null).count();
+            double fqnShare = declarationChunks.isEmpty() ? 0 : (double) withFqn / declarationChunks.size();
+            double meanChars = declarationChunks.stream().mapToInt(c -> c.text().length()).average().orElse(0);
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ts", runTs);
+            row.put("language", syntax.extension());
+            row.put("files", LANGUAGE_FILES);
+            row.put("declarationChunks", declarationChunks.size());
+            row.put("windowChunks", windowChunks.size());
+            row.put("declarationChunksPerSecond", declarationChunks.size() / declarationSeconds);
+            row.put("windowChunksPerSecond", windowChunks.size() / windowSeconds);
+            row.put("fqnShare", fqnShare);
+            row.put("declarationMeanChars", meanChars);
+            row.put("windowMeanChars", windowChunks.stream().mapToInt(c -> c.text().length()).average().orElse(0));
+            Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+
+            System.out.printf("║ %-4s ║ %5d ║ %10d ║ %10d ║ %11.0f ║ %11.0f ║ %7.1f ║ %9.0f ║%n", syntax.extension(),
+                    LANGUAGE_FILES, declarationChunks.size(), windowChunks.size(),
+                    declarationChunks.size() / declarationSeconds, windowChunks.size() / windowSeconds,
+                    fqnShare * 100, meanChars);
+        }
+        System.out.println("╚══════╩═══════╩════════════╩════════════╩═════════════╩═════════════╩═════════╩═══════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    @Test
+    void tokenSizing() throws Exception {
+        EmbeddingTokenizer tokenizer = EmbeddingTokenizer.bgeSmall().orElse(null);
+        Assumptions.assumeTrue(tokenizer != null, "BGE tokenizer not available");
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_chunking-tokens.jsonl");
+
+        Map<String, List<Document>> inputs = new LinkedHashMap<>();
+        List<Document> sources = new ArrayList<>();
+        for (Path file : sourceFiles) {
+            sources.add(Document.from(Files.readString(file), new Metadata()));
+        }
+        inputs.put("sources", sources);
+        for (Syntax syntax : SYNTAXES) {
+            List<Document> generated = new ArrayList<>();
+            Random random = new Random(42);
+            for (int i = 0; i < LANGUAGE_FILES; i++) {
+                Metadata metadata = new Metadata();
+                metadata.put("file_name", "File" + i + "." + syntax.extension());
+                metadata.put("absolute_directory_path", "/benchmark/src");
+                generated.add(Document.from(generateSource(syntax, random), metadata));
+            }
+            inputs.put(syntax.extension(), generated);
+        }
+        Map<String, CodeAwareDocumentSplitter> splitters = new LinkedHashMap<>();
+        splitters.put("chars", new CodeAwareDocumentSplitter(null));
+        splitters.put("tokens", new CodeAwareDocumentSplitter(null, tokenizer));
+
+        System.out.println("\n╔═════════╦════════╦══════════╦═════════════╦═════════════╦══════════╗");
+        System.out.println("║ Input   ║ Sizing ║ Chunks   ║ Over window ║ Mean tokens ║ ms       ║");
+        System.out.println("╠═════════╬════════╬══════════╬═════════════╬═════════════╬══════════╣");
+        for (Map.Entry<String, List<Document>> input : inputs.entrySet()) {
+            for (Map.Entry<String, CodeAwareDocumentSplitter> splitter : splitters.entrySet()) {
+                long start = System.nanoTime();
+                List<TextSegment> chunks = splitAll(splitter.getValue(), input.getValue());
+                double ms = (System.nanoTime() - start) / 1e6;
+                int[] tokens = chunks.stream().mapToInt(c -> tokenizer.count(c.text())).toArray();
+                long over = Arrays.stream(tokens).filter(t -> t > tokenizer.chunkTokens()).count();
+                double overShare = chunks.isEmpty() ? 0 : (double) over / chunks.size();
+                double meanTokens = Arrays.stream(tokens).average().orElse(0);
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("ts", runTs);
+                row.put("input", input.getKey());
+                row.put("sizing", splitter.getKey());
+                row.put("documents", input.getValue().size());
+                row.put("chunks", chunks.size());
+                row.put("overWindowShare", overShare);
+                row.put("meanTokens", meanTokens);
+                row.put("maxTokens", Arrays.stream(tokens).max().orElse(0));
+                row.put("ms", ms);
+                Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                        java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+
+                System.out.printf("║ %-7s ║ %-6s ║ %8d ║ %10.1f%% ║ %11.0f ║ %8.0f ║%n", input.getKey(),
+                        splitter.getKey(), chunks.size(), overShare * 100, meanTokens, ms);
+            }
+        }
+        System.out.println("╚═════════╩════════╩══════════╩═════════════╩═════════════╩══════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private static List<TextSegment> splitAll(CodeAwareDocumentSplitter splitter, List<Document> documents) {
+        List<TextSegment> chunks = new ArrayList<>();
+        for (Document document : documents) {
+            chunks.addAll(splitter.split(document));
+        }
+        return chunks;
+    }
+
+    private static String generateSource(Syntax syntax, Random random) {
+        StringBuilder sb = new StringBuilder();
+        int classes = 1 + random.nextInt(3);
+        for (int c = 0; c < classes; c++) {
+            String className = "Component" + c;
+            sb.append(String.format(syntax.classOpen(), className));
+            int methods = 3 + random.nextInt(13);
+            for (int m = 0; m < methods; m++) {
+                sb.append(String.format(syntax.method(), "compute" + m, className));
+                int statements = 3 + random.nextInt(23);
+                for (int st = 0; st < statements; st++) {
+                    sb.append(String.format(syntax.statement(), "value" + st, random.nextInt(100)));
+                }
+                sb.append(syntax.methodClose());
+            }
+            sb.append(syntax.classClose());
+        }
+        return sb.toString();
+    }
+
     private void runStrategy(String strategyName,
                               CodeAwareDocumentSplitter splitter,
                               String runTs,
@@ -264,14 +546,6 @@ class ChunkingBenchmarkTest {
         }
     }
 
-    /** Creates a minimal Project mock that returns a unique name (for LuceneEmbeddingStore path). */
-    private static Project mockProjectNamed(String name) {
-        Project mock = Mockito.mock(Project.class);
-        Mockito.when(mock.getName()).thenReturn(name);
-        Mockito.when(mock.getBasePath()).thenReturn(System.getProperty("user.home"));
-        return mock;
-    }
-
     private static List<Path> scanSourceFiles(Path dir) throws IOException {
         if (!Files.exists(dir)) {
             log.warn("Source directory not found: {}", dir.toAbsolutePath());
@@ -0,0 +1,259 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.baretto.ollamassist.chat.rag.CentroidIndex;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import static fr.baretto.ollamassist.benchmark.Benchmarks.deleteRecursively;
+
+/**
+ * Coarse-to-fine retrieval ({@link CentroidIndex} then filtered KNN) versus a flat KNN search over
+ * every chunk, at 100k and 1M synthetic chunks.
+ *
+ * <p>Chunks are grouped in files of {@value #CHUNKS_PER_FILE}; each file has a random topic vector and
+ * its chunks are that topic plus noise, so files are coherent as in real code. Queries are noisy copies
+ * of random chunks. The ground truth is an exact scan of all vectors.
+ *
+ * <p>Metrics: recall@10 against the exact top 10, p50 and p95 query latency, and the time of the
+ * first coarse query, which computes the centroids.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_coarse-to-fine.jsonl}.
+ *
+ * <p>Run (the 1M index takes a while to build):
+ * <pre>
+ *   ./gradlew benchmark --tests '*CoarseToFineBenchmarkTest'
+ *   ./gradlew benchmark -Pbenchmark.coarse.chunks=100000
+ * </pre>
+ */
+@Tag("benchmark")
+class CoarseToFineBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CoarseToFineBenchmarkTest.class);
+
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final String VECTOR = "vector";
+    private static final String FILE = "file";
+    private static final int[] CHUNKS = Arrays.stream(System.getProperty("benchmark.coarse.chunks", "100000,1000000")
+            .split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    private static final int DIMENSION = Integer.getInteger("benchmark.coarse.dimension", 128);
+    private static final int CHUNKS_PER_FILE = 50;
+    private static final int COARSE_FILES = 64;
+    private static final int QUERIES = 100;
+    private static final int TOP_K = 10;
+    private static final float NOISE = 0.6f;
+
+    @Test
+    void benchmark() throws Exception {
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_coarse-to-fine.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        System.out.println("\n╔═══════════╦═════════╦═══════════╦══════════╦══════════╦═══════════════╗");
+        System.out.println("║ Chunks    ║ Mode    ║ recall@10 ║ p50 (ms) ║ p95 (ms) ║ 1st query ms  ║");
+        System.out.println("╠═══════════╬═════════╬═══════════╬══════════╬══════════╬═══════════════╣");
+
+        for (int chunks : CHUNKS) {
+            Path indexDir = Files.createTempDirectory("coarse-to-fine-" + chunks);
+            try (Directory directory = FSDirectory.open(indexDir)) {
+                long buildStart = System.nanoTime();
+                build(directory, chunks);
+                log.info("Built {} chunks in {} s", chunks, (System.nanoTime() - buildStart) / 1_000_000_000);
+
+                try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    CentroidIndex centroids = new CentroidIndex(VECTOR, FILE);
+                    Random random = new Random(7);
+                    float[][] topics = topics(chunks / CHUNKS_PER_FILE);
+
+                    List<Long> flatNanos = new ArrayList<>();
+                    List<Long> coarseNanos = new ArrayList<>();
+                    double flatRecall = 0;
+                    double coarseRecall = 0;
+                    long firstCoarseNanos = 0;
+                    for (int q = 0; q < QUERIES; q++) {
+                        float[] query = noisy(topics[random.nextInt(topics.length)], random);
+                        Set<Integer> exact = exactTopK(reader, query);
+
+                        long start = System.nanoTime();
+                        TopDocs flat = searcher.search(new KnnFloatVectorQuery(VECTOR, query, TOP_K), TOP_K);
+                        flatNanos.add(System.nanoTime() - start);
+                        flatRecall += recall(exact, flat);
+
+                        start = System.nanoTime();
+                        List<String> files = centroids.nearestFiles(reader, query, COARSE_FILES);
+                        TopDocs coarse = searcher.search(new KnnFloatVectorQuery(VECTOR, query, TOP_K,
+                                centroids.restrictTo(files)), TOP_K);
+                        long elapsed = System.nanoTime() - start;
+                        if (q == 0) {
+                            firstCoarseNanos = elapsed;
+                        } else {
+                            coarseNanos.add(elapsed);
+                        }
+                        coarseRecall += recall(exact, coarse);
+                    }
+                    report(mapper, outputFile, runTs, chunks, "flat", flatRecall / QUERIES, flatNanos, 0);
+                    report(mapper, outputFile, runTs, chunks, "coarse", coarseRecall / QUERIES, coarseNanos, firstCoarseNanos);
+                }
+            } finally {
+                deleteRecursively(indexDir);
+            }
+        }
+        System.out.println("╚═══════════╩═════════╩═══════════╩══════════╩══════════╩═══════════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private static void report(ObjectMapper mapper, Path outputFile, String runTs, int chunks, String mode,
+                               double recall, List<Long> nanos, long firstQueryNanos) throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("ts", runTs);
+        row.put("chunks", chunks);
+        row.put("dimension", DIMENSION);
+        row.put("mode", mode);
+        row.put("coarseFiles", COARSE_FILES);
+        row.put("queries", QUERIES);
+        row.put("recall10", recall);
+        row.put("p50Ms", percentileMs(nanos, 50));
+        row.put("p95Ms", percentileMs(nanos, 95));
+        row.put("firstQueryMs", firstQueryNanos / 1e6);
+        Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        System.out.printf("║ %9d ║ %-7s ║ %9.3f ║ %8.2f ║ %8.2f ║ %13s ║%n", chunks, mode, recall,
+                percentileMs(nanos, 50), percentileMs(nanos, 95),
+                firstQueryNanos == 0 ? "-" : String.format("%.0f", firstQueryNanos / 1e6));
+    }
+
+    private static void build(Directory directory, int chunks) throws IOException {
+        float[][] topics = topics(chunks / CHUNKS_PER_FILE);
+        Random random = new Random(42);
+        IndexWriterConfig config = new IndexWriterConfig().setRAMBufferSizeMB(256);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            for (int i = 0; i < chunks; i++) {
+                int file = i / CHUNKS_PER_FILE;
+                String path = "/repo/src/pkg" + (file % 100) + "/File" + file + ".java";
+                Document doc = new Document();
+                doc.add(new StringField(FILE, path, Field.Store.NO));
+                doc.add(new SortedDocValuesField(FILE, new BytesRef(path)));
+                doc.add(new KnnFloatVectorField(VECTOR, noisy(topics[Math.min(file, topics.length - 1)], random),
+                        VectorSimilarityFunction.COSINE));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+    }
+
+    private static float[][] topics(int count) {
+        Random random = new Random(1);
+        float[][] topics = new float[Math.max(1, count)][DIMENSION];
+        for (float[] topic : topics) {
+            for (int d = 0; d < DIMENSION; d++) {
+                topic[d] = (float) random.nextGaussian();
+            }
+        }
+        return topics;
+    }
+
+    private static float[] noisy(float[] topic, Random random) {
+        double norm = 0;
+        for (float value : topic) {
+            norm += value * value;
+        }
+        double scale = NOISE * Math.sqrt(norm / DIMENSION);
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) (topic[d] + random.nextGaussian() * scale);
+        }
+        return vector;
+    }
+
+    /**
+     * Exact top 10 by cosine similarity, scanning the vectors from the index rather than the heap.
+     */
+    private static Set<Integer> exactTopK(DirectoryReader reader, float[] query) throws IOException {
+        PriorityQueue<double[]> best = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[1]));
+        double queryNorm = Math.sqrt(dot(query, query));
+        for (LeafReaderContext context : reader.leaves()) {
+            FloatVectorValues vectors = context.reader().getFloatVectorValues(VECTOR);
+            for (int doc = vectors.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = vectors.nextDoc()) {
+                float[] vector = vectors.vectorValue();
+                double score = dot(query, vector) / (queryNorm * Math.sqrt(dot(vector, vector)));
+                if (best.size() < TOP_K) {
+                    best.add(new double[]{context.docBase + doc, score});
+                } else if (score > best.peek()[1]) {
+                    best.poll();
+                    best.add(new double[]{context.docBase + doc, score});
+                }
+            }
+        }
+        Set<Integer> docs = new HashSet<>();
+        for (double[] entry : best) {
+            docs.add((int) entry[0]);
+        }
+        return docs;
+    }
+
+    private static double recall(Set<Integer> exact, TopDocs found) {
+        long hits = Arrays.stream(found.scoreDocs).mapToInt((ScoreDoc hit) -> hit.doc).filter(exact::contains).count();
+        return (double) hits / exact.size();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double percentileMs(List<Long> nanos, int percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = nanos.stream().sorted().toList();
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+}
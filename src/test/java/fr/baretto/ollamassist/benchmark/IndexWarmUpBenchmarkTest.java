@@ -0,0 +1,212 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import fr.baretto.ollamassist.chat.rag.IndexDirectoryType;
+import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static fr.baretto.ollamassist.benchmark.Benchmarks.mockProjectNamed;
+
+/**
+ * First-query latency of the knowledge index, cold versus warmed, for each directory implementation.
+ *
+ * <p>A synthetic index (deterministic vectors and text) is built once per {@link IndexDirectoryType}.
+ * Each run then reopens the store the way the plugin does when a project opens and times the very
+ * first KNN and BM25 queries, once without and once after {@link LuceneEmbeddingStore#warmUp()}.
+ *
+ * <p>"Cold" only means cold for the JVM unless the OS page cache is dropped between runs, which
+ * needs root on Linux: pass {@code -Pbenchmark.warmup.dropCaches=true}. Whether the cache was
+ * actually dropped is written to every result line.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_index-warmup.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*IndexWarmUpBenchmarkTest'
+ *   ./gradlew benchmark -Pbenchmark.warmup.chunks=100000 -Pbenchmark.warmup.dropCaches=true
+ * </pre>
+ */
+@Tag("benchmark")
+class IndexWarmUpBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexWarmUpBenchmarkTest.class);
+
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final int CHUNKS = Integer.getInteger("benchmark.warmup.chunks", 20_000);
+    private static final int RUNS = Integer.getInteger("benchmark.warmup.runs", 5);
+    private static final boolean DROP_CACHES = Boolean.getBoolean("benchmark.warmup.dropCaches");
+    private static final int DIMENSION = 384;
+    private static final int BATCH = 1_000;
+    private static final int TOP_K = 5;
+    private static final String[] WORDS = {
+            "index", "embedding", "store", "search", "segment", "vector", "query", "document",
+            "project", "file", "listener", "pipeline", "retriever", "chunk", "token", "model"
+    };
+
+    @Test
+    void benchmark() throws Exception {
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_index-warmup.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        System.out.println("\n╔══════════╦══════════════╦══════════════╦══════════════╦══════════════╗");
+        System.out.println("║ Dir      ║ cold KNN ms  ║ warm KNN ms  ║ cold BM25 ms ║ warm BM25 ms ║");
+        System.out.println("╠══════════╬══════════════╬══════════════╬══════════════╬══════════════╣");
+
+        for (IndexDirectoryType type : List.of(IndexDirectoryType.NIO, IndexDirectoryType.MMAP)) {
+            Project project = mockProjectNamed("benchmark-warmup-" + type.name().toLowerCase());
+            buildIndex(project, type);
+
+            List<Double> coldKnn = new ArrayList<>();
+            List<Double> coldBm25 = new ArrayList<>();
+            List<Double> warmKnn = new ArrayList<>();
+            List<Double> warmBm25 = new ArrayList<>();
+            long warmedBytes = 0;
+            boolean cachesDropped = true;
+
+            for (int run = 0; run < RUNS; run++) {
+                cachesDropped &= dropCaches();
+                double[] cold = firstQuery(project, type, false);
+                coldKnn.add(cold[0]);
+                coldBm25.add(cold[1]);
+
+                cachesDropped &= dropCaches();
+                double[] warm = firstQuery(project, type, true);
+                warmKnn.add(warm[0]);
+                warmBm25.add(warm[1]);
+                warmedBytes = (long) warm[2];
+            }
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ts", runTs);
+            row.put("directory", type.name());
+            row.put("chunks", CHUNKS);
+            row.put("runs", RUNS);
+            row.put("cachesDropped", DROP_CACHES && cachesDropped);
+            row.put("coldKnnMsMedian", median(coldKnn));
+            row.put("warmKnnMsMedian", median(warmKnn));
+            row.put("coldBm25MsMedian", median(coldBm25));
+            row.put("warmBm25MsMedian", median(warmBm25));
+            row.put("warmedBytes", warmedBytes);
+            Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            System.out.printf("║ %-8s ║ %12.2f ║ %12.2f ║ %12.2f ║ %12.2f ║%n", type,
+                    median(coldKnn), median(warmKnn), median(coldBm25), median(warmBm25));
+
+            LuceneEmbeddingStore<TextSegment> cleanup = new LuceneEmbeddingStore<>(project, type);
+            cleanup.recreateIndex();
+            cleanup.close();
+        }
+        System.out.println("╚══════════╩══════════════╩══════════════╩══════════════╩══════════════╝");
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private void buildIndex(Project project, IndexDirectoryType type) throws IOException {
+        long start = System.nanoTime();
+        Random random = new Random(42);
+        LuceneEmbeddingStore<TextSegment> store = new LuceneEmbeddingStore<>(project, type);
+        try {
+            store.recreateIndex();
+            for (int offset = 0; offset < CHUNKS; offset += BATCH) {
+                int size = Math.min(BATCH, CHUNKS - offset);
+                List<Embedding> embeddings = new ArrayList<>(size);
+                List<TextSegment> segments = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    embeddings.add(new Embedding(randomVector(random)));
+                    segments.add(TextSegment.from(randomText(random),
+                            Metadata.from("file_name", "File" + (offset + i) + ".java")));
+                }
+                store.addAll(embeddings, segments);
+            }
+        } finally {
+            store.close();
+        }
+        log.info("[{}] Built {} chunks in {} ms", type, CHUNKS, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Opens the store as the plugin does on project open and times the first queries.
+     *
+     * @return {knnMs, bm25Ms, warmedBytes}
+     */
+    private double[] firstQuery(Project project, IndexDirectoryType type, boolean warm) throws IOException {
+        Random random = new Random(7);
+        LuceneEmbeddingStore<TextSegment> store = new LuceneEmbeddingStore<>(project, type);
+        try {
+            long warmed = warm ? store.warmUp() : 0;
+
+            long knnStart = System.nanoTime();
+            store.knnSearch(randomVector(random), TOP_K);
+            double knnMs = (System.nanoTime() - knnStart) / 1_000_000.0;
+
+            long bm25Start = System.nanoTime();
+            store.bm25Search("segment listener pipeline", TOP_K);
+            double bm25Ms = (System.nanoTime() - bm25Start) / 1_000_000.0;
+
+            return new double[]{knnMs, bm25Ms, warmed};
+        } finally {
+            store.close();
+        }
+    }
+
+    private static boolean dropCaches() {
+        if (!DROP_CACHES) {
+            return false;
+        }
+        try {
+            new ProcessBuilder("sync").start().waitFor();
+            Files.writeString(Path.of("/proc/sys/vm/drop_caches"), "1");
+            return true;
+        } catch (Exception e) {
+            log.warn("Could not drop the page cache (root on Linux required): {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static double median(List<Double> values) {
+        double[] sorted = values.stream().mapToDouble(Double::doubleValue).toArray();
+        Arrays.sort(sorted);
+        return sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,378 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import fr.baretto.ollamassist.chat.rag.DocumentIndexingPipeline;
+import fr.baretto.ollamassist.chat.rag.IndexDirectoryType;
+import fr.baretto.ollamassist.chat.rag.IndexRecoveryService;
+import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
+import fr.baretto.ollamassist.chat.rag.SourceFileLoader;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.baretto.ollamassist.benchmark.Benchmarks.deleteRecursively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end indexing throughput of {@link DocumentIndexingPipeline} with the local BGE model.
+ *
+ * <p>A repository of {@value #DEFAULT_FILES} files (configurable) is generated in a temporary
+ * directory: 50% Java, 20% Kotlin, 15% XML and 15% Markdown, with deterministic content and sizes.
+ * A share of the Java files (10% by default) are copies of the previous Java file under another class
+ * name, as copied tests or generated code are; their chunks reuse the embeddings of the original.
+ * Files are queued and flushed through the real pipeline, store and splitter, as the initial
+ * indexation does. Without a running IDE, Java files go through the line-based fallback of the
+ * splitter instead of PSI.
+ *
+ * <p>Metrics: files/s, chunks/s, time per stage (load, split, embed, write, from
+ * {@link DocumentIndexingPipeline#stageTimes()}), chunks embedded and near-duplicate chunks that
+ * reused an embedding, commits, and peak heap sampled every 20 ms.
+ * Before indexing, loading alone is measured per file format: {@link SourceFileLoader} against the
+ * default document parser (Apache Tika) that every file used to go through.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_indexing-throughput.jsonl}, and the
+ * loading figures to {@code benchmark-results/YYYY-MM-DD_source-loading.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*IndexingThroughputBenchmarkTest'
+ *   ./gradlew benchmark -Pbenchmark.indexing.files=5000
+ *   ./gradlew benchmark -Pbenchmark.indexing.duplicates=0.3
+ * </pre>
+ */
+@Tag("benchmark")
+class IndexingThroughputBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexingThroughputBenchmarkTest.class);
+
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final int DEFAULT_FILES = 500;
+    private static final int FILES = Integer.getInteger("benchmark.indexing.files", DEFAULT_FILES);
+    private static final double DUPLICATES = Double.parseDouble(System.getProperty("benchmark.indexing.duplicates", "0.1"));
+    private static final long HEAP_SAMPLE_MS = 20;
+    private static final String[] WORDS = {
+            "index", "embedding", "store", "search", "segment", "vector", "query", "document", "project",
+            "file", "listener", "pipeline", "retriever", "chunk", "token", "model", "settings", "service"
+    };
+
+    @Test
+    void benchmark() throws Exception {
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_indexing-throughput.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        Path repository = Files.createTempDirectory("indexing-benchmark");
+        Project project = mockProject(repository);
+        LuceneEmbeddingStore<TextSegment> store = new LuceneEmbeddingStore<>(project, IndexDirectoryType.AUTO);
+        DocumentIndexingPipeline pipeline = new DocumentIndexingPipeline(project, store,
+                modelId -> new BgeSmallEnV15QuantizedEmbeddingModel());
+        HeapSampler heap = new HeapSampler();
+        try {
+            store.recreateIndex();
+            List<String> files = generateRepository(repository, FILES);
+            long bytes = 0;
+            for (String file : files) {
+                bytes += Files.size(Path.of(file));
+            }
+            log.info("Generated {} files ({} KB) in {}", files.size(), bytes / 1024, repository);
+            measureLoading(files, mapper, RESULTS_DIR.resolve(today + "_source-loading.jsonl"), runTs);
+
+            long commitsBefore = store.commitCount();
+            heap.start();
+            long start = System.nanoTime();
+            pipeline.addAllDocuments(files);
+            pipeline.flush(() -> false, processed -> { });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            heap.stop();
+
+            DocumentIndexingPipeline.StageTimes times = pipeline.stageTimes();
+            int chunks = store.documentCount();
+            long commits = store.commitCount() - commitsBefore;
+            assertTrue(times.documents() > 0, "No document was indexed");
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ts", runTs);
+            row.put("files", files.size());
+            row.put("bytes", bytes);
+            row.put("indexedFiles", times.documents());
+            row.put("chunks", chunks);
+            row.put("seconds", seconds);
+            row.put("filesPerSecond", times.documents() / seconds);
+            row.put("chunksPerSecond", chunks / seconds);
+            row.put("loadMs", times.loadNanos() / 1e6);
+            row.put("splitMs", times.splitNanos() / 1e6);
+            row.put("embedMs", times.embedNanos() / 1e6);
+            row.put("writeMs", times.writeNanos() / 1e6);
+            row.put("duplicateShare", DUPLICATES);
+            row.put("embeddedChunks", times.embeddedChunks());
+            row.put("reusedEmbeddings", times.reusedEmbeddings());
+            row.put("commits", commits);
+            row.put("peakHeapMb", heap.peakBytes() / (1024.0 * 1024.0));
+            row.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            Benchmarks.Table table = new Benchmarks.Table()
+                    .column("Files", "%d").column("Chunks", "%d").column("files/s", "%.1f").column("chunks/s", "%.1f")
+                    .column("load ms", "%.0f", 8).column("split ms", "%.0f").column("embed ms", "%.0f")
+                    .column("write ms", "%.0f").column("total s", "%.1f", 8).column("Commits", "%d")
+                    .column("Heap MB", "%.0f", 8);
+            table.printHeader();
+            table.printRow(times.documents(), chunks, times.documents() / seconds, chunks / seconds,
+                    times.loadNanos() / 1e6, times.splitNanos() / 1e6, times.embedNanos() / 1e6,
+                    times.writeNanos() / 1e6, seconds, commits, heap.peakBytes() / (1024.0 * 1024.0));
+            table.printFooter();
+            System.out.printf("Embeddings: %d computed, %d reused from near-duplicate chunks (%.1f%% avoided)%n",
+                    times.embeddedChunks(), times.reusedEmbeddings(),
+                    100.0 * times.reusedEmbeddings() / Math.max(1, times.embeddedChunks() + times.reusedEmbeddings()));
+            System.out.println("Results: " + outputFile.toAbsolutePath());
+        } finally {
+            heap.stop();
+            pipeline.close();
+            store.recreateIndex();
+            store.close();
+            deleteRecursively(repository);
+        }
+    }
+
+    /**
+     * Loads every file with both loaders, per extension, after one untimed pass that warms the page cache.
+     */
+    private static void measureLoading(List<String> files, ObjectMapper mapper, Path outputFile, String runTs)
+            throws IOException {
+        Map<String, List<Path>> byFormat = new TreeMap<>();
+        for (String file : files) {
+            byFormat.computeIfAbsent(file.substring(file.lastIndexOf('.') + 1), k -> new ArrayList<>()).add(Path.of(file));
+        }
+        Benchmarks.Table table = new Benchmarks.Table()
+                .column("Format", "%s").column("Files", "%d").column("KB", "%d", 8).column("direct MB/s", "%.1f", 13)
+                .column("Tika MB/s", "%.1f", 13).column("direct ms", "%.1f", 11).column("Tika ms", "%.1f", 11);
+        table.printHeader();
+        for (Map.Entry<String, List<Path>> format : byFormat.entrySet()) {
+            List<Path> paths = format.getValue();
+            long bytes = 0;
+            for (Path path : paths) {
+                bytes += Files.readAllBytes(path).length;
+            }
+            long start = System.nanoTime();
+            for (Path path : paths) {
+                SourceFileLoader.load(path);
+            }
+            long directNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Path path : paths) {
+                FileSystemDocumentLoader.loadDocument(path);
+            }
+            long tikaNanos = System.nanoTime() - start;
+
+            double megabytes = bytes / (1024.0 * 1024.0);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ts", runTs);
+            row.put("format", format.getKey());
+            row.put("files", paths.size());
+            row.put("bytes", bytes);
+            row.put("directMs", directNanos / 1e6);
+            row.put("tikaMs", tikaNanos / 1e6);
+            row.put("directMbPerSecond", megabytes / (directNanos / 1e9));
+            row.put("tikaMbPerSecond", megabytes / (tikaNanos / 1e9));
+            row.put("directFilesPerSecond", paths.size() / (directNanos / 1e9));
+            row.put("tikaFilesPerSecond", paths.size() / (tikaNanos / 1e9));
+            Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            table.printRow(format.getKey(), paths.size(), bytes / 1024, megabytes / (directNanos / 1e9),
+                    megabytes / (tikaNanos / 1e9), directNanos / 1e6, tikaNanos / 1e6);
+        }
+        table.printFooter();
+    }
+
+    private static List<String> generateRepository(Path root, int count) throws IOException {
+        Random random = new Random(42);
+        Random duplicates = new Random(7);
+        String previousJava = null;
+        String previousName = null;
+        List<String> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = i % 20;
+            String pkg = "pkg" + (i % 25);
+            Path file;
+            String content;
+            if (kind < 10) {
+                file = root.resolve("src/main/java/com/example/" + pkg + "/Service" + i + ".java");
+                content = java(pkg, "Service" + i, random);
+                if (previousJava != null && duplicates.nextDouble() < DUPLICATES) {
+                    content = previousJava.replace(previousName, "Service" + i);
+                } else {
+                    previousJava = content;
+                    previousName = "Service" + i;
+                }
+            } else if (kind < 14) {
+                file = root.resolve("src/main/kotlin/com/example/" + pkg + "/Model" + i + ".kt");
+                content = kotlin(pkg, "Model" + i, random);
+            } else if (kind < 17) {
+                file = root.resolve("src/main/resources/" + pkg + "/config" + i + ".xml");
+                content = xml(random);
+            } else {
+                file = root.resolve("docs/" + pkg + "/guide" + i + ".md");
+                content = markdown(random);
+            }
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, content);
+            files.add(file.toString());
+        }
+        return files;
+    }
+
+    private static String java(String pkg, String name, Random random) {
+        StringBuilder sb = new StringBuilder("package com.example.").append(pkg).append(";\n\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n * ").append(sentence(random, 12)).append("\n */\n")
+                .append("public class ").append(name).append(" {\n\n")
+                .append("    private final List<String> items;\n\n");
+        int methods = 3 + random.nextInt(15);
+        for (int m = 0; m < methods; m++) {
+            String method = word(random) + capitalize(word(random)) + m;
+            sb.append("    /**\n     * ").append(sentence(random, 10)).append("\n     */\n")
+                    .append("    public int ").append(method).append("(String ").append(word(random)).append(") {\n");
+            int lines = 3 + random.nextInt(12);
+            for (int l = 0; l < lines; l++) {
+                sb.append("        int ").append(word(random)).append(l).append(" = items.indexOf(\"")
+                        .append(word(random)).append("\");\n");
+            }
+            sb.append("        return items.size();\n    }\n\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private static String kotlin(String pkg, String name, Random random) {
+        StringBuilder sb = new StringBuilder("package com.example.").append(pkg).append("\n\n")
+                .append("data class ").append(name).append("(val ").append(word(random)).append(": String)\n\n");
+        int functions = 2 + random.nextInt(10);
+        for (int f = 0; f < functions; f++) {
+            sb.append("fun ").append(name).append('.').append(word(random)).append(f).append("(): Int {\n");
+            int lines = 2 + random.nextInt(8);
+            for (int l = 0; l < lines; l++) {
+                sb.append("    val ").append(word(random)).append(l).append(" = \"").append(sentence(random, 4)).append("\"\n");
+            }
+            sb.append("    return ").append(lines).append("\n}\n\n");
+        }
+        return sb.toString();
+    }
+
+    private static String xml(Random random) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<configuration>\n");
+        int entries = 5 + random.nextInt(40);
+        for (int e = 0; e < entries; e++) {
+            String tag = word(random);
+            sb.append("  <").append(tag).append(" name=\"").append(word(random)).append(e).append("\">")
+                    .append(sentence(random, 3)).append("</").append(tag).append(">\n");
+        }
+        return sb.append("</configuration>\n").toString();
+    }
+
+    private static String markdown(Random random) {
+        StringBuilder sb = new StringBuilder("# ").append(capitalize(sentence(random, 4))).append("\n\n");
+        int sections = 2 + random.nextInt(6);
+        for (int s = 0; s < sections; s++) {
+            sb.append("## ").append(capitalize(sentence(random, 3))).append("\n\n");
+            int paragraphs = 1 + random.nextInt(4);
+            for (int p = 0; p < paragraphs; p++) {
+                sb.append(capitalize(sentence(random, 30 + random.nextInt(40)))).append(".\n\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(word(random));
+        }
+        return sb.toString();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String text) {
+        return text.isEmpty() ? text : Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private static Project mockProject(Path basePath) {
+        Project mock = Mockito.mock(Project.class);
+        Mockito.when(mock.getName()).thenReturn("benchmark-indexing");
+        Mockito.when(mock.getBasePath()).thenReturn(basePath.toString());
+        Mockito.when(mock.getService(IndexRecoveryService.class)).thenReturn(Mockito.mock(IndexRecoveryService.class));
+        return mock;
+    }
+
+    /**
+     * Samples used heap from a daemon thread; cheaper to reason about than summing pool peaks,
+     * which are reached at different times.
+     */
+    private static final class HeapSampler {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private Thread thread;
+
+        void start() {
+            running.set(true);
+            thread = new Thread(() -> {
+                while (running.get()) {
+                    peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            if (thread != null) {
+                thread.join();
+            }
+        }
+
+        long peakBytes() {
+            return peak.get();
+        }
+    }
+}
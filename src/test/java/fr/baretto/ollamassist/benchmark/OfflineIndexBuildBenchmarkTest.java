@@ -0,0 +1,120 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import fr.baretto.ollamassist.chat.rag.EmbeddingTokenizer;
+import fr.baretto.ollamassist.chat.rag.OfflineIndexBuilder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static fr.baretto.ollamassist.benchmark.Benchmarks.deleteRecursively;
+import static fr.baretto.ollamassist.chat.rag.RAGConstants.DEFAULT_EMBEDDING_MODEL;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput of {@link OfflineIndexBuilder} on a real tree: the plugin's own {@code src/} by default,
+ * with the local BGE model, once per thread count.
+ *
+ * <p>Each run builds the index from scratch into a temporary directory. Metrics: files, chunks,
+ * build time, files/s, chunks/s, speed-up against the first thread count, and index size on disk.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_offline-index-build.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*OfflineIndexBuildBenchmarkTest'
+ *   ./gradlew benchmark -Pbenchmark.offline.threads=1,4,8
+ *   ./gradlew benchmark -Pbenchmark.offline.source=/path/to/repo
+ * </pre>
+ */
+@Tag("benchmark")
+class OfflineIndexBuildBenchmarkTest {
+
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final Path SOURCE = Path.of(System.getProperty("benchmark.offline.source", "src"));
+    private static final List<Integer> THREADS = Arrays.stream(
+                    System.getProperty("benchmark.offline.threads", "1,2,4").split(","))
+            .map(String::trim)
+            .map(Integer::parseInt)
+            .toList();
+    private static final int BATCH_SIZE = Integer.getInteger("benchmark.offline.batchSize", 64);
+
+    @Test
+    void benchmark() throws Exception {
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_offline-index-build.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+        Benchmarks.Table table = new Benchmarks.Table()
+                .column("Threads", "%d").column("Files", "%d").column("Chunks", "%d").column("total s", "%.1f", 8)
+                .column("files/s", "%.1f").column("chunks/s", "%.1f").column("speed-up", "%.2fx")
+                .column("Index MB", "%.1f");
+        table.printHeader();
+        double baseline = 0;
+        for (int threads : THREADS) {
+            Path output = Files.createTempDirectory("offline-index-benchmark");
+            ExecutorService embeddingExecutor = Executors.newFixedThreadPool(threads);
+            try {
+                OfflineIndexBuilder.Manifest manifest = new OfflineIndexBuilder(SOURCE, output, threads, BATCH_SIZE,
+                        new BgeSmallEnV15QuantizedEmbeddingModel(embeddingExecutor), DEFAULT_EMBEDDING_MODEL,
+                        EmbeddingTokenizer.bgeSmall().orElse(null)).build();
+                assertTrue(manifest.chunks() > 0, "No chunk was indexed");
+
+                double seconds = manifest.buildSeconds();
+                double chunksPerSecond = manifest.chunks() / seconds;
+                if (baseline == 0) {
+                    baseline = chunksPerSecond;
+                }
+                double indexMb = sizeOf(output) / (1024.0 * 1024.0);
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("ts", runTs);
+                row.put("source", SOURCE.toAbsolutePath().toString());
+                row.put("threads", threads);
+                row.put("batchSize", BATCH_SIZE);
+                row.put("files", manifest.files());
+                row.put("chunks", manifest.chunks());
+                row.put("seconds", seconds);
+                row.put("filesPerSecond", manifest.files() / seconds);
+                row.put("chunksPerSecond", chunksPerSecond);
+                row.put("speedUp", chunksPerSecond / baseline);
+                row.put("indexMb", indexMb);
+                row.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+                Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+                table.printRow(threads, manifest.files(), manifest.chunks(), seconds, manifest.files() / seconds,
+                        chunksPerSecond, chunksPerSecond / baseline, indexMb);
+            } finally {
+                embeddingExecutor.shutdownNow();
+                deleteRecursively(output);
+            }
+        }
+        table.printFooter();
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    private static long sizeOf(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
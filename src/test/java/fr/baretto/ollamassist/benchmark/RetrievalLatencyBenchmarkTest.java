@@ -0,0 +1,224 @@
+package fr.baretto.ollamassist.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.query.Query;
+import fr.baretto.ollamassist.chat.rag.HybridRetriever;
+import fr.baretto.ollamassist.chat.rag.IndexSignature;
+import fr.baretto.ollamassist.chat.rag.LuceneEmbeddingStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static fr.baretto.ollamassist.benchmark.Benchmarks.deleteRecursively;
+
+/**
+ * Query latency of {@link LuceneEmbeddingStore} and {@link HybridRetriever} as the index grows.
+ *
+ * <p>Synthetic indexes of 10k and 100k chunks are built in a temporary directory through
+ * {@link LuceneEmbeddingStore#addAll} with a deterministic {@link HashingEmbeddingModel}, so runs are
+ * reproducible offline. Chunk text is drawn from a code-like vocabulary with a skewed word frequency,
+ * grouped in files of 20 chunks. 1M chunks takes several GB of disk and has to be asked for, see below.
+ *
+ * <p>Metrics per size: build throughput (chunks/s, embedding included), index size on disk, and
+ * p50/p95/p99 latency of KNN search, BM25 search and fused retrieval ({@link HybridRetriever#retrieve},
+ * query embedding included). The first {@value #WARMUP_QUERIES} queries of each kind are not measured.
+ *
+ * <p>Results are appended to {@code benchmark-results/YYYY-MM-DD_retrieval-latency.jsonl}.
+ *
+ * <p>Run:
+ * <pre>
+ *   ./gradlew benchmark --tests '*RetrievalLatencyBenchmarkTest'
+ *   ./gradlew benchmark -Pbenchmark.latency.chunks=10000,100000,1000000 -Pbenchmark.latency.queries=500
+ * </pre>
+ */
+@Tag("benchmark")
+class RetrievalLatencyBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalLatencyBenchmarkTest.class);
+
+    private static final Path RESULTS_DIR = Path.of("benchmark-results");
+    private static final int[] CHUNKS = Arrays.stream(System.getProperty("benchmark.latency.chunks", "10000,100000")
+            .split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    private static final int QUERIES = Integer.getInteger("benchmark.latency.queries", 200);
+    private static final int WARMUP_QUERIES = 20;
+    private static final int DIMENSION = 384;
+    private static final IndexSignature SIGNATURE = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION,
+            "benchmark-hashing", 0);
+    private static final int BATCH = 1_000;
+    private static final int CHUNKS_PER_FILE = 20;
+    private static final int WORDS_PER_CHUNK = 80;
+    private static final int WORDS_PER_QUERY = 6;
+    private static final int TOP_K = 5;
+    private static final String[] STEMS = {
+            "index", "embedding", "store", "search", "segment", "vector", "query", "document", "project",
+            "file", "listener", "pipeline", "retriever", "chunk", "token", "model", "settings", "service",
+            "cache", "registry", "writer", "reader", "parser", "config", "action", "editor", "message",
+            "request", "response", "client", "handler", "factory", "builder", "manager", "panel", "task"
+    };
+    private static final String[] VOCABULARY = vocabulary();
+
+    @Test
+    void benchmark() throws Exception {
+        Files.createDirectories(RESULTS_DIR);
+        String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
+        String runTs = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+        Path outputFile = RESULTS_DIR.resolve(today + "_retrieval-latency.jsonl");
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        HashingEmbeddingModel model = new HashingEmbeddingModel(DIMENSION);
+
+        Benchmarks.Table table = new Benchmarks.Table()
+                .column("Chunks", "%d", 9).column("chunks/s", "%.0f").column("Disk MB", "%.1f", 8).column("Queries", "%d")
+                .column("KNN p50/p95/p99 ms", "%s", 23).column("BM25 p50/p95/p99 ms", "%s", 23)
+                .column("Fused p50/p95/p99 ms", "%s", 23);
+        table.printHeader();
+
+        for (int chunks : CHUNKS) {
+            Path indexDir = Files.createTempDirectory("retrieval-latency-" + chunks);
+            try (LuceneEmbeddingStore<TextSegment> store = LuceneEmbeddingStore.open(indexDir, SIGNATURE)) {
+                double buildSeconds = build(store, model, chunks);
+                long diskBytes = sizeOnDisk(indexDir);
+
+                Random random = new Random(7);
+                HybridRetriever retriever = new HybridRetriever(store, model);
+                List<Long> knn = measure(random, text -> store.knnSearch(model.vectorOf(text), TOP_K));
+                List<Long> bm25 = measure(random, text -> store.bm25Search(text, TOP_K));
+                List<Long> fused = measure(random, text -> retriever.retrieve(Query.from(text)));
+
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("ts", runTs);
+                row.put("chunks", chunks);
+                row.put("dimension", DIMENSION);
+                row.put("directory", store.getDirectoryType().name());
+                row.put("queries", QUERIES);
+                row.put("buildSeconds", buildSeconds);
+                row.put("buildChunksPerSecond", chunks / buildSeconds);
+                row.put("diskBytes", diskBytes);
+                putPercentiles(row, "knn", knn);
+                putPercentiles(row, "bm25", bm25);
+                putPercentiles(row, "fused", fused);
+                Files.writeString(outputFile, mapper.writeValueAsString(row) + System.lineSeparator(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+                table.printRow(chunks, chunks / buildSeconds, diskBytes / (1024.0 * 1024.0), QUERIES,
+                        percentiles(knn), percentiles(bm25), percentiles(fused));
+            } finally {
+                deleteRecursively(indexDir);
+            }
+        }
+        table.printFooter();
+        System.out.println("Results: " + outputFile.toAbsolutePath());
+    }
+
+    /**
+     * @return build time in seconds
+     */
+    private static double build(LuceneEmbeddingStore<TextSegment> store, HashingEmbeddingModel model, int chunks) {
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int offset = 0; offset < chunks; offset += BATCH) {
+            int size = Math.min(BATCH, chunks - offset);
+            List<TextSegment> segments = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int file = (offset + i) / CHUNKS_PER_FILE;
+                segments.add(TextSegment.from(text(random, WORDS_PER_CHUNK), Metadata.from(Map.of(
+                        "file_name", "File" + file + ".java",
+                        "absolute_directory_path", "/benchmark/src/pkg" + (file % 200)))));
+            }
+            List<Embedding> embeddings = model.embedAll(segments).content();
+            store.addAll(embeddings, segments);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info("Built {} chunks in {} s", chunks, String.format("%.1f", seconds));
+        return seconds;
+    }
+
+    private interface Search {
+        Object run(String text);
+    }
+
+    private static List<Long> measure(Random random, Search search) {
+        List<Long> nanos = new ArrayList<>(QUERIES);
+        for (int q = 0; q < WARMUP_QUERIES + QUERIES; q++) {
+            String text = text(random, WORDS_PER_QUERY);
+            long start = System.nanoTime();
+            search.run(text);
+            if (q >= WARMUP_QUERIES) {
+                nanos.add(System.nanoTime() - start);
+            }
+        }
+        return nanos;
+    }
+
+    private static String[] vocabulary() {
+        List<String> words = new ArrayList<>();
+        for (String first : STEMS) {
+            words.add(first);
+            for (String second : STEMS) {
+                if (!first.equals(second)) {
+                    words.add(first + Character.toUpperCase(second.charAt(0)) + second.substring(1));
+                }
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Words drawn with a skewed distribution: low indexes, the single stems, are the most frequent.
+     */
+    private static String text(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            double u = random.nextDouble();
+            sb.append(VOCABULARY[(int) (Math.pow(u, 3) * VOCABULARY.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static void putPercentiles(Map<String, Object> row, String prefix, List<Long> nanos) {
+        row.put(prefix + "P50Ms", percentileMs(nanos, 50));
+        row.put(prefix + "P95Ms", percentileMs(nanos, 95));
+        row.put(prefix + "P99Ms", percentileMs(nanos, 99));
+    }
+
+    private static String percentiles(List<Long> nanos) {
+        return String.format("%.2f / %.2f / %.2f", percentileMs(nanos, 50), percentileMs(nanos, 95), percentileMs(nanos, 99));
+    }
+
+    private static double percentileMs(List<Long> nanos, int percentile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = nanos.stream().sorted().toList();
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private static long sizeOnDisk(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int CAPACITY = 4;
+    private static final int CALLS = 240;
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private FakeOllama ollama;
+
+    @AfterEach
+    void tearDown() {
+        threads.shutdownNow();
+        if (ollama != null) {
+            ollama.stop();
+        }
+    }
+
+    @Test
+    void limit_growsWhileInUseAndLatencyIsStable() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, 16);
+        Deque<Long> inFlight = new ArrayDeque<>();
+        fill(limit, inFlight);
+
+        // 2 + 1/2 + 1/2.5 + ... : one more call in flight per round of calls
+        for (int i = 0; i < 6; i++) {
+            long start = inFlight.poll();
+            limit.onSuccess(start, start + 10 * MILLIS, 1);
+            fill(limit, inFlight);
+        }
+
+        assertThat(limit.limit()).isEqualTo(4);
+        assertThat(inFlight).hasSize(4);
+    }
+
+    @Test
+    void limit_doesNotGrowWhenItIsNotInUse() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, 16);
+
+        for (int i = 0; i < 20; i++) {
+            long start = limit.acquire();
+            limit.onSuccess(start, start + 10 * MILLIS, 1);
+        }
+
+        assertThat(limit.limit()).isEqualTo(2);
+    }
+
+    @Test
+    void limit_halvesOnceOnOverloadAndBacksOffWhenLatencyDegrades() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 8, 16);
+        long first = limit.acquire();
+        long second = limit.acquire();
+
+        limit.onFailure(first, new HttpException(503, "server busy"));
+        limit.onFailure(second, new HttpException(503, "server busy"));
+        assertThat(limit.limit()).isEqualTo(4);
+
+        long fast = limit.acquire();
+        limit.onSuccess(fast, fast + 10 * MILLIS, 1);
+        long slow = limit.acquire();
+        limit.onSuccess(slow, slow + 50 * MILLIS, 1);
+        assertThat(limit.limit()).isEqualTo(3);
+        assertThat(AdaptiveConcurrencyLimit.fixed(2).limit()).isEqualTo(2);
+    }
+
+    @Test
+    void isOverload_onTimeoutsAndServerErrorsOnly() {
+        assertThat(AdaptiveConcurrencyLimit.isOverload(new HttpException(503, "busy"))).isTrue();
+        assertThat(AdaptiveConcurrencyLimit.isOverload(new HttpException(429, "slow down"))).isTrue();
+        assertThat(AdaptiveConcurrencyLimit.isOverload(
+                new RuntimeException(new UncheckedIOException(new SocketTimeoutException("read timed out"))))).isTrue();
+        assertThat(AdaptiveConcurrencyLimit.isOverload(new HttpException(404, "model not found"))).isFalse();
+        assertThat(AdaptiveConcurrencyLimit.isOverload(new RuntimeException(new ConnectException("refused")))).isFalse();
+    }
+
+    @Test
+    void ollama_settlesNearTheCapacityOfAServerThatRefusesExtraRequests() throws Exception {
+        ollama = FakeOllama.start(CAPACITY, false);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, 16);
+
+        int failed = run(limit.wrap(ollama.model()), 16);
+
+        assertThat(ollama.peak.get()).isGreaterThan(2).isLessThanOrEqualTo(CAPACITY);
+        assertThat(ollama.refused.get()).isEqualTo(failed).isLessThan(CALLS / 5);
+        assertThat(limit.limit()).isBetween(1, CAPACITY + 1);
+    }
+
+    @Test
+    void ollama_backsOffWhenRequestsQueueUpOnTheServer() throws Exception {
+        ollama = FakeOllama.start(CAPACITY, true);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, 16);
+
+        int failed = run(limit.wrap(ollama.model()), 16);
+
+        assertThat(failed).isZero();
+        assertThat(ollama.peak.get()).isGreaterThan(2);
+        assertThat(limit.limit()).isLessThanOrEqualTo(3 * CAPACITY);
+    }
+
+    @Test
+    void coordinator_adaptsTheCapOfOllamaModelsOnly() throws Exception {
+        ollama = FakeOllama.start(CAPACITY, false);
+        IndexingCoordinator coordinator = new IndexingCoordinator(1, 2, project -> true);
+        try {
+            run(coordinator.limit(ollama.model()), 16);
+
+            assertThat(ollama.peak.get()).isGreaterThan(2);
+        } finally {
+            coordinator.dispose();
+        }
+    }
+
+    @Test
+    void ingestor_ofASingleProjectFillsTheCapWithTheChunksOfAFile() throws Exception {
+        ollama = FakeOllama.start(CAPACITY, true);
+        IndexingCoordinator coordinator = new IndexingCoordinator(1, 2, project -> true);
+        try {
+            InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+            EmbeddingStoreIngestor ingestor = DocumentIngestFactory.create(store, null,
+                    coordinator.limit(ollama.model()));
+            Document file = Document.from(IntStream.range(0, 2000).mapToObj(i -> "line " + i)
+                    .collect(Collectors.joining("\n")));
+            int chunks = new CodeAwareDocumentSplitter(null).split(file).size();
+
+            // One file after the other, as the pipeline of one project ingests them
+            for (int i = 0; i < 10; i++) {
+                ingestor.ingest(file);
+            }
+
+            assertThat(chunks).isGreaterThan(4 * AdaptiveConcurrencyLimit.SUB_BATCH_SIZE);
+            assertThat(ollama.texts.get()).isEqualTo(10 * chunks);
+            assertThat(ollama.peak.get()).isGreaterThan(2).isLessThanOrEqualTo(CAPACITY);
+        } finally {
+            coordinator.dispose();
+        }
+    }
+
+    /**
+     * Starts calls until the cap is reached, as waiting callers would.
+     */
+    private static void fill(AdaptiveConcurrencyLimit limit, Deque<Long> inFlight) throws InterruptedException {
+        while (inFlight.size() < limit.limit()) {
+            inFlight.add(limit.acquire());
+        }
+    }
+
+    /**
+     * @return the number of calls that failed
+     */
+    private int run(EmbeddingModel model, int callers) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(CALLS);
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(threads.submit(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    try {
+                        model.embedAll(List.of(TextSegment.from("class Order {}")));
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        return failed.get();
+    }
+
+    /**
+     * Serves {@code /api/embed} like Ollama, {@code capacity} requests at a time. Extra requests are
+     * refused with a 503, or wait their turn when {@code queue} is set.
+     */
+    private static final class FakeOllama {
+
+        private static final long SERVICE_MILLIS = 20;
+
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final Semaphore slots;
+        private final boolean queue;
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final AtomicInteger refused = new AtomicInteger();
+        private final AtomicInteger texts = new AtomicInteger();
+
+        private FakeOllama(int capacity, boolean queue) throws IOException {
+            this.slots = new Semaphore(capacity, true);
+            this.queue = queue;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/embed", this::embed);
+            server.setExecutor(executor);
+        }
+
+        static FakeOllama start(int capacity, boolean queue) throws IOException {
+            FakeOllama ollama = new FakeOllama(capacity, queue);
+            ollama.server.start();
+            return ollama;
+        }
+
+        EmbeddingModel model() {
+            return OllamaEmbeddingModel.builder()
+                    .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                    .modelName("nomic-embed-text")
+                    .timeout(Duration.ofSeconds(10))
+                    .maxRetries(0)
+                    .build();
+        }
+
+        private void embed(HttpExchange exchange) throws IOException {
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            if (queue) {
+                slots.acquireUninterruptibly();
+            } else if (!slots.tryAcquire()) {
+                refused.incrementAndGet();
+                respond(exchange, 503, "{\"error\":\"server busy\"}");
+                return;
+            }
+            try {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                texts.addAndGet(request.path("input").size());
+                Thread.sleep(SERVICE_MILLIS);
+                StringBuilder embeddings = new StringBuilder();
+                for (int i = 0; i < request.path("input").size(); i++) {
+                    embeddings.append(i == 0 ? "" : ",").append("[1.0,0.0]");
+                }
+                respond(exchange, 200, "{\"model\":\"nomic-embed-text\",\"embeddings\":[" + embeddings + "]}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                slots.release();
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        }
+
+        void stop() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25QueryBuilderTest {
+
+    private static final String FIELD = "content_bm25";
+
+    private final Analyzer analyzer = new CodeAnalyzer();
+    private Directory directory;
+    private DirectoryReader reader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            for (int i = 0; i < 20; i++) {
+                String text = "alpha" + (i % 2 == 0 ? " beta" : "") + (i == 7 ? " gamma" : "");
+                Document doc = new Document();
+                doc.add(new TextField(FIELD, text, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+        analyzer.close();
+    }
+
+    @Test
+    void build_keepsOnlyTheRarestTermsWithinTheClauseLimit() throws IOException {
+        Query query = Bm25QueryBuilder.build("alpha beta gamma", analyzer, reader, FIELD, 2);
+
+        assertThat(terms(query)).containsExactly("gamma", "beta");
+    }
+
+    @Test
+    void build_mergesRepeatedTermsIntoOneBoostedClause() throws IOException {
+        Query query = Bm25QueryBuilder.build("gamma gamma gamma", analyzer, reader, FIELD, 10);
+
+        List<BooleanClause> clauses = ((BooleanQuery) query).clauses();
+        assertThat(clauses).hasSize(1);
+        assertThat(clauses.get(0).getQuery()).isInstanceOf(BoostQuery.class);
+        assertThat(((BoostQuery) clauses.get(0).getQuery()).getBoost()).isGreaterThan(1f);
+    }
+
+    @Test
+    void build_dropsTermsAbsentFromTheIndex() throws IOException {
+        assertThat(Bm25QueryBuilder.build("unknownWord", analyzer, reader, FIELD, 10)).isInstanceOf(MatchNoDocsQuery.class);
+        assertThat(Bm25QueryBuilder.build("   ", analyzer, reader, FIELD, 10)).isInstanceOf(MatchNoDocsQuery.class);
+    }
+
+    @Test
+    void build_longTextStaysBounded() throws IOException {
+        String pasted = "at fr.baretto.Foo.alpha(Foo.java:12) gamma\n".repeat(5_000);
+
+        Query query = Bm25QueryBuilder.build(pasted, analyzer, reader, FIELD, 64);
+
+        assertThat(((BooleanQuery) query).clauses()).hasSizeLessThanOrEqualTo(64);
+        assertThat(terms(query)).contains("gamma");
+    }
+
+    private static List<String> terms(Query query) {
+        return ((BooleanQuery) query).clauses().stream()
+                .map(BooleanClause::getQuery)
+                .map(q -> q instanceof BoostQuery boost ? boost.getQuery() : q)
+                .map(q -> ((TermQuery) q).getTerm().text())
+                .toList();
+    }
+}
@@ -0,0 +1,109 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CentroidIndexTest {
+
+    private static final String VECTOR = "vector";
+    private static final String FILE = "file";
+
+    private Directory directory;
+    private IndexWriter writer;
+    private final CentroidIndex centroids = new CentroidIndex(VECTOR, FILE);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = new ByteBuffersDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig());
+        add("/src/A.java", 1, 0, 0);
+        add("/src/A.java", 0.9f, 0.1f, 0);
+        add("/src/B.java", 0, 1, 0);
+        add("/src/C.java", 0, 0, 1);
+        writer.commit();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        writer.close();
+        directory.close();
+    }
+
+    @Test
+    void nearestFiles_ranksFilesByCentroidSimilarity() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertThat(centroids.nearestFiles(reader, new float[]{1, 0.2f, 0}, 2))
+                    .containsExactly("/src/A.java", "/src/B.java");
+            assertThat(centroids.fileCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void nearestFiles_picksUpNewSegments() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            centroids.nearestFiles(reader, new float[]{1, 0, 0}, 1);
+        }
+        add("/src/D.java", -1, 0, 0);
+        writer.commit();
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertThat(centroids.nearestFiles(reader, new float[]{-1, 0, 0}, 1)).containsExactly("/src/D.java");
+            assertThat(centroids.fileCount()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void nearestFiles_returnsNoneWhileSomeChunksHaveNoFile() throws IOException {
+        Document legacy = new Document();
+        legacy.add(new KnnFloatVectorField(VECTOR, new float[]{1, 0, 0}, VectorSimilarityFunction.COSINE));
+        writer.addDocument(legacy);
+        writer.commit();
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertThat(centroids.nearestFiles(reader, new float[]{1, 0, 0}, 2)).isEmpty();
+        }
+    }
+
+    @Test
+    void restrictTo_limitsTheChunkSearchToTheGivenFiles() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            KnnFloatVectorQuery query = new KnnFloatVectorQuery(VECTOR, new float[]{1, 0, 0}, 4,
+                    centroids.restrictTo(List.of("/src/C.java")));
+
+            ScoreDoc[] hits = searcher.search(query, 4).scoreDocs;
+
+            assertThat(hits).hasSize(1);
+            assertThat(searcher.storedFields().document(hits[0].doc).get(FILE)).isEqualTo("/src/C.java");
+        }
+    }
+
+    private void add(String file, float... vector) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField(FILE, file, Field.Store.YES));
+        doc.add(new SortedDocValuesField(FILE, new BytesRef(file)));
+        doc.add(new KnnFloatVectorField(VECTOR, vector, VectorSimilarityFunction.COSINE));
+        writer.addDocument(doc);
+    }
+}
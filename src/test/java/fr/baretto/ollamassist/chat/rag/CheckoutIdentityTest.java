@@ -0,0 +1,74 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CheckoutIdentityTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void normalizeRemote_sshAndHttpsUrlsOfTheSameRepositoryMatch() {
+        assertThat(CheckoutIdentity.normalizeRemote("git@github.com:Baretto-Labs/OllamAssist.git"))
+                .isEqualTo("github.com/baretto-labs/ollamassist");
+        assertThat(CheckoutIdentity.normalizeRemote("https://github.com/baretto-labs/OllamAssist/"))
+                .isEqualTo("github.com/baretto-labs/ollamassist");
+        assertThat(CheckoutIdentity.normalizeRemote("ssh://git@github.com/baretto-labs/ollamassist"))
+                .isEqualTo("github.com/baretto-labs/ollamassist");
+    }
+
+    @Test
+    void of_clonesWithTheSameOriginAreSiblings() throws IOException {
+        Path first = cloneWithOrigin("first", "git@github.com:acme/app.git");
+        Path second = cloneWithOrigin("second", "https://github.com/acme/app");
+        Path other = cloneWithOrigin("other", "https://github.com/acme/other");
+
+        CheckoutIdentity firstId = CheckoutIdentity.of(first.toString());
+        assertThat(firstId.repositoryId()).isNotNull();
+        assertThat(CheckoutIdentity.of(second.toString()).isSiblingOf(firstId)).isTrue();
+        assertThat(CheckoutIdentity.of(other.toString()).isSiblingOf(firstId)).isFalse();
+        assertThat(CheckoutIdentity.of(first.toString()).isSiblingOf(firstId)).isFalse();
+    }
+
+    @Test
+    void of_worktreesShareTheMainRepository() throws IOException {
+        Path main = tempDir.resolve("main");
+        Path gitDir = Files.createDirectories(main.resolve(".git"));
+        Path worktreeGitDir = Files.createDirectories(gitDir.resolve("worktrees/feature"));
+        Files.writeString(worktreeGitDir.resolve("commondir"), "../..");
+        Path worktree = Files.createDirectories(tempDir.resolve("feature"));
+        Files.writeString(worktree.resolve(".git"), "gitdir: " + worktreeGitDir);
+
+        assertThat(CheckoutIdentity.of(worktree.toString()).isSiblingOf(CheckoutIdentity.of(main.toString()))).isTrue();
+    }
+
+    @Test
+    void translate_mapsPathsBetweenCheckouts() {
+        CheckoutIdentity from = new CheckoutIdentity("id", "/work/app");
+        CheckoutIdentity to = new CheckoutIdentity("id", "/work/app-feature");
+
+        assertThat(to.translate("/work/app/src/Main.java", from)).isEqualTo("/work/app-feature/src/Main.java");
+        assertThat(to.translate("/work/app", from)).isEqualTo("/work/app-feature");
+        assertThat(to.translate("/work/application/Main.java", from)).isNull();
+    }
+
+    private Path cloneWithOrigin(String name, String url) throws IOException {
+        Path root = tempDir.resolve(name);
+        Path gitDir = Files.createDirectories(root.resolve(".git"));
+        Files.writeString(gitDir.resolve("config"), """
+                [core]
+                \trepositoryformatversion = 0
+                [remote "origin"]
+                \turl = %s
+                \tfetch = +refs/heads/*:refs/remotes/origin/*
+                """.formatted(url));
+        return root;
+    }
+}
@@ -0,0 +1,60 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CodeAnalyzerTest {
+
+    @Test
+    void split_handlesCamelCaseSnakeCaseDigitsAndPackages() {
+        assertThat(IdentifierSplitFilter.split("getUserAccountById")).containsExactly("get", "User", "Account", "By", "Id");
+        assertThat(IdentifierSplitFilter.split("MAX_RETRIES")).containsExactly("MAX", "RETRIES");
+        assertThat(IdentifierSplitFilter.split("HTTPServer2Client")).containsExactly("HTTP", "Server", "2", "Client");
+        assertThat(IdentifierSplitFilter.split("fr.baretto.ollamassist")).containsExactly("fr", "baretto", "ollamassist");
+        assertThat(IdentifierSplitFilter.split("index")).containsExactly("index");
+    }
+
+    @Test
+    void analyze_keepsTheIdentifierAndAddsItsParts() throws IOException {
+        assertThat(analyze("return getUserAccountById(id);"))
+                .containsExactly("return", "getuseraccountbyid", "get", "user", "account", "by", "id", "id");
+    }
+
+    @Test
+    void analyze_firstPartSharesThePositionOfTheIdentifier() throws IOException {
+        List<Integer> increments = new ArrayList<>();
+        try (Analyzer analyzer = new CodeAnalyzer();
+             TokenStream stream = analyzer.tokenStream("content", "loadDocument")) {
+            PositionIncrementAttribute position = stream.addAttribute(PositionIncrementAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                increments.add(position.getPositionIncrement());
+            }
+            stream.end();
+        }
+        assertThat(increments).containsExactly(1, 0, 1);
+    }
+
+    private static List<String> analyze(String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (Analyzer analyzer = new CodeAnalyzer();
+             TokenStream stream = analyzer.tokenStream("content", text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        }
+        return tokens;
+    }
+}
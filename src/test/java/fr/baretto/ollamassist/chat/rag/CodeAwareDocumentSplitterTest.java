@@ -1,7 +1,9 @@
 package fr.baretto.ollamassist.chat.rag;
 
+import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -124,4 +126,107 @@ class CodeAwareDocumentSplitterTest {
             assertTrue(segment.text().length() <= 3000, "Chunk must not exceed 3000 chars");
         }
     }
+
+    @Test
+    void fallbackSplit_endsLongWindowsOnALineBoundary() {
+        String longLine = "x".repeat(100);
+        String text = IntStream.rangeClosed(1, 40)
+                .mapToObj(i -> longLine)
+                .collect(Collectors.joining("\n"));
+
+        List<TextSegment> result = splitter.fallbackSplit(text, new Metadata());
+
+        // 29 lines of 100 chars plus separators fit in 3000 chars; the next window overlaps by 10 lines
+        assertEquals(2, result.size());
+        assertEquals(29 * 101 - 1, result.get(0).text().length());
+        assertEquals("20", result.get(1).metadata().getString("line_start"));
+        assertTrue(result.get(1).text().startsWith(longLine));
+    }
+
+    @Test
+    void fallbackSplit_doesNotRepeatTheLastWindow() {
+        String text = IntStream.rangeClosed(1, 60)
+                .mapToObj(i -> "line " + i)
+                .collect(Collectors.joining("\n"));
+
+        List<TextSegment> result = splitter.fallbackSplit(text, new Metadata());
+
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).text().endsWith("line 60"));
+    }
+
+    // --- structural split of other languages ---
+
+    @Test
+    void split_kotlinFile_producesClassAndFunctionChunks() {
+        String text = """
+                package demo
+
+                class Greeter {
+                    fun hello(name: String): String {
+                        val greeting = "Hello"
+                        return "$greeting $name"
+                    }
+                }
+                """;
+        Metadata metadata = new Metadata();
+        metadata.put("file_name", "Greeter.kt");
+        metadata.put("absolute_directory_path", "/src");
+
+        List<TextSegment> result = splitter.split(Document.from(text, metadata));
+
+        assertEquals(3, result.size());
+        assertEquals(CodeAwareDocumentSplitter.CHUNK_TYPE_OTHER, result.get(0).metadata().getString(CodeAwareDocumentSplitter.META_CHUNK_TYPE));
+        assertEquals("demo.Greeter", result.get(1).metadata().getString(CodeAwareDocumentSplitter.META_FQN));
+        assertEquals("// demo.Greeter\nclass Greeter {\n    fun hello(name: String): String {\n}", result.get(1).text());
+        TextSegment method = result.get(2);
+        assertEquals("demo.Greeter#hello", method.metadata().getString(CodeAwareDocumentSplitter.META_FQN));
+        assertEquals(CodeAwareDocumentSplitter.CHUNK_TYPE_METHOD, method.metadata().getString(CodeAwareDocumentSplitter.META_CHUNK_TYPE));
+        assertEquals("4", method.metadata().getString(CodeAwareDocumentSplitter.META_LINE_START));
+        assertEquals("/src/Greeter.kt", method.metadata().getString(CodeAwareDocumentSplitter.META_SOURCE_FILE));
+        assertTrue(method.text().contains("return \"$greeting $name\""));
+    }
+
+    @Test
+    void split_sourceFileWithoutDeclarations_fallsBackToLineWindows() {
+        Metadata metadata = new Metadata();
+        metadata.put("file_name", "script.py");
+        metadata.put("absolute_directory_path", "/src");
+
+        List<TextSegment> result = splitter.split(Document.from("import os\nprint(os.name)\n", metadata));
+
+        assertEquals(1, result.size());
+        assertEquals(CodeAwareDocumentSplitter.CHUNK_TYPE_OTHER, result.get(0).metadata().getString(CodeAwareDocumentSplitter.META_CHUNK_TYPE));
+    }
+
+    @Test
+    void fallbackSplit_withTokenizer_packsWindowsUpToTheTokenLimit() {
+        EmbeddingTokenizer tokenizer = EmbeddingTokenizer.bgeSmall().orElse(null);
+        Assumptions.assumeTrue(tokenizer != null, "BGE tokenizer not available");
+        String text = IntStream.rangeClosed(1, 400)
+                .mapToObj(i -> "value = " + i)
+                .collect(Collectors.joining("\n"));
+
+        List<TextSegment> tokenChunks = new CodeAwareDocumentSplitter(null, tokenizer).fallbackSplit(text, new Metadata());
+        List<TextSegment> charChunks = splitter.fallbackSplit(text, new Metadata());
+
+        assertTrue(tokenChunks.size() < charChunks.size(), "token windows are not limited to 60 lines");
+        for (TextSegment chunk : tokenChunks) {
+            assertTrue(tokenizer.count(chunk.text()) <= tokenizer.chunkTokens());
+        }
+        // Every window but the last one is filled close to the limit
+        assertTrue(tokenizer.count(tokenChunks.get(0).text()) > tokenizer.chunkTokens() - 20);
+    }
+
+    @Test
+    void fallbackSplit_withTokenizer_truncatesASingleLineOverTheLimit() {
+        EmbeddingTokenizer tokenizer = EmbeddingTokenizer.bgeSmall().orElse(null);
+        Assumptions.assumeTrue(tokenizer != null, "BGE tokenizer not available");
+        String line = "word ".repeat(2000);
+
+        List<TextSegment> result = new CodeAwareDocumentSplitter(null, tokenizer).fallbackSplit(line, new Metadata());
+
+        assertEquals(1, result.size());
+        assertEquals(tokenizer.chunkTokens(), tokenizer.count(result.get(0).text()));
+    }
 }
@@ -0,0 +1,220 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import fr.baretto.ollamassist.git.CommitLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CommitHistoryIndexTest {
+
+    private static final String ROOT = "/work/shop";
+    private static final String MODEL = "bge-small";
+    private static final Instant NOW = Instant.parse("2026-10-01T12:00:00Z");
+    private static final Instant EPOCH = Instant.EPOCH;
+
+    @TempDir
+    Path tempDir;
+
+    private final IndexingCoordinator coordinator = new IndexingCoordinator(1, 2, project -> true);
+    private CommitHistoryIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) {
+            index.dispose();
+        }
+        coordinator.dispose();
+    }
+
+    @Test
+    void refresh_indexesOnlyTheCommitsMadeSinceTheLastRefresh() throws Exception {
+        FakeCommitLog log = new FakeCommitLog(commit("c1", 3, "Add order totals"), commit("c2", 2, "Ship paid orders"));
+        index = index();
+
+        assertThat(index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH)).isEqualTo(2);
+        assertThat(index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH)).isZero();
+
+        log.commit(commit("c3", 1, "Round totals half up"));
+        assertThat(index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH)).isEqualTo(1);
+        assertThat(log.lastSince).isEqualTo("c2");
+        assertThat(index.documentCount()).isEqualTo(3);
+        assertThat(manifest().commits()).containsOnlyKeys(ROOT + "/c1", ROOT + "/c2", ROOT + "/c3");
+        assertThat(manifest().heads()).containsEntry(ROOT, "c3");
+    }
+
+    @Test
+    void refresh_dropsCommitsAnAmendLeftOutEvenThoughTheOldHeadIsStillReadable() throws Exception {
+        FakeCommitLog log = new FakeCommitLog(commit("c1", 3, "Add order totals"), commit("c2", 2, "WIP"));
+        index = index();
+        index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH);
+
+        log.rewrite(commit("c1", 3, "Add order totals"), commit("c2b", 2, "Ship paid orders"));
+
+        assertThat(index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH)).isEqualTo(1);
+        assertThat(manifest().commits()).containsOnlyKeys(ROOT + "/c1", ROOT + "/c2b");
+        assertThat(index.documentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void refresh_dropsCommitsBeyondTheCountAndAgeBounds() throws Exception {
+        FakeCommitLog log = new FakeCommitLog(commit("c1", 400, "Old fix"), commit("c2", 3, "Add order totals"),
+                commit("c3", 2, "Ship paid orders"));
+        index = index();
+        index.refresh(log, coordinator, fakeModel(), MODEL, 100, EPOCH);
+        assertThat(index.documentCount()).isEqualTo(3);
+
+        log.commit(commit("c4", 1, "Round totals half up"));
+        index.refresh(log, coordinator, fakeModel(), MODEL, 2, NOW.minus(Duration.ofDays(365)));
+
+        assertThat(manifest().commits()).containsOnlyKeys(ROOT + "/c3", ROOT + "/c4");
+        assertThat(index.documentCount()).isEqualTo(2);
+    }
+
+    @Test
+    void segment_describesTheCommitAndIsNamedAfterIt() {
+        CommitLog.Commit commit = new CommitLog.Commit("0123456789abcdef", "Jane Doe", NOW.toEpochMilli(),
+                "Round totals half up\n\nBanker's rounding lost a cent on refunds.", List.of("src/Order.java"),
+                "=== src/Order.java ===\n- RoundingMode.HALF_EVEN\n+ RoundingMode.HALF_UP\n");
+
+        TextSegment segment = CommitHistoryIndex.segment(ROOT, commit);
+
+        assertThat(segment.text()).contains("Commit 01234567 by Jane Doe on 2026-10-01", "Banker's rounding",
+                "src/Order.java", "+ RoundingMode.HALF_UP");
+        assertThat(CommitHistory.isCommitChunk(segment.metadata())).isTrue();
+        RagSource source = RagSource.fromContent(Content.from(segment), RagSource.SourceType.INDEX);
+        assertThat(source.fileName()).isEqualTo("commit 01234567");
+        assertThat(source.displayLabel()).isEqualTo("commit 01234567: Round totals half up");
+        assertThat(source.absolutePath()).isNull();
+        assertThat(source.tier()).isNull();
+    }
+
+    @Test
+    void withinBudget_keepsTheBestCommitsThatFit() {
+        String large = "word ".repeat(CommitHistory.TOKEN_BUDGET * 4);
+        List<EmbeddingMatch<TextSegment>> ranked = List.of(match("c1", "Add order totals"), match("c2", large),
+                match("c3", "Ship paid orders"), match("c4", "Round totals"), match("c5", "Refund orders"));
+
+        assertThat(CommitHistory.withinBudget(ranked)).extracting(TextSegment::text)
+                .containsExactly("Add order totals", "Ship paid orders", "Round totals");
+        assertThat(CommitHistory.asksAboutHistory("why was the rounding changed?")).isTrue();
+        assertThat(CommitHistory.asksAboutHistory("how are orders shipped?")).isFalse();
+    }
+
+    private CommitHistoryIndex index() {
+        return new CommitHistoryIndex(mock(Project.class), tempDir.resolve(CommitHistoryIndex.HISTORY_INDEX));
+    }
+
+    private CommitHistoryIndex.Manifest manifest() {
+        return CommitHistoryIndex.Manifest.read(tempDir.resolve(CommitHistoryIndex.MANIFEST_FILE));
+    }
+
+    private static CommitLog.Commit commit(String hash, int daysAgo, String message) {
+        return new CommitLog.Commit(hash, "Jane Doe", NOW.minus(Duration.ofDays(daysAgo)).toEpochMilli(), message,
+                List.of("src/Order.java"), "");
+    }
+
+    private static EmbeddingMatch<TextSegment> match(String hash, String text) {
+        TextSegment segment = TextSegment.from(text, Metadata.from(
+                Map.of(CommitHistory.COMMIT_KEY, hash)));
+        return new EmbeddingMatch<>(1.0, ROOT + "/" + hash, null, segment);
+    }
+
+    private static EmbeddingModel fakeModel() {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embedAll(any())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream()
+                    .map(s -> Embedding.from(new float[]{s.text().length(), 1})).toList());
+        });
+        return model;
+    }
+
+    /**
+     * One repository whose history is a list of commits, newest first. Like git, it keeps the heads
+     * a rewrite left behind readable: {@code since..HEAD} from one of them returns the commits of
+     * the new history that were not in the old one.
+     */
+    private static final class FakeCommitLog implements CommitLog {
+
+        private final List<Commit> history = new ArrayList<>();
+        private final Map<String, Set<String>> abandonedHeads = new HashMap<>();
+        private String lastSince;
+
+        FakeCommitLog(Commit... oldestFirst) {
+            for (Commit commit : oldestFirst) {
+                commit(commit);
+            }
+        }
+
+        void commit(Commit commit) {
+            history.add(0, commit);
+        }
+
+        void rewrite(Commit... oldestFirst) {
+            abandonedHeads.put(history.get(0).hash(), history.stream().map(Commit::hash).collect(Collectors.toSet()));
+            history.clear();
+            for (Commit commit : oldestFirst) {
+                commit(commit);
+            }
+        }
+
+        @Override
+        public Map<String, String> heads() {
+            return Map.of(ROOT, history.get(0).hash());
+        }
+
+        @Override
+        public List<Commit> read(String root, String since, int maxCount, Instant notBefore) throws VcsException {
+            lastSince = since;
+            if (since != null && abandonedHeads.containsKey(since)) {
+                return history.stream().filter(commit -> !abandonedHeads.get(since).contains(commit.hash())).toList();
+            }
+            int end = history.size();
+            if (since != null) {
+                end = history.stream().map(Commit::hash).toList().indexOf(since);
+                if (end < 0) {
+                    throw new VcsException("bad revision '" + since + "..HEAD'");
+                }
+            }
+            return history.subList(0, end).stream()
+                    .filter(commit -> commit.timeMillis() >= notBefore.toEpochMilli())
+                    .limit(maxCount)
+                    .toList();
+        }
+
+        @Override
+        public boolean isAncestorOfHead(String root, String commit) throws VcsException {
+            if (history.stream().anyMatch(c -> c.hash().equals(commit))) {
+                return true;
+            }
+            if (abandonedHeads.containsKey(commit)) {
+                return false;
+            }
+            throw new VcsException("Not a valid commit name " + commit);
+        }
+    }
+}
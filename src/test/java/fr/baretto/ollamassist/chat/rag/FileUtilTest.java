@@ -14,7 +14,6 @@ import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -42,13 +41,16 @@ class FileUtilTest {
     }
 
     @Test
-    void testMaxFilesIsReturnedFromSettings() {
-        try (MockedStatic<OllamAssistSettings> mocked = mockStatic(OllamAssistSettings.class)) {
+    void testEmbeddingBudgetIsReadFromSettings() {
+        try (MockedStatic<OllamAssistSettings> mocked = mockStatic(OllamAssistSettings.class);
+             MockedStatic<ProjectFileIndex> fileIndex = mockStatic(ProjectFileIndex.class)) {
             OllamAssistSettings settings = mock(OllamAssistSettings.class);
-            when(settings.getIndexationSize()).thenReturn(42);
+            when(settings.getEmbeddingBudget()).thenReturn(42);
+            when(settings.getSources()).thenReturn("src/");
             mocked.when(OllamAssistSettings::getInstance).thenReturn(settings);
+            fileIndex.when(() -> ProjectFileIndex.getInstance(mockProject)).thenReturn(mockFileIndex);
 
-            assertEquals(10, filesUtil.getMaxFiles());
+            assertEquals(42, new FilesUtil(mockProject).getEmbeddingBudget());
         }
     }
 
@@ -77,40 +79,6 @@ class FileUtilTest {
         assertTrue(filesUtil.shouldProcessFile(file));
     }
 
-    @Test
-    void testAddFileToProperList_addsToSources() {
-        VirtualFile file = mock(VirtualFile.class);
-        when(mockFileIndex.isInSource(file)).thenReturn(true);
-        when(file.getPath()).thenReturn("/test/File.java");
-
-        AtomicInteger counter = new AtomicInteger(0);
-        List<String> sources = new java.util.ArrayList<>();
-        List<String> others = new java.util.ArrayList<>();
-
-        filesUtil.addFileToProperList(file, sources, others, counter);
-
-        assertEquals(1, counter.get());
-        assertTrue(sources.contains("/test/File.java"));
-        assertTrue(others.isEmpty());
-    }
-
-    @Test
-    void testAddFileToProperList_addsToOthers() {
-        VirtualFile file = mock(VirtualFile.class);
-        when(mockFileIndex.isInSource(file)).thenReturn(false);
-        when(file.getPath()).thenReturn("/test/Other.txt");
-
-        AtomicInteger counter = new AtomicInteger(0);
-        List<String> sources = new java.util.ArrayList<>();
-        List<String> others = new java.util.ArrayList<>();
-
-        filesUtil.addFileToProperList(file, sources, others, counter);
-
-        assertEquals(1, counter.get());
-        assertTrue(others.contains("/test/Other.txt"));
-        assertTrue(sources.isEmpty());
-    }
-
     @Test
     void testShouldSkipFile_excludedDirectory() {
         VirtualFile dir = mock(VirtualFile.class);
@@ -174,7 +142,7 @@ class FileUtilTest {
     }
 
     @Test
-    void testCollectFilePaths_shouldReturnLimitedIndexedFiles() {
+    void testPlanTiers_shouldEmbedSourceFilesAndIndexOthersByKeyword() {
         Project project = mock(Project.class);
         ProjectFileIndex fileIndex = mock(ProjectFileIndex.class);
         ShouldBeIndexed shouldBeIndexed = mock(ShouldBeIndexed.class);
@@ -199,13 +167,10 @@ class FileUtilTest {
 
         when(shouldBeIndexed.matches(any())).thenReturn(true);
 
-        List<String> paths = filesUtilForTests.collectFilePathsInternal();
+        IndexPlan plan = filesUtilForTests.planTiersInternal();
 
-        assertEquals(4, paths.size());
-        assertTrue(paths.contains("/src/file1.java"));
-        assertTrue(paths.contains("/src/file2.java"));
-        assertTrue(paths.contains("/test/file3.test"));
-        assertTrue(paths.contains("/readme.md"));
+        assertEquals(List.of("/src/file1.java", "/src/file2.java"), plan.filesIn(IndexTier.EMBEDDED));
+        assertEquals(List.of("/test/file3.test", "/readme.md"), plan.filesIn(IndexTier.KEYWORD));
     }
 
     private VirtualFile mockFile(String path, boolean isDirectory) {
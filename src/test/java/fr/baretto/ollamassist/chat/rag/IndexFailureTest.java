@@ -0,0 +1,52 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexFailureTest {
+
+    @Test
+    void classify_checksumFailureIsCorruption() {
+        Exception error = new RuntimeException(new CorruptIndexException("checksum failed", "_0.cfs"));
+        assertThat(IndexFailure.classify(error)).isEqualTo(IndexFailure.CORRUPTED);
+    }
+
+    @Test
+    void classify_closedWriterWithoutCorruptionIsTransient() {
+        assertThat(IndexFailure.classify(new AlreadyClosedException("this IndexWriter is closed")))
+                .isEqualTo(IndexFailure.TRANSIENT);
+        assertThat(IndexFailure.classify(new IOException("Too many open files")))
+                .isEqualTo(IndexFailure.TRANSIENT);
+        assertThat(IndexFailure.classify(null)).isEqualTo(IndexFailure.TRANSIENT);
+    }
+
+    @Test
+    void classify_dimensionMismatchRequiresRebuildOfAnIndexOfTheConfiguredModelOnly() {
+        Exception error = new CorruptedIndexException(
+                new IllegalArgumentException("vector query dimension: 768 differs from field dimension: 384"));
+        IndexSignature bge = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, "bge-small", 384);
+
+        assertThat(IndexFailure.classify(error, bge, "bge-small")).isEqualTo(IndexFailure.INCOMPATIBLE);
+        assertThat(IndexFailure.classify(error, bge, "nomic-embed-text")).isEqualTo(IndexFailure.TRANSIENT);
+        assertThat(IndexFailure.classify(error)).isEqualTo(IndexFailure.TRANSIENT);
+        assertThat(IndexFailure.isDimensionMismatch(error)).isTrue();
+    }
+
+    @Test
+    void classify_legacyCorruptedIndexExceptionIsCorruption() {
+        assertThat(IndexFailure.classify(new CorruptedIndexException())).isEqualTo(IndexFailure.CORRUPTED);
+    }
+
+    @Test
+    void filePathFromId_stripsTrailingUuid() {
+        assertThat(LuceneEmbeddingStore.filePathFromId("/work/src/A.java" + "123e4567-e89b-12d3-a456-426614174000"))
+                .isEqualTo("/work/src/A.java");
+        assertThat(LuceneEmbeddingStore.filePathFromId("123e4567-e89b-12d3-a456-426614174000")).isNull();
+        assertThat(LuceneEmbeddingStore.filePathFromId(null)).isNull();
+    }
+}
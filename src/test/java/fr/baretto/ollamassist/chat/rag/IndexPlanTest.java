@@ -0,0 +1,55 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexPlanTest {
+
+    @Test
+    void allocate_embedsCandidatesInOrderWithinTheBudget() {
+        Map<String, Long> candidates = new LinkedHashMap<>();
+        candidates.put("/src/Touched.java", 3000L);
+        candidates.put("/src/Large.java", 30_000L);
+        candidates.put("/src/Small.java", 100L);
+
+        IndexPlan plan = IndexPlan.allocate(candidates, List.of("/README.md"), 5);
+
+        assertThat(plan.filesIn(IndexTier.EMBEDDED)).containsExactly("/src/Touched.java", "/src/Small.java");
+        assertThat(plan.filesIn(IndexTier.LAZY)).containsExactly("/src/Large.java");
+        assertThat(plan.filesIn(IndexTier.KEYWORD)).containsExactly("/README.md");
+        assertThat(plan.estimatedEmbeddings()).isEqualTo(3);
+        assertThat(plan.exceedsBudget()).isTrue();
+    }
+
+    @Test
+    void paths_listEmbeddedFilesFirst() {
+        Map<String, Long> candidates = new LinkedHashMap<>();
+        candidates.put("/src/A.java", 100L);
+        candidates.put("/src/B.java", 100_000L);
+
+        IndexPlan plan = IndexPlan.allocate(candidates, List.of("/docs/guide.md"), 10);
+
+        assertThat(plan.paths()).containsExactly("/src/A.java", "/docs/guide.md", "/src/B.java");
+    }
+
+    @Test
+    void tierOf_embedsFilesUnknownToThePlan() {
+        IndexPlan plan = IndexPlan.allocate(Map.of(), List.of("/docs/guide.md"), 10);
+
+        assertThat(plan.tierOf("/docs/guide.md")).isEqualTo(IndexTier.KEYWORD);
+        assertThat(plan.tierOf("/src/Created.java")).isEqualTo(IndexTier.EMBEDDED);
+        assertThat(plan.exceedsBudget()).isFalse();
+    }
+
+    @Test
+    void estimatedChunks_countsAtLeastOneChunkPerFile() {
+        assertThat(IndexPlan.estimatedChunks(0)).isEqualTo(1);
+        assertThat(IndexPlan.estimatedChunks(IndexPlan.ESTIMATED_CHUNK_BYTES)).isEqualTo(1);
+        assertThat(IndexPlan.estimatedChunks(IndexPlan.ESTIMATED_CHUNK_BYTES + 1)).isEqualTo(2);
+    }
+}
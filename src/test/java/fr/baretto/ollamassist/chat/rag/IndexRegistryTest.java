@@ -9,7 +9,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -257,4 +261,65 @@ class IndexRegistryTest {
                 () -> assertFalse(indexRegistry.isIndexed(projectId))
         );
     }
+
+    @Test
+    void markAllAsCorrupted_shouldFlagEveryProjectAndPreserveDates() throws IOException {
+        indexRegistry.markAsIndexed("project_a");
+        indexRegistry.markAsIndexed("project_b");
+
+        indexRegistry.markAllAsCorrupted();
+
+        List<String> lines = Files.readAllLines(tempProjectsFile, IndexRegistry.CHARSET);
+        assertAll(
+                () -> assertEquals(2, lines.size()),
+                () -> assertTrue(lines.stream().allMatch(line -> line.endsWith(",true"))),
+                () -> assertTrue(indexRegistry.isCorrupted("project_a")),
+                () -> assertTrue(indexRegistry.isCorrupted("project_b"))
+        );
+    }
+
+    @Test
+    void shouldKeepEveryUpdate_whenProjectsAreMarkedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String projectId = "parallel_" + i;
+                futures.add(executor.submit(() -> {
+                    indexRegistry.markAsCurrentIndexation(projectId);
+                    indexRegistry.markAsIndexed(projectId);
+                    indexRegistry.removeFromCurrentIndexation(projectId);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(50, new IndexRegistry().getIndexedProjects().size());
+    }
+
+    @Test
+    void stats_shouldBePersistedAndReloaded() {
+        indexRegistry.markAsIndexed("stats_project");
+        indexRegistry.recordFullIndex("stats_project", 120, "nomic-embed-text@http://localhost:11434");
+        indexRegistry.recordIncrementalIndex("stats_project", 125);
+        indexRegistry.dispose();
+
+        IndexRegistry.IndexStats stats = new IndexRegistry().getStats("stats_project");
+
+        assertAll(
+                () -> assertEquals(125, stats.docCount()),
+                () -> assertEquals("nomic-embed-text@http://localhost:11434", stats.modelId()),
+                () -> assertTrue(stats.lastFullIndexMillis() > 0),
+                () -> assertTrue(stats.lastIncrementalIndexMillis() >= stats.lastFullIndexMillis())
+        );
+    }
+
+    @Test
+    void stats_shouldDefaultToEmpty_forUnknownProject() {
+        assertEquals(IndexRegistry.IndexStats.EMPTY, indexRegistry.getStats("never_indexed"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexSeederTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<LuceneEmbeddingStore<TextSegment>> stores = new ArrayList<>();
+    private final List<Path> indexRoots = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (LuceneEmbeddingStore<TextSegment> store : stores) {
+            store.close();
+        }
+        for (Path indexRoot : indexRoots) {
+            try (Stream<Path> paths = Files.walk(indexRoot)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Test
+    void seed_copiesUnchangedFilesFromAnotherCheckout() throws IOException {
+        Path main = checkout("main");
+        Path feature = checkout("feature");
+        String unchanged = write(main, "Unchanged.java", "class Unchanged {}");
+        String modified = write(main, "Modified.java", "class Modified {}");
+        String featureUnchanged = write(feature, "Unchanged.java", "class Unchanged {}");
+        String featureModified = write(feature, "Modified.java", "class Modified { int field; }");
+
+        LuceneEmbeddingStore<TextSegment> mainStore = open(main);
+        mainStore.addAll(List.of(new Embedding(new float[]{1f, 0f, 0f}), new Embedding(new float[]{0f, 1f, 0f})),
+                List.of(indexedChunk(unchanged), indexedChunk(modified)));
+
+        LuceneEmbeddingStore<TextSegment> featureStore = open(feature);
+        Set<String> upToDate = new IndexSeeder(featureStore).seed(List.of(featureUnchanged, featureModified));
+
+        assertThat(upToDate).containsExactly(featureUnchanged);
+        assertThat(featureStore.indexedFilePaths()).containsExactly(featureUnchanged);
+        assertThat(featureStore.knnSearch(new float[]{1f, 0f, 0f}, 1)).hasSize(1);
+    }
+
+    @Test
+    void seed_keepsOnlyFilesWhoseContentIsUnchanged() throws IOException {
+        Path main = checkout("main");
+        String unchanged = write(main, "Unchanged.java", "class Unchanged {}");
+        String modified = write(main, "Modified.java", "class Modified {}");
+
+        LuceneEmbeddingStore<TextSegment> store = open(main);
+        store.addAll(List.of(new Embedding(new float[]{1f, 0f, 0f}), new Embedding(new float[]{0f, 1f, 0f})),
+                List.of(indexedChunk(unchanged), indexedChunk(modified)));
+        Files.writeString(Path.of(modified), "class Modified { int field; }");
+
+        Set<String> upToDate = new IndexSeeder(store).seed(List.of(unchanged, modified));
+
+        assertThat(upToDate).containsExactly(unchanged);
+        assertThat(store.indexedFilePaths()).containsExactly(unchanged);
+    }
+
+    @Test
+    void seed_leavesKeywordOnlyFilesToIndexAgain() throws IOException {
+        Path main = checkout("main");
+        Path feature = checkout("feature");
+        String embedded = write(main, "Embedded.java", "class Embedded {}");
+        String keywordOnly = write(main, "README.md", "Orders are shipped once paid");
+        String featureEmbedded = write(feature, "Embedded.java", "class Embedded {}");
+        String featureKeywordOnly = write(feature, "README.md", "Orders are shipped once paid");
+
+        LuceneEmbeddingStore<TextSegment> mainStore = open(main);
+        mainStore.addAll(List.of(new Embedding(new float[]{1f, 0f, 0f})), List.of(indexedChunk(embedded)));
+        mainStore.addKeywordOnly(List.of(indexedChunk(keywordOnly)));
+
+
+        LuceneEmbeddingStore<TextSegment> featureStore = open(feature);
+        Set<String> upToDate = new IndexSeeder(featureStore).seed(List.of(featureEmbedded, featureKeywordOnly));
+
+        assertThat(upToDate).containsExactly(featureEmbedded);
+        assertThat(featureStore.indexedFilePaths()).containsExactly(featureEmbedded);
+    }
+
+    private Path checkout(String name) throws IOException {
+        Path root = tempDir.resolve(name);
+        Path gitDir = Files.createDirectories(root.resolve(".git"));
+        Files.writeString(gitDir.resolve("config"), "[remote \"origin\"]\n\turl = git@example.com:acme/seeder-test.git\n");
+        return root;
+    }
+
+    private LuceneEmbeddingStore<TextSegment> open(Path root) throws IOException {
+        Project project = Mockito.mock(Project.class);
+        Mockito.when(project.getName()).thenReturn("seeder-test-" + root.getFileName());
+        Mockito.when(project.getBasePath()).thenReturn(root.toString());
+        LuceneEmbeddingStore<TextSegment> store = new LuceneEmbeddingStore<>(project, IndexDirectoryType.NIO);
+        store.recreateIndex();
+        stores.add(store);
+        indexRoots.add(Path.of(IndexRegistry.OLLAMASSIST_DIR, IndexKey.of(project)));
+        return store;
+    }
+
+    private static String write(Path root, String fileName, String content) throws IOException {
+        Path file = Files.createDirectories(root.resolve("src")).resolve(fileName);
+        Files.writeString(file, content);
+        return file.toString().replace('\\', '/');
+    }
+
+    private static TextSegment indexedChunk(String path) {
+        Path file = Path.of(path);
+        String hash = DocumentIndexingPipeline.loadDocument(path).orElseThrow().metadata().getString(ContentHash.METADATA_KEY);
+        return TextSegment.from("chunk of " + file.getFileName(), Metadata.from(Map.of(
+                "absolute_directory_path", file.getParent().toString().replace('\\', '/'),
+                "file_name", file.getFileName().toString(),
+                ContentHash.METADATA_KEY, hash)));
+    }
+}
@@ -0,0 +1,39 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexSignatureTest {
+
+    @Test
+    void userData_roundTrip() {
+        IndexSignature signature = new IndexSignature("2.0", "nomic-embed-text@http://localhost:11434", 768);
+        assertThat(IndexSignature.fromUserData(signature.toUserData())).isEqualTo(signature);
+    }
+
+    @Test
+    void fromUserData_untaggedCommitHasNoSignature() {
+        assertThat(IndexSignature.fromUserData(Map.of())).isNull();
+        assertThat(IndexSignature.fromUserData(null)).isNull();
+    }
+
+    @Test
+    void isCompatibleWith_requiresSameFormatAndModel() {
+        IndexSignature signature = new IndexSignature("2.0", "model-a", 384);
+        assertThat(signature.isCompatibleWith("2.0", "model-a")).isTrue();
+        assertThat(signature.isCompatibleWith("2.0", "model-b")).isFalse();
+        assertThat(signature.isCompatibleWith("3.0", "model-a")).isFalse();
+    }
+
+    @Test
+    void formatEta_extrapolatesFromAverageFileTime() {
+        long tenSeconds = TimeUnit.SECONDS.toNanos(10);
+        assertThat(IndexRebuildService.formatEta(tenSeconds, 10, 100)).isEqualTo("1:30");
+        assertThat(IndexRebuildService.formatEta(tenSeconds, 1, 1000)).isEqualTo("2:46:30");
+        assertThat(IndexRebuildService.formatEta(tenSeconds, 0, 10)).isEqualTo("unknown");
+    }
+}
@@ -0,0 +1,108 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexStorageManagerTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Test
+    void selectEvictions_evictsLeastRecentlyUsedFirst() {
+        List<IndexStorageManager.IndexUsage> usages = List.of(
+                new IndexStorageManager.IndexUsage("recent", 40 * MB, 3_000, false),
+                new IndexStorageManager.IndexUsage("oldest", 40 * MB, 1_000, false),
+                new IndexStorageManager.IndexUsage("older", 40 * MB, 2_000, false));
+
+        assertThat(IndexStorageManager.selectEvictions(usages, 50 * MB))
+                .extracting(IndexStorageManager.IndexUsage::projectId)
+                .containsExactly("oldest", "older");
+    }
+
+    @Test
+    void selectEvictions_stopsOnceUnderQuota() {
+        List<IndexStorageManager.IndexUsage> usages = List.of(
+                new IndexStorageManager.IndexUsage("big", 80 * MB, 1_000, false),
+                new IndexStorageManager.IndexUsage("small", 10 * MB, 2_000, false));
+
+        assertThat(IndexStorageManager.selectEvictions(usages, 50 * MB))
+                .extracting(IndexStorageManager.IndexUsage::projectId)
+                .containsExactly("big");
+        assertThat(IndexStorageManager.selectEvictions(usages, 100 * MB)).isEmpty();
+    }
+
+    @Test
+    void selectEvictions_neverEvictsOpenProjects() {
+        List<IndexStorageManager.IndexUsage> usages = List.of(
+                new IndexStorageManager.IndexUsage("open", 200 * MB, 0, true),
+                new IndexStorageManager.IndexUsage("closed", 10 * MB, 5_000, false));
+
+        assertThat(IndexStorageManager.selectEvictions(usages, 50 * MB))
+                .extracting(IndexStorageManager.IndexUsage::projectId)
+                .containsExactly("closed");
+    }
+
+    @Test
+    void deleteUnlessInUse_skipsIndexesHeldOpenByAnotherProcess(@TempDir Path tempDir) throws Exception {
+        Path projectDir = tempDir.resolve("shop-1234");
+        Path databaseDir = Files.createDirectories(projectDir.resolve("database"));
+        Process otherIde = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                HoldLease.class.getName(), projectDir.toString())
+                .redirectErrorStream(true)
+                .start();
+        try {
+            BufferedReader output = new BufferedReader(
+                    new InputStreamReader(otherIde.getInputStream(), StandardCharsets.UTF_8));
+            assertThat(output.readLine()).isEqualTo(HoldLease.LOCKED);
+
+            assertThat(IndexLease.isInUse(projectDir)).isTrue();
+            assertThat(IndexStorageManager.deleteUnlessInUse(projectDir)).isFalse();
+            assertThat(databaseDir).exists();
+        } finally {
+            otherIde.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(IndexLease.isInUse(projectDir)).isFalse();
+        assertThat(IndexStorageManager.deleteUnlessInUse(projectDir)).isTrue();
+        assertThat(databaseDir).doesNotExist();
+        assertThat(projectDir.resolve(IndexLease.LOCK_FILE)).exists();
+    }
+
+    @Test
+    void deleteUnlessInUse_skipsIndexesOpenInThisProcess(@TempDir Path tempDir) throws Exception {
+        Path projectDir = tempDir.resolve("shop-1234");
+        Files.createDirectories(projectDir.resolve("database"));
+
+        try (IndexLease ignored = IndexLease.acquireShared(projectDir)) {
+            assertThat(IndexStorageManager.deleteUnlessInUse(projectDir)).isFalse();
+        }
+        assertThat(IndexStorageManager.deleteUnlessInUse(projectDir)).isTrue();
+    }
+
+    /**
+     * Another IDE with the index open: holds a shared lease until killed.
+     */
+    static final class HoldLease {
+        static final String LOCKED = "locked";
+
+        public static void main(String[] args) throws InterruptedException {
+            IndexLease lease = IndexLease.acquireShared(Path.of(args[0]));
+            System.out.println(LOCKED);
+            System.out.flush();
+            Thread.sleep(Long.MAX_VALUE);
+            lease.close();
+        }
+    }
+}
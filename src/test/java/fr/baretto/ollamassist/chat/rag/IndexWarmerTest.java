@@ -0,0 +1,73 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NoLockFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexWarmerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void warm_touchesVectorAndPostingsFiles() throws IOException {
+        try (Directory directory = IndexDirectoryType.NIO.open(tempDir, NoLockFactory.INSTANCE)) {
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+                for (int i = 0; i < 50; i++) {
+                    Document doc = new Document();
+                    doc.add(new TextField("content_bm25", "public void method" + i + "() {}", Field.Store.NO));
+                    doc.add(new KnnFloatVectorField("vector", new float[]{i + 1f, 0.5f, 0.25f}, VectorSimilarityFunction.COSINE));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+
+            assertThat(IndexWarmer.warm(directory)).isPositive();
+        }
+    }
+
+    @Test
+    void warm_emptyDirectory_touchesNothing() throws IOException {
+        try (Directory directory = IndexDirectoryType.NIO.open(tempDir, NoLockFactory.INSTANCE)) {
+            assertThat(IndexWarmer.warm(directory)).isZero();
+        }
+    }
+
+    @Test
+    void shouldWarm_onlyVectorPostingsAndCompoundFiles() {
+        assertThat(IndexWarmer.shouldWarm("_0_Lucene99HnswVectorsFormat_0.vex")).isTrue();
+        assertThat(IndexWarmer.shouldWarm("_0_Lucene99_0.tim")).isTrue();
+        assertThat(IndexWarmer.shouldWarm("_1.cfs")).isTrue();
+        assertThat(IndexWarmer.shouldWarm("_0.fdt")).isFalse();
+        assertThat(IndexWarmer.shouldWarm("segments_3")).isFalse();
+        assertThat(IndexWarmer.shouldWarm("write.lock")).isFalse();
+    }
+
+    @Test
+    void directoryType_fromString_defaultsToAuto() {
+        assertThat(IndexDirectoryType.fromString(null)).isEqualTo(IndexDirectoryType.AUTO);
+        assertThat(IndexDirectoryType.fromString(" ")).isEqualTo(IndexDirectoryType.AUTO);
+        assertThat(IndexDirectoryType.fromString("bogus")).isEqualTo(IndexDirectoryType.AUTO);
+        assertThat(IndexDirectoryType.fromString("mmap")).isEqualTo(IndexDirectoryType.MMAP);
+    }
+
+    @Test
+    void directoryType_autoResolvesToConcreteImplementation() {
+        assertThat(IndexDirectoryType.AUTO.resolve()).isIn(IndexDirectoryType.MMAP, IndexDirectoryType.NIO);
+        assertThat(IndexDirectoryType.NIO.resolve()).isEqualTo(IndexDirectoryType.NIO);
+    }
+}
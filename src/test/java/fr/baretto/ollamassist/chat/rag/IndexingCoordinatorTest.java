@@ -0,0 +1,139 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IndexingCoordinatorTest {
+
+    private static final int BATCHES = 40;
+
+    private final Project focused = mock(Project.class);
+    private final Project background = mock(Project.class);
+    private final IndexingCoordinator coordinator = new IndexingCoordinator(1, 2, project -> project == focused);
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        threads.shutdownNow();
+        coordinator.dispose();
+    }
+
+    @Test
+    void runBatch_focusedProjectGetsItsWeightInBatches() throws Exception {
+        List<Project> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = holdTurn();
+        for (Project project : List.of(focused, background)) {
+            threads.submit(() -> {
+                for (int i = 0; i < BATCHES; i++) {
+                    coordinator.runBatch(project, 1, () -> order.add(project));
+                }
+                return null;
+            });
+        }
+        while (coordinator.waitingBatches() < 2) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        threads.shutdown();
+        assertThat(threads.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        List<Project> firstRound = order.subList(0, 4 * (IndexingCoordinator.FOCUS_WEIGHT + 1));
+        assertThat(Collections.frequency(firstRound, focused))
+                .isBetween(4 * IndexingCoordinator.FOCUS_WEIGHT - 1, 4 * IndexingCoordinator.FOCUS_WEIGHT + 1);
+        assertThat(order).hasSize(2 * BATCHES);
+    }
+
+    @Test
+    void runBatch_projectBecomingActiveDoesNotCatchUpOnIdleTime() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            coordinator.runBatch(background, 1, () -> { });
+        }
+        List<Project> order = Collections.synchronizedList(new ArrayList<>());
+        Project other = mock(Project.class);
+        CountDownLatch release = holdTurn();
+        for (Project project : List.of(background, other)) {
+            threads.submit(() -> {
+                for (int i = 0; i < 6; i++) {
+                    coordinator.runBatch(project, 1, () -> order.add(project));
+                }
+                return null;
+            });
+        }
+        while (coordinator.waitingBatches() < 2) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        threads.shutdown();
+        assertThat(threads.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // Without levelling, the new project would run its 6 batches before the other gets one
+        assertThat(Collections.frequency(order.subList(0, 6), background)).isBetween(2, 4);
+    }
+
+    @Test
+    void limit_capsEmbeddingCallsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embedAll(any())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return Response.from(List.of(Embedding.from(new float[]{1})));
+        });
+        EmbeddingModel limited = coordinator.limit(model);
+
+        for (int i = 0; i < 8; i++) {
+            threads.submit(() -> limited.embedAll(List.of(TextSegment.from("text"))));
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(peak.get()).isEqualTo(2);
+    }
+
+    /**
+     * Keeps the only slot busy until the returned latch is released, so that the projects under test
+     * all queue up before the first of them runs.
+     */
+    private CountDownLatch holdTurn() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        threads.submit(() -> {
+            coordinator.runBatch(mock(Project.class), 1, () -> {
+                started.countDown();
+                await(release);
+            });
+            return null;
+        });
+        started.await();
+        return release;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibrarySourceIndexTest {
+
+    private static final String UUID = "123e4567-e89b-12d3-a456-426614174000";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void classNames_keepsClassesOfQueryIdentifiers() {
+        assertThat(LibrarySourceIndex.classNames(List.of("RestTemplate.exchange", "java.util.List",
+                "MAX_RETRIES", "load()", "ObjectMapper#readValue", "RestTemplate")))
+                .containsExactly("RestTemplate", "List", "ObjectMapper");
+    }
+
+    @Test
+    void libraryKey_isSharedByProjectsAndChangesWithVersionOrModel() {
+        String key = LibrarySourceIndex.libraryKey("Gradle: org.slf4j:slf4j-api:2.0.9",
+                "slf4j-api-2.0.9-sources.jar", 70_000, "bge-small");
+
+        assertThat(key).startsWith("Gradle_org.slf4j_slf4j-api_2.0.9-");
+        assertThat(LibrarySourceIndex.libraryKey("Gradle: org.slf4j:slf4j-api:2.0.9",
+                "slf4j-api-2.0.9-sources.jar", 70_000, "bge-small")).isEqualTo(key);
+        assertThat(LibrarySourceIndex.libraryKey("Gradle: org.slf4j:slf4j-api:2.0.10",
+                "slf4j-api-2.0.10-sources.jar", 71_000, "bge-small")).isNotEqualTo(key);
+        assertThat(LibrarySourceIndex.libraryKey("Gradle: org.slf4j:slf4j-api:2.0.9",
+                "slf4j-api-2.0.9-sources.jar", 70_000, "nomic-embed-text")).isNotEqualTo(key);
+    }
+
+    @Test
+    void manifest_roundTrip() throws Exception {
+        Path libraryDir = tempDir.resolve("corretto-17");
+        assertThat(LibrarySourceIndex.Manifest.read(libraryDir, "corretto-17").packages()).isEmpty();
+
+        LibrarySourceIndex.Manifest.read(libraryDir, "corretto-17")
+                .withPackage("java.util", 1_000)
+                .withPackage("java.util.concurrent", 2_000)
+                .write(libraryDir);
+
+        LibrarySourceIndex.Manifest manifest = LibrarySourceIndex.Manifest.read(libraryDir, "other");
+        assertThat(manifest.library()).isEqualTo("corretto-17");
+        assertThat(manifest.packages()).containsExactlyInAnyOrder("java.util", "java.util.concurrent");
+        assertThat(manifest.lastUsedMillis()).isEqualTo(2_000);
+        assertThat(manifest.touch(3_000).packages()).isEqualTo(manifest.packages());
+    }
+
+    @Test
+    void open_reusesAnIndexOfTheSameModelAndClearsAnother() throws Exception {
+        Path indexPath = tempDir.resolve("index");
+        IndexSignature bge = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, "bge-small", 0);
+        try (LuceneEmbeddingStore<TextSegment> store = LuceneEmbeddingStore.open(indexPath, bge)) {
+            store.addAll(List.of(Embedding.from(new float[]{1, 0})), List.of(chunk("List.java", "interface List<E> {}")));
+        }
+
+        try (LuceneEmbeddingStore<TextSegment> store = LuceneEmbeddingStore.open(indexPath, bge)) {
+            assertThat(store.documentCount()).isEqualTo(1);
+            assertThat(store.getSignature().dimension()).isEqualTo(2);
+        }
+        IndexSignature nomic = new IndexSignature(LuceneEmbeddingStore.INDEX_VERSION, "nomic-embed-text", 0);
+        try (LuceneEmbeddingStore<TextSegment> store = LuceneEmbeddingStore.open(indexPath, nomic)) {
+            assertThat(store.documentCount()).isZero();
+            assertThat(store.getSignature().modelId()).isEqualTo("nomic-embed-text");
+        }
+    }
+
+    @Test
+    void merge_addsAtMostTwoLibraryChunksRankedWithTheProject() {
+        List<EmbeddingMatch<TextSegment>> project = List.of(match(0.9, "OrderService.java"), match(0.6, "Cart.java"));
+        List<EmbeddingMatch<TextSegment>> library = List.of(match(0.95, "RestTemplate.java"),
+                match(0.8, "RestOperations.java"), match(0.7, "HttpEntity.java"));
+
+        List<EmbeddingMatch<TextSegment>> merged = new LibrarySources(List.of()).merge(project, library, 4);
+
+        assertThat(merged).extracting(match -> match.embedded().metadata().getString("file_name"))
+                .containsExactly("RestTemplate.java", "OrderService.java", "RestOperations.java", "Cart.java");
+        assertThat(LibrarySources.EMPTY.merge(project, List.of(), 4)).isSameAs(project);
+        assertThat(LibrarySources.isLibraryChunk(library.get(0).embedded().metadata())).isTrue();
+        assertThat(LibrarySources.isLibraryChunk(project.get(0).embedded().metadata())).isFalse();
+    }
+
+    private static EmbeddingMatch<TextSegment> match(double score, String fileName) {
+        TextSegment segment = fileName.startsWith("Rest") || fileName.startsWith("Http")
+                ? chunk(fileName, "class " + fileName)
+                : TextSegment.from("class " + fileName, Metadata.from(Map.of("file_name", fileName)));
+        return new EmbeddingMatch<>(score, "/src/" + fileName + UUID, null, segment);
+    }
+
+    private static TextSegment chunk(String fileName, String text) {
+        Metadata metadata = Metadata.from(Map.of("file_name", fileName,
+                "absolute_directory_path", "/libs/spring-web-6.1.2-sources.jar!/org/springframework/web/client",
+                LibrarySources.LIBRARY_KEY, "Gradle: org.springframework:spring-web:6.1.2"));
+        return TextSegment.from(text, metadata);
+    }
+}
@@ -0,0 +1,37 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineIndexTest {
+
+    @Test
+    void of_indexesLinesLikeSplit() {
+        LineIndex lines = LineIndex.of("a\nbb\n\nccc\n");
+
+        assertThat(lines.lineCount()).isEqualTo("a\nbb\n\nccc\n".split("\n", -1).length);
+        assertThat(lines.text(0, 1)).isEqualTo("a");
+        assertThat(lines.text(1, 4)).isEqualTo("bb\n\nccc");
+        assertThat(lines.text(4, 5)).isEmpty();
+    }
+
+    @Test
+    void lineOf_mapsOffsetsToTheirLine() {
+        LineIndex lines = LineIndex.of("a\nbb\n\nccc");
+
+        assertThat(lines.lineOf(0)).isZero();
+        assertThat(lines.lineOf(1)).isZero();
+        assertThat(lines.lineOf(2)).isEqualTo(1);
+        assertThat(lines.lineOf(5)).isEqualTo(2);
+        assertThat(lines.lineOf(8)).isEqualTo(3);
+    }
+
+    @Test
+    void of_growsPastItsInitialCapacity() {
+        LineIndex lines = LineIndex.of("\n".repeat(1_000));
+
+        assertThat(lines.lineCount()).isEqualTo(1_001);
+        assertThat(lines.lineOf(999)).isEqualTo(999);
+    }
+}
@@ -0,0 +1,73 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearDuplicateEmbeddingModelTest {
+
+    private final EmbeddingModel delegate = mock(EmbeddingModel.class);
+    @SuppressWarnings("unchecked")
+    private final LuceneEmbeddingStore<TextSegment> store = mock(LuceneEmbeddingStore.class);
+    private final LongAdder embedded = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private NearDuplicateEmbeddingModel model;
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.embedAll(any())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream().map(s -> Embedding.from(new float[]{s.text().length()})).toList());
+        });
+        model = new NearDuplicateEmbeddingModel(delegate, store, embedded, reused);
+    }
+
+    @Test
+    void embedAll_duplicateInTheSameCall_reusesTheFirstEmbedding() {
+        when(store.findNearDuplicates(anyCollection(), anyCollection())).thenReturn(Map.of());
+        TextSegment first = TextSegment.from(NearDuplicatesTest.LICENSE);
+        TextSegment copy = TextSegment.from("Copyright 2024 Acme\n" + NearDuplicatesTest.LICENSE);
+        TextSegment small = TextSegment.from("return id;");
+
+        List<Embedding> embeddings = model.embedAll(List.of(first, copy, small)).content();
+
+        assertThat(embeddings).hasSize(3);
+        assertThat(embeddings.get(1)).isSameAs(embeddings.get(0));
+        assertThat(copy.metadata().getString(NearDuplicates.META_DUPLICATE_OF))
+                .isEqualTo(first.metadata().getString(NearDuplicates.META_SIMHASH));
+        assertThat(small.metadata().getString(NearDuplicates.META_SIMHASH)).isNull();
+        verify(delegate).embedAll(List.of(first, small));
+        assertThat(embedded.sum()).isEqualTo(2);
+        assertThat(reused.sum()).isEqualTo(1);
+    }
+
+    @Test
+    void embedAll_duplicateOfAnIndexedChunk_isNotEmbedded() {
+        Embedding indexed = Embedding.from(new float[]{42});
+        long hash = NearDuplicates.simHash(NearDuplicatesTest.LICENSE).orElseThrow();
+        when(store.findNearDuplicates(anyCollection(), anyCollection()))
+                .thenReturn(Map.of(hash, new NearDuplicates.Match("00000000000000ff", indexed)));
+        TextSegment segment = TextSegment.from(NearDuplicatesTest.LICENSE);
+
+        List<Embedding> embeddings = model.embedAll(List.of(segment)).content();
+
+        assertThat(embeddings).containsExactly(indexed);
+        assertThat(segment.metadata().getString(NearDuplicates.META_DUPLICATE_OF)).isEqualTo("00000000000000ff");
+        verify(delegate, org.mockito.Mockito.never()).embedAll(any());
+        assertThat(reused.sum()).isEqualTo(1);
+    }
+}
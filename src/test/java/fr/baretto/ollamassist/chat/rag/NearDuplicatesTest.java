@@ -0,0 +1,75 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NearDuplicatesTest {
+
+    static final String LICENSE = """
+            Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+            except in compliance with the License. You may obtain a copy of the License at
+            http://www.apache.org/licenses/LICENSE-2.0
+            Unless required by applicable law or agreed to in writing, software distributed under the
+            License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND.
+            """;
+
+    @Test
+    void simHash_nearIdenticalTexts_areWithinTheDistance() {
+        long original = NearDuplicates.simHash(LICENSE).orElseThrow();
+        long edited = NearDuplicates.simHash("Copyright 2024 Acme\n" + LICENSE).orElseThrow();
+
+        assertThat(NearDuplicates.distance(original, edited)).isLessThanOrEqualTo(NearDuplicates.MAX_DISTANCE);
+        assertThat(NearDuplicates.bands(original)).containsAnyElementsOf(NearDuplicates.bands(edited));
+    }
+
+    @Test
+    void simHash_unrelatedTexts_areFarApart() {
+        long license = NearDuplicates.simHash(LICENSE).orElseThrow();
+        long code = NearDuplicates.simHash("""
+                public List<String> collectFilePaths() {
+                    List<String> paths = new ArrayList<>();
+                    for (String source : sources.split(";")) {
+                        paths.addAll(walk(Path.of(project.getBasePath(), source)));
+                    }
+                    return paths;
+                }
+                """).orElseThrow();
+
+        assertThat(NearDuplicates.distance(license, code)).isGreaterThan(NearDuplicates.MAX_DISTANCE);
+    }
+
+    @Test
+    void simHash_ignoresTheFqnHeaderAndShortChunks() {
+        Metadata first = new Metadata().put(CodeAwareDocumentSplitter.META_FQN, "a.First");
+        Metadata second = new Metadata().put(CodeAwareDocumentSplitter.META_FQN, "b.Second");
+
+        assertThat(NearDuplicates.simHash(TextSegment.from("// a.First\n" + LICENSE, first)))
+                .isEqualTo(NearDuplicates.simHash(TextSegment.from("// b.Second\n" + LICENSE, second)));
+        assertThat(NearDuplicates.simHash("int getId() { return id; }")).isEmpty();
+    }
+
+    @Test
+    void collapse_keepsTheBestRankedChunkOfEachGroup() {
+        List<EmbeddingMatch<TextSegment>> matches = List.of(
+                match("canonical", new Metadata().put(NearDuplicates.META_SIMHASH, "00000000000000ff")),
+                match("copy", new Metadata().put(NearDuplicates.META_SIMHASH, "00000000000000fe")
+                        .put(NearDuplicates.META_DUPLICATE_OF, "00000000000000ff")),
+                match("unhashed", new Metadata()),
+                match("other", new Metadata().put(NearDuplicates.META_SIMHASH, "ff00000000000000")));
+
+        assertThat(NearDuplicates.collapse(matches, 5)).extracting(EmbeddingMatch::embeddingId)
+                .containsExactly("canonical", "unhashed", "other");
+        assertThat(NearDuplicates.collapse(matches, 2)).extracting(EmbeddingMatch::embeddingId)
+                .containsExactly("canonical", "unhashed");
+    }
+
+    private static EmbeddingMatch<TextSegment> match(String id, Metadata metadata) {
+        return new EmbeddingMatch<>(1.0, id, null, TextSegment.from(id, metadata));
+    }
+}
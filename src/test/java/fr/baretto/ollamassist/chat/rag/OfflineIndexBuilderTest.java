@@ -0,0 +1,116 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import com.intellij.openapi.project.Project;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OfflineIndexBuilderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Path> createdDirs = new ArrayList<>();
+    private LuceneEmbeddingStore<TextSegment> projectStore;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (projectStore != null) {
+            projectStore.close();
+        }
+        for (Path dir : createdDirs) {
+            IndexStorageManager.deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    void collectFiles_skipsHiddenDirectoriesBuildOutputsAndBinaries() throws IOException {
+        Path root = checkout();
+        write(root, "src/Order.java", "class Order {}");
+        write(root, "README.md", "Orders");
+        write(root, ".idea/workspace.xml", "<project/>");
+        write(root, "build/generated/Order.java", "class Order {}");
+        write(root, "node_modules/lib/index.js", "module.exports = {}");
+        Files.write(root.resolve("logo.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+
+        assertThat(OfflineIndexBuilder.collectFiles(root)).extracting(path -> root.relativize(path).toString())
+                .containsExactlyInAnyOrder(Path.of("src", "Order.java").toString(), "README.md");
+    }
+
+    @Test
+    void build_seedsTheIndexOfTheCheckoutItWasBuiltFor() throws Exception {
+        Path root = checkout();
+        String order = write(root, "src/Order.java", "class Order {\n    int total() {\n        return 1;\n    }\n}\n");
+        String readme = write(root, "README.md", "Orders are shipped once paid");
+        Path output = OfflineIndexBuilder.defaultOutput(root);
+        createdDirs.add(output);
+        projectStore = open(root);
+        String modelId = projectStore.getSignature().modelId();
+
+        OfflineIndexBuilder.Manifest manifest = new OfflineIndexBuilder(root, output, 2, 1, fakeModel(), modelId, null)
+                .build();
+
+        assertThat(manifest.files()).isEqualTo(2);
+        assertThat(manifest.chunks()).isPositive();
+        assertThat(manifest.dimension()).isEqualTo(2);
+        assertThat(manifest.repositoryId()).isEqualTo(CheckoutIdentity.of(root.toString()).repositoryId());
+        assertThat(OfflineIndexBuilder.Manifest.read(output)).contains(manifest);
+
+        Files.writeString(Path.of(readme), "Orders are shipped once paid and packed");
+        Set<String> upToDate = new IndexSeeder(projectStore).seed(List.of(order, readme));
+
+        assertThat(upToDate).containsExactly(order);
+        assertThat(projectStore.indexedFilePaths()).containsExactly(order);
+    }
+
+    private Path checkout() throws IOException {
+        Path root = tempDir.resolve("offline-" + System.nanoTime());
+        Path gitDir = Files.createDirectories(root.resolve(".git"));
+        Files.writeString(gitDir.resolve("config"), "[remote \"origin\"]\n\turl = git@example.com:acme/offline-test.git\n");
+        return root;
+    }
+
+    private LuceneEmbeddingStore<TextSegment> open(Path root) throws IOException {
+        Project project = Mockito.mock(Project.class);
+        Mockito.when(project.getName()).thenReturn("offline-test");
+        Mockito.when(project.getBasePath()).thenReturn(root.toString());
+        LuceneEmbeddingStore<TextSegment> store = new LuceneEmbeddingStore<>(project, IndexDirectoryType.NIO);
+        store.recreateIndex();
+        createdDirs.add(Path.of(IndexRegistry.OLLAMASSIST_DIR, IndexKey.of(project)));
+        return store;
+    }
+
+    private static String write(Path root, String relativePath, String content) throws IOException {
+        Path file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        return file.toString().replace('\\', '/');
+    }
+
+    private static EmbeddingModel fakeModel() {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embedAll(any())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream()
+                    .map(s -> Embedding.from(new float[]{s.text().length(), 1})).toList());
+        });
+        return model;
+    }
+}
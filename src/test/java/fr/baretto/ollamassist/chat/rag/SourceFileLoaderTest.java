@@ -0,0 +1,64 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceFileLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void load_readsSourceFilesWithTheSameMetadataAsTheDocumentLoader() throws IOException {
+        Path file = write("Foo.java", "class Foo {\n    int bar;\n}\n".getBytes(StandardCharsets.UTF_8));
+
+        Document doc = SourceFileLoader.load(file).orElseThrow();
+
+        assertThat(doc.text()).isEqualTo("class Foo {\n    int bar;\n}\n");
+        assertThat(doc.metadata().getString(Document.FILE_NAME)).isEqualTo("Foo.java");
+        assertThat(doc.metadata().getString(Document.ABSOLUTE_DIRECTORY_PATH))
+                .isEqualTo(tempDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    void load_detectsTheEncoding() throws IOException {
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', '=', '1'};
+        byte[] latin1 = "name=café".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] utf16 = "\uFEFFkey=value".getBytes(StandardCharsets.UTF_16LE);
+
+        assertThat(SourceFileLoader.load(write("bom.properties", bom)).orElseThrow().text()).isEqualTo("a=1");
+        assertThat(SourceFileLoader.load(write("latin1.properties", latin1)).orElseThrow().text()).isEqualTo("name=café");
+        assertThat(SourceFileLoader.load(write("utf16.properties", utf16)).orElseThrow().text()).isEqualTo("key=value");
+    }
+
+    @Test
+    void load_skipsBinaryEmptyOversizedAndMinifiedFiles() throws IOException {
+        byte[] oneLine = ("var a=1;".repeat(1_000)).getBytes(StandardCharsets.UTF_8);
+
+        assertThat(SourceFileLoader.load(write("Binary.java", new byte[]{'c', 0, 'a', 0}))).isEmpty();
+        assertThat(SourceFileLoader.load(write("Empty.java", "  \n".getBytes(StandardCharsets.UTF_8)))).isEmpty();
+        assertThat(SourceFileLoader.load(write("Big.txt", new byte[SourceFileLoader.MAX_FILE_BYTES + 1]))).isEmpty();
+        assertThat(SourceFileLoader.load(write("bundle.js", oneLine))).isEmpty();
+        assertThat(SourceFileLoader.load(write("lib.min.js", "var a=1;".getBytes(StandardCharsets.UTF_8)))).isEmpty();
+    }
+
+    @Test
+    void isPlainText_leavesRichFormatsToTheDocumentParser() {
+        assertThat(SourceFileLoader.isPlainText(Path.of("src/Foo.kt"))).isTrue();
+        assertThat(SourceFileLoader.isPlainText(Path.of("Dockerfile"))).isTrue();
+        assertThat(SourceFileLoader.isPlainText(Path.of("docs/guide.pdf"))).isFalse();
+        assertThat(SourceFileLoader.isPlainText(Path.of("docs/guide.docx"))).isFalse();
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(tempDir.resolve(name), content);
+    }
+}
@@ -0,0 +1,97 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceOutlineTest {
+
+    @Test
+    void parse_kotlin_findsClassesMembersAndTopLevelFunctions() throws IOException {
+        LineIndex lines = lines("UserService.kt");
+
+        List<CodeBlock> blocks = SourceOutline.parse("UserService.kt", lines);
+
+        assertThat(blocks).extracting(CodeBlock::name).containsExactly("UserService", "topLevel");
+        CodeBlock service = blocks.get(0);
+        assertThat(service.container()).isTrue();
+        // The range starts at the KDoc, the declaration line is the class itself
+        assertThat(lines.text(service.startLine(), service.startLine() + 1)).isEqualTo("/**");
+        assertThat(lines.text(service.declarationLine(), service.declarationLine() + 1)).isEqualTo("class UserService(");
+        // One-line functions stay in the class text
+        assertThat(service.children()).extracting(CodeBlock::name).containsExactly("find", "load", "Companion");
+        assertThat(service.children().get(2).children()).extracting(CodeBlock::name).containsExactly("create");
+        assertThat(SourceOutline.packageName(lines)).isEqualTo("com.example.demo");
+    }
+
+    @Test
+    void parse_python_followsIndentationAndIgnoresDocstrings() throws IOException {
+        LineIndex lines = lines("parser.py");
+
+        List<CodeBlock> blocks = SourceOutline.parse("parser.py", lines);
+
+        assertThat(blocks).extracting(CodeBlock::name).containsExactly("Parser", "helper", "fetch");
+        CodeBlock parser = blocks.get(0);
+        assertThat(lines.text(parser.startLine(), parser.startLine() + 1)).isEqualTo("@dataclass");
+        assertThat(parser.children()).extracting(CodeBlock::name).containsExactly("parse");
+        // The multi-line signature and the comment line do not end the method
+        assertThat(lines.text(parser.children().get(0).endLine() - 1, parser.children().get(0).endLine()))
+                .isEqualTo("        return 2");
+    }
+
+    @Test
+    void parse_typeScript_findsMethodsAndArrowFunctions() throws IOException {
+        List<CodeBlock> blocks = SourceOutline.parse("cart.ts", lines("cart.ts"));
+
+        assertThat(blocks).extracting(CodeBlock::name).containsExactly("Cart", "format", "legacy");
+        assertThat(blocks.get(0).children()).extracting(CodeBlock::name).containsExactly("constructor", "add", "total");
+    }
+
+    @Test
+    void parse_go_findsTypesAndMethodsWithReceivers() throws IOException {
+        LineIndex lines = lines("server.go");
+
+        assertThat(SourceOutline.parse("server.go", lines)).extracting(CodeBlock::name)
+                .containsExactly("Server", "Handle", "New");
+        assertThat(SourceOutline.packageName(lines)).isEqualTo("server");
+    }
+
+    @Test
+    void parse_rust_skipsLifetimesAndCharLiterals() throws IOException {
+        List<CodeBlock> blocks = SourceOutline.parse("foo.rs", lines("foo.rs"));
+
+        assertThat(blocks).extracting(CodeBlock::name).containsExactly("Foo", "Foo", "tests");
+        assertThat(blocks.get(1).children()).extracting(CodeBlock::name).containsExactly("new", "len");
+    }
+
+    @Test
+    void parse_java_findsMembersAcrossMultiLineSignatures() throws IOException {
+        LineIndex lines = lines("OrderService.java");
+
+        List<CodeBlock> blocks = SourceOutline.parse("OrderService.java", lines);
+
+        assertThat(blocks).extracting(CodeBlock::name).containsExactly("OrderService");
+        // The constructor is outlined like a method, the record as a nested class
+        assertThat(blocks.get(0).children()).extracting(CodeBlock::name)
+                .containsExactly("OrderService", "count", "map", "Line");
+        assertThat(blocks.get(0).children().get(3).container()).isTrue();
+        assertThat(SourceOutline.packageName(lines)).isEqualTo("com.example.orders");
+    }
+
+    @Test
+    void parse_unsupportedLanguage_returnsNothing() {
+        assertThat(SourceOutline.supports("notes.md")).isFalse();
+        assertThat(SourceOutline.parse("notes.md", LineIndex.of("# Title\n\ntext"))).isEmpty();
+    }
+
+    private static LineIndex lines(String resource) throws IOException {
+        try (InputStream in = SourceOutlineTest.class.getClassLoader().getResourceAsStream("outline/" + resource)) {
+            return LineIndex.of(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
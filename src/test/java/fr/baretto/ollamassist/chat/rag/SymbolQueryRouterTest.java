@@ -0,0 +1,93 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SymbolQueryRouterTest {
+
+    private LuceneEmbeddingStore<TextSegment> store;
+    private ContentRetriever fallback;
+    private SymbolQueryRouter router;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        store = mock(LuceneEmbeddingStore.class);
+        fallback = mock(ContentRetriever.class);
+        router = new SymbolQueryRouter(store, fallback);
+    }
+
+    private static EmbeddingMatch<TextSegment> match(String text) {
+        return new EmbeddingMatch<>(1.0, text, null, TextSegment.from(text));
+    }
+
+    @Test
+    void extractIdentifiers_findsCodeTokensOnly() {
+        List<String> identifiers = SymbolQueryRouter.extractIdentifiers(
+                "How does LuceneEmbeddingStore.knnSearch use MAX_RESULTS and load() in the `store` class?");
+
+        assertEquals(List.of("store", "LuceneEmbeddingStore.knnSearch", "MAX_RESULTS", "load()"), identifiers);
+    }
+
+    @Test
+    void extractIdentifiers_ignoresProse() {
+        assertTrue(SymbolQueryRouter.extractIdentifiers("Where is the index rebuilt? Ask Bob.").isEmpty());
+        assertTrue(SymbolQueryRouter.extractIdentifiers(null).isEmpty());
+    }
+
+    @Test
+    void symbolKeys_normaliseMemberReferences() {
+        assertEquals("store.knnsearch", SymbolKeys.normalize("Store#knnSearch()"));
+        assertEquals("knnsearch", SymbolKeys.simpleName("a.b.store.knnsearch"));
+        assertEquals("store.knnsearch", SymbolKeys.qualifiedName("a.b.store.knnsearch"));
+        assertNull(SymbolKeys.qualifiedName("store"));
+    }
+
+    @Test
+    void retrieve_exactHitsFillAllSlots_skipsHybridSearch() {
+        when(store.symbolSearch(anyCollection(), anyInt())).thenReturn(List.of(match("a"), match("b"), match("c")));
+
+        List<Content> results = router.retrieve(Query.from("explain IndexSeeder.seed"));
+
+        assertEquals(3, results.size());
+        verifyNoInteractions(fallback);
+        assertEquals(1, router.stats().get(SymbolQueryRouter.Route.SYMBOL).queries());
+    }
+
+    @Test
+    void retrieve_partialExactHits_completesWithHybridResults() {
+        when(store.symbolSearch(anyCollection(), anyInt())).thenReturn(List.of(match("exact")));
+        when(fallback.retrieve(any())).thenReturn(List.of(Content.from("exact"), Content.from("x"), Content.from("y"), Content.from("z")));
+
+        List<Content> results = router.retrieve(Query.from("what calls IndexSeeder.seed"));
+
+        assertEquals(List.of("exact", "x", "y"), results.stream().map(c -> c.textSegment().text()).toList());
+        assertEquals(1, router.stats().get(SymbolQueryRouter.Route.MIXED).queries());
+    }
+
+    @Test
+    void retrieve_noIdentifier_usesHybridSearchOnly() {
+        when(fallback.retrieve(any())).thenReturn(List.of(Content.from("x")));
+
+        List<Content> results = router.retrieve(Query.from("how is the index rebuilt"));
+
+        assertEquals(1, results.size());
+        verify(store, never()).symbolSearch(anyCollection(), anyInt());
+        SymbolQueryRouter.RouteStats stats = router.stats().get(SymbolQueryRouter.Route.HYBRID);
+        assertEquals(1, stats.queries());
+        assertEquals(1.0, stats.hitRate());
+    }
+}
@@ -0,0 +1,102 @@
+package fr.baretto.ollamassist.chat.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UnsavedBuffersTest {
+
+    private static final String DIRECTORY = "/project/src";
+    private static final String EDITED = DIRECTORY + "/OrderService.java";
+    private static final String UUID = "123e4567-e89b-12d3-a456-426614174000";
+
+    private final TextSegment placeOrder = segment("OrderService.java", "com.acme.OrderService#placeOrder",
+            "public Order placeOrder(Cart cart) { return repository.save(Order.from(cart)); }");
+    private final TextSegment cancelOrder = segment("OrderService.java", "com.acme.OrderService#cancelOrder",
+            "public void cancelOrder(long id) { repository.delete(id); }");
+    private final UnsavedBuffers buffers = new UnsavedBuffers("model", List.of(new UnsavedBuffers.Buffer(EDITED, "hash",
+            List.of(placeOrder, cancelOrder), List.of(vector(1, 0), vector(0, 1)))));
+
+    @Test
+    void merge_replacesIndexedChunksOfUnsavedFiles() {
+        EmbeddingMatch<TextSegment> stale = new EmbeddingMatch<>(0.99, EDITED + UUID, null,
+                segment("OrderService.java", null, "old code"));
+        EmbeddingMatch<TextSegment> other = new EmbeddingMatch<>(0.7, DIRECTORY + "/Cart.java" + UUID, null,
+                segment("Cart.java", null, "class Cart {}"));
+
+        List<EmbeddingMatch<TextSegment>> merged = buffers.merge(List.of(stale, other),
+                buffers.knnSearch(new float[]{1, 0}, 2), 3);
+
+        assertThat(merged).extracting(match -> match.embedded().text())
+                .containsExactly(placeOrder.text(), other.embedded().text(), cancelOrder.text());
+        assertThat(merged.get(0).score()).isEqualTo(1.0);
+        assertThat(merged.get(2).score()).isEqualTo(0.5);
+    }
+
+    @Test
+    void symbolSearch_scoresLikeTheSymbolIndex() {
+        List<EmbeddingMatch<TextSegment>> matches = buffers.symbolSearch(List.of("OrderService.placeOrder"), 3);
+
+        assertThat(matches).hasSize(1);
+        assertThat(matches.get(0).embedded()).isSameAs(placeOrder);
+        // Class.member key: 4, no full FQN nor simple name match
+        assertThat(matches.get(0).score()).isEqualTo(4.0);
+        // File name without extension matches every chunk of the file
+        assertThat(buffers.symbolSearch(List.of("OrderService"), 3)).hasSize(2);
+    }
+
+    @Test
+    void bm25Search_findsUnsavedChunksByKeyword() {
+        assertThat(buffers.bm25Search("cancel order by id", 1))
+                .extracting(EmbeddingMatch::embedded)
+                .containsExactly(cancelOrder);
+    }
+
+    @Test
+    void empty_leavesIndexedResultsAsTheyAre() {
+        List<EmbeddingMatch<TextSegment>> indexed = List.of(new EmbeddingMatch<>(0.9, EDITED + UUID, null, placeOrder));
+
+        assertThat(UnsavedBuffers.EMPTY.merge(indexed, List.of(), 3)).isSameAs(indexed);
+        assertThat(UnsavedBuffers.EMPTY.knnSearch(new float[]{1, 0}, 3)).isEmpty();
+        assertThat(UnsavedBuffers.EMPTY.bm25Search("order", 3)).isEmpty();
+    }
+
+    @Test
+    void embed_reusesVectorsOfUnchangedChunks() {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embedAll(any())).thenReturn(Response.from(List.of(vector(5, 5))));
+        TextSegment edited = segment("OrderService.java", "com.acme.OrderService#cancelOrder",
+                "public void cancelOrder(long id) { repository.deleteById(id); }");
+
+        List<Embedding> embeddings = UnsavedBufferIndex.embed(List.of(placeOrder, edited),
+                buffers.buffers().get(EDITED), model);
+
+        verify(model).embedAll(List.of(edited));
+        assertThat(embeddings).containsExactly(vector(1, 0), vector(5, 5));
+    }
+
+    private static TextSegment segment(String fileName, String fqn, String text) {
+        Metadata metadata = Metadata.from(Map.of("file_name", fileName, "absolute_directory_path", DIRECTORY));
+        if (fqn != null) {
+            metadata.put(CodeAwareDocumentSplitter.META_FQN, fqn);
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    private static Embedding vector(float x, float y) {
+        return Embedding.from(new float[]{x, y});
+    }
+}
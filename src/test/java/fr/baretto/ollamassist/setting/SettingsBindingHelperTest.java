@@ -42,7 +42,6 @@ class SettingsBindingHelperTest {
         private String embeddingModel = null;
         private String timeout = "";
         private String sources = "";
-        private int maxDocuments = 0;
 
         public String getChatOllamaUrl() { return chatOllamaUrl; }
         public void setChatOllamaUrl(String url) { this.chatOllamaUrl = url; }
@@ -67,9 +66,6 @@ class SettingsBindingHelperTest {
 
         public String getSources() { return sources; }
         public void setSources(String sources) { this.sources = sources; }
-
-        public int getMaxDocuments() { return maxDocuments; }
-        public void setMaxDocuments(int maxDocuments) { this.maxDocuments = maxDocuments; }
     }
 
     @Test
@@ -83,7 +79,6 @@ class SettingsBindingHelperTest {
         state.embeddingModelName = "nomic-embed-text";
         state.timeout = "600";
         state.sources = "src/main;src/test";
-        state.indexationSize = 10000;
 
         // When: Load settings
         SettingsBindingHelper.loadSettings(state, panel);
@@ -94,7 +89,6 @@ class SettingsBindingHelperTest {
         assertThat(panel.getEmbeddingOllamaUrl()).isEqualTo("http://localhost:7777");
         assertThat(panel.getTimeout()).isEqualTo("600");
         assertThat(panel.getSources()).isEqualTo("src/main;src/test");
-        assertThat(panel.getMaxDocuments()).isEqualTo(10000);
     }
 
     @Test
@@ -109,7 +103,6 @@ class SettingsBindingHelperTest {
         state.embeddingOllamaUrl = "http://localhost:3333";
         state.timeout = "900";
         state.sources = "custom/src";
-        state.indexationSize = 5000;
 
         SettingsBindingHelper.loadSettings(state, panel);
 
@@ -125,7 +118,6 @@ class SettingsBindingHelperTest {
         assertThat(newState.embeddingOllamaUrl).isEqualTo("http://localhost:3333");
         assertThat(newState.timeout).isEqualTo("900");
         assertThat(newState.sources).isEqualTo("custom/src");
-        assertThat(newState.indexationSize).isEqualTo(5000);
     }
 
     @Test
@@ -166,16 +158,16 @@ class SettingsBindingHelperTest {
     }
 
     @Test
-    void testIsModified_shouldReturnTrueWhenIndexationSizeChanged() {
+    void testIsModified_shouldIgnoreTheLegacyIndexationSize() {
         // Given: Panel loaded with state values
         state.indexationSize = 5000;
         SettingsBindingHelper.loadSettings(state, panel);
 
-        // When: State value is different from panel
+        // When: The legacy value changes (the embedding budget lives in RAGSettings)
         state.indexationSize = 10000;
 
-        // Then: Modification should be detected
-        assertThat(SettingsBindingHelper.isModified(state, panel)).isTrue();
+        // Then: No modification should be detected
+        assertThat(SettingsBindingHelper.isModified(state, panel)).isFalse();
     }
 
     @Test
@@ -241,7 +233,6 @@ class SettingsBindingHelperTest {
         state.embeddingModelName = "nomic-embed-text";
         state.timeout = "600";
         state.sources = "src/main;src/test";
-        state.indexationSize = 10000;
 
         // When: Load into panel, then save to new state
         SettingsBindingHelper.loadSettings(state, panel);
@@ -254,7 +245,6 @@ class SettingsBindingHelperTest {
         assertThat(newState.embeddingOllamaUrl).isEqualTo(state.embeddingOllamaUrl);
         assertThat(newState.timeout).isEqualTo(state.timeout);
         assertThat(newState.sources).isEqualTo(state.sources);
-        assertThat(newState.indexationSize).isEqualTo(state.indexationSize);
     }
 
     @Test
@@ -0,0 +1,36 @@
+package com.example.orders;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Places orders.
+ */
+@Service
+public class OrderService implements Orders {
+
+    private static final char CLOSE = '}';
+    private final List<String> items;
+
+    public OrderService(List<String> items) {
+        this.items = items;
+    }
+
+    @Override
+    public int count(String status) {
+        if (status == null) {
+            return 0;
+        }
+        return items.size();
+    }
+
+    <T> List<T> map(
+            Function<String, T> mapper) throws IOException {
+        return items.stream().map(mapper).toList();
+    }
+
+    record Line(String sku, int quantity) {
+        static final int MAX_QUANTITY = 99;
+    }
+}
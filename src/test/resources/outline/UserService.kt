@@ -0,0 +1,45 @@
+package com.example.demo
+
+import java.util.List
+
+/**
+ * Doc.
+ */
+@Service
+class UserService(
+    private val repo: Repo,
+) : Base(), Other {
+
+    private val cache = mutableMapOf<String, String>()
+
+    fun find(id: String): User? {
+        val s = "a { b"
+        return repo.find(id)
+    }
+
+    fun short() = 1
+
+    override suspend fun <T> String.load(x: T): T {
+        if (x == null) {
+            return x
+        }
+        return x
+    }
+
+    companion object {
+        const val A = 1
+        fun create(): UserService {
+            return UserService(Repo())
+        }
+    }
+}
+
+data class User(
+    val id: String,
+    val name: String,
+)
+
+fun topLevel(a: Int): Int {
+    val c = 'x'
+    return a + 1
+}
@@ -0,0 +1,28 @@
+import { x } from './x';
+
+export class Cart {
+  private items: Item[] = [];
+
+  constructor(private readonly id: string) {
+    this.items = [];
+  }
+
+  async add(item: Item): Promise<void> {
+    if (item) {
+      this.items.push(item);
+    }
+  }
+
+  get total(): number {
+    return this.items.reduce((a, b) => a + b.price, 0);
+  }
+}
+
+export const format = (value: number): string => {
+  const s = `${value} {`;
+  return s;
+};
+
+function legacy(a) {
+  return a;
+}
@@ -0,0 +1,22 @@
+pub struct Foo<'a> {
+    name: &'a str,
+}
+
+impl<'a> Foo<'a> {
+    pub fn new(name: &'a str) -> Self {
+        let c = '{';
+        Foo { name }
+    }
+
+    fn len(&self) -> usize {
+        self.name.len()
+    }
+}
+
+#[cfg(test)]
+mod tests {
+    #[test]
+    fn works() {
+        assert!(true);
+    }
+}
@@ -0,0 +1,30 @@
+import os
+
+
+@dataclass
+class Parser:
+    """Doc with def fake(): inside
+    class Not:
+    """
+
+    def __init__(self, text):
+        self.text = text
+
+    def parse(
+        self,
+        strict=False,
+    ):
+        # comment
+        if strict:
+            return 1
+        return 2
+
+
+def helper(x):
+    y = (1 +
+2)
+    return x + y
+
+async def fetch(url):
+    data = await get(url)
+    return data
@@ -0,0 +1,17 @@
+package server
+
+type Server struct {
+	addr string
+	port int
+}
+
+func (s *Server) Handle(w http.ResponseWriter, r *http.Request) {
+	if r == nil {
+		return
+	}
+	fmt.Println("}")
+}
+
+func New() *Server {
+	return &Server{}
+}